@@ -0,0 +1,210 @@
+package app.notekeeper.common.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import app.notekeeper.security.SecurityUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bounded executor running tasks on virtual threads with per-owner round-robin
+ * fairness
+ * Each owner has its own FIFO queue, queues are served in turn so one owner
+ * with thousands of tasks cannot starve the others. Concurrency is limited by a
+ * semaphore, the total number of queued tasks by a fixed capacity.
+ */
+@Slf4j
+public class FairTaskExecutor implements TaskExecutor, DisposableBean {
+
+    /**
+     * Owner key for tasks submitted outside of an authenticated request
+     */
+    public static final UUID SYSTEM_OWNER = new UUID(0L, 0L);
+
+    private final String name;
+    private final int queueCapacity;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+    private final ExecutorService workers;
+
+    private final Object lock = new Object();
+    private final Map<UUID, Deque<QueuedTask>> queues = new HashMap<>();
+    private final Deque<UUID> readyOwners = new ArrayDeque<>();
+    private int queued;
+
+    private final Counter submitted;
+    private final Counter rejected;
+    private final Counter completed;
+    private final Counter failed;
+    private final Timer queueWait;
+
+    public FairTaskExecutor(String name, int maxConcurrency, int queueCapacity, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.queueCapacity = queueCapacity;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+
+        this.submitted = taskCounter(meterRegistry, "submitted");
+        this.rejected = taskCounter(meterRegistry, "rejected");
+        this.completed = taskCounter(meterRegistry, "completed");
+        this.failed = taskCounter(meterRegistry, "failed");
+        this.queueWait = Timer.builder("notekeeper.executor.queue.wait")
+                .tag("executor", name)
+                .register(meterRegistry);
+
+        Gauge.builder("notekeeper.executor.queued", this, FairTaskExecutor::getQueuedCount)
+                .tag("executor", name)
+                .register(meterRegistry);
+        Gauge.builder("notekeeper.executor.active", this, FairTaskExecutor::getActiveCount)
+                .tag("executor", name)
+                .register(meterRegistry);
+        Gauge.builder("notekeeper.executor.owners", this, FairTaskExecutor::getOwnerCount)
+                .tag("executor", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Execute task in the queue of the current authenticated user (used by
+     * {@code @Async}, which submits from the publishing request thread)
+     */
+    @Override
+    public void execute(Runnable task) {
+        UUID ownerId = SecurityUtils.getCurrentUserId();
+        execute(ownerId != null ? ownerId : SYSTEM_OWNER, task);
+    }
+
+    /**
+     * Execute task in the queue of the given owner
+     *
+     * @throws TaskRejectedException when the executor queue is full
+     */
+    public void execute(UUID ownerId, Runnable task) {
+        synchronized (lock) {
+            if (queued >= queueCapacity) {
+                rejected.increment();
+                log.warn("Executor '{}' queue is full ({} tasks), rejecting task for owner {}",
+                        name, queued, ownerId);
+                throw new TaskRejectedException("Executor '" + name + "' queue is full");
+            }
+
+            Deque<QueuedTask> ownerQueue = queues.get(ownerId);
+            if (ownerQueue == null) {
+                ownerQueue = new ArrayDeque<>();
+                queues.put(ownerId, ownerQueue);
+                readyOwners.addLast(ownerId);
+            }
+            ownerQueue.addLast(new QueuedTask(task, System.nanoTime()));
+            queued++;
+        }
+
+        submitted.increment();
+        dispatch();
+    }
+
+    /**
+     * Number of tasks that can still be queued before rejection
+     */
+    public int remainingCapacity() {
+        synchronized (lock) {
+            return queueCapacity - queued;
+        }
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getOwnerCount() {
+        synchronized (lock) {
+            return queues.size();
+        }
+    }
+
+    /**
+     * Start queued tasks while permits are available, taking one task per owner
+     * in turn
+     */
+    private void dispatch() {
+        while (true) {
+            QueuedTask next;
+
+            synchronized (lock) {
+                if (readyOwners.isEmpty() || !permits.tryAcquire()) {
+                    return;
+                }
+
+                UUID ownerId = readyOwners.pollFirst();
+                Deque<QueuedTask> ownerQueue = queues.get(ownerId);
+                next = ownerQueue.pollFirst();
+                if (ownerQueue.isEmpty()) {
+                    queues.remove(ownerId);
+                } else {
+                    readyOwners.addLast(ownerId);
+                }
+                queued--;
+            }
+
+            queueWait.record(Duration.ofNanos(System.nanoTime() - next.enqueuedAt()));
+
+            try {
+                workers.execute(() -> run(next));
+            } catch (Exception e) {
+                permits.release();
+                rejected.increment();
+                log.error("Executor '{}' failed to start task", name, e);
+                return;
+            }
+        }
+    }
+
+    private void run(QueuedTask queuedTask) {
+        try {
+            queuedTask.task().run();
+            completed.increment();
+        } catch (Throwable e) {
+            failed.increment();
+            log.error("Task failed in executor '{}'", name, e);
+        } finally {
+            permits.release();
+            dispatch();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        workers.shutdown();
+    }
+
+    private Counter taskCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("notekeeper.executor.tasks")
+                .tag("executor", name)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private record QueuedTask(Runnable task, long enqueuedAt) {
+    }
+
+}
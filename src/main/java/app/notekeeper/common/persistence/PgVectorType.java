@@ -0,0 +1,120 @@
+package app.notekeeper.common.persistence;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.usertype.UserType;
+import org.postgresql.core.BaseConnection;
+import org.postgresql.core.Oid;
+
+import com.pgvector.PGvector;
+
+/**
+ * Hibernate type mapping float[] to a pgvector column
+ * Values are bound as typed PGvector parameters in binary format, so neither
+ * the app (float to text formatting) nor the database (text parsing) pays for
+ * the '[x,y,...]' representation
+ * Values are read as PGvector objects, the driver decodes them directly
+ * instead of going through an intermediate string
+ */
+public class PgVectorType implements UserType<float[]> {
+
+    /**
+     * Bind a vector parameter, enabling binary send of the vector type on the
+     * underlying connection
+     */
+    public static void bind(PreparedStatement st, int index, float[] value) throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.OTHER);
+            return;
+        }
+        registerVectorType(st.getConnection());
+        st.setObject(index, new PGvector(value));
+    }
+
+    /**
+     * Read a vector column, null for SQL NULL
+     */
+    public static float[] read(ResultSet rs, int index) throws SQLException {
+        registerVectorType(rs.getStatement().getConnection());
+        PGvector value = rs.getObject(index, PGvector.class);
+        return value != null ? value.toArray() : null;
+    }
+
+    /**
+     * Map the vector type to PGvector and enable its binary send on the
+     * underlying connection
+     */
+    private static void registerVectorType(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(BaseConnection.class)) {
+            return;
+        }
+        BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+        // Both are per connection maps, registering again is idempotent
+        pgConnection.addDataType("vector", PGvector.class);
+        // Type OID is cached per connection by the driver
+        int oid = pgConnection.getTypeInfo().getPGType("vector");
+        if (oid != Oid.UNSPECIFIED) {
+            pgConnection.getQueryExecutor().addBinarySendOid(oid);
+        }
+    }
+
+    @Override
+    public int getSqlType() {
+        return Types.OTHER;
+    }
+
+    @Override
+    public Class<float[]> returnedClass() {
+        return float[].class;
+    }
+
+    @Override
+    public boolean equals(float[] x, float[] y) {
+        return Arrays.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(float[] x) {
+        return Arrays.hashCode(x);
+    }
+
+    @Override
+    public float[] nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        return read(rs, position);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, float[] value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        bind(st, index, value);
+    }
+
+    @Override
+    public float[] deepCopy(float[] value) {
+        return value != null ? value.clone() : null;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(float[] value) {
+        return deepCopy(value);
+    }
+
+    @Override
+    public float[] assemble(Serializable cached, Object owner) {
+        return deepCopy((float[]) cached);
+    }
+
+}
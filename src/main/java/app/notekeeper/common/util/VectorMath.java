@@ -0,0 +1,72 @@
+package app.notekeeper.common.util;
+
+import java.util.List;
+
+/**
+ * Embedding vector helpers shared by indexing, search and classification
+ * Vectors of different lengths are compared over their common prefix, zero
+ * vectors have no direction (normalized to zero, cosine 0).
+ */
+public class VectorMath {
+
+    /**
+     * Normalized mean of the vectors (direction of a multi-chunk note)
+     */
+    public static float[] mean(List<float[]> vectors) {
+        float[] sum = new float[vectors.get(0).length];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += vector[i];
+            }
+        }
+        return scale(sum, norm(sum));
+    }
+
+    /**
+     * Unit-length copy of the vector
+     */
+    public static float[] normalize(float[] vector) {
+        return scale(vector.clone(), norm(vector));
+    }
+
+    public static double dot(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return dot;
+    }
+
+    public static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length && i < b.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    private static double norm(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        return Math.sqrt(norm);
+    }
+
+    /**
+     * Divide the vector by its norm in place
+     */
+    private static float[] scale(float[] vector, double norm) {
+        if (norm > 0) {
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) (vector[i] / norm);
+            }
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,65 @@
+package app.notekeeper.config;
+
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import app.notekeeper.common.concurrent.FairTaskExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Executors for {@code @Async} work
+ * AI processing and notifications run on separate executors so slow model calls
+ * never delay emails and in-app notifications
+ */
+@Configuration
+public class AsyncConfig implements AsyncConfigurer {
+
+    @Value("${app.ai.executor.max-concurrency:8}")
+    private int aiMaxConcurrency;
+
+    @Value("${app.ai.executor.queue-capacity:1000}")
+    private int aiQueueCapacity;
+
+    @Value("${app.notification.executor.pool-size:4}")
+    private int notificationPoolSize;
+
+    @Value("${app.notification.executor.queue-capacity:500}")
+    private int notificationQueueCapacity;
+
+    /**
+     * AI pipeline executor (classification, embedding, summaries)
+     * Virtual threads limited by a semaphore, bounded queue with per-owner
+     * round-robin fairness
+     */
+    @Bean(name = "aiTaskExecutor")
+    public FairTaskExecutor aiTaskExecutor(MeterRegistry meterRegistry) {
+        return new FairTaskExecutor("ai", aiMaxConcurrency, aiQueueCapacity, meterRegistry);
+    }
+
+    /**
+     * Notification executor (emails, in-app notifications), also the default for
+     * {@code @Async} without qualifier
+     */
+    @Bean(name = "notificationTaskExecutor")
+    public ThreadPoolTaskExecutor notificationTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(notificationPoolSize);
+        executor.setMaxPoolSize(notificationPoolSize);
+        executor.setQueueCapacity(notificationQueueCapacity);
+        executor.setThreadNamePrefix("notification-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return notificationTaskExecutor();
+    }
+
+}
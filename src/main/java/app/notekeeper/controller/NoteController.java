@@ -8,6 +8,7 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -27,6 +28,7 @@ import app.notekeeper.model.dto.request.TextUploadRequest;
 import app.notekeeper.model.dto.response.JSendResponse;
 import app.notekeeper.model.dto.response.NoteResponse;
 import app.notekeeper.model.dto.response.RetrieveNoteResponse;
+import app.notekeeper.model.dto.response.RetrieveNoteStreamEvent;
 import app.notekeeper.model.enums.NoteType;
 import app.notekeeper.security.SecurityUtils;
 import app.notekeeper.service.AIService;
@@ -41,6 +43,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 
 @RestController
 @RequestMapping("/api/v1/notes")
@@ -200,4 +203,31 @@ public class NoteController {
                                 JSendResponse.success(response, "Notes retrieved and answer generated successfully"));
         }
 
+        @PostMapping(value = "/retrieve/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+        @Operation(summary = "Retrieve notes with AI (streaming)", description = "Same as /retrieve but streamed as server-sent events: a 'NOTES' event with the relevant notes, 'TOKEN' events with answer fragments as they are generated, then 'DONE' (or 'ERROR')")
+        @ApiResponses(value = {
+                        @ApiResponse(responseCode = "200", description = "Event stream started"),
+                        @ApiResponse(responseCode = "401", description = "Unauthorized", content = @Content(schema = @Schema(implementation = JSendResponse.class)))
+        })
+        public Flux<ServerSentEvent<RetrieveNoteStreamEvent>> streamRetrieveNotes(
+                        @RequestBody RetrieveNoteRequest request) {
+
+                log.info("POST /api/v1/notes/retrieve/stream - Retrieve notes request with query: '{}'",
+                                request.getQuery());
+
+                // Get current authenticated user (not available on the threads that emit events)
+                UUID currentUserId = SecurityUtils.getCurrentUserId();
+                if (currentUserId == null) {
+                        log.warn("Retrieve notes failed - no authenticated user");
+                        throw app.notekeeper.common.exception.ServiceException
+                                        .businessRuleViolation("Authentication required");
+                }
+
+                return aiService.streamRetrieveNotes(request, currentUserId)
+                                .map(event -> ServerSentEvent.<RetrieveNoteStreamEvent>builder()
+                                                .event(event.getType().name().toLowerCase())
+                                                .data(event)
+                                                .build());
+        }
+
 }
@@ -0,0 +1,18 @@
+package app.notekeeper.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published on each node when it switches to a new active embedding model,
+ * in-memory state built from old vectors has to be dropped
+ */
+@AllArgsConstructor
+@Getter
+public class EmbeddingModelChangedEvent {
+
+    private final String previousModel;
+
+    private final String model;
+
+}
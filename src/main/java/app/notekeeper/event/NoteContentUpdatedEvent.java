@@ -10,6 +10,7 @@ import lombok.Getter;
 public class NoteContentUpdatedEvent {
 
     private final UUID noteId;
+    private final UUID ownerId;
     private final String newContent;
 
 }
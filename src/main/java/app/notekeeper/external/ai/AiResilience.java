@@ -0,0 +1,167 @@
+package app.notekeeper.external.ai;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import app.notekeeper.common.exception.SystemException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+
+/**
+ * Timeout, bulkhead and circuit breaker around calls to external AI services
+ * One instance of each per dependency (OPENAI, OLLAMA), configured under
+ * resilience4j.* and exposed on the circuitbreakers/bulkheads actuator
+ * endpoints. The call runs on a virtual thread holding the bulkhead permit, the
+ * caller waits at most the timeout, so a hanging dependency fills its bulkhead
+ * and trips the breaker instead of piling up request and async threads.
+ * Failures are rethrown, callers keep their own fallback (error summary, no
+ * embedding, "try later" answer).
+ */
+@Component
+@Slf4j
+public class AiResilience {
+
+    public static final String OPENAI = "openai";
+    public static final String OLLAMA = "ollama";
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final BulkheadRegistry bulkheadRegistry;
+    private final TimeLimiterRegistry timeLimiterRegistry;
+
+    private final ExecutorService callExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("ai-call-", 0).factory());
+
+    public AiResilience(CircuitBreakerRegistry circuitBreakerRegistry,
+            BulkheadRegistry bulkheadRegistry,
+            TimeLimiterRegistry timeLimiterRegistry) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.bulkheadRegistry = bulkheadRegistry;
+        this.timeLimiterRegistry = timeLimiterRegistry;
+    }
+
+    /**
+     * Run a blocking call to a dependency
+     *
+     * @param dependency OPENAI or OLLAMA
+     * @param call       The external call
+     * @return Result of the call
+     * @throws SystemException when the breaker is open, the bulkhead is full or
+     *                         the call timed out (other failures are rethrown)
+     */
+    public <T> T call(String dependency, Supplier<T> call) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(dependency);
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(dependency);
+        TimeLimiter timeLimiter = timeLimiterRegistry.timeLimiter(dependency);
+
+        Supplier<CompletableFuture<T>> async = () -> CompletableFuture.supplyAsync(
+                Bulkhead.decorateSupplier(bulkhead, call), callExecutor);
+        Callable<T> guarded = CircuitBreaker.decorateCallable(circuitBreaker,
+                TimeLimiter.decorateFutureSupplier(timeLimiter, async));
+
+        try {
+            return guarded.call();
+        } catch (Exception e) {
+            throw unavailable(dependency, e);
+        }
+    }
+
+    /**
+     * Guard a streaming call: the stream fails when no element arrives within the
+     * timeout and holds a bulkhead permit while open
+     * The breaker sees the time to the first element, not the stream length, so a
+     * long answer is not a slow call; the outcome (failed or not) is reported
+     * when the stream ends
+     */
+    public <T> Flux<T> stream(String dependency, Flux<T> flux) {
+        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker(dependency);
+        Bulkhead bulkhead = bulkheadRegistry.bulkhead(dependency);
+        TimeLimiter timeLimiter = timeLimiterRegistry.timeLimiter(dependency);
+
+        return Flux.defer(() -> {
+            circuitBreaker.acquirePermission();
+            long start = System.nanoTime();
+            AtomicLong firstElementNanos = new AtomicLong(-1);
+            AtomicBoolean reported = new AtomicBoolean();
+
+            return flux
+                    .timeout(timeLimiter.getTimeLimiterConfig().getTimeoutDuration())
+                    .transformDeferred(BulkheadOperator.of(bulkhead))
+                    .doOnNext(element -> firstElementNanos.compareAndSet(-1, System.nanoTime() - start))
+                    .doOnComplete(() -> {
+                        if (reported.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess(timeToFirstElement(firstElementNanos, start),
+                                    TimeUnit.NANOSECONDS);
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (!reported.compareAndSet(false, true)) {
+                            return;
+                        }
+                        if (e instanceof BulkheadFullException) {
+                            // Rejected locally, the dependency was never called
+                            circuitBreaker.releasePermission();
+                        } else {
+                            circuitBreaker.onError(timeToFirstElement(firstElementNanos, start),
+                                    TimeUnit.NANOSECONDS, e);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (!reported.compareAndSet(false, true)) {
+                            return;
+                        }
+                        if (firstElementNanos.get() < 0) {
+                            circuitBreaker.releasePermission();
+                        } else {
+                            circuitBreaker.onSuccess(firstElementNanos.get(), TimeUnit.NANOSECONDS);
+                        }
+                    });
+        }).onErrorMap(e -> unavailable(dependency, e));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        callExecutor.shutdown();
+    }
+
+    /**
+     * Time to the first element, or to the end of a stream without elements
+     */
+    private static long timeToFirstElement(AtomicLong firstElementNanos, long start) {
+        long first = firstElementNanos.get();
+        return first >= 0 ? first : System.nanoTime() - start;
+    }
+
+    /**
+     * Resilience rejections become a "try later" error, other failures pass through
+     */
+    private RuntimeException unavailable(String dependency, Throwable e) {
+        if (e instanceof CallNotPermittedException || e instanceof BulkheadFullException
+                || e instanceof TimeoutException) {
+            log.warn("{} unavailable, failing fast: {}", dependency, e.getMessage());
+            return SystemException.externalServiceError(
+                    "AI service is temporarily unavailable. Please try again later.");
+        }
+        return e instanceof RuntimeException runtime ? runtime
+                : SystemException.externalServiceError(dependency + " call failed: " + e.getMessage());
+    }
+
+}
@@ -0,0 +1,147 @@
+package app.notekeeper.external.ai;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Redis cache of generated answers
+ * Key covers the chat model, the normalized query and a fingerprint of every
+ * retrieved note (ID, updated time and the fields that go into the prompt), so
+ * any change to a contributing note produces a different key and the stale
+ * entry just expires. Note fields are fingerprinted because bulk updates (AI
+ * summary, content) don't bump updated_at.
+ */
+@Component
+@Slf4j
+public class AnswerCache {
+
+    private static final String KEY_PREFIX = "answer:";
+
+    private final StringRedisTemplate redisTemplate;
+    private final String modelName;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer answerLatency;
+    private final DistributionSummary savedLatency;
+
+    @Value("${app.ai.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.answer-cache.ttl:1d}")
+    private Duration ttl;
+
+    public AnswerCache(StringRedisTemplate redisTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${spring.ai.openai.chat.options.model}") String modelName) {
+        this.redisTemplate = redisTemplate;
+        this.modelName = modelName;
+
+        this.hits = Counter.builder("notekeeper.ai.answer.cache")
+                .tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("notekeeper.ai.answer.cache")
+                .tag("result", "miss").register(meterRegistry);
+        this.answerLatency = Timer.builder("notekeeper.ai.answer.latency")
+                .description("LLM answer generation time on cache misses")
+                .register(meterRegistry);
+        this.savedLatency = DistributionSummary.builder("notekeeper.ai.answer.cache.saved")
+                .description("Estimated LLM time saved per cache hit (mean miss latency)")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Look up a cached answer
+     *
+     * @return cached answer or null on miss (or when disabled)
+     */
+    public String get(String query, List<NoteSearchResult> notes) {
+        if (!enabled) {
+            return null;
+        }
+
+        try {
+            String answer = redisTemplate.opsForValue().get(cacheKey(query, notes));
+            if (answer != null) {
+                hits.increment();
+                savedLatency.record(answerLatency.mean(TimeUnit.MILLISECONDS));
+                log.info("Answer cache hit for query: '{}'", query);
+                return answer;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read answer cache from Redis: {}", e.getMessage());
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store a generated answer and record how long generating it took
+     */
+    public void put(String query, List<NoteSearchResult> notes, String answer, long generationNanos) {
+        answerLatency.record(generationNanos, TimeUnit.NANOSECONDS);
+
+        if (!enabled || answer == null || answer.isBlank()) {
+            return;
+        }
+
+        try {
+            redisTemplate.opsForValue().set(cacheKey(query, notes), answer, ttl);
+        } catch (Exception e) {
+            log.warn("Failed to write answer cache to Redis: {}", e.getMessage());
+        }
+    }
+
+    private String cacheKey(String query, List<NoteSearchResult> notes) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            update(digest, modelName);
+            update(digest, EmbeddingCache.normalize(query).toLowerCase(Locale.ROOT));
+
+            // Order independent: the same note set retrieved in another order shares the entry
+            notes.stream()
+                    .sorted(Comparator.comparing(NoteSearchResult::getId))
+                    .forEach(note -> {
+                        update(digest, note.getId().toString());
+                        update(digest, Objects.toString(note.getUpdatedAt()));
+                        update(digest, note.getTitle());
+                        update(digest, note.getTopicName());
+                        update(digest, note.getAiSummary());
+                        update(digest, note.getContent());
+                    });
+
+            return KEY_PREFIX + HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        // Separator so adjacent fields can't run into each other
+        digest.update((byte) 0);
+    }
+
+}
@@ -0,0 +1,229 @@
+package app.notekeeper.external.ai;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.hwpf.extractor.WordExtractor;
+import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local text extraction for DOCUMENT uploads (PDF, DOCX, DOC, plain text)
+ * Extracted text replaces the vision model call: the note is embedded and
+ * classified like a TEXT note. PDFs where too many pages have little text
+ * (scanned, image-only or mixed) and files that can't be parsed return empty
+ * and go to the vision model as before.
+ */
+@Component
+@Slf4j
+public class DocumentTextExtractor {
+
+    private static final Pattern LINE_BREAKS = Pattern.compile("\\r\\n?");
+    private static final Pattern TRAILING_SPACES = Pattern.compile("[ \\t\\x0B\\f]+\\n");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+
+    private final Counter extractedDocuments;
+    private final Counter scannedDocuments;
+    private final Counter unsupportedDocuments;
+    private final Counter failedDocuments;
+    private final Timer extractionTimer;
+
+    @Value("${app.storage.upload-dir}")
+    private String uploadDir;
+
+    @Value("${app.ai.document.local-extraction-enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.document.min-chars-per-page:100}")
+    private int minCharsPerPage;
+
+    /**
+     * Share of low-text pages a PDF may have and still be extracted locally
+     * (covers, separators), above it the scanned pages would be lost
+     */
+    @Value("${app.ai.document.max-scanned-page-ratio:0.1}")
+    private double maxScannedPageRatio;
+
+    @Value("${app.ai.document.max-pages:300}")
+    private int maxPages;
+
+    @Value("${app.ai.document.max-chars:200000}")
+    private int maxChars;
+
+    public DocumentTextExtractor(MeterRegistry meterRegistry) {
+        this.extractedDocuments = Counter.builder("notekeeper.ai.document.extraction")
+                .tag("result", "local").register(meterRegistry);
+        this.scannedDocuments = Counter.builder("notekeeper.ai.document.extraction")
+                .tag("result", "scanned").register(meterRegistry);
+        this.unsupportedDocuments = Counter.builder("notekeeper.ai.document.extraction")
+                .tag("result", "unsupported").register(meterRegistry);
+        this.failedDocuments = Counter.builder("notekeeper.ai.document.extraction")
+                .tag("result", "failed").register(meterRegistry);
+        this.extractionTimer = Timer.builder("notekeeper.ai.document.extraction.time")
+                .description("Local text extraction time of an uploaded document")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Extract the text of an uploaded document
+     *
+     * @param fileUrl Stored file name (relative to the upload directory)
+     * @return Normalized text (capped at max-chars), empty when the document
+     *         needs the vision model (scanned PDF, unsupported or unreadable file)
+     */
+    public Optional<String> extract(String fileUrl) {
+        if (!enabled || fileUrl == null) {
+            return Optional.empty();
+        }
+
+        Path filePath = Paths.get(uploadDir).resolve(fileUrl).normalize();
+        if (!Files.exists(filePath)) {
+            log.warn("Document not found for text extraction: {}", fileUrl);
+            return Optional.empty();
+        }
+
+        String extension = extensionOf(fileUrl);
+        long start = System.nanoTime();
+        try {
+            String text = switch (extension) {
+                case "pdf" -> extractPdf(filePath);
+                case "docx" -> extractDocx(filePath);
+                case "doc" -> extractDoc(filePath);
+                case "txt" -> extractPlainText(filePath);
+                default -> {
+                    unsupportedDocuments.increment();
+                    yield null;
+                }
+            };
+
+            if (text == null) {
+                return Optional.empty();
+            }
+
+            text = normalize(text);
+            if (text.isEmpty()) {
+                log.info("No text found in document {}", fileUrl);
+                scannedDocuments.increment();
+                return Optional.empty();
+            }
+            if (text.length() > maxChars) {
+                log.info("Text of document {} cut from {} to {} chars", fileUrl, text.length(), maxChars);
+                text = text.substring(0, maxChars);
+            }
+
+            extractionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            extractedDocuments.increment();
+            log.info("Extracted {} chars from document {} locally in {} ms", text.length(), fileUrl,
+                    (System.nanoTime() - start) / 1_000_000);
+            return Optional.of(text);
+
+        } catch (Exception e) {
+            log.warn("Failed to extract text from document {}, using the vision model: {}", fileUrl,
+                    e.getMessage());
+            failedDocuments.increment();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Pages are checked one by one, a PDF mixing text and scanned pages goes to
+     * the vision model so the scanned pages are not lost
+     *
+     * @return Text, null for a scanned, image-only or mixed PDF
+     */
+    private String extractPdf(Path filePath) throws IOException {
+        try (PDDocument document = Loader.loadPDF(filePath.toFile())) {
+            int pages = Math.min(document.getNumberOfPages(), maxPages);
+
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setSortByPosition(true);
+
+            StringBuilder text = new StringBuilder();
+            int scannedPages = 0;
+            for (int page = 1; page <= pages; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                String pageText = stripper.getText(document);
+                if (pageText.chars().filter(c -> !Character.isWhitespace(c)).count() < minCharsPerPage) {
+                    scannedPages++;
+                }
+                text.append(pageText);
+            }
+
+            if (pages == 0 || scannedPages > pages * maxScannedPageRatio) {
+                log.info("PDF {} has {} of {} pages without text, treating it as scanned",
+                        filePath.getFileName(), scannedPages, pages);
+                scannedDocuments.increment();
+                return null;
+            }
+            return text.toString();
+        }
+    }
+
+    private String extractDocx(Path filePath) throws IOException {
+        try (InputStream in = Files.newInputStream(filePath);
+                XWPFWordExtractor extractor = new XWPFWordExtractor(new XWPFDocument(in))) {
+            return extractor.getText();
+        }
+    }
+
+    private String extractDoc(Path filePath) throws IOException {
+        try (InputStream in = Files.newInputStream(filePath);
+                WordExtractor extractor = new WordExtractor(in)) {
+            return extractor.getText();
+        }
+    }
+
+    /**
+     * UTF-8 when valid, otherwise Windows-1252 (never fails on arbitrary bytes)
+     */
+    private String extractPlainText(Path filePath) throws IOException {
+        byte[] bytes = Files.readAllBytes(filePath);
+        String text;
+        try {
+            text = StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes))
+                    .toString();
+        } catch (CharacterCodingException e) {
+            text = new String(bytes, Charset.forName("windows-1252"));
+        }
+        return text.startsWith("\uFEFF") ? text.substring(1) : text;
+    }
+
+    private static String normalize(String text) {
+        String normalized = LINE_BREAKS.matcher(text).replaceAll("\n");
+        normalized = TRAILING_SPACES.matcher(normalized).replaceAll("\n");
+        normalized = BLANK_LINES.matcher(normalized).replaceAll("\n\n");
+        return normalized.trim();
+    }
+
+    private static String extensionOf(String fileUrl) {
+        int dot = fileUrl.lastIndexOf('.');
+        return dot < 0 ? "" : fileUrl.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+}
@@ -0,0 +1,157 @@
+package app.notekeeper.external.ai;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Two-tier embedding cache keyed by (embedding model, SHA-256 of normalized
+ * text)
+ * Local tier is an in-process LRU, shared tier is Redis so all nodes reuse the
+ * same vectors
+ */
+@Component
+@Slf4j
+public class EmbeddingCache {
+
+    private static final String KEY_PREFIX = "embedding:";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final StringRedisTemplate redisTemplate;
+    private final Duration redisTtl;
+    private final Map<String, float[]> localCache;
+
+    private final Counter localHits;
+    private final Counter redisHits;
+    private final Counter misses;
+
+    public EmbeddingCache(StringRedisTemplate redisTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${app.ai.embedding.cache.local-max-entries:5000}") int localMaxEntries,
+            @Value("${app.ai.embedding.cache.redis-ttl:7d}") Duration redisTtl) {
+        this.redisTemplate = redisTemplate;
+        this.redisTtl = redisTtl;
+        this.localCache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > localMaxEntries;
+            }
+        };
+
+        this.localHits = Counter.builder("notekeeper.embedding.cache")
+                .tag("tier", "local").tag("result", "hit").register(meterRegistry);
+        this.redisHits = Counter.builder("notekeeper.embedding.cache")
+                .tag("tier", "redis").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("notekeeper.embedding.cache")
+                .tag("tier", "all").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Normalize text before hashing, so whitespace-only changes map to the same
+     * entry (the text itself is embedded as is)
+     */
+    public static String normalize(String content) {
+        if (content == null) {
+            return null;
+        }
+        String normalized = Normalizer.normalize(content, Normalizer.Form.NFC);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    /**
+     * Look up embedding for already normalized text
+     *
+     * @param model Embedding model the vector was generated with
+     * @return cached vector or null on miss
+     */
+    public float[] get(String model, String normalizedContent) {
+        String key = cacheKey(model, normalizedContent);
+
+        float[] embedding;
+        synchronized (localCache) {
+            embedding = localCache.get(key);
+        }
+        if (embedding != null) {
+            localHits.increment();
+            return embedding;
+        }
+
+        try {
+            String encoded = redisTemplate.opsForValue().get(key);
+            if (encoded != null) {
+                embedding = decode(encoded);
+                synchronized (localCache) {
+                    localCache.put(key, embedding);
+                }
+                redisHits.increment();
+                return embedding;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to read embedding cache from Redis: {}", e.getMessage());
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Store embedding for already normalized text in both tiers
+     */
+    public void put(String model, String normalizedContent, float[] embedding) {
+        if (embedding == null) {
+            return;
+        }
+
+        String key = cacheKey(model, normalizedContent);
+        synchronized (localCache) {
+            localCache.put(key, embedding);
+        }
+
+        try {
+            redisTemplate.opsForValue().set(key, encode(embedding), redisTtl);
+        } catch (Exception e) {
+            log.warn("Failed to write embedding cache to Redis: {}", e.getMessage());
+        }
+    }
+
+    private static String cacheKey(String model, String normalizedContent) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(normalizedContent.getBytes(StandardCharsets.UTF_8));
+            return KEY_PREFIX + model + ":" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String encode(float[] embedding) {
+        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(embedding);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+
+    private static float[] decode(String encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] embedding = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(embedding);
+        return embedding;
+    }
+
+}
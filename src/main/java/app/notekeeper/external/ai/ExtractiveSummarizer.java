@@ -0,0 +1,52 @@
+package app.notekeeper.external.ai;
+
+import java.text.BreakIterator;
+import java.util.Locale;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local summary for notes classified without the LLM
+ * Takes the leading sentences of the note up to a character budget (notes
+ * usually open with their subject), a short note is its own summary
+ */
+@Component
+public class ExtractiveSummarizer {
+
+    @Value("${app.ai.local-classifier.summary-max-chars:300}")
+    private int maxChars;
+
+    /**
+     * @param title   Note title, used when the content is empty
+     * @param content Note content
+     * @return Leading sentences of the content within the budget
+     */
+    public String summarize(String title, String content) {
+        String text = content != null ? content.strip().replaceAll("\\s+", " ") : "";
+        if (text.isEmpty()) {
+            return title != null ? title.strip() : "";
+        }
+        if (text.length() <= maxChars) {
+            return text;
+        }
+
+        BreakIterator sentences = BreakIterator.getSentenceInstance(Locale.ROOT);
+        sentences.setText(text);
+
+        int end = sentences.next();
+        if (end == BreakIterator.DONE || end > maxChars) {
+            // First sentence alone is over budget, cut at a word boundary
+            int cut = text.lastIndexOf(' ', maxChars);
+            return text.substring(0, cut > 0 ? cut : maxChars).strip() + "...";
+        }
+
+        int next = sentences.next();
+        while (next != BreakIterator.DONE && next <= maxChars) {
+            end = next;
+            next = sentences.next();
+        }
+        return text.substring(0, end).strip();
+    }
+
+}
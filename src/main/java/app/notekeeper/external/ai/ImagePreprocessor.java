@@ -0,0 +1,348 @@
+package app.notekeeper.external.ai;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shrinks uploaded images before they are sent to the vision model
+ * The image is decoded (subsampled while decoding when far larger than
+ * needed), turned upright from its EXIF orientation, downscaled to max-edge and
+ * re-encoded as JPEG without metadata. The result is kept next to the original
+ * (name carries the settings) so retries and reprocessing reuse it. Formats
+ * ImageIO can't decode (e.g. WebP) are sent as uploaded.
+ */
+@Component
+@Slf4j
+public class ImagePreprocessor {
+
+    /**
+     * Marker in the file name of derived images, IOService deletes
+     * "<original>.vision-*" with the original
+     */
+    public static final String DERIVED_MARKER = ".vision-";
+
+    private static final String DERIVED_MIME_TYPE = "image/jpeg";
+
+    private final Counter createdImages;
+    private final Counter cachedImages;
+    private final Counter unsupportedImages;
+    private final DistributionSummary originalBytes;
+    private final DistributionSummary sentBytes;
+    private final Timer preprocessTimer;
+
+    @Value("${app.ai.image.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.image.max-edge:1536}")
+    private int maxEdge;
+
+    @Value("${app.ai.image.quality:0.85}")
+    private float quality;
+
+    public ImagePreprocessor(MeterRegistry meterRegistry) {
+        this.createdImages = Counter.builder("notekeeper.ai.image.derived")
+                .tag("result", "created").register(meterRegistry);
+        this.cachedImages = Counter.builder("notekeeper.ai.image.derived")
+                .tag("result", "cached").register(meterRegistry);
+        this.unsupportedImages = Counter.builder("notekeeper.ai.image.derived")
+                .tag("result", "unsupported").register(meterRegistry);
+        this.originalBytes = DistributionSummary.builder("notekeeper.ai.image.bytes")
+                .tag("image", "original").baseUnit("bytes").register(meterRegistry);
+        this.sentBytes = DistributionSummary.builder("notekeeper.ai.image.bytes")
+                .tag("image", "sent").baseUnit("bytes").register(meterRegistry);
+        this.preprocessTimer = Timer.builder("notekeeper.ai.image.preprocess")
+                .description("Decode, downscale and re-encode time of an uploaded image")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Image as sent to the vision model
+     */
+    public record PreparedImage(Resource resource, String mimeType) {
+    }
+
+    /**
+     * Get the derived image for an upload, creating it on first use
+     *
+     * @param original Uploaded image
+     * @param mimeType MIME type of the upload
+     * @return Derived JPEG, or the original when disabled or not decodable
+     */
+    public PreparedImage prepare(Path original, String mimeType) {
+        if (!enabled) {
+            return new PreparedImage(new FileSystemResource(original), mimeType);
+        }
+
+        try {
+            long originalSize = Files.size(original);
+            Path derived = derivedPath(original);
+
+            if (Files.exists(derived)
+                    && Files.getLastModifiedTime(derived).compareTo(Files.getLastModifiedTime(original)) >= 0) {
+                cachedImages.increment();
+                record(originalSize, Files.size(derived));
+                return new PreparedImage(new FileSystemResource(derived), DERIVED_MIME_TYPE);
+            }
+
+            long start = System.nanoTime();
+            byte[] bytes = Files.readAllBytes(original);
+            BufferedImage image = decode(bytes);
+            if (image == null) {
+                log.info("No decoder for image {} ({}), sending it as uploaded", original.getFileName(), mimeType);
+                unsupportedImages.increment();
+                return new PreparedImage(new FileSystemResource(original), mimeType);
+            }
+
+            int decodedWidth = image.getWidth();
+            int decodedHeight = image.getHeight();
+            image = orient(downscale(image), exifOrientation(bytes));
+            byte[] jpeg = encodeJpeg(image);
+
+            // Temp file + atomic move, concurrent workers may derive the same image
+            Path temp = derived.resolveSibling(derived.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            Files.write(temp, jpeg);
+            Files.move(temp, derived, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            preprocessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            createdImages.increment();
+            record(originalSize, jpeg.length);
+            log.info("Prepared image {} for vision: {}x{} -> {}x{}, {} -> {} bytes in {} ms",
+                    original.getFileName(), decodedWidth, decodedHeight, image.getWidth(), image.getHeight(),
+                    originalSize, jpeg.length, (System.nanoTime() - start) / 1_000_000);
+
+            return new PreparedImage(new FileSystemResource(derived), DERIVED_MIME_TYPE);
+
+        } catch (Exception e) {
+            log.warn("Failed to preprocess image {}, sending it as uploaded: {}", original.getFileName(),
+                    e.getMessage());
+            return new PreparedImage(new FileSystemResource(original), mimeType);
+        }
+    }
+
+    private void record(long originalSize, long sentSize) {
+        originalBytes.record(originalSize);
+        sentBytes.record(sentSize);
+    }
+
+    /**
+     * Derived file next to the original, settings in the name so a config change
+     * derives a new one
+     */
+    private Path derivedPath(Path original) {
+        return original.resolveSibling(original.getFileName() + DERIVED_MARKER + maxEdge + "q"
+                + Math.round(quality * 100) + ".jpg");
+    }
+
+    /**
+     * Decode the first frame, large images are subsampled by the decoder down to
+     * no less than twice the target edge
+     *
+     * @return Image, null when no ImageIO reader supports the format
+     */
+    private BufferedImage decode(byte[] bytes) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longEdge / (maxEdge * 2));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Downscale to max-edge in halving steps (a single bilinear step aliases),
+     * always returns an opaque RGB copy
+     */
+    private BufferedImage downscale(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(width, height));
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = image;
+        while (current.getWidth() / 2 >= targetWidth && current.getHeight() / 2 >= targetHeight) {
+            current = resize(current, current.getWidth() / 2, current.getHeight() / 2);
+        }
+        if (current == image || current.getWidth() != targetWidth || current.getHeight() != targetHeight) {
+            current = resize(current, targetWidth, targetHeight);
+        }
+        return current;
+    }
+
+    private static BufferedImage resize(BufferedImage source, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            // Transparent areas become white instead of black in the JPEG
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resized;
+    }
+
+    /**
+     * Apply an EXIF orientation (1-8), the tag is dropped with the metadata
+     */
+    private static BufferedImage orient(BufferedImage image, int orientation) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+
+        AffineTransform transform = switch (orientation) {
+            case 2 -> new AffineTransform(-1, 0, 0, 1, w, 0);
+            case 3 -> new AffineTransform(-1, 0, 0, -1, w, h);
+            case 4 -> new AffineTransform(1, 0, 0, -1, 0, h);
+            case 5 -> new AffineTransform(0, 1, 1, 0, 0, 0);
+            case 6 -> new AffineTransform(0, 1, -1, 0, h, 0);
+            case 7 -> new AffineTransform(0, -1, -1, 0, h, w);
+            case 8 -> new AffineTransform(0, -1, 1, 0, 0, w);
+            default -> null;
+        };
+        if (transform == null) {
+            return image;
+        }
+
+        boolean swapped = orientation >= 5;
+        BufferedImage oriented = new BufferedImage(swapped ? h : w, swapped ? w : h, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = oriented.createGraphics();
+        try {
+            graphics.drawImage(image, transform, null);
+        } finally {
+            graphics.dispose();
+        }
+        return oriented;
+    }
+
+    /**
+     * Orientation tag of IFD0 in a JPEG's EXIF segment
+     *
+     * @return Orientation, 1 when absent or not a JPEG
+     */
+    static int exifOrientation(byte[] data) {
+        if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+            return 1;
+        }
+
+        int pos = 2;
+        while (pos + 4 <= data.length && (data[pos] & 0xFF) == 0xFF) {
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == 0xDA || marker == 0xD9) {
+                // Image data starts, no EXIF before it
+                return 1;
+            }
+
+            int length = readShort(data, pos + 2, false);
+            int segment = pos + 4;
+            if (marker == 0xE1 && segment + 6 <= data.length
+                    && data[segment] == 'E' && data[segment + 1] == 'x' && data[segment + 2] == 'i'
+                    && data[segment + 3] == 'f' && data[segment + 4] == 0 && data[segment + 5] == 0) {
+                return tiffOrientation(data, segment + 6, Math.min(data.length, pos + 2 + length));
+            }
+            pos += 2 + length;
+        }
+        return 1;
+    }
+
+    private static int tiffOrientation(byte[] data, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return 1;
+        }
+
+        boolean littleEndian = data[tiff] == 'I' && data[tiff + 1] == 'I';
+        long ifdOffset = readInt(data, tiff + 4, littleEndian);
+        if (ifdOffset < 8 || tiff + ifdOffset + 2 > end) {
+            return 1;
+        }
+
+        int ifd = tiff + (int) ifdOffset;
+        int entries = readShort(data, ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                return 1;
+            }
+            if (readShort(data, entry, littleEndian) == 0x0112) {
+                return readShort(data, entry + 8, littleEndian);
+            }
+        }
+        return 1;
+    }
+
+    private static int readShort(byte[] data, int pos, boolean littleEndian) {
+        int b0 = data[pos] & 0xFF;
+        int b1 = data[pos + 1] & 0xFF;
+        return littleEndian ? b1 << 8 | b0 : b0 << 8 | b1;
+    }
+
+    private static long readInt(byte[] data, int pos, boolean littleEndian) {
+        long high = readShort(data, littleEndian ? pos + 2 : pos, littleEndian);
+        long low = readShort(data, littleEndian ? pos : pos + 2, littleEndian);
+        return high << 16 | low;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            // No metadata: EXIF (GPS, camera), comments and ICC profiles are dropped
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+}
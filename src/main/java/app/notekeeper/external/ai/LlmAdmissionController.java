@@ -0,0 +1,370 @@
+package app.notekeeper.external.ai;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import app.notekeeper.common.exception.SystemException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Client-side admission control for LLM calls
+ * A call is admitted when a concurrency slot is free and two token buckets
+ * (requests and estimated LLM tokens per minute) can pay for it. The
+ * concurrency limit adapts with AIMD: +1/limit per fast success, halved on a
+ * 429 or a call slower than the latency threshold (at most once per cooldown).
+ * Interactive callers are admitted first, background callers only get
+ * background-share of the limit and wait while interactive callers do.
+ */
+@Component
+@Slf4j
+public class LlmAdmissionController {
+
+    /**
+     * Who is waiting for the answer
+     */
+    public enum Priority {
+        /** A user request is waiting (answers) */
+        INTERACTIVE,
+        /** Async processing (classification, summaries) */
+        BACKGROUND
+    }
+
+    private static final int WAITING = 0;
+    private static final int ADMITTED = 1;
+    private static final int FINISHED = 2;
+
+    private enum Outcome {
+        SUCCESS, RATE_LIMITED, FAILED
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private int interactiveWaiting;
+    private int backgroundWaiting;
+    private double requestBucket;
+    private double tokenBucket;
+    private long lastRefill;
+    private long lastDecrease;
+
+    private final Counter interactiveAdmitted;
+    private final Counter backgroundAdmitted;
+    private final Counter interactiveRejected;
+    private final Counter backgroundRejected;
+    private final Counter rateLimited;
+    private final Timer interactiveWait;
+    private final Timer backgroundWait;
+
+    @Value("${app.ai.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.admission.requests-per-minute:60}")
+    private double requestsPerMinute;
+
+    @Value("${app.ai.admission.tokens-per-minute:100000}")
+    private double tokensPerMinute;
+
+    @Value("${app.ai.admission.initial-concurrency:4}")
+    private double initialConcurrency;
+
+    @Value("${app.ai.admission.min-concurrency:1}")
+    private double minConcurrency;
+
+    @Value("${app.ai.admission.max-concurrency:32}")
+    private double maxConcurrency;
+
+    @Value("${app.ai.admission.background-share:0.75}")
+    private double backgroundShare;
+
+    @Value("${app.ai.admission.latency-threshold:20s}")
+    private Duration latencyThreshold;
+
+    @Value("${app.ai.admission.decrease-cooldown:5s}")
+    private Duration decreaseCooldown;
+
+    @Value("${app.ai.admission.interactive-max-wait:10s}")
+    private Duration interactiveMaxWait;
+
+    @Value("${app.ai.admission.background-max-wait:2m}")
+    private Duration backgroundMaxWait;
+
+    public LlmAdmissionController(MeterRegistry meterRegistry) {
+        this.interactiveAdmitted = admissionCounter(meterRegistry, Priority.INTERACTIVE, "admitted");
+        this.backgroundAdmitted = admissionCounter(meterRegistry, Priority.BACKGROUND, "admitted");
+        this.interactiveRejected = admissionCounter(meterRegistry, Priority.INTERACTIVE, "rejected");
+        this.backgroundRejected = admissionCounter(meterRegistry, Priority.BACKGROUND, "rejected");
+        this.rateLimited = Counter.builder("notekeeper.ai.llm.rate_limited")
+                .description("LLM calls answered with HTTP 429")
+                .register(meterRegistry);
+        this.interactiveWait = admissionWaitTimer(meterRegistry, Priority.INTERACTIVE);
+        this.backgroundWait = admissionWaitTimer(meterRegistry, Priority.BACKGROUND);
+
+        Gauge.builder("notekeeper.ai.llm.concurrency.limit", this, c -> c.read(() -> c.limit))
+                .register(meterRegistry);
+        Gauge.builder("notekeeper.ai.llm.inflight", this, c -> c.read(() -> (double) c.inFlight))
+                .register(meterRegistry);
+        Gauge.builder("notekeeper.ai.llm.waiting", this, c -> c.read(() -> (double) c.interactiveWaiting))
+                .tag("priority", "interactive")
+                .register(meterRegistry);
+        Gauge.builder("notekeeper.ai.llm.waiting", this, c -> c.read(() -> (double) c.backgroundWaiting))
+                .tag("priority", "background")
+                .register(meterRegistry);
+        Gauge.builder("notekeeper.ai.llm.bucket.tokens", this, c -> c.read(() -> c.tokenBucket))
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() {
+        limit = Math.max(minConcurrency, Math.min(maxConcurrency, initialConcurrency));
+        requestBucket = requestsPerMinute;
+        tokenBucket = tokensPerMinute;
+        lastRefill = System.nanoTime();
+        // First congestion signal always decreases, whatever the nanoTime origin
+        lastDecrease = lastRefill - decreaseCooldown.toNanos() - 1;
+    }
+
+    /**
+     * Run a blocking LLM call once admitted
+     *
+     * @param priority        Caller priority
+     * @param estimatedTokens Prompt plus max completion tokens
+     * @param call            The LLM call
+     * @throws SystemException when not admitted within the max wait of the
+     *                         priority
+     */
+    public <T> T call(Priority priority, int estimatedTokens, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        acquire(priority, estimatedTokens);
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            release(Outcome.SUCCESS, System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            release(isRateLimited(e) ? Outcome.RATE_LIMITED : Outcome.FAILED, System.nanoTime() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * Subscribe to a streaming LLM call once admitted (admission waits on a
+     * bounded elastic thread), latency is measured to the first element
+     * The slot is released exactly once: on completion, error or cancel, and by
+     * the admission itself when the subscriber went away while it waited
+     */
+    public <T> Flux<T> stream(Priority priority, int estimatedTokens, Supplier<Flux<T>> call) {
+        if (!enabled) {
+            return Flux.defer(call);
+        }
+
+        return Flux.defer(() -> {
+            AtomicInteger state = new AtomicInteger(WAITING);
+            AtomicLong start = new AtomicLong();
+            AtomicLong firstElement = new AtomicLong();
+            AtomicReference<Throwable> error = new AtomicReference<>();
+
+            return Mono.fromRunnable(() -> {
+                        acquire(priority, estimatedTokens);
+                        start.set(System.nanoTime());
+                        if (!state.compareAndSet(WAITING, ADMITTED)) {
+                            // Cancelled while waiting for admission
+                            release(Outcome.FAILED, 0);
+                        }
+                    })
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .thenMany(Flux.defer(call))
+                    .doOnNext(element -> firstElement.compareAndSet(0, System.nanoTime() - start.get()))
+                    .doOnError(error::set)
+                    .doFinally(signal -> {
+                        if (state.getAndSet(FINISHED) != ADMITTED) {
+                            return;
+                        }
+                        if (signal == SignalType.CANCEL && firstElement.get() == 0) {
+                            // Client left before the first element: no latency signal
+                            release(Outcome.FAILED, 0);
+                            return;
+                        }
+                        long latency = firstElement.get() > 0 ? firstElement.get() : System.nanoTime() - start.get();
+                        Throwable e = error.get();
+                        release(e == null ? Outcome.SUCCESS
+                                : isRateLimited(e) ? Outcome.RATE_LIMITED : Outcome.FAILED, latency);
+                    });
+        });
+    }
+
+    /**
+     * Whether a failure is worth retrying later (busy, unavailable, rate limited)
+     * rather than recording as a result
+     */
+    public static boolean isRetryable(Throwable e) {
+        return e instanceof SystemException || isRateLimited(e);
+    }
+
+    private void acquire(Priority priority, int estimatedTokens) {
+        boolean interactive = priority == Priority.INTERACTIVE;
+        double tokens = Math.min(Math.max(1, estimatedTokens), tokensPerMinute);
+        long start = System.nanoTime();
+        long deadline = start + (interactive ? interactiveMaxWait : backgroundMaxWait).toNanos();
+
+        lock.lock();
+        if (interactive) {
+            interactiveWaiting++;
+        } else {
+            backgroundWaiting++;
+        }
+        try {
+            while (true) {
+                refill();
+
+                boolean slotFree = interactive
+                        ? inFlight < Math.max(1, (int) limit)
+                        : interactiveWaiting == 0 && inFlight < Math.max(1, (int) (limit * backgroundShare));
+
+                if (slotFree && requestBucket >= 1 && tokenBucket >= tokens) {
+                    requestBucket -= 1;
+                    tokenBucket -= tokens;
+                    inFlight++;
+                    (interactive ? interactiveAdmitted : backgroundAdmitted).increment();
+                    (interactive ? interactiveWait : backgroundWait).record(System.nanoTime() - start,
+                            TimeUnit.NANOSECONDS);
+                    return;
+                }
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    (interactive ? interactiveRejected : backgroundRejected).increment();
+                    log.warn("LLM admission timed out for {} call (in flight: {}, limit: {})",
+                            priority, inFlight, String.format("%.1f", limit));
+                    throw SystemException.externalServiceError("AI service is busy. Please try again later.");
+                }
+
+                // Slot free but buckets empty: wake up when they have refilled
+                long wait = slotFree ? Math.min(remaining, nanosUntilRefilled(tokens)) : remaining;
+                changed.awaitNanos(Math.max(wait, TimeUnit.MILLISECONDS.toNanos(1)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw SystemException.externalServiceError("Interrupted while waiting for the AI service");
+        } finally {
+            if (interactive) {
+                interactiveWaiting--;
+                // Background callers may have been held back by this one
+                changed.signalAll();
+            } else {
+                backgroundWaiting--;
+            }
+            lock.unlock();
+        }
+    }
+
+    private void release(Outcome outcome, long latencyNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            long now = System.nanoTime();
+            boolean slow = latencyNanos > latencyThreshold.toNanos();
+
+            if (outcome == Outcome.RATE_LIMITED) {
+                rateLimited.increment();
+            }
+
+            if (outcome == Outcome.RATE_LIMITED || slow) {
+                // One decrease per cooldown, a burst of 429s is one congestion signal
+                if (now - lastDecrease > decreaseCooldown.toNanos()) {
+                    double previous = limit;
+                    limit = Math.max(minConcurrency, limit / 2);
+                    lastDecrease = now;
+                    log.warn("LLM concurrency limit decreased {} -> {} ({})", String.format("%.1f", previous),
+                            String.format("%.1f", limit), outcome == Outcome.RATE_LIMITED ? "rate limited" : "slow call");
+                }
+            } else if (outcome == Outcome.SUCCESS) {
+                limit = Math.min(maxConcurrency, limit + 1 / limit);
+            }
+
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        double minutes = (now - lastRefill) / (double) TimeUnit.MINUTES.toNanos(1);
+        requestBucket = Math.min(requestsPerMinute, requestBucket + minutes * requestsPerMinute);
+        tokenBucket = Math.min(tokensPerMinute, tokenBucket + minutes * tokensPerMinute);
+        lastRefill = now;
+    }
+
+    /**
+     * Must be called while holding the lock
+     */
+    private long nanosUntilRefilled(double tokens) {
+        double minuteNanos = TimeUnit.MINUTES.toNanos(1);
+        double requestWait = requestBucket >= 1 ? 0 : (1 - requestBucket) / requestsPerMinute * minuteNanos;
+        double tokenWait = tokenBucket >= tokens ? 0 : (tokens - tokenBucket) / tokensPerMinute * minuteNanos;
+        return (long) Math.ceil(Math.max(requestWait, tokenWait));
+    }
+
+    private double read(Supplier<Double> value) {
+        lock.lock();
+        try {
+            return value.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean isRateLimited(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpClientErrorException.TooManyRequests) {
+                return true;
+            }
+            // Spring AI reports client errors as "<status> - <body>"
+            if (cause.getMessage() != null && cause.getMessage().startsWith("429")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Counter admissionCounter(MeterRegistry meterRegistry, Priority priority, String result) {
+        return Counter.builder("notekeeper.ai.llm.admission")
+                .tag("priority", priority.name().toLowerCase())
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Timer admissionWaitTimer(MeterRegistry meterRegistry, Priority priority) {
+        return Timer.builder("notekeeper.ai.llm.admission.wait")
+                .tag("priority", priority.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,224 @@
+package app.notekeeper.external.ai;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Builds the RELEVANT NOTES prompt section within a token budget
+ * Notes are packed in relevance order. Each note gets its header and summary,
+ * then a fair share of the remaining budget: full content when it fits,
+ * otherwise the passages that best match the query (in reading order). Notes
+ * whose content doesn't fit at all fall back to their summary. Passages
+ * already included from another note are skipped.
+ */
+@Component
+@Slf4j
+public class NoteContextPacker {
+
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final DistributionSummary contextTokens;
+    private final Counter notesTruncated;
+    private final Counter notesSummaryOnly;
+
+    @Value("${app.ai.context.max-tokens:1500}")
+    private int maxTokens;
+
+    @Value("${app.ai.context.passage-tokens:80}")
+    private int passageTokens;
+
+    public NoteContextPacker(MeterRegistry meterRegistry) {
+        this.contextTokens = DistributionSummary.builder("notekeeper.ai.prompt.context.tokens")
+                .description("Estimated tokens of the notes context per answer prompt")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+        this.notesTruncated = Counter.builder("notekeeper.ai.prompt.context.notes")
+                .tag("content", "passages").register(meterRegistry);
+        this.notesSummaryOnly = Counter.builder("notekeeper.ai.prompt.context.notes")
+                .tag("content", "summary").register(meterRegistry);
+    }
+
+    /**
+     * Render notes context for a query
+     *
+     * @param query Question the context should answer
+     * @param notes Retrieved notes, most relevant first
+     * @return Prompt section with at most about max-tokens estimated tokens
+     */
+    public String pack(String query, List<NoteSearchResult> notes) {
+        StringBuilder context = new StringBuilder();
+        context.append("RELEVANT NOTES:\n");
+        context.append("===============\n\n");
+
+        Set<String> queryTerms = terms(query);
+        Set<String> seenPassages = new HashSet<>();
+        int remaining = maxTokens;
+
+        for (int i = 0; i < notes.size(); i++) {
+            NoteSearchResult note = notes.get(i);
+
+            StringBuilder header = new StringBuilder();
+            header.append(String.format("Note %d:\n", i + 1));
+            header.append(String.format("Title: %s\n", note.getTitle()));
+            if (note.getTopicName() != null) {
+                header.append(String.format("Topic: %s\n", note.getTopicName()));
+            }
+            if (note.getAiSummary() != null && !note.getAiSummary().isEmpty()) {
+                header.append(String.format("Summary: %s\n", note.getAiSummary()));
+            }
+
+            int headerTokens = TextChunker.estimateTokens(header.toString());
+            if (headerTokens > remaining) {
+                log.info("Context budget exhausted, dropping {} of {} notes", notes.size() - i, notes.size());
+                break;
+            }
+            context.append(header);
+            remaining -= headerTokens;
+
+            // Fair share of what is left, unused share rolls over to later notes
+            int share = remaining / (notes.size() - i);
+            String content = selectContent(note.getContent(), queryTerms, seenPassages, share);
+            if (content != null) {
+                context.append(String.format("Content: %s\n", content));
+                remaining -= TextChunker.estimateTokens(content);
+            }
+
+            context.append("\n");
+        }
+
+        int tokens = maxTokens - remaining;
+        contextTokens.record(tokens);
+        log.info("Packed notes context: {} notes, ~{} tokens (budget {})", notes.size(), tokens, maxTokens);
+
+        return context.toString();
+    }
+
+    /**
+     * Full content when it fits the share, otherwise the best matching passages
+     * in reading order, null when nothing fits (summary only)
+     */
+    private String selectContent(String content, Set<String> queryTerms, Set<String> seenPassages, int share) {
+        if (content == null || content.isBlank()) {
+            return null;
+        }
+
+        List<String> passages = splitPassages(content);
+
+        boolean overlapsEarlierNote = passages.stream().anyMatch(passage -> seenPassages.contains(normalize(passage)));
+        if (TextChunker.estimateTokens(content) <= share && !overlapsEarlierNote) {
+            passages.forEach(passage -> seenPassages.add(normalize(passage)));
+            return content;
+        }
+
+        // Rank passages by query term overlap, earlier passages win ties
+        List<Integer> ranked = new ArrayList<>();
+        for (int p = 0; p < passages.size(); p++) {
+            ranked.add(p);
+        }
+        List<Integer> scores = passages.stream().map(passage -> score(passage, queryTerms)).toList();
+        ranked.sort(Comparator.comparing((Integer p) -> scores.get(p)).reversed().thenComparing(p -> p));
+
+        boolean[] selected = new boolean[passages.size()];
+        int used = 0;
+        for (int p : ranked) {
+            String normalized = normalize(passages.get(p));
+            int tokens = TextChunker.estimateTokens(passages.get(p));
+            if (used + tokens > share || seenPassages.contains(normalized)) {
+                continue;
+            }
+            selected[p] = true;
+            seenPassages.add(normalized);
+            used += tokens;
+        }
+
+        StringBuilder packed = new StringBuilder();
+        for (int p = 0; p < passages.size(); p++) {
+            if (selected[p]) {
+                if (!packed.isEmpty()) {
+                    packed.append(" ... ");
+                }
+                packed.append(passages.get(p));
+            }
+        }
+
+        if (packed.isEmpty()) {
+            notesSummaryOnly.increment();
+            return null;
+        }
+        notesTruncated.increment();
+        return packed.toString();
+    }
+
+    /**
+     * Split content into passages of about passage-tokens: paragraphs, long
+     * paragraphs split on sentence boundaries
+     */
+    private List<String> splitPassages(String content) {
+        List<String> passages = new ArrayList<>();
+
+        for (String paragraph : PARAGRAPH_BREAK.split(content.trim())) {
+            StringBuilder passage = new StringBuilder();
+            for (String sentence : SENTENCE_END.split(paragraph.trim())) {
+                if (!passage.isEmpty()
+                        && TextChunker.estimateTokens(passage.toString()) + TextChunker.estimateTokens(sentence) > passageTokens) {
+                    passages.add(passage.toString());
+                    passage.setLength(0);
+                }
+                if (!passage.isEmpty()) {
+                    passage.append(' ');
+                }
+                passage.append(sentence);
+            }
+            if (!passage.isEmpty()) {
+                passages.add(passage.toString());
+            }
+        }
+
+        return passages;
+    }
+
+    private static int score(String passage, Set<String> queryTerms) {
+        Set<String> passageTerms = terms(passage);
+        int score = 0;
+        for (String term : queryTerms) {
+            if (passageTerms.contains(term)) {
+                score++;
+            }
+        }
+        return score;
+    }
+
+    private static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        if (text == null) {
+            return terms;
+        }
+        for (String term : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (term.length() > 1) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private static String normalize(String passage) {
+        return EmbeddingCache.normalize(passage).toLowerCase(Locale.ROOT);
+    }
+
+}
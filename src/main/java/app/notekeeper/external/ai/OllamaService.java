@@ -1,13 +1,33 @@
 package app.notekeeper.external.ai;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.springframework.ai.embedding.Embedding;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.ollama.api.OllamaOptions;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 
+import app.notekeeper.common.exception.SystemException;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 
 @Component
@@ -15,16 +35,90 @@ import lombok.extern.slf4j.Slf4j;
 public class OllamaService {
 
     private final EmbeddingModel embeddingModel;
+    private final EmbeddingCache embeddingCache;
+    private final AiResilience aiResilience;
 
-    public OllamaService(@Qualifier("ollamaEmbeddingModel") EmbeddingModel embeddingModel) {
+    /**
+     * Model that stored vectors and query embeddings come from, switched only at
+     * re-embedding cutover (see EmbeddingReindexJob)
+     */
+    private volatile String activeModel;
+
+    /**
+     * Triggers the flush of pending micro-batches when the max wait elapses
+     * before the batch fills up, the Ollama call itself runs on flushExecutor
+     */
+    private final ScheduledExecutorService batchFlusher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("embedding-batch-", 0).daemon().factory());
+
+    /**
+     * Runs partitions of large generateEmbeddings calls concurrently
+     */
+    private final ExecutorService parallelBatchExecutor;
+
+    /**
+     * Runs timer-triggered micro-batch flushes, separate from
+     * parallelBatchExecutor so bulk re-embedding cannot hold up query
+     * embeddings (Ollama concurrency is bounded by its bulkhead)
+     */
+    private final ExecutorService flushExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("embedding-flush-", 0).factory());
+
+    private final Object batchLock = new Object();
+    private List<PendingEmbedding> pendingBatch = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    @Value("${app.ai.embedding.batch-size:16}")
+    private int batchSize;
+
+    @Value("${app.ai.embedding.batch-max-wait-ms:10}")
+    private long batchMaxWaitMs;
+
+    /**
+     * Longest a caller waits for its micro-batch result, covers the batch wait,
+     * the executor queue and the Ollama timeout
+     */
+    @Value("${app.ai.embedding.batch-timeout-ms:20000}")
+    private long batchTimeoutMs;
+
+    public OllamaService(@Qualifier("ollamaEmbeddingModel") EmbeddingModel embeddingModel,
+            EmbeddingCache embeddingCache,
+            AiResilience aiResilience,
+            @Value("${spring.ai.ollama.embedding.options.model}") String configuredModel,
+            @Value("${app.ai.embedding.max-parallel-batches:4}") int maxParallelBatches) {
         this.embeddingModel = embeddingModel;
+        this.embeddingCache = embeddingCache;
+        this.aiResilience = aiResilience;
+        this.activeModel = configuredModel;
+        this.parallelBatchExecutor = Executors.newFixedThreadPool(maxParallelBatches,
+                Thread.ofPlatform().name("embedding-parallel-", 0).daemon().factory());
+    }
+
+    /**
+     * Embedding model currently used for stored vectors and queries
+     */
+    public String getActiveModel() {
+        return activeModel;
     }
 
     /**
-     * Generate embedding vector for text content
-     * 
+     * Switch the embedding model used for stored vectors and queries
+     */
+    public void setActiveModel(String model) {
+        if (!model.equals(activeModel)) {
+            log.info("Active embedding model changed from {} to {}", activeModel, model);
+            activeModel = model;
+        }
+    }
+
+    /**
+     * Generate embedding vector for text content with the active model
+     * Cached vectors are returned directly, concurrent cache misses are grouped
+     * into one Ollama request (flushed by batch size or max wait)
+     *
      * @param content Text content to embed
-     * @return Embedding vector as Float array (nullable)
+     * @return Embedding vector as Float array (null on failure, including Ollama
+     *         being unavailable, so queries fall back to text search)
      */
     public float[] generateEmbedding(String content) {
         try {
@@ -33,29 +127,279 @@ public class OllamaService {
                 return null;
             }
 
-            log.info("Generating embedding for content (length: {} chars)", content.length());
+            String model = activeModel;
+            // Cache key only, Ollama gets the text as written
+            String normalized = EmbeddingCache.normalize(content);
 
-            // Create embedding request
-            EmbeddingRequest request = new EmbeddingRequest(List.of(content), null);
+            float[] cached = embeddingCache.get(model, normalized);
+            if (cached != null) {
+                log.info("Embedding cache hit for content (length: {} chars)", content.length());
+                return cached;
+            }
 
-            // Call Ollama embedding model
-            EmbeddingResponse response = embeddingModel.call(request);
+            log.info("Generating embedding for content (length: {} chars)", content.length());
 
-            // Extract embedding vector from first result
-            if (response.getResults() != null && !response.getResults().isEmpty()) {
-                float[] primitiveArray = response.getResults().get(0).getOutput();
+            float[] embedding = batchSize <= 1
+                    ? callEmbeddingModel(List.of(content), model).get(0)
+                    : enqueue(content, model).orTimeout(batchTimeoutMs, TimeUnit.MILLISECONDS).join();
 
-                log.info("Successfully generated embedding vector with {} dimensions", primitiveArray.length);
-                return primitiveArray;
+            if (embedding == null) {
+                log.warn("No embedding results returned from Ollama");
+                return null;
             }
 
-            log.warn("No embedding results returned from Ollama");
-            return null;
+            embeddingCache.put(model, normalized, embedding);
+
+            log.info("Successfully generated embedding vector with {} dimensions", embedding.length);
+            return embedding;
 
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                log.warn("Embedding micro-batch result not ready after {} ms, skipping embedding", batchTimeoutMs);
+            } else {
+                log.error("Error generating embedding for content", e.getCause());
+            }
+            return null;
         } catch (Exception e) {
             log.error("Error generating embedding for content", e);
             return null;
         }
     }
 
+    /**
+     * Generate embedding vectors for multiple texts with the active model
+     *
+     * @see #generateEmbeddings(List, String)
+     */
+    public List<float[]> generateEmbeddings(List<String> contents) {
+        return generateEmbeddings(contents, activeModel);
+    }
+
+    /**
+     * Generate embedding vectors for multiple texts, only cache misses are sent
+     * to Ollama (split into batches of batch-size, sent in parallel)
+     *
+     * @param contents Text contents to embed
+     * @param model    Embedding model to use
+     * @return Embedding vectors in the same order as the input (null for empty
+     *         content or failed results)
+     * @throws SystemException when Ollama is unavailable (breaker open, bulkhead
+     *                         full or timed out), worth retrying later
+     */
+    public List<float[]> generateEmbeddings(List<String> contents, String model) {
+        float[][] embeddings = new float[contents.size()][];
+
+        // Resolve cache hits, collect distinct misses (by cache key) with their
+        // positions, the first text of a key is the one sent to Ollama
+        Map<String, List<Integer>> misses = new LinkedHashMap<>();
+        for (int i = 0; i < contents.size(); i++) {
+            String content = contents.get(i);
+            if (content == null || content.trim().isEmpty()) {
+                continue;
+            }
+
+            String normalized = EmbeddingCache.normalize(content);
+            float[] cached = embeddingCache.get(model, normalized);
+            if (cached != null) {
+                embeddings[i] = cached;
+            } else {
+                misses.computeIfAbsent(normalized, key -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (misses.isEmpty()) {
+            return Arrays.asList(embeddings);
+        }
+
+        List<String> keys = new ArrayList<>(misses.keySet());
+        List<float[]> generated = callEmbeddingModelInParallel(
+                keys.stream().map(key -> contents.get(misses.get(key).get(0))).toList(), model);
+
+        for (int i = 0; i < keys.size(); i++) {
+            float[] embedding = generated.get(i);
+            if (embedding == null) {
+                continue;
+            }
+            embeddingCache.put(model, keys.get(i), embedding);
+            for (int position : misses.get(keys.get(i))) {
+                embeddings[position] = embedding;
+            }
+        }
+
+        return Arrays.asList(embeddings);
+    }
+
+    private List<float[]> callEmbeddingModelInParallel(List<String> texts, String model) {
+        int partitionSize = Math.max(1, batchSize);
+        if (texts.size() <= partitionSize) {
+            return callEmbeddingModel(texts, model);
+        }
+
+        List<CompletableFuture<List<float[]>>> partitions = new ArrayList<>();
+        for (int start = 0; start < texts.size(); start += partitionSize) {
+            List<String> partition = texts.subList(start, Math.min(start + partitionSize, texts.size()));
+            partitions.add(CompletableFuture.supplyAsync(() -> callEmbeddingModel(partition, model),
+                    parallelBatchExecutor));
+        }
+
+        log.info("Embedding {} texts in {} parallel batches", texts.size(), partitions.size());
+
+        List<float[]> embeddings = new ArrayList<>(texts.size());
+        try {
+            partitions.forEach(partition -> embeddings.addAll(partition.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return embeddings;
+    }
+
+    /**
+     * Send texts to Ollama in one request, no cache involved
+     *
+     * @return Embedding vectors in the same order as the input (null for failed
+     *         results)
+     * @throws SystemException when Ollama is unavailable
+     */
+    private List<float[]> callEmbeddingModel(List<String> texts, String model) {
+        float[][] embeddings = new float[texts.size()][];
+
+        try {
+            log.info("Generating embeddings for batch of {} texts with {}", texts.size(), model);
+
+            // Create embedding request
+            EmbeddingRequest request = new EmbeddingRequest(texts, OllamaOptions.builder().model(model).build());
+
+            // Call Ollama embedding model (timeout, bulkhead, circuit breaker)
+            EmbeddingResponse response = aiResilience.call(AiResilience.OLLAMA, () -> embeddingModel.call(request));
+
+            if (response.getResults() != null) {
+                List<Embedding> results = response.getResults();
+                for (int i = 0; i < results.size(); i++) {
+                    Embedding result = results.get(i);
+                    int index = result.getIndex() != null ? result.getIndex() : i;
+                    if (index >= 0 && index < embeddings.length) {
+                        embeddings[index] = result.getOutput();
+                    }
+                }
+            }
+
+        } catch (SystemException e) {
+            // Breaker open, bulkhead full or timed out: the caller decides whether
+            // to retry later or go without embedding
+            log.warn("Embeddings unavailable for batch of {} texts: {}", texts.size(), e.getMessage());
+            throw e;
+        } catch (ResourceAccessException | HttpServerErrorException e) {
+            // Ollama down or failing, not the texts
+            log.warn("Ollama failed on batch of {} texts: {}", texts.size(), e.getMessage());
+            throw SystemException.externalServiceError("Ollama call failed: " + e.getMessage());
+        } catch (Exception e) {
+            log.error("Error generating embeddings for batch of {} texts", texts.size(), e);
+        }
+
+        return Arrays.asList(embeddings);
+    }
+
+    private CompletableFuture<float[]> enqueue(String content, String model) {
+        PendingEmbedding pending = new PendingEmbedding(content, model, new CompletableFuture<>());
+        List<PendingEmbedding> fullBatch = null;
+
+        synchronized (batchLock) {
+            pendingBatch.add(pending);
+
+            if (pendingBatch.size() >= batchSize) {
+                fullBatch = drainPendingBatch();
+            } else if (pendingBatch.size() == 1) {
+                scheduledFlush = batchFlusher.schedule(this::dispatchPendingBatch, batchMaxWaitMs,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        // Size-triggered flush runs on the caller that filled the batch
+        if (fullBatch != null) {
+            flush(fullBatch);
+        }
+
+        return pending.result();
+    }
+
+    /**
+     * Timer-triggered flush, hands the batch to a virtual thread so a slow
+     * Ollama call does not hold the scheduler thread
+     */
+    private void dispatchPendingBatch() {
+        List<PendingEmbedding> batch;
+        synchronized (batchLock) {
+            batch = drainPendingBatch();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flushExecutor.execute(() -> flush(batch));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+            flush(batch);
+        }
+    }
+
+    private void flushPendingBatch() {
+        List<PendingEmbedding> batch;
+        synchronized (batchLock) {
+            batch = drainPendingBatch();
+        }
+        flush(batch);
+    }
+
+    /**
+     * Must be called while holding batchLock
+     */
+    private List<PendingEmbedding> drainPendingBatch() {
+        List<PendingEmbedding> batch = pendingBatch;
+        pendingBatch = new ArrayList<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void flush(List<PendingEmbedding> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        // A batch mixes models only around a cutover
+        Map<String, List<PendingEmbedding>> byModel = new LinkedHashMap<>();
+        batch.forEach(pending -> byModel.computeIfAbsent(pending.model(), key -> new ArrayList<>()).add(pending));
+
+        byModel.forEach((model, pendings) -> {
+            try {
+                log.debug("Flushing embedding micro-batch of {} texts", pendings.size());
+
+                List<float[]> embeddings = callEmbeddingModel(
+                        pendings.stream().map(PendingEmbedding::content).toList(), model);
+
+                for (int i = 0; i < pendings.size(); i++) {
+                    pendings.get(i).result().complete(embeddings.get(i));
+                }
+            } catch (Exception e) {
+                pendings.forEach(pending -> pending.result().completeExceptionally(e));
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushPendingBatch();
+        batchFlusher.shutdown();
+        flushExecutor.shutdown();
+        parallelBatchExecutor.shutdown();
+    }
+
+    private record PendingEmbedding(String content, String model, CompletableFuture<float[]> result) {
+    }
+
 }
@@ -5,6 +5,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.openai.OpenAiChatOptions;
@@ -13,45 +14,98 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.MimeTypeUtils;
 
+import app.notekeeper.common.exception.SystemException;
+import app.notekeeper.external.ai.LlmAdmissionController.Priority;
 import app.notekeeper.external.ai.dto.response.ClassificationTopicResponse;
-import app.notekeeper.model.dto.response.NoteQueryResponse;
+import app.notekeeper.model.dto.response.CatalogTopic;
+import app.notekeeper.model.dto.response.NoteSearchResult;
 import app.notekeeper.model.entity.Note;
-import app.notekeeper.model.entity.Topic;
 import app.notekeeper.model.enums.NoteType;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
 
 @Component
 @Slf4j
 public class OpenAIService {
 
+    /**
+     * Estimated tokens of a system prompt and formatting, added to admission
+     * estimates
+     */
+    private static final int PROMPT_OVERHEAD_TOKENS = 400;
+
+    /**
+     * Estimated tokens of an attached image or document
+     */
+    private static final int FILE_TOKENS = 1500;
+
     private final ChatClient mainChatClient;
+    private final NoteContextPacker noteContextPacker;
+    private final AnswerCache answerCache;
+    private final AiResilience aiResilience;
+    private final LlmAdmissionController llmAdmission;
+    private final ImagePreprocessor imagePreprocessor;
     @SuppressWarnings("unused") // Reserved for future advanced classification features
     private final ChatClient secondaryChatClient;
 
     @Value("${app.storage.upload-dir}")
     private String uploadDir;
 
-    public OpenAIService(ChatClient mainChatClient, @Qualifier("powerfulChatClient") ChatClient secondaryChatClient) {
+    @Value("${app.ai.document.prompt-max-chars:24000}")
+    private int promptMaxChars;
+
+    public OpenAIService(ChatClient mainChatClient, @Qualifier("powerfulChatClient") ChatClient secondaryChatClient,
+            NoteContextPacker noteContextPacker, AnswerCache answerCache, AiResilience aiResilience,
+            LlmAdmissionController llmAdmission, ImagePreprocessor imagePreprocessor) {
         this.mainChatClient = mainChatClient;
+        this.noteContextPacker = noteContextPacker;
+        this.answerCache = answerCache;
+        this.aiResilience = aiResilience;
+        this.llmAdmission = llmAdmission;
+        this.imagePreprocessor = imagePreprocessor;
         this.secondaryChatClient = secondaryChatClient;
     }
 
-    public ClassificationTopicResponse classifyNote(Note note, List<Topic> topics) {
+    public ClassificationTopicResponse classifyNote(Note note, List<CatalogTopic> topics) {
+        return classifyNote(note, topics, prepareTopicsInfo(topics));
+    }
+
+    /**
+     * Classify note with an already rendered topics prompt section
+     *
+     * @param note       Note to classify
+     * @param topics     Topics of the note owner
+     * @param topicsInfo Rendered AVAILABLE TOPICS block (see prepareTopicsInfo)
+     * @return Selected topic, summary and extracted content
+     */
+    public ClassificationTopicResponse classifyNote(Note note, List<CatalogTopic> topics, String topicsInfo) {
+        return classifyNote(note, topics, topicsInfo, null);
+    }
+
+    /**
+     * Classify note, a DOCUMENT note with locally extracted text is classified
+     * from that text instead of the file
+     *
+     * @param documentText Text extracted from the document (null to analyze the
+     *                     file)
+     */
+    public ClassificationTopicResponse classifyNote(Note note, List<CatalogTopic> topics, String topicsInfo,
+            String documentText) {
         try {
             log.info("Classifying note type: {} with {} available topics", note.getType(), topics.size());
 
-            String topicsInfo = prepareTopicsInfo(topics);
             String noteMetadata = prepareNoteMetadata(note);
 
             ClassificationTopicResponse response;
 
             // For IMAGE and DOCUMENT notes, use vision/document model with file data
-            if ((note.getType() == NoteType.IMAGE || note.getType() == NoteType.DOCUMENT)
+            // (unless the document text was extracted locally)
+            if (documentText == null && (note.getType() == NoteType.IMAGE || note.getType() == NoteType.DOCUMENT)
                     && note.getFileUrl() != null) {
                 response = classifyWithFile(note, noteMetadata, topicsInfo);
             } else {
-                // For TEXT notes, use text-only classification
-                response = classifyWithText(note, noteMetadata, topicsInfo);
+                // For TEXT notes and extracted documents, use text-only classification
+                response = classifyWithText(note, noteMetadata, topicsInfo, documentText);
             }
 
             log.info("Note classified to topic ID: {} with summary: {}",
@@ -59,13 +113,18 @@ public class OpenAIService {
             return response;
 
         } catch (Exception e) {
+            if (LlmAdmissionController.isRetryable(e)) {
+                // Busy or rate limited: fail the job so it is retried, don't store an error summary
+                log.warn("Note classification deferred: {}", e.getMessage());
+                throw e;
+            }
             log.error("Error during note classification", e);
             // Return default topic with error message as summary
             UUID defaultTopicId = topics.stream()
-                    .filter(topic -> topic.isDefault())
+                    .filter(CatalogTopic::isDefault)
                     .findFirst()
-                    .map(Topic::getId)
-                    .orElse(topics.get(0).getId());
+                    .map(CatalogTopic::id)
+                    .orElse(topics.get(0).id());
 
             ClassificationTopicResponse errorResponse = new ClassificationTopicResponse();
             errorResponse.setTopicId(defaultTopicId);
@@ -80,7 +139,17 @@ public class OpenAIService {
 
             if (!Files.exists(filePath)) {
                 log.warn("File not found: {}, falling back to text classification", note.getFileUrl());
-                return classifyWithText(note, noteMetadata, topicsInfo);
+                return classifyWithText(note, noteMetadata, topicsInfo, null);
+            }
+
+            // Determine MIME type from file extension
+            String mimeType = determineMimeType(note.getFileUrl());
+
+            // The model only reads images and PDFs, other documents are classified from metadata
+            if (note.getType() == NoteType.DOCUMENT && !"application/pdf".equals(mimeType)) {
+                log.warn("Document {} ({}) can't be sent to the model, falling back to text classification",
+                        note.getFileUrl(), mimeType);
+                return classifyWithText(note, noteMetadata, topicsInfo, null);
             }
 
             // Check file size (limit to 20MB for vision/document models)
@@ -90,7 +159,7 @@ public class OpenAIService {
             if (fileSize > maxSize) {
                 log.warn("File too large: {} bytes (max: {} bytes), falling back to text classification",
                         fileSize, maxSize);
-                return classifyWithText(note, noteMetadata, topicsInfo);
+                return classifyWithText(note, noteMetadata, topicsInfo, null);
             }
 
             log.info("Classifying {} note with file analysis, file size: {} bytes",
@@ -100,15 +169,21 @@ public class OpenAIService {
             org.springframework.core.io.Resource fileResource = new org.springframework.core.io.FileSystemResource(
                     filePath);
 
-            // Determine MIME type from file extension
-            String mimeType = determineMimeType(note.getFileUrl());
+            // Images go out downscaled and re-encoded (cached next to the upload)
+            if (note.getType() == NoteType.IMAGE) {
+                ImagePreprocessor.PreparedImage image = imagePreprocessor.prepare(filePath, mimeType);
+                fileResource = image.resource();
+                mimeType = image.mimeType();
+            }
 
             // Prepare system prompt based on file type
             String systemPrompt = note.getType() == NoteType.IMAGE
                     ? prepareImageSystemPrompt()
                     : prepareDocumentSystemPrompt();
 
-            ClassificationTopicResponse response = mainChatClient.prompt()
+            int estimatedTokens = TextChunker.estimateTokens(noteMetadata + topicsInfo)
+                    + PROMPT_OVERHEAD_TOKENS + FILE_TOKENS + 2000;
+            ClassificationTopicResponse response = chat(Priority.BACKGROUND, estimatedTokens, () -> mainChatClient.prompt()
                     .system(systemPrompt)
                     .user(u -> u
                             .text(String.format(
@@ -131,20 +206,27 @@ public class OpenAIService {
                             .temperature(0.3)
                             .build())
                     .call()
-                    .entity(ClassificationTopicResponse.class);
+                    .entity(ClassificationTopicResponse.class));
 
             return response;
 
         } catch (Exception e) {
+            if (LlmAdmissionController.isRetryable(e)) {
+                // OpenAI busy or unavailable, a text classification would fail the same way
+                throw SystemException.externalServiceError(e.getMessage());
+            }
             log.error("Error classifying with file, falling back to text classification", e);
-            return classifyWithText(note, noteMetadata, topicsInfo);
+            return classifyWithText(note, noteMetadata, topicsInfo, null);
         }
     }
 
-    private ClassificationTopicResponse classifyWithText(Note note, String noteMetadata, String topicsInfo) {
-        String contentInfo = prepareContentInfo(note);
+    private ClassificationTopicResponse classifyWithText(Note note, String noteMetadata, String topicsInfo,
+            String documentText) {
+        String contentInfo = prepareContentInfo(note, documentText);
 
-        ClassificationTopicResponse response = mainChatClient.prompt()
+        int estimatedTokens = TextChunker.estimateTokens(noteMetadata + contentInfo + topicsInfo)
+                + PROMPT_OVERHEAD_TOKENS + 2000;
+        ClassificationTopicResponse response = chat(Priority.BACKGROUND, estimatedTokens, () -> mainChatClient.prompt()
                 .system("""
                         You are an intelligent note classification assistant specialized in categorizing user notes.
                         Your task is to analyze note content and classify it into the most appropriate topic from a provided list.
@@ -156,7 +238,7 @@ public class OpenAIService {
                         4. If no topic clearly matches the content, choose the DEFAULT topic
                         5. ALWAYS return a valid topic ID from the provided list
                         6. For TEXT notes: analyze the full text content
-                        7. For DOCUMENT notes: rely on filename, title, and description
+                        7. For DOCUMENT notes: analyze the extracted text when given, otherwise rely on filename, title, and description
                         8. Prioritize exact matches over partial matches
                         9. When uncertain between two topics, choose the more general one
 
@@ -200,7 +282,7 @@ public class OpenAIService {
                         .temperature(0.3)
                         .build())
                 .call()
-                .entity(ClassificationTopicResponse.class);
+                .entity(ClassificationTopicResponse.class));
 
         return response;
     }
@@ -226,37 +308,45 @@ public class OpenAIService {
         return metadata.toString();
     }
 
-    private String prepareContentInfo(Note note) {
+    private String prepareContentInfo(Note note, String documentText) {
         StringBuilder content = new StringBuilder();
 
         if (note.getType() == NoteType.TEXT && note.getContent() != null) {
             content.append("\nCONTENT:\n");
             content.append("========\n");
             content.append(note.getContent());
+        } else if (documentText != null) {
+            content.append("\nCONTENT (extracted from the document):\n");
+            content.append("========\n");
+            content.append(promptExcerpt(documentText));
         }
-        // For DOCUMENT and IMAGE, content will be analyzed from the actual file
+        // Otherwise, DOCUMENT and IMAGE content will be analyzed from the actual file
 
         return content.toString();
     }
 
-    private String prepareTopicsInfo(List<Topic> topics) {
+    /**
+     * Render the AVAILABLE TOPICS prompt block for classification
+     * Cached per owner by TopicCatalogCache
+     */
+    public String prepareTopicsInfo(List<CatalogTopic> topics) {
         StringBuilder topicsInfo = new StringBuilder();
         topicsInfo.append("\nAVAILABLE TOPICS:\n");
         topicsInfo.append("=================\n\n");
 
-        for (Topic topic : topics) {
-            topicsInfo.append(String.format("ID: %s\n", topic.getId()));
-            topicsInfo.append(String.format("Name: %s\n", topic.getName()));
+        for (CatalogTopic topic : topics) {
+            topicsInfo.append("ID: ").append(topic.id()).append("\n");
+            topicsInfo.append("Name: ").append(topic.name()).append("\n");
 
-            if (topic.getDescription() != null && !topic.getDescription().isEmpty()) {
-                topicsInfo.append(String.format("Description: %s\n", topic.getDescription()));
+            if (topic.description() != null && !topic.description().isEmpty()) {
+                topicsInfo.append("Description: ").append(topic.description()).append("\n");
             }
 
-            if (topic.getAiSummary() != null && !topic.getAiSummary().isEmpty()) {
-                topicsInfo.append(String.format("AI Summary: %s\n", topic.getAiSummary()));
+            if (topic.aiSummary() != null && !topic.aiSummary().isEmpty()) {
+                topicsInfo.append("AI Summary: ").append(topic.aiSummary()).append("\n");
             }
 
-            topicsInfo.append(String.format("Default: %s\n", topic.isDefault() ? "YES" : "NO"));
+            topicsInfo.append("Default: ").append(topic.isDefault() ? "YES" : "NO").append("\n");
             topicsInfo.append("\n");
         }
 
@@ -267,6 +357,18 @@ public class OpenAIService {
         return topicsInfo.toString();
     }
 
+    /**
+     * Head of a long text, cut at the last paragraph or line break within
+     * prompt-max-chars
+     */
+    private String promptExcerpt(String text) {
+        if (text.length() <= promptMaxChars) {
+            return text;
+        }
+        int cut = text.lastIndexOf('\n', promptMaxChars);
+        return text.substring(0, cut > promptMaxChars / 2 ? cut : promptMaxChars) + "\n[...]";
+    }
+
     private String determineMimeType(String filename) {
         if (filename == null) {
             return "image/jpeg";
@@ -289,6 +391,12 @@ public class OpenAIService {
         // Document types
         else if (lowerFilename.endsWith(".pdf")) {
             return "application/pdf";
+        } else if (lowerFilename.endsWith(".docx")) {
+            return "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+        } else if (lowerFilename.endsWith(".doc")) {
+            return "application/msword";
+        } else if (lowerFilename.endsWith(".txt")) {
+            return "text/plain";
         }
 
         // Default to JPEG for images
@@ -388,8 +496,10 @@ public class OpenAIService {
      * @param query         User's query
      * @param relevantNotes List of relevant notes found by vector search
      * @return AI-generated answer
+     * @throws RuntimeException When the answer could not be generated (the
+     *                          caller decides what to show, nothing is cached)
      */
-    public String generateAnswerFromNotes(String query, List<NoteQueryResponse> relevantNotes) {
+    public String generateAnswerFromNotes(String query, List<NoteSearchResult> relevantNotes) {
         try {
             log.info("Generating answer for query: '{}' with {} relevant notes", query, relevantNotes.size());
 
@@ -397,83 +507,109 @@ public class OpenAIService {
                 return "I couldn't find any relevant notes to answer your question. Please try a different query or create more notes on this topic.";
             }
 
-            // Prepare context from relevant notes
-            String notesContext = prepareNotesContext(relevantNotes);
+            String cached = answerCache.get(query, relevantNotes);
+            if (cached != null) {
+                return cached;
+            }
 
-            String answer = mainChatClient.prompt()
-                    .system("""
-                            You are an intelligent assistant helping users find information from their personal notes.
-                            Your task is to answer the user's question based ONLY on the provided notes context.
-
-                            IMPORTANT RULES:
-                            1. Use ONLY information from the provided notes
-                            2. If the notes don't contain enough information to answer, say so clearly
-                            3. Be concise and direct in your answer (2-4 sentences)
-                            4. Cite specific notes when referencing information
-                            5. If multiple notes have relevant info, synthesize them into a coherent answer
-                            6. Do NOT make up or infer information not present in the notes
-                            7. Maintain a helpful and professional tone
-
-                            RESPONSE FORMAT:
-                            - Start with a direct answer to the question
-                            - Support with specific details from the notes
-                            - If information is incomplete, mention what's missing
-                            """)
-                    .user("""
-                            User Question: {query}
+            long start = System.nanoTime();
 
-                            {notesContext}
+            // Prepare context from relevant notes
+            String notesContext = noteContextPacker.pack(query, relevantNotes);
 
-                            Please answer the user's question based on the notes provided above.
-                            Return ONLY the answer text without any additional formatting.
-                            """)
-                    .user(u -> u
-                            .param("query", query)
-                            .param("notesContext", notesContext))
-                    .options(OpenAiChatOptions.builder()
-                            .maxTokens(500)
-                            .temperature(0.3)
-                            .build())
+            int estimatedTokens = TextChunker.estimateTokens(query + notesContext) + PROMPT_OVERHEAD_TOKENS + 500;
+            String answer = chat(Priority.INTERACTIVE, estimatedTokens, () -> answerPrompt(query, notesContext)
                     .call()
-                    .content();
+                    .content());
+
+            answerCache.put(query, relevantNotes, answer, System.nanoTime() - start);
 
             log.info("Successfully generated answer (length: {} chars)", answer != null ? answer.length() : 0);
             return answer;
 
         } catch (Exception e) {
             log.error("Error generating answer from notes", e);
-            return "I encountered an error while processing your question. Please try again later.";
+            throw e;
         }
     }
 
-    private String prepareNotesContext(List<NoteQueryResponse> notes) {
-        StringBuilder context = new StringBuilder();
-        context.append("RELEVANT NOTES:\n");
-        context.append("===============\n\n");
+    /**
+     * Stream answer tokens for a query as they are generated by the LLM
+     * Uses the same prompt and answer cache as generateAnswerFromNotes (a cached
+     * answer is emitted as a single fragment)
+     *
+     * @param query         User question
+     * @param relevantNotes Notes found by similarity search (must not be empty)
+     * @return Answer text fragments in generation order
+     */
+    public Flux<String> streamAnswerFromNotes(String query, List<NoteSearchResult> relevantNotes) {
+        log.info("Streaming answer for query: '{}' with {} relevant notes", query, relevantNotes.size());
 
-        for (int i = 0; i < notes.size(); i++) {
-            NoteQueryResponse note = notes.get(i);
-            context.append(String.format("Note %d:\n", i + 1));
-            context.append(String.format("Title: %s\n", note.getTitle()));
+        String cached = answerCache.get(query, relevantNotes);
+        if (cached != null) {
+            return Flux.just(cached);
+        }
 
-            if (note.getTopic() != null) {
-                context.append(String.format("Topic: %s\n", note.getTopic().getName()));
-            }
+        String notesContext = noteContextPacker.pack(query, relevantNotes);
 
-            if (note.getAiSummary() != null && !note.getAiSummary().isEmpty()) {
-                context.append(String.format("Summary: %s\n", note.getAiSummary()));
-            }
+        // Cache the full answer once the stream completes successfully
+        StringBuilder answer = new StringBuilder();
+        long start = System.nanoTime();
 
-            if (note.getContent() != null && !note.getContent().isEmpty()) {
-                // Limit content length to avoid token overflow
-                String content = note.getContent();
-                context.append(String.format("Content: %s\n", content));
-            }
+        int estimatedTokens = TextChunker.estimateTokens(query + notesContext) + PROMPT_OVERHEAD_TOKENS + 500;
 
-            context.append("\n");
-        }
+        return llmAdmission.stream(Priority.INTERACTIVE, estimatedTokens,
+                () -> aiResilience.stream(AiResilience.OPENAI, answerPrompt(query, notesContext)
+                        .stream()
+                        .content()))
+                .doOnNext(answer::append)
+                .doOnComplete(() -> answerCache.put(query, relevantNotes, answer.toString(),
+                        System.nanoTime() - start));
+    }
+
+    /**
+     * Blocking chat call through admission control (rate limit, adaptive
+     * concurrency, priority) and the OpenAI timeout/bulkhead/breaker
+     */
+    private <T> T chat(Priority priority, int estimatedTokens, Supplier<T> call) {
+        return llmAdmission.call(priority, estimatedTokens, () -> aiResilience.call(AiResilience.OPENAI, call));
+    }
+
+    private ChatClient.ChatClientRequestSpec answerPrompt(String query, String notesContext) {
+        return mainChatClient.prompt()
+                .system("""
+                        You are an intelligent assistant helping users find information from their personal notes.
+                        Your task is to answer the user's question based ONLY on the provided notes context.
+
+                        IMPORTANT RULES:
+                        1. Use ONLY information from the provided notes
+                        2. If the notes don't contain enough information to answer, say so clearly
+                        3. Be concise and direct in your answer (2-4 sentences)
+                        4. Cite specific notes when referencing information
+                        5. If multiple notes have relevant info, synthesize them into a coherent answer
+                        6. Do NOT make up or infer information not present in the notes
+                        7. Maintain a helpful and professional tone
+
+                        RESPONSE FORMAT:
+                        - Start with a direct answer to the question
+                        - Support with specific details from the notes
+                        - If information is incomplete, mention what's missing
+                        """)
+                .user("""
+                        User Question: {query}
 
-        return context.toString();
+                        {notesContext}
+
+                        Please answer the user's question based on the notes provided above.
+                        Return ONLY the answer text without any additional formatting.
+                        """)
+                .user(u -> u
+                        .param("query", query)
+                        .param("notesContext", notesContext))
+                .options(OpenAiChatOptions.builder()
+                        .maxTokens(500)
+                        .temperature(0.3)
+                        .build());
     }
 
     /**
@@ -496,8 +632,11 @@ public class OpenAIService {
             String topicContext = topicName != null
                     ? String.format("Topic: %s\n", topicName)
                     : "";
+            // Long content (extracted documents) is cut to the prompt budget
+            String promptContent = promptExcerpt(content);
 
-            String summary = mainChatClient.prompt()
+            int estimatedTokens = TextChunker.estimateTokens(title + promptContent) + PROMPT_OVERHEAD_TOKENS + 150;
+            String summary = chat(Priority.BACKGROUND, estimatedTokens, () -> mainChatClient.prompt()
                     .system("""
                             You are an intelligent note summarization assistant.
                             Your task is to create a concise, informative summary of text note content.
@@ -533,18 +672,23 @@ public class OpenAIService {
                     .user(u -> u
                             .param("title", title)
                             .param("topicContext", topicContext)
-                            .param("content", content))
+                            .param("content", promptContent))
                     .options(OpenAiChatOptions.builder()
                             .maxTokens(150)
                             .temperature(0.3)
                             .build())
                     .call()
-                    .content();
+                    .content());
 
             log.info("Successfully generated summary (length: {} chars)", summary != null ? summary.length() : 0);
             return summary != null ? summary : "Summary generation failed";
 
         } catch (Exception e) {
+            if (LlmAdmissionController.isRetryable(e)) {
+                // Busy or rate limited: let the caller retry rather than store an error summary
+                log.warn("Summary generation deferred: {}", e.getMessage());
+                throw e;
+            }
             log.error("Error generating summary for text note", e);
             return "Error generating summary";
         }
@@ -0,0 +1,87 @@
+package app.notekeeper.external.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Splits long text into overlapping windows that fit the embedding model
+ * context
+ * Token counts are estimated (about 4 characters per token), which is close
+ * enough for sizing windows without shipping the model tokenizer
+ */
+@Component
+public class TextChunker {
+
+    @Value("${app.ai.chunking.max-tokens:512}")
+    private int maxTokens;
+
+    @Value("${app.ai.chunking.overlap-tokens:64}")
+    private int overlapTokens;
+
+    public record Chunk(int index, String text, int tokenCount) {
+    }
+
+    /**
+     * Split content into token windows, consecutive windows share up to
+     * overlapTokens tokens
+     *
+     * @param content Text content to split
+     * @return Chunks in reading order (empty for blank content)
+     */
+    public List<Chunk> chunk(String content) {
+        if (content == null || content.isBlank()) {
+            return List.of();
+        }
+
+        String[] words = content.trim().split("\\s+");
+        int[] tokens = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            tokens[i] = estimateTokens(words[i]);
+        }
+
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+
+        while (start < words.length) {
+            // Grow the window until the token budget is reached (always take one word)
+            int end = start;
+            int count = 0;
+            while (end < words.length && (end == start || count + tokens[end] <= maxTokens)) {
+                count += tokens[end];
+                end++;
+            }
+
+            chunks.add(new Chunk(chunks.size(), String.join(" ", Arrays.copyOfRange(words, start, end)), count));
+
+            if (end >= words.length) {
+                break;
+            }
+
+            // Step back so the next window repeats the tail of this one
+            int next = end;
+            int overlap = 0;
+            while (next > start + 1 && overlap + tokens[next - 1] <= overlapTokens) {
+                next--;
+                overlap += tokens[next];
+            }
+            start = next;
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Rough token estimate for a piece of text (about 4 characters per token)
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return Math.max(1, (text.length() + 3) / 4);
+    }
+
+}
@@ -0,0 +1,18 @@
+package app.notekeeper.model.dto.response;
+
+import java.util.UUID;
+
+import app.notekeeper.model.entity.Topic;
+
+/**
+ * Immutable copy of the topic fields used for classification, shared between
+ * threads by the topic catalog cache instead of detached entities
+ */
+public record CatalogTopic(UUID id, String name, String description, String aiSummary, boolean isDefault) {
+
+    public static CatalogTopic of(Topic topic) {
+        return new CatalogTopic(topic.getId(), topic.getName(), topic.getDescription(), topic.getAiSummary(),
+                topic.isDefault());
+    }
+
+}
@@ -0,0 +1,59 @@
+package app.notekeeper.model.dto.response;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import app.notekeeper.model.enums.NoteType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Flat note row returned by similarity search
+ * Owner and topic are joined in the search query, so no entity is loaded
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NoteSearchResult {
+
+    private UUID id;
+
+    private UUID ownerId;
+
+    private String ownerDisplayName;
+
+    private UUID topicId;
+
+    private String topicName;
+
+    private String title;
+
+    private String description;
+
+    private String content;
+
+    private String aiSummary;
+
+    private NoteType type;
+
+    private String fileUrl;
+
+    private ZonedDateTime createdAt;
+
+    private ZonedDateTime updatedAt;
+
+    /**
+     * Best cosine distance of the note (or its chunks) to the query, NaN when the
+     * note only matched the keyword search
+     */
+    private double distance;
+
+    /**
+     * Reciprocal rank fusion score of hybrid retrieval (higher is better)
+     */
+    private double score;
+
+}
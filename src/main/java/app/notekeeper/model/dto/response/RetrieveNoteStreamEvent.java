@@ -0,0 +1,72 @@
+package app.notekeeper.model.dto.response;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One server-sent event of a streamed retrieve response
+ * Sequence: one NOTES event, zero or more TOKEN events, then DONE (or ERROR)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "Streamed retrieve event")
+public class RetrieveNoteStreamEvent {
+
+    public enum Type {
+        NOTES, TOKEN, DONE, ERROR
+    }
+
+    @Schema(description = "Event type", example = "TOKEN")
+    private Type type;
+
+    @Schema(description = "Relevant notes (NOTES event only)")
+    private List<NoteResponse> relevantNotes;
+
+    @Schema(description = "Number of notes found (NOTES event only)", example = "3")
+    private Integer notesFound;
+
+    @Schema(description = "Answer text fragment (TOKEN event only)", example = "Based on your notes")
+    private String token;
+
+    @Schema(description = "Error message (ERROR event only)", example = "Failed to retrieve notes. Please try again.")
+    private String message;
+
+    public static RetrieveNoteStreamEvent notes(List<NoteResponse> relevantNotes) {
+        return RetrieveNoteStreamEvent.builder()
+                .type(Type.NOTES)
+                .relevantNotes(relevantNotes)
+                .notesFound(relevantNotes.size())
+                .build();
+    }
+
+    public static RetrieveNoteStreamEvent token(String token) {
+        return RetrieveNoteStreamEvent.builder()
+                .type(Type.TOKEN)
+                .token(token)
+                .build();
+    }
+
+    public static RetrieveNoteStreamEvent done() {
+        return RetrieveNoteStreamEvent.builder()
+                .type(Type.DONE)
+                .build();
+    }
+
+    public static RetrieveNoteStreamEvent error(String message) {
+        return RetrieveNoteStreamEvent.builder()
+                .type(Type.ERROR)
+                .message(message)
+                .build();
+    }
+
+}
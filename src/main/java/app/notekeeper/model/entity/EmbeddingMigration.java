@@ -0,0 +1,70 @@
+package app.notekeeper.model.entity;
+
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+import app.notekeeper.model.enums.EmbeddingMigrationStatus;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Re-embedding run from one embedding model to another
+ * lastNoteId is the keyset cursor of the current pass
+ */
+@Entity
+@Table(name = "embedding_migrations")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmbeddingMigration extends BaseEntity {
+
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Column(name = "source_model")
+    private String sourceModel;
+
+    @Column(name = "target_model", nullable = false)
+    private String targetModel;
+
+    @Column(name = "dimensions")
+    private Integer dimensions;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    @Builder.Default
+    private EmbeddingMigrationStatus status = EmbeddingMigrationStatus.RUNNING;
+
+    @Column(name = "last_note_id")
+    private UUID lastNoteId;
+
+    @Column(name = "processed_notes", nullable = false)
+    @Builder.Default
+    private long processedNotes = 0;
+
+    @Column(name = "locked_by", length = 100)
+    private String lockedBy;
+
+    @Column(name = "locked_at")
+    private ZonedDateTime lockedAt;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "completed_at")
+    private ZonedDateTime completedAt;
+
+}
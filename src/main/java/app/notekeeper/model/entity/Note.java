@@ -2,8 +2,11 @@ package app.notekeeper.model.entity;
 
 import java.util.UUID;
 
+import org.hibernate.annotations.Type;
+
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import app.notekeeper.common.persistence.PgVectorType;
 import app.notekeeper.model.enums.NoteType;
 import jakarta.persistence.Basic;
 import jakarta.persistence.Column;
@@ -63,6 +66,7 @@ public class Note extends BaseEntity {
     private String fileUrl;
 
     @Column(name = "embedding", columnDefinition = "vector(768)")
+    @Type(PgVectorType.class)
     @Basic(fetch = FetchType.LAZY)
     @JsonIgnore
     private float[] embedding;
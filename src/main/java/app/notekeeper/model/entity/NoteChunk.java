@@ -0,0 +1,65 @@
+package app.notekeeper.model.entity;
+
+import java.util.UUID;
+
+import org.hibernate.annotations.Type;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import app.notekeeper.common.persistence.PgVectorType;
+import jakarta.persistence.Basic;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Token window of a note's content with its own embedding
+ * Note and owner are stored as plain IDs to keep chunk writes and searches
+ * free of entity loading
+ */
+@Entity
+@Table(name = "note_chunks")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NoteChunk extends BaseEntity {
+
+    @Id
+    @GeneratedValue
+    private UUID id;
+
+    @Column(name = "note_id", nullable = false)
+    private UUID noteId;
+
+    @Column(name = "owner_id", nullable = false)
+    private UUID ownerId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private int chunkIndex;
+
+    @Column(name = "content", nullable = false, columnDefinition = "TEXT")
+    private String content;
+
+    @Column(name = "token_count", nullable = false)
+    private int tokenCount;
+
+    @Column(name = "embedding", columnDefinition = "vector(768)")
+    @Type(PgVectorType.class)
+    @Basic(fetch = FetchType.LAZY)
+    @JsonIgnore
+    private float[] embedding;
+
+    @Column(name = "embedding_model")
+    private String embeddingModel;
+
+}
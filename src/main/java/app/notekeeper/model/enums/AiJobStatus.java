@@ -0,0 +1,7 @@
+package app.notekeeper.model.enums;
+
+public enum AiJobStatus {
+    PENDING,
+    RUNNING,
+    DEAD
+}
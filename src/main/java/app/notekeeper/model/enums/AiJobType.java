@@ -0,0 +1,5 @@
+package app.notekeeper.model.enums;
+
+public enum AiJobType {
+    PROCESS_NOTE
+}
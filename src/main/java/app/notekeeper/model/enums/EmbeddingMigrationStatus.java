@@ -0,0 +1,8 @@
+package app.notekeeper.model.enums;
+
+public enum EmbeddingMigrationStatus {
+    RUNNING,
+    BLOCKED,
+    COMPLETED,
+    SUPERSEDED
+}
@@ -0,0 +1,70 @@
+package app.notekeeper.repository;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.notekeeper.model.entity.AiJob;
+import app.notekeeper.model.enums.AiJobStatus;
+
+@Repository
+public interface AiJobRepository extends JpaRepository<AiJob, UUID> {
+
+        /**
+         * Lock the next due jobs for this worker, rows locked by other workers are
+         * skipped
+         * Also picks up RUNNING jobs whose lease expired (worker crashed mid-job)
+         * Must be called inside a transaction, the lock is held until commit
+         */
+        @Query(value = "SELECT * FROM ai_jobs " +
+                        "WHERE (status = 'PENDING' AND next_attempt_at <= :now) " +
+                        "OR (status = 'RUNNING' AND locked_at < :staleBefore) " +
+                        "ORDER BY next_attempt_at " +
+                        "LIMIT :limit " +
+                        "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+        List<AiJob> lockNextBatch(@Param("now") ZonedDateTime now,
+                        @Param("staleBefore") ZonedDateTime staleBefore,
+                        @Param("limit") int limit);
+
+        /**
+         * Restart the lease when a claimed job actually starts running, only if this
+         * worker still holds it
+         * Returns 0 when the lease expired while the job was queued and another
+         * worker took it over
+         */
+        @Modifying
+        @Query("UPDATE AiJob j SET j.lockedAt = :now "
+                        + "WHERE j.id = :jobId AND j.lockedBy = :workerId "
+                        + "AND j.status = app.notekeeper.model.enums.AiJobStatus.RUNNING")
+        int renewLease(@Param("jobId") UUID jobId, @Param("workerId") String workerId,
+                        @Param("now") ZonedDateTime now);
+
+        /**
+         * Remove a finished job, only if this worker still holds it
+         */
+        @Modifying
+        @Query("DELETE FROM AiJob j WHERE j.id = :jobId AND j.lockedBy = :workerId")
+        int deleteCompleted(@Param("jobId") UUID jobId, @Param("workerId") String workerId);
+
+        /**
+         * Put a job back to PENDING (retry) or DEAD (poison job), only if this worker
+         * still holds it
+         */
+        @Modifying
+        @Query("UPDATE AiJob j SET j.status = :status, j.attempts = :attempts, j.nextAttemptAt = :nextAttemptAt, "
+                        + "j.lastError = :lastError, j.lockedBy = null, j.lockedAt = null "
+                        + "WHERE j.id = :jobId AND j.lockedBy = :workerId")
+        int release(@Param("jobId") UUID jobId, @Param("workerId") String workerId,
+                        @Param("status") AiJobStatus status, @Param("attempts") int attempts,
+                        @Param("nextAttemptAt") ZonedDateTime nextAttemptAt,
+                        @Param("lastError") String lastError);
+
+        long countByStatus(AiJobStatus status);
+
+}
@@ -0,0 +1,80 @@
+package app.notekeeper.repository;
+
+import java.time.ZonedDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.notekeeper.model.entity.EmbeddingMigration;
+import app.notekeeper.model.enums.EmbeddingMigrationStatus;
+
+@Repository
+public interface EmbeddingMigrationRepository
+                extends JpaRepository<EmbeddingMigration, UUID>, EmbeddingMigrationRepositoryCustom {
+
+        /**
+         * Latest run with the given status, the latest COMPLETED one names the
+         * active embedding model
+         */
+        Optional<EmbeddingMigration> findFirstByStatusOrderByCompletedAtDesc(EmbeddingMigrationStatus status);
+
+        /**
+         * Latest run still open (RUNNING or BLOCKED)
+         */
+        Optional<EmbeddingMigration> findFirstByStatusInOrderByCreatedAtDesc(
+                        Collection<EmbeddingMigrationStatus> statuses);
+
+        /**
+         * Lock a running migration for this worker, unless another worker holds a
+         * live lease
+         * Must be called inside a transaction, the lock is held until commit
+         */
+        @Query(value = "SELECT * FROM embedding_migrations " +
+                        "WHERE id = :id AND status = 'RUNNING' " +
+                        "AND (locked_by IS NULL OR locked_by = :workerId OR locked_at < :staleBefore) " +
+                        "FOR UPDATE SKIP LOCKED", nativeQuery = true)
+        Optional<EmbeddingMigration> lockForWorker(@Param("id") UUID id,
+                        @Param("workerId") String workerId,
+                        @Param("staleBefore") ZonedDateTime staleBefore);
+
+        /**
+         * Move the keyset cursor after a staged batch, only while this worker holds
+         * the lease
+         *
+         * @return 0 when the lease was lost
+         */
+        @Modifying
+        @Query("UPDATE EmbeddingMigration m SET m.lastNoteId = :lastNoteId, " +
+                        "m.processedNotes = m.processedNotes + :staged, m.lockedAt = :now, m.lastError = null " +
+                        "WHERE m.id = :id AND m.lockedBy = :workerId")
+        int advance(@Param("id") UUID id, @Param("workerId") String workerId,
+                        @Param("lastNoteId") UUID lastNoteId, @Param("staged") long staged,
+                        @Param("now") ZonedDateTime now);
+
+        /**
+         * Whether a run towards another model was started after the latest run
+         * towards this one (the model was migrated away from or abandoned), false
+         * for a model no run ever targeted
+         */
+        @Query("SELECT COUNT(m) > 0 FROM EmbeddingMigration m WHERE m.targetModel <> :model " +
+                        "AND m.createdAt > (SELECT MAX(t.createdAt) FROM EmbeddingMigration t " +
+                        "WHERE t.targetModel = :model)")
+        boolean isRetiredModel(@Param("model") String model);
+
+        /**
+         * Close open runs towards another model (the configured model changed again)
+         */
+        @Modifying
+        @Query("UPDATE EmbeddingMigration m SET m.status = :superseded, m.lockedBy = null, m.lockedAt = null " +
+                        "WHERE m.status IN :open AND m.targetModel <> :targetModel")
+        int supersedeOthers(@Param("targetModel") String targetModel,
+                        @Param("open") Collection<EmbeddingMigrationStatus> open,
+                        @Param("superseded") EmbeddingMigrationStatus superseded);
+
+}
@@ -0,0 +1,86 @@
+package app.notekeeper.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Re-embedding reads, staging writes and cutover implemented with plain JDBC
+ * (see EmbeddingMigrationRepositoryCustomImpl)
+ */
+public interface EmbeddingMigrationRepositoryCustom {
+
+        /**
+         * Note whose embedding has to be regenerated
+         */
+        record NoteToEmbed(UUID id, UUID ownerId, String content) {
+        }
+
+        /**
+         * Chunk of a note embedded with the target model
+         */
+        record StagedChunk(int chunkIndex, String content, int tokenCount, float[] embedding) {
+        }
+
+        /**
+         * Note embedded with the target model, content is the text the chunks were
+         * built from (the note is skipped if it changed meanwhile)
+         */
+        record StagedNote(UUID noteId, UUID ownerId, String content, float[] embedding, List<StagedChunk> chunks) {
+        }
+
+        /**
+         * Note the target model failed on, content is the text that was read
+         */
+        record FailedNote(UUID noteId, String content, String error) {
+        }
+
+        /**
+         * Next notes in ID order after the cursor whose live embedding is missing,
+         * unlabelled or not from the target model and that are not staged for it
+         * yet (blank notes, notes with a queued AI job and notes whose current
+         * content failed maxAttempts times are skipped)
+         *
+         * @param afterId Keyset cursor, null to start a pass
+         */
+        List<NoteToEmbed> findNotesToEmbed(String targetModel, int maxAttempts, UUID afterId, int limit);
+
+        /**
+         * Write staged note and chunk embeddings in JDBC batches, notes whose
+         * content changed since it was read are left out
+         * Must be called inside a transaction
+         *
+         * @return Number of notes staged
+         */
+        int stage(String targetModel, List<StagedNote> notes);
+
+        /**
+         * Count a failed attempt per note, the count starts again when the content
+         * changed since the last failure
+         * Must be called inside a transaction
+         */
+        void recordFailures(String targetModel, List<FailedNote> notes);
+
+        /**
+         * Notes without an embedding of the target model whose current content
+         * failed maxAttempts times (left out of the run)
+         */
+        List<UUID> findSkippedNotes(String targetModel, int maxAttempts);
+
+        /**
+         * Drop staged embeddings of other models
+         */
+        void clearStaging(String targetModel);
+
+        /**
+         * Swap staged embeddings into the live columns if every embeddable note is
+         * staged, already on the target model or skipped (see findSkippedNotes),
+         * skipped notes are left without embedding
+         * Note writes are blocked (table lock) until the surrounding transaction
+         * commits, reads keep working
+         * Must be called inside a transaction
+         *
+         * @return false when notes still need embedding (nothing changed)
+         */
+        boolean cutover(String targetModel, int maxAttempts);
+
+}
@@ -0,0 +1,217 @@
+package app.notekeeper.repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import app.notekeeper.common.persistence.PgVectorType;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Staging tables are written with JDBC batches and binary vector binding, the
+ * cutover is a handful of set-based statements under a table lock so search
+ * never sees a mix of old and new vectors
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class EmbeddingMigrationRepositoryCustomImpl implements EmbeddingMigrationRepositoryCustom {
+
+        // Same content failed too often, an edit gives the note another chance
+        private static final String SKIPPED_QUERY = "SELECT 1 FROM note_embedding_failures f " +
+                        "WHERE f.note_id = n.id AND f.embedding_model = ? " +
+                        "AND f.content_hash = md5(n.content) AND f.attempts >= ?";
+
+        // Missing and unlabelled (pre-tracking) embeddings count as pending too, notes
+        // with a queued AI job are left to it. Parameters: target model (3 times),
+        // max attempts
+        private static final String PENDING_CONDITION = "n.content IS NOT NULL AND btrim(n.content) <> '' " +
+                        "AND n.embedding_model IS DISTINCT FROM ? " +
+                        "AND n.staged_embedding_model IS DISTINCT FROM ? " +
+                        "AND NOT EXISTS (SELECT 1 FROM ai_jobs j WHERE j.note_id = n.id " +
+                        "AND j.status IN ('PENDING', 'RUNNING')) " +
+                        "AND NOT EXISTS (" + SKIPPED_QUERY + ")";
+
+        private final JdbcTemplate jdbcTemplate;
+
+        @Override
+        public List<NoteToEmbed> findNotesToEmbed(String targetModel, int maxAttempts, UUID afterId, int limit) {
+                String sql = "SELECT n.id, n.owner_id, n.content FROM notes n WHERE " + PENDING_CONDITION +
+                                (afterId != null ? " AND n.id > ?" : "") +
+                                " ORDER BY n.id LIMIT ?";
+
+                return jdbcTemplate.query(sql, ps -> {
+                        int index = 1;
+                        ps.setString(index++, targetModel);
+                        ps.setString(index++, targetModel);
+                        ps.setString(index++, targetModel);
+                        ps.setInt(index++, maxAttempts);
+                        if (afterId != null) {
+                                ps.setObject(index++, afterId);
+                        }
+                        ps.setInt(index, limit);
+                }, (rs, rowNum) -> new NoteToEmbed(
+                                rs.getObject(1, UUID.class),
+                                rs.getObject(2, UUID.class),
+                                rs.getString(3)));
+        }
+
+        @Override
+        public int stage(String targetModel, List<StagedNote> notes) {
+                if (notes.isEmpty()) {
+                        return 0;
+                }
+
+                // Mark the notes first, the row locks keep live edits out until commit and
+                // the content check drops notes edited since they were read
+                int[] marked = jdbcTemplate.batchUpdate(
+                                "UPDATE notes SET staged_embedding = ?, staged_embedding_model = ? " +
+                                                "WHERE id = ? AND content = ?",
+                                new BatchPreparedStatementSetter() {
+                                        @Override
+                                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                                                StagedNote note = notes.get(i);
+                                                PgVectorType.bind(ps, 1, note.embedding());
+                                                ps.setString(2, targetModel);
+                                                ps.setObject(3, note.noteId());
+                                                ps.setString(4, note.content());
+                                        }
+
+                                        @Override
+                                        public int getBatchSize() {
+                                                return notes.size();
+                                        }
+                                });
+
+                List<StagedNote> staged = new ArrayList<>();
+                for (int i = 0; i < notes.size(); i++) {
+                        if (marked[i] != 0) {
+                                staged.add(notes.get(i));
+                        }
+                }
+                if (staged.size() < notes.size()) {
+                        log.info("{} notes changed while being re-embedded, left for the next pass",
+                                        notes.size() - staged.size());
+                }
+                if (staged.isEmpty()) {
+                        return 0;
+                }
+
+                jdbcTemplate.batchUpdate("DELETE FROM note_chunks_staging WHERE note_id = ?", staged, staged.size(),
+                                (ps, note) -> ps.setObject(1, note.noteId()));
+
+                List<Object[]> chunkRows = new ArrayList<>();
+                for (StagedNote note : staged) {
+                        for (StagedChunk chunk : note.chunks()) {
+                                chunkRows.add(new Object[] { note, chunk });
+                        }
+                }
+                jdbcTemplate.batchUpdate(
+                                "INSERT INTO note_chunks_staging " +
+                                                "(note_id, owner_id, chunk_index, content, token_count, embedding, embedding_model) "
+                                                +
+                                                "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                                chunkRows, chunkRows.size(), (ps, row) -> {
+                                        StagedNote note = (StagedNote) row[0];
+                                        StagedChunk chunk = (StagedChunk) row[1];
+                                        ps.setObject(1, note.noteId());
+                                        ps.setObject(2, note.ownerId());
+                                        ps.setInt(3, chunk.chunkIndex());
+                                        ps.setString(4, chunk.content());
+                                        ps.setInt(5, chunk.tokenCount());
+                                        PgVectorType.bind(ps, 6, chunk.embedding());
+                                        ps.setString(7, targetModel);
+                                });
+
+                return staged.size();
+        }
+
+        @Override
+        public void recordFailures(String targetModel, List<FailedNote> notes) {
+                if (notes.isEmpty()) {
+                        return;
+                }
+
+                jdbcTemplate.batchUpdate("INSERT INTO note_embedding_failures " +
+                                "(note_id, embedding_model, content_hash, last_error) VALUES (?, ?, md5(?), ?) " +
+                                "ON CONFLICT (note_id, embedding_model) DO UPDATE SET " +
+                                "attempts = CASE WHEN note_embedding_failures.content_hash = EXCLUDED.content_hash " +
+                                "THEN note_embedding_failures.attempts + 1 ELSE 1 END, " +
+                                "content_hash = EXCLUDED.content_hash, last_error = EXCLUDED.last_error, " +
+                                "failed_at = NOW()",
+                                notes, notes.size(), (ps, note) -> {
+                                        ps.setObject(1, note.noteId());
+                                        ps.setString(2, targetModel);
+                                        ps.setString(3, note.content());
+                                        ps.setString(4, note.error());
+                                });
+        }
+
+        @Override
+        public List<UUID> findSkippedNotes(String targetModel, int maxAttempts) {
+                return jdbcTemplate.query("SELECT n.id FROM notes n WHERE n.embedding_model IS DISTINCT FROM ? " +
+                                "AND EXISTS (" + SKIPPED_QUERY + ") ORDER BY n.id",
+                                (rs, rowNum) -> rs.getObject(1, UUID.class), targetModel, targetModel, maxAttempts);
+        }
+
+        @Override
+        public void clearStaging(String targetModel) {
+                int chunks = jdbcTemplate.update(
+                                "DELETE FROM note_chunks_staging WHERE embedding_model IS DISTINCT FROM ?", targetModel);
+                int notes = jdbcTemplate.update(
+                                "UPDATE notes SET staged_embedding = NULL, staged_embedding_model = NULL " +
+                                                "WHERE staged_embedding_model IS NOT NULL " +
+                                                "AND staged_embedding_model IS DISTINCT FROM ?",
+                                targetModel);
+                log.info("Cleared staged embeddings of other models ({} notes, {} chunks)", notes, chunks);
+        }
+
+        @Override
+        public boolean cutover(String targetModel, int maxAttempts) {
+                // Blocks note writes (and other cutovers) until commit, plain reads go on
+                jdbcTemplate.execute("LOCK TABLE notes IN SHARE ROW EXCLUSIVE MODE");
+
+                Integer pending = jdbcTemplate.queryForObject(
+                                "SELECT COUNT(*) FROM notes n WHERE " + PENDING_CONDITION, Integer.class,
+                                targetModel, targetModel, targetModel, maxAttempts);
+                if (pending != null && pending > 0) {
+                        log.info("Cutover to {} postponed, {} notes still need embedding", targetModel, pending);
+                        return false;
+                }
+
+                jdbcTemplate.update("DELETE FROM note_chunks c USING notes n " +
+                                "WHERE c.note_id = n.id AND n.staged_embedding_model = ?", targetModel);
+                int chunks = jdbcTemplate.update("INSERT INTO note_chunks " +
+                                "(note_id, owner_id, chunk_index, content, token_count, embedding, embedding_model) " +
+                                "SELECT s.note_id, s.owner_id, s.chunk_index, s.content, s.token_count, s.embedding, s.embedding_model "
+                                +
+                                "FROM note_chunks_staging s JOIN notes n ON n.id = s.note_id " +
+                                "WHERE n.staged_embedding_model = ? AND s.embedding_model = ?",
+                                targetModel, targetModel);
+                int notes = jdbcTemplate.update("UPDATE notes SET embedding = staged_embedding, " +
+                                "embedding_model = staged_embedding_model, " +
+                                "embedding_dimensions = vector_dims(staged_embedding), " +
+                                "staged_embedding = NULL, staged_embedding_model = NULL " +
+                                "WHERE staged_embedding_model = ?", targetModel);
+
+                // Leftovers of the old model (notes emptied meanwhile) would not be
+                // comparable with new query embeddings
+                int dropped = jdbcTemplate.update("UPDATE notes SET embedding = NULL, embedding_model = NULL, " +
+                                "embedding_dimensions = NULL WHERE embedding IS NOT NULL " +
+                                "AND embedding_model IS DISTINCT FROM ?", targetModel);
+                jdbcTemplate.update("DELETE FROM note_chunks WHERE embedding_model IS DISTINCT FROM ?", targetModel);
+                jdbcTemplate.update("DELETE FROM note_chunks_staging");
+                jdbcTemplate.update("DELETE FROM note_embedding_failures WHERE embedding_model IS DISTINCT FROM ?",
+                                targetModel);
+
+                log.info("Cutover to {}: {} notes and {} chunks swapped in, {} stale embeddings dropped",
+                                targetModel, notes, chunks, dropped);
+                return true;
+        }
+
+}
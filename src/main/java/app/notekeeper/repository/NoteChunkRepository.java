@@ -0,0 +1,37 @@
+package app.notekeeper.repository;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import app.notekeeper.model.entity.NoteChunk;
+
+@Repository
+public interface NoteChunkRepository extends JpaRepository<NoteChunk, UUID> {
+
+    /**
+     * Stored chunks of a note in content order
+     */
+    List<NoteChunk> findByNoteIdOrderByChunkIndex(UUID noteId);
+
+    /**
+     * Delete all chunks of a note before writing the re-chunked content
+     */
+    @Modifying
+    @Query("DELETE FROM NoteChunk c WHERE c.noteId = :noteId")
+    void deleteByNoteId(@Param("noteId") UUID noteId);
+
+    /**
+     * Delete staged re-embedding chunks of a note whose content was re-embedded
+     * live
+     */
+    @Modifying
+    @Query(value = "DELETE FROM note_chunks_staging WHERE note_id = :noteId", nativeQuery = true)
+    void deleteStagedByNoteId(@Param("noteId") UUID noteId);
+
+}
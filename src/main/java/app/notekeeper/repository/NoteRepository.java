@@ -18,7 +18,7 @@ import app.notekeeper.model.entity.Topic;
 import app.notekeeper.model.enums.NoteType;
 
 @Repository
-public interface NoteRepository extends JpaRepository<Note, UUID> {
+public interface NoteRepository extends JpaRepository<Note, UUID>, NoteRepositoryCustom {
 
         /**
          * Find note by ID without loading embedding field (using projection)
@@ -71,6 +71,16 @@ public interface NoteRepository extends JpaRepository<Note, UUID> {
         @Query("UPDATE Note n SET n.embedding = :embedding WHERE n.id = :noteId")
         void updateEmbedding(@Param("noteId") UUID noteId, @Param("embedding") float[] embedding);
 
+        /**
+         * Record the model of a freshly stored embedding, a staged re-embedding of
+         * the old content is dropped
+         */
+        @Modifying
+        @Query(value = "UPDATE notes SET embedding_model = :model, embedding_dimensions = :dimensions, " +
+                        "staged_embedding = NULL, staged_embedding_model = NULL WHERE id = :noteId", nativeQuery = true)
+        void updateEmbeddingModel(@Param("noteId") UUID noteId, @Param("model") String model,
+                        @Param("dimensions") int dimensions);
+
         /**
          * Update note title and content (for TEXT notes only)
          * Avoids loading full entity with embedding
@@ -119,25 +129,14 @@ public interface NoteRepository extends JpaRepository<Note, UUID> {
                         @Param("embedding") float[] embedding);
 
         /**
-         * Find similar notes using vector similarity search (cosine distance)
-         * Returns notes with similarity >= 0.7 (distance <= 0.6), ordered by similarity
-         * (most similar first)
-         * Note: cosine distance <=> returns 0-2, where 0=identical, 2=opposite
-         * Similarity = 1 - (distance/2), so distance <= 0.6 means similarity >= 0.7
+         * Mean embedding and note count per topic of an owner (pgvector AVG), used to
+         * build topic centroids
+         * Returns rows of: topic_id, mean embedding as text '[x,y,...]', note count
          */
-        @Query(value = "SELECT n.id, n.owner_id, n.topic_id, n.title, n.description, n.content, n.ai_summary, n.type, n.file_url, n.created_at, n.updated_at "
-                        +
+        @Query(value = "SELECT n.topic_id, CAST(AVG(n.embedding) AS text), COUNT(*) " +
                         "FROM notes n " +
-                        "WHERE n.owner_id = :ownerId " +
-                        "AND (:topicId IS NULL OR n.topic_id = :topicId) " +
-                        "AND n.embedding IS NOT NULL " +
-                        "AND (n.embedding <=> CAST(:queryEmbedding AS vector)) <= 0.6 " +
-                        "ORDER BY n.embedding <=> CAST(:queryEmbedding AS vector) " +
-                        "LIMIT :limit", nativeQuery = true)
-        List<Object[]> findSimilarNotes(
-                        @Param("ownerId") UUID ownerId,
-                        @Param("topicId") UUID topicId,
-                        @Param("queryEmbedding") String queryEmbedding,
-                        @Param("limit") int limit);
+                        "WHERE n.owner_id = :ownerId AND n.topic_id IS NOT NULL AND n.embedding IS NOT NULL " +
+                        "GROUP BY n.topic_id", nativeQuery = true)
+        List<Object[]> findTopicEmbeddingStats(@Param("ownerId") UUID ownerId);
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package app.notekeeper.repository;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+
+/**
+ * Note queries implemented with plain JDBC (see NoteRepositoryCustomImpl)
+ */
+public interface NoteRepositoryCustom {
+
+        /**
+         * Find similar notes using vector similarity search (cosine distance)
+         * Each note is scored by its best matching chunk (notes without chunks fall
+         * back to the note-level embedding)
+         * Returns notes with similarity >= 0.7 (distance <= 0.6), ordered by similarity
+         * (most similar first)
+         * Note: cosine distance <=> returns 0-2, where 0=identical, 2=opposite
+         * Similarity = 1 - (distance/2), so distance <= 0.6 means similarity >= 0.7
+         * Owner display name and topic name are joined in the same query
+         * Approximate (HNSW): each index scan contributes up to candidate-limit rows
+         */
+        List<NoteSearchResult> findSimilarNotes(UUID ownerId, UUID topicId, float[] queryEmbedding, int limit);
+
+        /**
+         * Full-text search over title, description, content and AI summary
+         * (generated search_vector column, websearch query syntax), ordered by
+         * ts_rank_cd. Distance is NaN on these rows
+         */
+        List<NoteSearchResult> findKeywordMatches(UUID ownerId, UUID topicId, String query, int limit);
+
+        /**
+         * Load flat search rows by note IDs (distance is 0), used to hydrate hits of
+         * an in-process vector index
+         */
+        List<NoteSearchResult> findSearchResultsByIds(List<UUID> noteIds);
+
+        /**
+         * Stream all embeddings searchable for an owner: chunk embeddings plus
+         * note-level embeddings of notes without chunks
+         *
+         * @param consumer Receives (note ID, embedding) per row
+         */
+        void forEachOwnerEmbedding(UUID ownerId, BiConsumer<UUID, float[]> consumer);
+
+        /**
+         * Opaque marker that changes whenever the owner's stored embeddings change
+         * (chunk count/latest chunk, embedded note count/latest note update)
+         */
+        String findEmbeddingWatermark(UUID ownerId);
+
+}
@@ -0,0 +1,270 @@
+package app.notekeeper.repository;
+
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.annotation.Transactional;
+
+import app.notekeeper.common.persistence.PgVectorType;
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import app.notekeeper.model.enums.NoteType;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Vector search runs on JdbcTemplate so the query embedding is bound as a
+ * binary pgvector parameter instead of a formatted string cast server-side
+ * Owner and topic are joined in, results are mapped to flat rows in one round
+ * trip
+ * HNSW search parameters (hnsw.ef_search, hnsw.iterative_scan) are set with
+ * SET LOCAL in the search transaction, other connections keep the defaults
+ */
+@RequiredArgsConstructor
+public class NoteRepositoryCustomImpl implements NoteRepositoryCustom {
+
+        private static final String SEARCH_RESULT_COLUMNS = "n.id, n.owner_id, u.display_name, n.topic_id, t.name, n.title, n.description, n.content, n.ai_summary, n.type, n.file_url, n.created_at, n.updated_at";
+
+        private static final RowMapper<NoteSearchResult> SEARCH_RESULT_ROW_MAPPER = (rs, rowNum) -> NoteSearchResult
+                        .builder()
+                        .id(rs.getObject(1, UUID.class))
+                        .ownerId(rs.getObject(2, UUID.class))
+                        .ownerDisplayName(rs.getString(3))
+                        .topicId(rs.getObject(4, UUID.class))
+                        .topicName(rs.getString(5))
+                        .title(rs.getString(6))
+                        .description(rs.getString(7))
+                        .content(rs.getString(8))
+                        .aiSummary(rs.getString(9))
+                        .type(NoteType.valueOf(rs.getString(10)))
+                        .fileUrl(rs.getString(11))
+                        .createdAt(toZonedDateTime(rs.getTimestamp(12)))
+                        .updatedAt(toZonedDateTime(rs.getTimestamp(13)))
+                        .distance(rs.getDouble(14))
+                        .build();
+
+        /**
+         * Must match the expression of the halfvec HNSW indexes, formatted with the
+         * table alias and the embedding dimensions
+         */
+        private static final String HALFVEC_ORDER = "CAST(%1$s.embedding AS halfvec(%2$d)) <=> CAST(? AS halfvec(%2$d))";
+
+        private static final Set<String> ITERATIVE_SCAN_MODES = Set.of("off", "strict_order", "relaxed_order");
+
+        private final JdbcTemplate jdbcTemplate;
+
+        /**
+         * Nearest rows taken from each HNSW index scan before grouping by note
+         */
+        @Value("${app.ai.search.candidate-limit:40}")
+        private int candidateLimit;
+
+        /**
+         * Chunk rows scanned per candidate note, several chunks of one note can
+         * sit next to the query and would otherwise take all candidate slots
+         */
+        @Value("${app.ai.search.chunk-overfetch:4}")
+        private int chunkOverfetch;
+
+        @Value("${app.ai.search.hnsw.ef-search:80}")
+        private int efSearch;
+
+        /**
+         * off, strict_order or relaxed_order, empty to leave the server default
+         * (pgvector < 0.8 has no iterative scan)
+         */
+        @Value("${app.ai.search.hnsw.iterative-scan:relaxed_order}")
+        private String iterativeScan;
+
+        /**
+         * none: scan the full-precision indexes, halfvec: scan the half-precision
+         * expression indexes (R__vector_index_quantization) and re-rank candidates
+         * with full-precision distance
+         */
+        @Value("${app.ai.search.quantization:none}")
+        private String quantization;
+
+        @Value("${app.ai.embedding.dimensions:768}")
+        private int dimensions;
+
+        /**
+         * Text search configuration whose stopword list is dropped from keyword
+         * queries (the index itself uses 'simple')
+         */
+        @Value("${app.ai.search.keyword-stopwords:english}")
+        private String keywordStopwords;
+
+        /**
+         * Candidate multiplier when scanning quantized indexes, compensates recall
+         * lost to quantization before the full-precision re-rank
+         */
+        @Value("${app.ai.search.rerank-factor:2}")
+        private int rerankFactor;
+
+        @Override
+        @Transactional(readOnly = true)
+        public List<NoteSearchResult> findSimilarNotes(UUID ownerId, UUID topicId, float[] queryEmbedding, int limit) {
+                // Each branch is an ORDER BY distance LIMIT scan so it can use the HNSW index,
+                // owner/topic filters are applied during the (iterative) index scan.
+                // The selected distance is always full precision, so with quantization the
+                // outer ORDER BY re-ranks the compact-index candidates. The chunk branch
+                // over-fetches and GROUP BY keeps each note's best chunk, so the limit
+                // counts notes rather than chunks
+                boolean quantized = "halfvec".equalsIgnoreCase(quantization);
+                applySearchSettings();
+                String chunkOrder = quantized ? HALFVEC_ORDER.formatted("c", dimensions) : "c.embedding <=> ?";
+                String noteOrder = quantized ? HALFVEC_ORDER.formatted("e", dimensions) : "e.embedding <=> ?";
+
+                String sql = "SELECT " + SEARCH_RESULT_COLUMNS + ", best.distance " +
+                                "FROM (" +
+                                "  SELECT s.note_id, MIN(s.distance) AS distance FROM (" +
+                                "    (SELECT c.note_id, c.embedding <=> ? AS distance " +
+                                "    FROM note_chunks c " +
+                                "    WHERE c.owner_id = ? AND c.embedding IS NOT NULL " +
+                                (topicId != null ? "    AND c.note_id IN (SELECT x.id FROM notes x WHERE x.topic_id = ?) " : "") +
+                                "    ORDER BY " + chunkOrder + " LIMIT ?) " +
+                                "    UNION ALL " +
+                                "    (SELECT e.id, e.embedding <=> ? " +
+                                "    FROM notes e " +
+                                "    WHERE e.owner_id = ? AND e.embedding IS NOT NULL " +
+                                (topicId != null ? "    AND e.topic_id = ? " : "") +
+                                "    AND NOT EXISTS (SELECT 1 FROM note_chunks x WHERE x.note_id = e.id) " +
+                                "    ORDER BY " + noteOrder + " LIMIT ?)" +
+                                "  ) s GROUP BY s.note_id" +
+                                ") best " +
+                                "JOIN notes n ON n.id = best.note_id " +
+                                "JOIN users u ON u.id = n.owner_id " +
+                                "LEFT JOIN topics t ON t.id = n.topic_id " +
+                                "WHERE best.distance <= 0.6 " +
+                                "ORDER BY best.distance LIMIT ?";
+
+                int candidates = Math.max(candidateLimit, limit) * (quantized ? rerankFactor : 1);
+                int chunkCandidates = candidates * Math.max(chunkOverfetch, 1);
+
+                return jdbcTemplate.query(sql, ps -> {
+                        int index = 1;
+                        // Chunk branch
+                        PgVectorType.bind(ps, index++, queryEmbedding);
+                        ps.setObject(index++, ownerId);
+                        if (topicId != null) {
+                                ps.setObject(index++, topicId);
+                        }
+                        PgVectorType.bind(ps, index++, queryEmbedding);
+                        ps.setInt(index++, chunkCandidates);
+                        // Note-level branch
+                        PgVectorType.bind(ps, index++, queryEmbedding);
+                        ps.setObject(index++, ownerId);
+                        if (topicId != null) {
+                                ps.setObject(index++, topicId);
+                        }
+                        PgVectorType.bind(ps, index++, queryEmbedding);
+                        ps.setInt(index++, candidates);
+                        ps.setInt(index, limit);
+                }, SEARCH_RESULT_ROW_MAPPER);
+        }
+
+        /**
+         * SET LOCAL only lasts until the end of the current transaction, so pooled
+         * connections (and Flyway's) keep the server defaults
+         */
+        private void applySearchSettings() {
+                StringBuilder settings = new StringBuilder("SET LOCAL hnsw.ef_search = ").append(efSearch);
+                if (iterativeScan != null && !iterativeScan.isBlank()) {
+                        String mode = iterativeScan.trim().toLowerCase(Locale.ROOT);
+                        if (!ITERATIVE_SCAN_MODES.contains(mode)) {
+                                throw new IllegalStateException("Unknown hnsw.iterative_scan mode: " + iterativeScan);
+                        }
+                        settings.append("; SET LOCAL hnsw.iterative_scan = ").append(mode);
+                }
+                jdbcTemplate.execute(settings.toString());
+        }
+
+        @Override
+        public List<NoteSearchResult> findKeywordMatches(UUID ownerId, UUID topicId, String query, int limit) {
+                // Questions are matched term by term: the query is an OR over its lexemes
+                // without stopwords, ts_rank_cd puts notes matching more (and closer)
+                // terms first. A query made only of stopwords keeps all its terms
+                // Lexemes are quoted into the tsquery, so none is parsed as an operator
+                String sql = "SELECT " + SEARCH_RESULT_COLUMNS + ", CAST('NaN' AS double precision) " +
+                                "FROM notes n " +
+                                "CROSS JOIN (SELECT COALESCE(" +
+                                "  (SELECT CAST(string_agg(quote_literal(w.lexeme), ' | ') AS tsquery) " +
+                                "  FROM unnest(tsvector_to_array(to_tsvector('simple', ?))) AS w(lexeme) " +
+                                "  WHERE to_tsvector(CAST(? AS regconfig), w.lexeme) <> ''), " +
+                                "  plainto_tsquery('simple', ?)) AS q) k " +
+                                "JOIN users u ON u.id = n.owner_id " +
+                                "LEFT JOIN topics t ON t.id = n.topic_id " +
+                                "WHERE n.owner_id = ? AND n.search_vector @@ k.q " +
+                                (topicId != null ? "AND n.topic_id = ? " : "") +
+                                "ORDER BY ts_rank_cd(n.search_vector, k.q) DESC LIMIT ?";
+
+                return jdbcTemplate.query(sql, ps -> {
+                        int index = 1;
+                        ps.setString(index++, query);
+                        ps.setString(index++, keywordStopwords);
+                        ps.setString(index++, query);
+                        ps.setObject(index++, ownerId);
+                        if (topicId != null) {
+                                ps.setObject(index++, topicId);
+                        }
+                        ps.setInt(index, limit);
+                }, SEARCH_RESULT_ROW_MAPPER);
+        }
+
+        @Override
+        public List<NoteSearchResult> findSearchResultsByIds(List<UUID> noteIds) {
+                if (noteIds.isEmpty()) {
+                        return List.of();
+                }
+
+                String sql = "SELECT " + SEARCH_RESULT_COLUMNS + ", 0 " +
+                                "FROM notes n " +
+                                "JOIN users u ON u.id = n.owner_id " +
+                                "LEFT JOIN topics t ON t.id = n.topic_id " +
+                                "WHERE n.id = ANY (?)";
+
+                return jdbcTemplate.query(sql,
+                                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", noteIds.toArray())),
+                                SEARCH_RESULT_ROW_MAPPER);
+        }
+
+        @Override
+        public void forEachOwnerEmbedding(UUID ownerId, BiConsumer<UUID, float[]> consumer) {
+                String sql = "SELECT c.note_id, c.embedding FROM note_chunks c " +
+                                "WHERE c.owner_id = ? AND c.embedding IS NOT NULL " +
+                                "UNION ALL " +
+                                "SELECT e.id, e.embedding FROM notes e " +
+                                "WHERE e.owner_id = ? AND e.embedding IS NOT NULL " +
+                                "AND NOT EXISTS (SELECT 1 FROM note_chunks x WHERE x.note_id = e.id)";
+
+                jdbcTemplate.query(sql, ps -> {
+                        ps.setObject(1, ownerId);
+                        ps.setObject(2, ownerId);
+                }, (RowCallbackHandler) rs -> consumer.accept(rs.getObject(1, UUID.class),
+                                PgVectorType.read(rs, 2)));
+        }
+
+        @Override
+        public String findEmbeddingWatermark(UUID ownerId) {
+                String sql = "SELECT (SELECT COUNT(*) || ':' || COALESCE(CAST(MAX(c.created_at) AS text), '') " +
+                                "FROM note_chunks c WHERE c.owner_id = ?) " +
+                                "|| '/' || " +
+                                "(SELECT COUNT(*) || ':' || COALESCE(CAST(MAX(e.updated_at) AS text), '') " +
+                                "FROM notes e WHERE e.owner_id = ? AND e.embedding IS NOT NULL)";
+
+                return jdbcTemplate.queryForObject(sql, String.class, ownerId, ownerId);
+        }
+
+        private static ZonedDateTime toZonedDateTime(Timestamp timestamp) {
+                return timestamp != null ? ZonedDateTime.ofInstant(timestamp.toInstant(), ZoneId.systemDefault()) : null;
+        }
+
+}
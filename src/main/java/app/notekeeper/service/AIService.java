@@ -3,20 +3,27 @@ package app.notekeeper.service;
 import java.util.UUID;
 
 import app.notekeeper.event.NoteContentUpdatedEvent;
-import app.notekeeper.event.NoteCreatedEvent;
 import app.notekeeper.model.dto.request.RetrieveNoteRequest;
 import app.notekeeper.model.dto.response.RetrieveNoteResponse;
+import app.notekeeper.model.dto.response.RetrieveNoteStreamEvent;
+import reactor.core.publisher.Flux;
 
 public interface AIService {
 
     /**
      * Process note: classify into topic, extract content (for IMAGE/DOCUMENT), and
      * generate embedding
+     * Called by the ai_jobs worker, throws on failure so the job can be retried
      */
-    void processNote(NoteCreatedEvent event);
+    void processNote(UUID noteId);
 
     /**
      * Re-generate embedding when TEXT note content is updated
+     * Called by the update coalescer with the latest content of an edit burst
+     *
+     * @throws RuntimeException Only when the AI is temporarily unavailable
+     *                          (LlmAdmissionController.isRetryable), the update
+     *                          should be retried later; other failures are logged
      */
     void updateNoteEmbedding(NoteContentUpdatedEvent event);
 
@@ -29,4 +36,15 @@ public interface AIService {
      */
     RetrieveNoteResponse retrieveNotes(RetrieveNoteRequest request, UUID userId);
 
+    /**
+     * Streaming variant of retrieveNotes: relevant notes are emitted first, then
+     * answer tokens as the LLM generates them, then a DONE event
+     * Failures are emitted as an ERROR event instead of an error signal
+     *
+     * @param request Retrieve note request with query and optional topic filter
+     * @param userId  Current user ID
+     * @return Stream of retrieve events
+     */
+    Flux<RetrieveNoteStreamEvent> streamRetrieveNotes(RetrieveNoteRequest request, UUID userId);
+
 }
@@ -0,0 +1,280 @@
+package app.notekeeper.service.ai;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import app.notekeeper.common.concurrent.FairTaskExecutor;
+import app.notekeeper.event.NoteCreatedEvent;
+import app.notekeeper.model.entity.AiJob;
+import app.notekeeper.model.enums.AiJobStatus;
+import app.notekeeper.repository.AiJobRepository;
+import app.notekeeper.service.AIService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Polls the ai_jobs outbox and runs note processing on the AI executor
+ * Jobs are claimed in batches with FOR UPDATE SKIP LOCKED, so any number of
+ * app nodes can poll the same table without processing a job twice. Failed
+ * jobs are retried with exponential backoff and end up DEAD after max attempts.
+ * The lease starts again when a job leaves the executor queue, and only a few
+ * jobs are claimed ahead of the executor so none of them waits out its lease.
+ */
+@Component
+@Slf4j
+public class AiJobWorker {
+
+    private final AiJobRepository aiJobRepository;
+    private final AIService aiService;
+    private final FairTaskExecutor aiTaskExecutor;
+    private final TransactionTemplate transactionTemplate;
+
+    private final String workerId;
+    private final Semaphore wakeUp = new Semaphore(0);
+    private final AtomicInteger waitingJobs = new AtomicInteger();
+    private volatile boolean running;
+    private Thread pollerThread;
+
+    private final Counter completedJobs;
+    private final Counter retriedJobs;
+    private final Counter deadJobs;
+    private final Counter lostLeases;
+
+    @Value("${app.ai.jobs.batch-size:20}")
+    private int batchSize;
+
+    @Value("${app.ai.jobs.poll-interval-ms:2000}")
+    private long pollIntervalMs;
+
+    @Value("${app.ai.jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.ai.jobs.backoff-base:PT10S}")
+    private Duration backoffBase;
+
+    @Value("${app.ai.jobs.backoff-max:PT30M}")
+    private Duration backoffMax;
+
+    @Value("${app.ai.jobs.lease:PT15M}")
+    private Duration lease;
+
+    @Value("${app.ai.jobs.max-waiting:16}")
+    private int maxWaiting;
+
+    public AiJobWorker(AiJobRepository aiJobRepository,
+            AIService aiService,
+            @Qualifier("aiTaskExecutor") FairTaskExecutor aiTaskExecutor,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.aiJobRepository = aiJobRepository;
+        this.aiService = aiService;
+        this.aiTaskExecutor = aiTaskExecutor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.workerId = resolveHostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+        this.completedJobs = jobCounter(meterRegistry, "completed");
+        this.retriedJobs = jobCounter(meterRegistry, "retried");
+        this.deadJobs = jobCounter(meterRegistry, "dead");
+        this.lostLeases = jobCounter(meterRegistry, "lease_lost");
+        Gauge.builder("notekeeper.ai.jobs.dead", aiJobRepository, repo -> repo.countByStatus(AiJobStatus.DEAD))
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start polling once the application is fully started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        running = true;
+        pollerThread = Thread.ofVirtual().name("ai-job-poller").start(this::pollLoop);
+        log.info("AI job worker {} started", workerId);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        wakeUp.release();
+        if (pollerThread != null) {
+            pollerThread.interrupt();
+        }
+    }
+
+    /**
+     * Wake the poller as soon as a note is committed instead of waiting for the
+     * next poll interval
+     */
+    @TransactionalEventListener
+    public void onNoteCreated(NoteCreatedEvent event) {
+        wakeUp.release();
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                int claimed = claimAndDispatch();
+
+                // Keep draining while full batches are available, otherwise wait
+                if (claimed < batchSize) {
+                    wakeUp.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    wakeUp.drainPermits();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("AI job polling failed", e);
+                sleepQuietly(pollIntervalMs);
+            }
+        }
+    }
+
+    private int claimAndDispatch() {
+        // Claimed jobs that have not started yet hold a lease they are not using
+        int limit = Math.min(Math.min(batchSize, aiTaskExecutor.remainingCapacity()),
+                maxWaiting - waitingJobs.get());
+        if (limit <= 0) {
+            return 0;
+        }
+
+        List<AiJob> jobs = transactionTemplate.execute(tx -> {
+            ZonedDateTime now = ZonedDateTime.now();
+            List<AiJob> locked = aiJobRepository.lockNextBatch(now, now.minus(lease), limit);
+            for (AiJob job : locked) {
+                job.setStatus(AiJobStatus.RUNNING);
+                job.setLockedBy(workerId);
+                job.setLockedAt(now);
+                job.setAttempts(job.getAttempts() + 1);
+            }
+            return locked;
+        });
+
+        if (jobs == null || jobs.isEmpty()) {
+            return 0;
+        }
+
+        log.info("Worker {} claimed {} AI jobs", workerId, jobs.size());
+
+        for (AiJob job : jobs) {
+            waitingJobs.incrementAndGet();
+            try {
+                aiTaskExecutor.execute(job.getOwnerId(), () -> runJob(job));
+            } catch (TaskRejectedException e) {
+                waitingJobs.decrementAndGet();
+                // Executor is full, give the job back without counting the attempt
+                release(job, AiJobStatus.PENDING, job.getAttempts() - 1, ZonedDateTime.now(), job.getLastError());
+            }
+        }
+
+        return jobs.size();
+    }
+
+    private void runJob(AiJob job) {
+        waitingJobs.decrementAndGet();
+        if (!renewLease(job)) {
+            log.warn("Lease on AI job {} for note {} expired while queued, leaving it to the new holder",
+                    job.getId(), job.getNoteId());
+            lostLeases.increment();
+            return;
+        }
+
+        try {
+            aiService.processNote(job.getNoteId());
+
+            transactionTemplate.executeWithoutResult(
+                    tx -> aiJobRepository.deleteCompleted(job.getId(), workerId));
+            completedJobs.increment();
+
+        } catch (Exception e) {
+            String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+
+            if (job.getAttempts() >= maxAttempts) {
+                log.error("AI job {} for note {} failed {} times, moving to DEAD",
+                        job.getId(), job.getNoteId(), job.getAttempts(), e);
+                release(job, AiJobStatus.DEAD, job.getAttempts(), ZonedDateTime.now(), error);
+                deadJobs.increment();
+            } else {
+                Duration backoff = backoffFor(job.getAttempts());
+                log.warn("AI job {} for note {} failed (attempt {}), retrying in {}s: {}",
+                        job.getId(), job.getNoteId(), job.getAttempts(), backoff.toSeconds(), error);
+                release(job, AiJobStatus.PENDING, job.getAttempts(), ZonedDateTime.now().plus(backoff), error);
+                retriedJobs.increment();
+            }
+        }
+    }
+
+    private boolean renewLease(AiJob job) {
+        try {
+            Integer renewed = transactionTemplate.execute(tx -> aiJobRepository.renewLease(
+                    job.getId(), workerId, ZonedDateTime.now()));
+            return renewed != null && renewed > 0;
+        } catch (Exception e) {
+            // Still run the job, the claim-time lease may be enough
+            log.warn("Failed to renew lease on AI job {}: {}", job.getId(), e.getMessage());
+            return true;
+        }
+    }
+
+    private void release(AiJob job, AiJobStatus status, int attempts, ZonedDateTime nextAttemptAt, String error) {
+        try {
+            transactionTemplate.executeWithoutResult(tx -> aiJobRepository.release(
+                    job.getId(), workerId, status, attempts, nextAttemptAt, error));
+        } catch (Exception e) {
+            // Lease expiry will hand the job to another worker
+            log.error("Failed to release AI job {}", job.getId(), e);
+        }
+    }
+
+    /**
+     * Exponential backoff (base * 2^(attempt-1)), capped, with +-20% jitter
+     */
+    private Duration backoffFor(int attempt) {
+        long baseMillis = backoffBase.toMillis();
+        long delay = baseMillis << Math.min(attempt - 1, 20);
+        delay = Math.min(delay, backoffMax.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (delay * jitter));
+    }
+
+    private Counter jobCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("notekeeper.ai.jobs")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown-host";
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
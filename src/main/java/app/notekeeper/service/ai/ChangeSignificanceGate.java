@@ -0,0 +1,162 @@
+package app.notekeeper.service.ai;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import app.notekeeper.common.util.VectorMath;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decides whether a content edit is worth a new AI summary and embedding
+ * Text change is the Jaccard distance of word shingles between the content the
+ * stored embedding was built from and the new content. Only when that is small
+ * is the new embedding generated and compared (cosine shift), both have to stay
+ * below their thresholds for the edit to count as insignificant. Because the
+ * baseline is the last embedded content, many small edits still add up to a
+ * significant one.
+ */
+@Component
+@Slf4j
+public class ChangeSignificanceGate {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int SHINGLE_SIZE = 3;
+
+    /**
+     * What to regenerate for an edit
+     */
+    public enum Decision {
+        /** Regenerate summary and embedding */
+        SIGNIFICANT,
+        /** Keep the summary, write the new embedding */
+        SKIP_SUMMARY,
+        /** Keep summary and stored embedding */
+        SKIP_ALL
+    }
+
+    private final Counter significantEdits;
+    private final Counter insignificantEdits;
+    private final Counter savedSummaryCalls;
+    private final Counter savedEmbeddingWrites;
+    private final DistributionSummary textChanges;
+
+    @Value("${app.ai.change-gate.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.change-gate.max-text-change:0.15}")
+    private double maxTextChange;
+
+    @Value("${app.ai.change-gate.max-embedding-shift:0.02}")
+    private double maxEmbeddingShift;
+
+    @Value("${app.ai.change-gate.skip-embedding-write:true}")
+    private boolean skipEmbeddingWrite;
+
+    public ChangeSignificanceGate(MeterRegistry meterRegistry) {
+        this.significantEdits = Counter.builder("notekeeper.ai.change.gate")
+                .tag("decision", "significant").register(meterRegistry);
+        this.insignificantEdits = Counter.builder("notekeeper.ai.change.gate")
+                .tag("decision", "insignificant").register(meterRegistry);
+        this.savedSummaryCalls = Counter.builder("notekeeper.ai.change.gate.saved")
+                .tag("call", "summary").register(meterRegistry);
+        this.savedEmbeddingWrites = Counter.builder("notekeeper.ai.change.gate.saved")
+                .tag("call", "embedding-write").register(meterRegistry);
+        this.textChanges = DistributionSummary.builder("notekeeper.ai.change.gate.text")
+                .description("Shingle distance between last embedded and new note content")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Evaluate an edit
+     *
+     * @param previousContent   Content the stored embedding was built from (null if unknown)
+     * @param previousEmbedding Stored note embedding (null if none)
+     * @param newContent        New content
+     * @param newEmbedding      Generates the new note embedding, only called when
+     *                          the text change is small
+     * @return Decision (always SIGNIFICANT when disabled or without a baseline)
+     */
+    public Decision evaluate(String previousContent, float[] previousEmbedding, String newContent,
+            Supplier<float[]> newEmbedding) {
+        if (!enabled || previousContent == null || previousEmbedding == null) {
+            significantEdits.increment();
+            return Decision.SIGNIFICANT;
+        }
+
+        double textChange = textChange(previousContent, newContent);
+        textChanges.record(textChange);
+        if (textChange > maxTextChange) {
+            significantEdits.increment();
+            return Decision.SIGNIFICANT;
+        }
+
+        float[] embedding = newEmbedding.get();
+        if (embedding == null) {
+            significantEdits.increment();
+            return Decision.SIGNIFICANT;
+        }
+
+        double shift = 1 - VectorMath.cosine(previousEmbedding, embedding);
+        if (shift > maxEmbeddingShift) {
+            log.info("Edit changes little text ({}) but shifts embedding by {}, treating as significant",
+                    String.format("%.3f", textChange), String.format("%.4f", shift));
+            significantEdits.increment();
+            return Decision.SIGNIFICANT;
+        }
+
+        log.info("Insignificant edit (text change: {}, embedding shift: {}), skipping summary{}",
+                String.format("%.3f", textChange), String.format("%.4f", shift),
+                skipEmbeddingWrite ? " and embedding write" : "");
+        insignificantEdits.increment();
+        savedSummaryCalls.increment();
+        if (skipEmbeddingWrite) {
+            savedEmbeddingWrites.increment();
+            return Decision.SKIP_ALL;
+        }
+        return Decision.SKIP_SUMMARY;
+    }
+
+    /**
+     * Jaccard distance of the word shingle sets (0 = same, 1 = nothing shared)
+     */
+    static double textChange(String previousContent, String newContent) {
+        Set<String> previous = shingles(previousContent);
+        Set<String> current = shingles(newContent);
+        if (previous.isEmpty() && current.isEmpty()) {
+            return 0;
+        }
+
+        Set<String> intersection = new HashSet<>(previous);
+        intersection.retainAll(current);
+        int union = previous.size() + current.size() - intersection.size();
+        return 1 - (double) intersection.size() / union;
+    }
+
+    private static Set<String> shingles(String text) {
+        Set<String> shingles = new HashSet<>();
+        if (text == null) {
+            return shingles;
+        }
+
+        String[] words = NON_WORD.split(text.toLowerCase(Locale.ROOT).trim());
+        if (words.length < SHINGLE_SIZE) {
+            shingles.add(String.join(" ", words));
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_SIZE <= words.length; i++) {
+            shingles.add(String.join(" ", Arrays.copyOfRange(words, i, i + SHINGLE_SIZE)));
+        }
+        return shingles;
+    }
+
+}
@@ -0,0 +1,498 @@
+package app.notekeeper.service.ai;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import app.notekeeper.common.util.VectorMath;
+import app.notekeeper.event.EmbeddingModelChangedEvent;
+import app.notekeeper.external.ai.OllamaService;
+import app.notekeeper.external.ai.TextChunker;
+import app.notekeeper.model.entity.EmbeddingMigration;
+import app.notekeeper.model.enums.EmbeddingMigrationStatus;
+import app.notekeeper.repository.EmbeddingMigrationRepository;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.FailedNote;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.NoteToEmbed;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.StagedChunk;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.StagedNote;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Re-embeds all notes in the background when the configured embedding model
+ * changes
+ * The active model (used for stored vectors and query embeddings) is the target
+ * of the latest COMPLETED run. A new run walks the notes in ID order (keyset
+ * cursor kept in the run, so restarts resume), embeds them with the target
+ * model at a capped chunk rate and writes the vectors to staging while search
+ * keeps using the live ones. Once a pass finds nothing left, the staged vectors
+ * are swapped in under a table lock and every node switches its active model on
+ * its next poll. One node works on a run at a time (lease with FOR UPDATE SKIP
+ * LOCKED). A model with another dimension blocks the run, the vector columns
+ * and indexes need a schema migration first. Notes without an embedding or
+ * with one of unknown model (stored before models were tracked) are picked up
+ * by a catch-up run towards the active model. A note the model keeps failing on
+ * is skipped after max-attempts passes (until its content changes), the run
+ * completes without it and reports it.
+ *
+ * Runs live in the database, so nodes still on the old configuration during a
+ * rolling deploy work on the new run instead of fighting it: a node only
+ * starts or supersedes a run towards its configured model when no run towards
+ * another model was started after the latest run towards it. Moving back to a
+ * model that was migrated away from needs app.ai.reembed.allow-rollback on the
+ * nodes configured with it.
+ */
+@Component
+@Slf4j
+public class EmbeddingReindexJob {
+
+    private static final List<EmbeddingMigrationStatus> OPEN = List.of(
+            EmbeddingMigrationStatus.RUNNING, EmbeddingMigrationStatus.BLOCKED);
+
+    // Skipped notes listed in the completed run
+    private static final int REPORTED_SKIPPED_NOTES = 20;
+
+    private final EmbeddingMigrationRepository migrationRepository;
+    private final OllamaService ollamaService;
+    private final TextChunker textChunker;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    private final String workerId;
+    private volatile boolean running;
+    private Thread pollerThread;
+    private long nextBatchAt;
+    private UUID activeMigrationId;
+    private boolean warnedRetired;
+
+    private final Counter reembeddedNotes;
+    private final Counter reembeddedChunks;
+    private final Counter failedNotes;
+    private final Counter skippedNotes;
+    private final Counter cutovers;
+
+    @Value("${spring.ai.ollama.embedding.options.model}")
+    private String configuredModel;
+
+    @Value("${app.ai.embedding.dimensions:768}")
+    private int dimensions;
+
+    @Value("${app.ai.reembed.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.reembed.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.ai.reembed.max-chunks-per-second:20}")
+    private double maxChunksPerSecond;
+
+    @Value("${app.ai.reembed.poll-interval:1m}")
+    private Duration pollInterval;
+
+    @Value("${app.ai.reembed.lease:5m}")
+    private Duration lease;
+
+    @Value("${app.ai.reembed.allow-rollback:false}")
+    private boolean allowRollback;
+
+    @Value("${app.ai.reembed.max-attempts:3}")
+    private int maxAttempts;
+
+    public EmbeddingReindexJob(EmbeddingMigrationRepository migrationRepository,
+            OllamaService ollamaService,
+            TextChunker textChunker,
+            ApplicationEventPublisher eventPublisher,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.migrationRepository = migrationRepository;
+        this.ollamaService = ollamaService;
+        this.textChunker = textChunker;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.workerId = resolveHostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+
+        this.reembeddedNotes = Counter.builder("notekeeper.ai.reembed.notes")
+                .tag("result", "staged").register(meterRegistry);
+        this.failedNotes = Counter.builder("notekeeper.ai.reembed.notes")
+                .tag("result", "failed").register(meterRegistry);
+        this.skippedNotes = Counter.builder("notekeeper.ai.reembed.notes")
+                .tag("result", "skipped").register(meterRegistry);
+        this.reembeddedChunks = Counter.builder("notekeeper.ai.reembed.chunks").register(meterRegistry);
+        this.cutovers = Counter.builder("notekeeper.ai.reembed.cutovers").register(meterRegistry);
+    }
+
+    /**
+     * Switch to the active model and start polling once the application is fully
+     * started
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        try {
+            syncActiveModel();
+        } catch (Exception e) {
+            log.error("Failed to read active embedding model, using {}", ollamaService.getActiveModel(), e);
+        }
+
+        running = true;
+        pollerThread = Thread.ofVirtual().name("embedding-reindex").start(this::pollLoop);
+        log.info("Embedding re-index job {} started (active model: {}, configured: {})",
+                workerId, ollamaService.getActiveModel(), configuredModel);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (pollerThread != null) {
+            pollerThread.interrupt();
+        }
+    }
+
+    private void pollLoop() {
+        while (running) {
+            try {
+                syncActiveModel();
+
+                // Keep going while batches are available, otherwise wait
+                if (!enabled || !runMigrationStep()) {
+                    Thread.sleep(pollInterval.toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Embedding re-index step failed", e);
+                sleepQuietly(pollInterval.toMillis());
+            }
+        }
+    }
+
+    /**
+     * Follow the latest completed run, also picks up cutovers done by other nodes
+     */
+    private void syncActiveModel() {
+        Optional<EmbeddingMigration> completed = migrationRepository
+                .findFirstByStatusOrderByCompletedAtDesc(EmbeddingMigrationStatus.COMPLETED);
+
+        if (completed.isEmpty()) {
+            // First start with model tracking: the configured model becomes active,
+            // existing vectors stay unlabelled (their model is unknown) and are
+            // re-embedded by a catch-up run
+            transactionTemplate.executeWithoutResult(tx -> migrationRepository.save(EmbeddingMigration.builder()
+                    .targetModel(configuredModel)
+                    .dimensions(dimensions)
+                    .status(EmbeddingMigrationStatus.COMPLETED)
+                    .completedAt(ZonedDateTime.now())
+                    .build()));
+            log.info("Recorded {} as the active embedding model, unlabelled embeddings will be re-embedded",
+                    configuredModel);
+            return;
+        }
+
+        String activeModel = completed.get().getTargetModel();
+        String previousModel = ollamaService.getActiveModel();
+        boolean newRun = activeMigrationId != null && !activeMigrationId.equals(completed.get().getId());
+        activeMigrationId = completed.get().getId();
+
+        if (!activeModel.equals(previousModel) || newRun) {
+            // Also after a catch-up run of the same model, its vectors were swapped in
+            ollamaService.setActiveModel(activeModel);
+            eventPublisher.publishEvent(new EmbeddingModelChangedEvent(previousModel, activeModel));
+        }
+    }
+
+    /**
+     * Run one step of the open migration (starting one if needed)
+     *
+     * @return true when more work is immediately available
+     */
+    private boolean runMigrationStep() {
+        EmbeddingMigration migration = openMigration();
+        if (migration == null || migration.getStatus() != EmbeddingMigrationStatus.RUNNING) {
+            return false;
+        }
+
+        // Claim or renew the lease, another node may be working on it
+        Boolean claimed = transactionTemplate.execute(tx -> {
+            ZonedDateTime now = ZonedDateTime.now();
+            return migrationRepository.lockForWorker(migration.getId(), workerId, now.minus(lease))
+                    .map(locked -> {
+                        locked.setLockedBy(workerId);
+                        locked.setLockedAt(now);
+                        return true;
+                    })
+                    .orElse(false);
+        });
+        if (!Boolean.TRUE.equals(claimed)) {
+            return false;
+        }
+
+        String targetModel = migration.getTargetModel();
+        List<NoteToEmbed> notes = migrationRepository.findNotesToEmbed(targetModel, maxAttempts,
+                migration.getLastNoteId(), batchSize);
+
+        if (notes.isEmpty()) {
+            if (migration.getLastNoteId() != null) {
+                // End of a pass, start another one for notes edited behind the cursor
+                update(migration.getId(), run -> run.setLastNoteId(null));
+                return false;
+            }
+            return cutover(migration);
+        }
+
+        return stageBatch(migration, notes);
+    }
+
+    /**
+     * Open run to work on, any node helps with it whatever its configuration
+     * A run towards the configured model is started (superseding an open run
+     * towards another model) when the active model differs or notes are missing
+     * or left on an old model, unless the configured model is older than the
+     * latest run (node not redeployed yet)
+     */
+    private EmbeddingMigration openMigration() {
+        String activeModel = ollamaService.getActiveModel();
+        Optional<EmbeddingMigration> open = migrationRepository.findFirstByStatusInOrderByCreatedAtDesc(OPEN);
+        if (open.isPresent() && open.get().getTargetModel().equals(configuredModel)) {
+            return open.get();
+        }
+
+        boolean modelChanged = !configuredModel.equals(activeModel);
+        if (open.isPresent() || modelChanged) {
+            if (!allowRollback && migrationRepository.isRetiredModel(configuredModel)) {
+                if (!warnedRetired) {
+                    log.warn("Configured embedding model {} was migrated away from (active: {}), not starting a "
+                            + "run towards it; set app.ai.reembed.allow-rollback to move back", configuredModel,
+                            activeModel);
+                    warnedRetired = true;
+                }
+                return open.orElse(null);
+            }
+        } else if (migrationRepository.findNotesToEmbed(configuredModel, maxAttempts, null, 1).isEmpty()) {
+            return null;
+        }
+
+        return transactionTemplate.execute(tx -> {
+            int superseded = migrationRepository.supersedeOthers(configuredModel, OPEN,
+                    EmbeddingMigrationStatus.SUPERSEDED);
+            migrationRepository.clearStaging(configuredModel);
+
+            EmbeddingMigration started = migrationRepository.save(EmbeddingMigration.builder()
+                    .sourceModel(activeModel)
+                    .targetModel(configuredModel)
+                    .build());
+            log.info("Started re-embedding from {} to {} ({} earlier runs superseded)",
+                    activeModel, configuredModel, superseded);
+            return started;
+        });
+    }
+
+    private boolean stageBatch(EmbeddingMigration migration, List<NoteToEmbed> notes) {
+        String targetModel = migration.getTargetModel();
+
+        List<List<TextChunker.Chunk>> chunksByNote = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        for (NoteToEmbed note : notes) {
+            List<TextChunker.Chunk> chunks = textChunker.chunk(note.content());
+            chunksByNote.add(chunks);
+            chunks.forEach(chunk -> texts.add(chunk.text()));
+        }
+
+        throttle(texts.size());
+        // Ollama unavailable fails the step, the poll loop backs off
+        List<float[]> embeddings = ollamaService.generateEmbeddings(texts, targetModel);
+
+        List<StagedNote> staged = new ArrayList<>();
+        List<FailedNote> failed = new ArrayList<>();
+        int position = 0;
+        for (int n = 0; n < notes.size(); n++) {
+            NoteToEmbed note = notes.get(n);
+            List<TextChunker.Chunk> chunks = chunksByNote.get(n);
+            List<StagedChunk> stagedChunks = stagedChunks(chunks,
+                    embeddings.subList(position, position + chunks.size()));
+            position += chunks.size();
+
+            if (stagedChunks == null && !chunks.isEmpty() && notes.size() > 1) {
+                // A failed request fails every text in it, try the note on its own
+                // before counting the failure against it
+                throttle(chunks.size());
+                stagedChunks = stagedChunks(chunks, ollamaService.generateEmbeddings(
+                        chunks.stream().map(TextChunker.Chunk::text).toList(), targetModel));
+            }
+
+            if (stagedChunks == null) {
+                log.warn("Failed to re-embed note {} with {}, skipping", note.id(), targetModel);
+                failedNotes.increment();
+                failed.add(new FailedNote(note.id(), note.content(),
+                        chunks.isEmpty() ? "Content has no chunks" : "No embedding returned"));
+                continue;
+            }
+
+            int produced = stagedChunks.get(0).embedding().length;
+            if (produced != dimensions) {
+                block(migration, targetModel + " produces " + produced + "-dimensional embeddings but vectors are "
+                        + "stored with " + dimensions + " dimensions, the vector columns and indexes need a schema "
+                        + "migration first");
+                return false;
+            }
+
+            staged.add(new StagedNote(note.id(), note.ownerId(), note.content(),
+                    VectorMath.mean(stagedChunks.stream().map(StagedChunk::embedding).toList()), stagedChunks));
+        }
+
+        // Failures only count against notes once the model is known to work,
+        // otherwise a broken model would get every note skipped
+        boolean modelWorks = !staged.isEmpty() || migration.getProcessedNotes() > 0
+                || targetModel.equals(ollamaService.getActiveModel());
+        if (!failed.isEmpty() && !modelWorks) {
+            log.warn("No note embedded with {} yet, not counting {} failures against the notes", targetModel,
+                    failed.size());
+        }
+
+        UUID lastNoteId = notes.get(notes.size() - 1).id();
+        Integer stagedCount = transactionTemplate.execute(tx -> {
+            int count = migrationRepository.stage(targetModel, staged);
+            if (modelWorks) {
+                migrationRepository.recordFailures(targetModel, failed);
+            }
+            if (migrationRepository.advance(migration.getId(), workerId, lastNoteId, count,
+                    ZonedDateTime.now()) == 0) {
+                throw new IllegalStateException("Lease on embedding migration " + migration.getId() + " was lost");
+            }
+            return count;
+        });
+
+        int chunkCount = staged.stream().mapToInt(note -> note.chunks().size()).sum();
+        reembeddedNotes.increment(stagedCount != null ? stagedCount : 0);
+        reembeddedChunks.increment(chunkCount);
+        log.info("Re-embedded {} notes ({} chunks) with {}", stagedCount, chunkCount, targetModel);
+
+        // Nothing could be embedded, back off
+        return !staged.isEmpty() || (modelWorks && !failed.isEmpty());
+    }
+
+    /**
+     * Swap staged vectors in, postponed to another pass if notes are still missing
+     * Skipped notes are logged and listed in last_error of the completed run
+     */
+    private boolean cutover(EmbeddingMigration migration) {
+        String targetModel = migration.getTargetModel();
+
+        List<UUID> skipped = transactionTemplate.execute(tx -> {
+            if (!migrationRepository.cutover(targetModel, maxAttempts)) {
+                return null;
+            }
+            List<UUID> skippedIds = migrationRepository.findSkippedNotes(targetModel, maxAttempts);
+            migrationRepository.findById(migration.getId()).ifPresent(run -> {
+                run.setStatus(EmbeddingMigrationStatus.COMPLETED);
+                run.setDimensions(dimensions);
+                run.setCompletedAt(ZonedDateTime.now());
+                run.setLockedBy(null);
+                run.setLockedAt(null);
+                run.setLastError(skippedIds.isEmpty() ? null : skippedReport(targetModel, skippedIds));
+            });
+            return skippedIds;
+        });
+
+        if (skipped == null) {
+            return false;
+        }
+
+        cutovers.increment();
+        if (!skipped.isEmpty()) {
+            skippedNotes.increment(skipped.size());
+            log.warn("Embedding migration {}: {}", migration.getId(), skippedReport(targetModel, skipped));
+        }
+        log.info("Embedding migration {} completed, {} is now the active embedding model",
+                migration.getId(), targetModel);
+        syncActiveModel();
+        return false;
+    }
+
+    private String skippedReport(String targetModel, List<UUID> skipped) {
+        return skipped.size() + " notes failed " + maxAttempts + " times with " + targetModel
+                + " and are left without embedding until edited: "
+                + skipped.subList(0, Math.min(skipped.size(), REPORTED_SKIPPED_NOTES))
+                + (skipped.size() > REPORTED_SKIPPED_NOTES ? " ..." : "");
+    }
+
+    private void block(EmbeddingMigration migration, String error) {
+        log.error("Embedding migration {} blocked: {}", migration.getId(), error);
+        update(migration.getId(), run -> {
+            run.setStatus(EmbeddingMigrationStatus.BLOCKED);
+            run.setLastError(error);
+            run.setLockedBy(null);
+            run.setLockedAt(null);
+        });
+    }
+
+    private void update(UUID migrationId, Consumer<EmbeddingMigration> change) {
+        transactionTemplate.executeWithoutResult(
+                tx -> migrationRepository.findById(migrationId).ifPresent(change));
+    }
+
+    /**
+     * Keep the re-embedding rate at max-chunks-per-second so live embedding
+     * requests keep most of the Ollama capacity
+     */
+    private void throttle(int chunks) {
+        long now = System.nanoTime();
+        if (nextBatchAt > now) {
+            sleepQuietly(TimeUnit.NANOSECONDS.toMillis(nextBatchAt - now));
+            now = System.nanoTime();
+        }
+        nextBatchAt = now + (long) (chunks / maxChunksPerSecond * 1_000_000_000L);
+    }
+
+    /**
+     * Chunks with their embeddings, null when a chunk has none (or there are no
+     * chunks)
+     */
+    private static List<StagedChunk> stagedChunks(List<TextChunker.Chunk> chunks, List<float[]> embeddings) {
+        if (chunks.isEmpty()) {
+            return null;
+        }
+        List<StagedChunk> stagedChunks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            TextChunker.Chunk chunk = chunks.get(i);
+            float[] embedding = embeddings.get(i);
+            if (embedding == null) {
+                return null;
+            }
+            stagedChunks.add(new StagedChunk(chunk.index(), chunk.text(), chunk.tokenCount(), embedding));
+        }
+        return stagedChunks;
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown-host";
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
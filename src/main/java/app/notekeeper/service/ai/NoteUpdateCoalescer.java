@@ -0,0 +1,243 @@
+package app.notekeeper.service.ai;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import app.notekeeper.common.concurrent.FairTaskExecutor;
+import app.notekeeper.event.NoteContentUpdatedEvent;
+import app.notekeeper.external.ai.LlmAdmissionController;
+import app.notekeeper.service.AIService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Debounces NoteContentUpdatedEvent bursts per note (e.g. mobile autosave)
+ * Only the latest content is processed, once the note has been quiet for the
+ * quiet period or the first pending edit is older than max wait. A note is
+ * never processed twice at the same time, edits arriving while it runs are
+ * held until it finishes. An update that fails because the AI is busy or
+ * unavailable is put back with backoff (a newer edit replaces it).
+ */
+@Component
+@Slf4j
+public class NoteUpdateCoalescer {
+
+    private static final long NO_RETRY = Long.MIN_VALUE;
+
+    private final AIService aiService;
+    private final FairTaskExecutor aiTaskExecutor;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("note-update-coalescer").daemon().factory());
+
+    private final Object lock = new Object();
+    private final Map<UUID, PendingUpdate> pending = new HashMap<>();
+    private final Set<UUID> inFlight = new HashSet<>();
+
+    private final Counter receivedEvents;
+    private final Counter collapsedEvents;
+    private final Counter dispatchedUpdates;
+    private final Counter retriedUpdates;
+    private final Counter droppedUpdates;
+
+    @Value("${app.ai.update-coalescing.quiet-period:PT5S}")
+    private Duration quietPeriod;
+
+    @Value("${app.ai.update-coalescing.max-wait:PT30S}")
+    private Duration maxWait;
+
+    @Value("${app.ai.update-coalescing.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${app.ai.update-coalescing.retry-backoff-base:PT10S}")
+    private Duration retryBackoffBase;
+
+    @Value("${app.ai.update-coalescing.retry-backoff-max:PT10M}")
+    private Duration retryBackoffMax;
+
+    public NoteUpdateCoalescer(AIService aiService,
+            @Qualifier("aiTaskExecutor") FairTaskExecutor aiTaskExecutor,
+            MeterRegistry meterRegistry) {
+        this.aiService = aiService;
+        this.aiTaskExecutor = aiTaskExecutor;
+
+        this.receivedEvents = coalescerCounter(meterRegistry, "received");
+        this.collapsedEvents = coalescerCounter(meterRegistry, "collapsed");
+        this.dispatchedUpdates = coalescerCounter(meterRegistry, "dispatched");
+        this.retriedUpdates = coalescerCounter(meterRegistry, "retried");
+        this.droppedUpdates = coalescerCounter(meterRegistry, "dropped");
+        Gauge.builder("notekeeper.note.update.pending", this, NoteUpdateCoalescer::getPendingCount)
+                .register(meterRegistry);
+    }
+
+    @TransactionalEventListener
+    public void onNoteContentUpdated(NoteContentUpdatedEvent event) {
+        receivedEvents.increment();
+        long now = System.nanoTime();
+
+        synchronized (lock) {
+            PendingUpdate current = pending.get(event.getNoteId());
+            if (current == null) {
+                pending.put(event.getNoteId(), new PendingUpdate(event, now, now, 1, 0, NO_RETRY));
+            } else {
+                // Keep the first-seen time for the max wait cap and a pending retry
+                // backoff, replace the content
+                pending.put(event.getNoteId(), new PendingUpdate(event, current.firstSeen(), now,
+                        current.events() + 1, current.retries(), current.retryAt()));
+                collapsedEvents.increment();
+            }
+        }
+
+        schedule(event.getNoteId(), quietPeriod.toNanos());
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private void schedule(UUID noteId, long delayNanos) {
+        scheduler.schedule(() -> checkDue(noteId), Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+    }
+
+    private void checkDue(UUID noteId) {
+        PendingUpdate due;
+
+        synchronized (lock) {
+            PendingUpdate update = pending.get(noteId);
+            if (update == null || inFlight.contains(noteId)) {
+                // Already dispatched, or will be re-checked when the running update finishes
+                return;
+            }
+
+            long now = System.nanoTime();
+            long quietDeadline = update.lastSeen() + quietPeriod.toNanos();
+            long maxWaitDeadline = update.firstSeen() + maxWait.toNanos();
+            // A failed update waits out its retry backoff regardless of the caps
+            long deadline = Math.max(Math.min(quietDeadline, maxWaitDeadline), update.retryAt());
+
+            if (now < deadline) {
+                // Newer edit arrived, a later check is (or will be) scheduled for it
+                if (deadline != quietDeadline) {
+                    schedule(noteId, deadline - now);
+                }
+                return;
+            }
+
+            due = pending.remove(noteId);
+            inFlight.add(noteId);
+        }
+
+        dispatch(due);
+    }
+
+    private void dispatch(PendingUpdate update) {
+        NoteContentUpdatedEvent event = update.event();
+        log.info("Dispatching coalesced update for note {} ({} events collapsed into 1)",
+                event.getNoteId(), update.events());
+
+        try {
+            aiTaskExecutor.execute(event.getOwnerId(), () -> {
+                try {
+                    aiService.updateNoteEmbedding(event);
+                } catch (Exception e) {
+                    retryLater(update, e);
+                } finally {
+                    finish(event.getNoteId());
+                }
+            });
+            dispatchedUpdates.increment();
+        } catch (TaskRejectedException e) {
+            log.warn("AI executor rejected update for note {}, retrying after quiet period", event.getNoteId());
+            synchronized (lock) {
+                inFlight.remove(event.getNoteId());
+                // Newer content wins if an edit arrived meanwhile
+                pending.putIfAbsent(event.getNoteId(), update);
+            }
+            schedule(event.getNoteId(), quietPeriod.toNanos());
+        }
+    }
+
+    /**
+     * Put a failed update back with backoff when the failure is temporary (AI
+     * busy, rate limited or unavailable), an edit arrived meanwhile wins
+     */
+    private void retryLater(PendingUpdate update, Exception e) {
+        UUID noteId = update.event().getNoteId();
+
+        if (!LlmAdmissionController.isRetryable(e) || update.retries() >= maxRetries) {
+            log.error("Update of note {} failed ({} retries), dropping it until the next edit",
+                    noteId, update.retries(), e);
+            droppedUpdates.increment();
+            return;
+        }
+
+        int retries = update.retries() + 1;
+        Duration backoff = backoffFor(retries);
+        log.warn("Update of note {} failed (retry {}), retrying in {}s: {}",
+                noteId, retries, backoff.toSeconds(), e.getMessage());
+
+        synchronized (lock) {
+            pending.putIfAbsent(noteId, new PendingUpdate(update.event(), update.firstSeen(), update.lastSeen(),
+                    update.events(), retries, System.nanoTime() + backoff.toNanos()));
+        }
+        retriedUpdates.increment();
+    }
+
+    private Duration backoffFor(int retry) {
+        long baseMillis = retryBackoffBase.toMillis();
+        long delay = baseMillis << Math.min(retry - 1, 20);
+        delay = Math.min(delay, retryBackoffMax.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (delay * jitter));
+    }
+
+    private void finish(UUID noteId) {
+        boolean hasNewer;
+        synchronized (lock) {
+            inFlight.remove(noteId);
+            hasNewer = pending.containsKey(noteId);
+        }
+        if (hasNewer) {
+            schedule(noteId, 0);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private Counter coalescerCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("notekeeper.note.update.events")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param retries Failed attempts so far
+     * @param retryAt Earliest dispatch time of a failed update (nanoTime),
+     *                NO_RETRY if none
+     */
+    private record PendingUpdate(NoteContentUpdatedEvent event, long firstSeen, long lastSeen, int events,
+            int retries, long retryAt) {
+    }
+
+}
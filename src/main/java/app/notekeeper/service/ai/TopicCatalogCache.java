@@ -0,0 +1,146 @@
+package app.notekeeper.service.ai;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import app.notekeeper.external.ai.OpenAIService;
+import app.notekeeper.model.dto.response.CatalogTopic;
+import app.notekeeper.repository.TopicRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-owner cache of topics and their pre-rendered classification prompt
+ * section
+ * Holds immutable CatalogTopic copies (no entities) for a bounded number of
+ * owners. TopicServiceImpl bumps the owner's catalog version in Redis on topic
+ * changes, every node compares it on read, so a change on one node reloads the
+ * catalog everywhere. When Redis is unavailable the TTL bounds staleness.
+ */
+@Component
+@Slf4j
+public class TopicCatalogCache {
+
+    private static final String VERSION_KEY_PREFIX = "topic-catalog:version:";
+
+    private final TopicRepository topicRepository;
+    private final OpenAIService openAIService;
+    private final StringRedisTemplate redisTemplate;
+
+    private final Map<UUID, TopicCatalog> catalogs;
+
+    @Value("${app.ai.topic-catalog.ttl:PT5M}")
+    private Duration ttl;
+
+    public TopicCatalogCache(TopicRepository topicRepository,
+            OpenAIService openAIService,
+            StringRedisTemplate redisTemplate,
+            @Value("${app.ai.topic-catalog.max-owners:10000}") int maxOwners) {
+        this.topicRepository = topicRepository;
+        this.openAIService = openAIService;
+        this.redisTemplate = redisTemplate;
+        this.catalogs = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, TopicCatalog> eldest) {
+                return size() > maxOwners;
+            }
+        };
+    }
+
+    /**
+     * Topics of one owner with the rendered AVAILABLE TOPICS prompt block
+     *
+     * @param version Catalog version in Redis when loaded (null if unknown)
+     */
+    public record TopicCatalog(List<CatalogTopic> topics, String topicsInfo, String version, long loadedAt) {
+    }
+
+    /**
+     * Get topic catalog of an owner, loading it on miss, version change or expiry
+     */
+    public TopicCatalog get(UUID ownerId) {
+        String version = currentVersion(ownerId);
+
+        TopicCatalog catalog;
+        synchronized (catalogs) {
+            catalog = catalogs.get(ownerId);
+        }
+        if (catalog != null && isCurrent(catalog, version)) {
+            return catalog;
+        }
+
+        // Version is read before the topics, a change committed meanwhile bumps it
+        // again and the next read reloads
+        List<CatalogTopic> topics = topicRepository.findByOwnerId(ownerId).stream()
+                .map(CatalogTopic::of)
+                .toList();
+        catalog = new TopicCatalog(topics, openAIService.prepareTopicsInfo(topics), version, System.nanoTime());
+        synchronized (catalogs) {
+            catalogs.put(ownerId, catalog);
+        }
+
+        log.debug("Loaded topic catalog for owner {} ({} topics, version {})", ownerId, topics.size(), version);
+        return catalog;
+    }
+
+    /**
+     * Evict the catalog of an owner on every node, now and again after the
+     * current transaction commits so a concurrent reload cannot keep
+     * uncommitted-era data
+     */
+    public void evict(UUID ownerId) {
+        invalidate(ownerId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate(ownerId);
+                }
+            });
+        }
+    }
+
+    private void invalidate(UUID ownerId) {
+        synchronized (catalogs) {
+            catalogs.remove(ownerId);
+        }
+        try {
+            redisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + ownerId);
+        } catch (Exception e) {
+            log.warn("Failed to bump topic catalog version of owner {}, other nodes reload after TTL: {}",
+                    ownerId, e.getMessage());
+        }
+    }
+
+    private boolean isCurrent(TopicCatalog catalog, String version) {
+        if (System.nanoTime() - catalog.loadedAt() >= ttl.toNanos()) {
+            return false;
+        }
+        // Unknown version (Redis down) falls back to the TTL alone
+        return version == null || catalog.version() == null || version.equals(catalog.version());
+    }
+
+    /**
+     * @return Current catalog version, "0" when never changed, null when Redis is
+     *         unavailable
+     */
+    private String currentVersion(UUID ownerId) {
+        try {
+            String version = redisTemplate.opsForValue().get(VERSION_KEY_PREFIX + ownerId);
+            return version != null ? version : "0";
+        } catch (Exception e) {
+            log.debug("Topic catalog version unavailable for owner {}: {}", ownerId, e.getMessage());
+            return null;
+        }
+    }
+
+}
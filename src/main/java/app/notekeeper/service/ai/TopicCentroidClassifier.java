@@ -0,0 +1,303 @@
+package app.notekeeper.service.ai;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import app.notekeeper.common.util.VectorMath;
+import app.notekeeper.event.EmbeddingModelChangedEvent;
+import app.notekeeper.external.ai.OllamaService;
+import app.notekeeper.model.dto.response.CatalogTopic;
+import app.notekeeper.repository.NoteRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Local topic classifier based on topic centroid embeddings
+ * A topic centroid combines the embedding of its profile (name, description,
+ * AI summary), weighted as profileWeight notes, with the embeddings of its
+ * member notes. Centroids are built per owner from the database and updated
+ * incrementally as notes get classified. A note is assigned locally only when
+ * the best topic is similar enough and clearly ahead of the runner-up,
+ * ambiguous notes go to the LLM. Centroids are kept for a bounded number of
+ * recently active owners.
+ */
+@Component
+@Slf4j
+public class TopicCentroidClassifier {
+
+    private final OllamaService ollamaService;
+    private final NoteRepository noteRepository;
+
+    private final Map<UUID, Centroids> centroidsByOwner;
+
+    @Value("${app.ai.local-classifier.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.local-classifier.min-similarity:0.55}")
+    private double minSimilarity;
+
+    @Value("${app.ai.local-classifier.min-margin:0.08}")
+    private double minMargin;
+
+    @Value("${app.ai.local-classifier.profile-weight:2}")
+    private int profileWeight;
+
+    public TopicCentroidClassifier(OllamaService ollamaService,
+            NoteRepository noteRepository,
+            @Value("${app.ai.local-classifier.max-owners:2000}") int maxOwners) {
+        this.ollamaService = ollamaService;
+        this.noteRepository = noteRepository;
+        this.centroidsByOwner = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Centroids> eldest) {
+                return size() > maxOwners;
+            }
+        };
+    }
+
+    /**
+     * Centroids of one owner, bound to the topic catalog they were built from
+     */
+    public static final class Centroids {
+        private final TopicCatalogCache.TopicCatalog catalog;
+        private final Map<UUID, float[]> sums = new HashMap<>();
+
+        private Centroids(TopicCatalogCache.TopicCatalog catalog) {
+            this.catalog = catalog;
+        }
+    }
+
+    /**
+     * @return Whether notes are classified locally before asking the LLM
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the centroids of an owner, building them from the database when the
+     * catalog changed
+     * Call on the thread that owns the transaction, classify itself does not
+     * touch the database
+     *
+     * @param ownerId Note owner
+     * @param catalog Current topic catalog of the owner
+     * @return Centroids to classify with, null when local classification is off
+     *         or cannot be prepared
+     */
+    public Centroids prepare(UUID ownerId, TopicCatalogCache.TopicCatalog catalog) {
+        if (!enabled || catalog.topics().isEmpty()) {
+            return null;
+        }
+
+        if (catalog.topics().size() == 1) {
+            // Nothing to compare, classify picks the only topic
+            return new Centroids(catalog);
+        }
+
+        try {
+            return centroidsFor(ownerId, catalog);
+        } catch (Exception e) {
+            log.warn("Building topic centroids failed, falling back to LLM", e);
+            return null;
+        }
+    }
+
+    /**
+     * Try to classify a note locally from its embedding
+     *
+     * @param centroids Centroids from prepare (null skips local classification)
+     * @param embedding Note embedding
+     * @return Confidently selected topic, empty when the LLM should decide
+     */
+    public Optional<CatalogTopic> classify(Centroids centroids, float[] embedding) {
+        if (centroids == null || embedding == null) {
+            return Optional.empty();
+        }
+
+        TopicCatalogCache.TopicCatalog catalog = centroids.catalog;
+        if (catalog.topics().size() == 1) {
+            return Optional.of(catalog.topics().get(0));
+        }
+
+        try {
+            float[] query = VectorMath.normalize(embedding);
+
+            CatalogTopic best = null;
+            double bestScore = -1;
+            double secondScore = -1;
+
+            synchronized (centroids) {
+                for (CatalogTopic topic : catalog.topics()) {
+                    float[] sum = centroids.sums.get(topic.id());
+                    if (sum == null) {
+                        continue;
+                    }
+                    double score = VectorMath.cosine(query, sum);
+                    if (score > bestScore) {
+                        secondScore = bestScore;
+                        bestScore = score;
+                        best = topic;
+                    } else if (score > secondScore) {
+                        secondScore = score;
+                    }
+                }
+            }
+
+            if (best != null && bestScore >= minSimilarity && bestScore - secondScore >= minMargin) {
+                log.info("Local classifier selected topic {} (score: {}, margin: {})",
+                        best.id(), String.format("%.3f", bestScore), String.format("%.3f", bestScore - secondScore));
+                return Optional.of(best);
+            }
+
+            log.info("Local classifier not confident (best: {}, runner-up: {}), falling back to LLM",
+                    String.format("%.3f", bestScore), String.format("%.3f", secondScore));
+            return Optional.empty();
+
+        } catch (Exception e) {
+            log.warn("Local topic classification failed, falling back to LLM", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Add a classified note to its topic centroid once the current transaction
+     * commits (immediately without a transaction), a rolled back assignment
+     * never reaches the centroids
+     */
+    public void recordAssignment(UUID ownerId, UUID topicId, float[] embedding) {
+        if (embedding == null) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addToCentroid(ownerId, topicId, embedding);
+                }
+            });
+        } else {
+            addToCentroid(ownerId, topicId, embedding);
+        }
+    }
+
+    private void addToCentroid(UUID ownerId, UUID topicId, float[] embedding) {
+        Centroids centroids;
+        synchronized (centroidsByOwner) {
+            centroids = centroidsByOwner.get(ownerId);
+        }
+        if (centroids == null) {
+            return;
+        }
+
+        float[] normalized = VectorMath.normalize(embedding);
+        synchronized (centroids) {
+            float[] sum = centroids.sums.get(topicId);
+            if (sum != null) {
+                for (int i = 0; i < sum.length; i++) {
+                    sum[i] += normalized[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Centroids are sums of old model vectors, rebuild them on next use
+     */
+    @EventListener
+    public void onEmbeddingModelChanged(EmbeddingModelChangedEvent event) {
+        synchronized (centroidsByOwner) {
+            centroidsByOwner.clear();
+        }
+        log.info("Dropped topic centroids after embedding model change to {}", event.getModel());
+    }
+
+    private Centroids centroidsFor(UUID ownerId, TopicCatalogCache.TopicCatalog catalog) {
+        Centroids current;
+        synchronized (centroidsByOwner) {
+            current = centroidsByOwner.get(ownerId);
+        }
+        if (current != null && current.catalog == catalog) {
+            return current;
+        }
+
+        // Catalog was reloaded (topic change or version bump), rebuild centroids
+        Centroids rebuilt = buildCentroids(ownerId, catalog);
+        synchronized (centroidsByOwner) {
+            centroidsByOwner.put(ownerId, rebuilt);
+        }
+        return rebuilt;
+    }
+
+    private Centroids buildCentroids(UUID ownerId, TopicCatalogCache.TopicCatalog catalog) {
+        Centroids centroids = new Centroids(catalog);
+        List<CatalogTopic> topics = catalog.topics();
+
+        // Topic profiles (embeddings are content-hash cached, cheap after first build)
+        List<float[]> profiles = ollamaService.generateEmbeddings(topics.stream()
+                .map(this::profileText)
+                .toList());
+
+        for (int i = 0; i < topics.size(); i++) {
+            float[] profile = profiles.get(i);
+            if (profile == null) {
+                continue;
+            }
+            float[] sum = VectorMath.normalize(profile);
+            for (int d = 0; d < sum.length; d++) {
+                sum[d] *= profileWeight;
+            }
+            centroids.sums.put(topics.get(i).id(), sum);
+        }
+
+        // Member notes: mean embedding * count equals the sum of member embeddings
+        for (Object[] row : noteRepository.findTopicEmbeddingStats(ownerId)) {
+            UUID topicId = (UUID) row[0];
+            float[] mean = parseVector((String) row[1]);
+            long count = ((Number) row[2]).longValue();
+
+            float[] sum = centroids.sums.get(topicId);
+            if (sum == null) {
+                sum = new float[mean.length];
+                centroids.sums.put(topicId, sum);
+            }
+            for (int d = 0; d < sum.length; d++) {
+                sum[d] += mean[d] * count;
+            }
+        }
+
+        log.info("Built {} topic centroids for owner {}", centroids.sums.size(), ownerId);
+        return centroids;
+    }
+
+    private String profileText(CatalogTopic topic) {
+        StringBuilder text = new StringBuilder(topic.name());
+        if (topic.description() != null && !topic.description().isEmpty()) {
+            text.append(". ").append(topic.description());
+        }
+        if (topic.aiSummary() != null && !topic.aiSummary().isEmpty()) {
+            text.append(". ").append(topic.aiSummary());
+        }
+        return text.toString();
+    }
+
+    private static float[] parseVector(String text) {
+        String[] parts = text.substring(1, text.length() - 1).split(",");
+        float[] vector = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            vector[i] = Float.parseFloat(parts[i]);
+        }
+        return vector;
+    }
+
+}
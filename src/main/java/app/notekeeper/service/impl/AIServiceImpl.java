@@ -1,94 +1,258 @@
 package app.notekeeper.service.impl;
 
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
-
-import org.springframework.scheduling.annotation.Async;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.event.TransactionalEventListener;
 
 import app.notekeeper.common.exception.ServiceException;
 import app.notekeeper.common.exception.SystemException;
+import app.notekeeper.common.util.VectorMath;
 import app.notekeeper.event.NoteContentUpdatedEvent;
-import app.notekeeper.event.NoteCreatedEvent;
+import app.notekeeper.external.ai.DocumentTextExtractor;
+import app.notekeeper.external.ai.ExtractiveSummarizer;
+import app.notekeeper.external.ai.LlmAdmissionController;
 import app.notekeeper.external.ai.OllamaService;
 import app.notekeeper.external.ai.OpenAIService;
+import app.notekeeper.external.ai.TextChunker;
 import app.notekeeper.model.dto.request.RetrieveNoteRequest;
+import app.notekeeper.model.dto.response.CatalogTopic;
 import app.notekeeper.model.dto.response.NoteQueryResponse;
 import app.notekeeper.model.dto.response.NoteResponse;
+import app.notekeeper.model.dto.response.NoteSearchResult;
 import app.notekeeper.model.dto.response.RetrieveNoteResponse;
+import app.notekeeper.model.dto.response.RetrieveNoteStreamEvent;
 import app.notekeeper.model.entity.Note;
+import app.notekeeper.model.entity.NoteChunk;
 import app.notekeeper.model.entity.Topic;
-import app.notekeeper.model.entity.User;
 import app.notekeeper.model.enums.NoteType;
+import app.notekeeper.repository.NoteChunkRepository;
 import app.notekeeper.repository.NoteRepository;
 import app.notekeeper.repository.TopicRepository;
-import app.notekeeper.repository.UserRepository;
 import app.notekeeper.service.AIService;
-import lombok.AllArgsConstructor;
+import app.notekeeper.service.ai.ChangeSignificanceGate;
+import app.notekeeper.service.ai.TopicCatalogCache;
+import app.notekeeper.service.ai.TopicCentroidClassifier;
+import app.notekeeper.service.search.HybridNoteSearch;
+import app.notekeeper.service.search.SemanticQueryCache;
+import app.notekeeper.service.search.VectorSearchEngine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @Slf4j
-@AllArgsConstructor
 public class AIServiceImpl implements AIService {
 
+    private static final String NO_RELEVANT_NOTES_ANSWER = "I couldn't find any relevant notes to answer your question. Please try a different query or create more notes on this topic.";
+    private static final String ANSWER_FAILED_ANSWER = "I encountered an error while processing your question. Please try again later.";
+
     private final OpenAIService openAIService;
     private final OllamaService ollamaService;
+    private final TextChunker textChunker;
     private final NoteRepository noteRepository;
+    private final NoteChunkRepository noteChunkRepository;
     private final TopicRepository topicRepository;
-    private final UserRepository userRepository;
+    private final TopicCatalogCache topicCatalogCache;
+    private final TopicCentroidClassifier topicCentroidClassifier;
+    private final VectorSearchEngine vectorSearchEngine;
+    private final HybridNoteSearch hybridNoteSearch;
+    private final SemanticQueryCache semanticQueryCache;
+    private final ChangeSignificanceGate changeSignificanceGate;
+    private final DocumentTextExtractor documentTextExtractor;
+    private final Counter localClassifications;
+    private final Counter llmClassifications;
+    private final Timer processingTimer;
+
+    private final ExtractiveSummarizer extractiveSummarizer;
+    private final Counter classificationAgreements;
+    private final Counter classificationDisagreements;
+
+    @Value("${app.ai.local-classifier.speculative-summary:false}")
+    private boolean speculativeSummary;
+
+    /**
+     * Summary of locally classified notes: extractive (no LLM call) or llm
+     */
+    @Value("${app.ai.local-classifier.summary:extractive}")
+    private String localSummary;
+
+    /**
+     * Share of local classifications also sent to the LLM in the background to
+     * measure how often both pick the same topic
+     */
+    @Value("${app.ai.local-classifier.agreement-sample-rate:0.02}")
+    private double agreementSampleRate;
+
+    // Runs the embedding and LLM stages of note processing concurrently, the
+    // AI calls are bounded by their bulkheads and admission control
+    private final ExecutorService stageExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public AIServiceImpl(OpenAIService openAIService,
+            OllamaService ollamaService,
+            TextChunker textChunker,
+            NoteRepository noteRepository,
+            NoteChunkRepository noteChunkRepository,
+            TopicRepository topicRepository,
+            TopicCatalogCache topicCatalogCache,
+            TopicCentroidClassifier topicCentroidClassifier,
+            VectorSearchEngine vectorSearchEngine,
+            HybridNoteSearch hybridNoteSearch,
+            SemanticQueryCache semanticQueryCache,
+            ChangeSignificanceGate changeSignificanceGate,
+            DocumentTextExtractor documentTextExtractor,
+            ExtractiveSummarizer extractiveSummarizer,
+            MeterRegistry meterRegistry) {
+        this.openAIService = openAIService;
+        this.ollamaService = ollamaService;
+        this.textChunker = textChunker;
+        this.noteRepository = noteRepository;
+        this.noteChunkRepository = noteChunkRepository;
+        this.topicRepository = topicRepository;
+        this.topicCatalogCache = topicCatalogCache;
+        this.topicCentroidClassifier = topicCentroidClassifier;
+        this.vectorSearchEngine = vectorSearchEngine;
+        this.hybridNoteSearch = hybridNoteSearch;
+        this.semanticQueryCache = semanticQueryCache;
+        this.changeSignificanceGate = changeSignificanceGate;
+        this.documentTextExtractor = documentTextExtractor;
+        this.extractiveSummarizer = extractiveSummarizer;
+        this.classificationAgreements = Counter.builder("notekeeper.ai.classification.agreement")
+                .tag("result", "agree").register(meterRegistry);
+        this.classificationDisagreements = Counter.builder("notekeeper.ai.classification.agreement")
+                .tag("result", "disagree").register(meterRegistry);
+        this.localClassifications = Counter.builder("notekeeper.ai.classification")
+                .tag("path", "local").register(meterRegistry);
+        this.llmClassifications = Counter.builder("notekeeper.ai.classification")
+                .tag("path", "llm").register(meterRegistry);
+        this.processingTimer = Timer.builder("notekeeper.ai.processing")
+                .description("Classification and embedding time of a note")
+                .register(meterRegistry);
+    }
 
     @Override
-    @TransactionalEventListener
-    @Async
     @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void processNote(NoteCreatedEvent event) {
-        try {
-            log.info("Starting async note processing (classify + embed) for note ID: {}", event.getNoteId());
+    public void processNote(UUID noteId) {
+        log.info("Starting note processing (classify + embed) for note ID: {}", noteId);
+
+        // Load note once
+        Note note = noteRepository.findById(noteId)
+                .orElseThrow(() -> new IllegalArgumentException("Note not found with ID: " + noteId));
+        UUID ownerId = note.getOwner().getId();
+
+        log.info("Processing note: {} (type: {}, owner: {})",
+                noteId, note.getType(), ownerId);
+
+        long start = System.nanoTime();
+
+        // DOCUMENT: extract text locally, only scanned PDFs go to the vision model
+        String documentText = note.getType() == NoteType.DOCUMENT
+                ? documentTextExtractor.extract(note.getFileUrl()).orElse(null)
+                : null;
+
+        // Topics and centroids are read here, in the note transaction, the stages
+        // below run on virtual threads without touching the database
+        TopicCatalogCache.TopicCatalog catalog = topicCatalogCache.get(ownerId);
+        if (catalog.topics().isEmpty()) {
+            log.warn("No topics found for user: {}, skipping classification of note: {}", ownerId, noteId);
+            return;
+        }
 
-            // Load note once
-            Note note = noteRepository.findById(event.getNoteId())
-                    .orElseThrow(() -> new IllegalArgumentException("Note not found with ID: " + event.getNoteId()));
+        CompletableFuture<ClassificationResult> classificationStage;
+        CompletableFuture<List<NoteChunk>> embeddingStage;
+
+        if (note.getType() == NoteType.TEXT || documentText != null) {
+            // TEXT and extracted DOCUMENT: the content is known, embedding and
+            // the LLM stage start together
+            String content = documentText != null ? documentText : note.getContent();
+            embeddingStage = runStage(() -> embedNote(note, content));
+
+            TopicCentroidClassifier.Centroids centroids = topicCentroidClassifier.prepare(ownerId, catalog);
+            if (centroids != null) {
+                // Topic comes from the embedding (LLM only on a local miss). With
+                // speculative summaries on, the summary runs next to the embedding
+                // and is wasted when the LLM classifies after all
+                CompletableFuture<String> summaryStage = speculativeSummary && isLlmLocalSummary()
+                        ? runStage(() -> openAIService.generateSummaryForTextNote(note.getTitle(), content, null))
+                        : null;
+                classificationStage = embeddingStage.thenApplyAsync(
+                        chunks -> performClassification(note, catalog, centroids, meanOf(chunks), documentText,
+                                summaryStage),
+                        stageExecutor);
+            } else {
+                classificationStage = runStage(
+                        () -> performClassification(note, catalog, null, null, documentText, null));
+            }
+        } else {
+            // IMAGE/scanned DOCUMENT: classify and extract content, then embed extracted content
+            classificationStage = runStage(() -> performClassification(note, catalog, null, null, null, null));
+            embeddingStage = classificationStage.thenApplyAsync(
+                    result -> embedNote(note, result.extractedContent),
+                    stageExecutor);
+        }
 
-            log.info("Processing note: {} (type: {}, owner: {})",
-                    event.getNoteId(), note.getType(), note.getOwner().getId());
+        ClassificationResult classificationResult = join(classificationStage);
 
-            // Step 1: Classify and extract content
-            ClassificationResult classificationResult = performClassification(note);
+        float[] embedding = storeChunks(noteId, ownerId, join(embeddingStage));
 
-            if (classificationResult == null) {
-                log.warn("Classification skipped for note: {}", event.getNoteId());
-                return;
-            }
+        // Save everything in one update
+        saveNoteProcessingResult(noteId, note.getType(), classificationResult, embedding);
+        semanticQueryCache.invalidate(ownerId);
+        topicCentroidClassifier.recordAssignment(ownerId,
+                classificationResult.selectedTopic.id(), embedding);
 
-            // Step 2: Generate embedding from content
-            float[] embedding = performEmbedding(note, classificationResult.extractedContent);
+        processingTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        log.info("Note processing completed successfully for note ID: {} in {} ms", noteId,
+                (System.nanoTime() - start) / 1_000_000);
+    }
 
-            // Step 3: Save everything in one update
-            saveNoteProcessingResult(event.getNoteId(), note.getType(), classificationResult, embedding);
+    @PreDestroy
+    public void shutdown() {
+        stageExecutor.shutdown();
+    }
 
-            log.info("Note processing completed successfully for note ID: {}", event.getNoteId());
-        } catch (Exception e) {
-            log.error("Failed to process note with ID: {}", event.getNoteId(), e);
-            // Don't throw - async method, just log error
+    private <T> CompletableFuture<T> runStage(Supplier<T> stage) {
+        return CompletableFuture.supplyAsync(stage, stageExecutor);
+    }
+
+    /**
+     * Wait for a stage, its failure is rethrown as is (retryable errors keep
+     * failing the AI job)
+     */
+    private static <T> T join(CompletableFuture<T> stage) {
+        try {
+            return stage.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
     }
 
     @Override
-    @TransactionalEventListener
-    @Async
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void updateNoteEmbedding(NoteContentUpdatedEvent event) {
         try {
-            log.info("Starting async embedding and summary update for note ID: {}", event.getNoteId());
+            log.info("Starting embedding and summary update for note ID: {}", event.getNoteId());
 
             // Check if content has changed and is not empty
             if (event.getNewContent() == null || event.getNewContent().trim().isEmpty()) {
@@ -105,7 +269,41 @@ public class AIServiceImpl implements AIService {
                     noteQuery.getTitle(),
                     noteQuery.getTopic() != null ? noteQuery.getTopic().getName() : "null");
 
-            // Step 2: Generate new AI summary from updated content using LLM
+            // Step 2: Compare with the content the stored embedding was built from,
+            // small edits keep their summary (new chunks are embedded only if needed,
+            // chunks of another embedding model are no baseline)
+            List<NoteChunk> previousChunks = noteChunkRepository.findByNoteIdOrderByChunkIndex(event.getNoteId())
+                    .stream()
+                    .filter(chunk -> ollamaService.getActiveModel().equals(chunk.getEmbeddingModel()))
+                    .toList();
+            List<NoteChunk> newChunks = new ArrayList<>();
+            ChangeSignificanceGate.Decision decision = changeSignificanceGate.evaluate(
+                    previousChunks.isEmpty() ? null
+                            : String.join(" ", previousChunks.stream().map(NoteChunk::getContent).toList()),
+                    previousChunks.isEmpty() ? null
+                            : VectorMath.mean(previousChunks.stream().map(NoteChunk::getEmbedding).toList()),
+                    event.getNewContent(),
+                    () -> {
+                        newChunks.addAll(embedChunks(event.getNoteId(), noteQuery.getOwner().getId(),
+                                event.getNewContent()));
+                        return newChunks.isEmpty() ? null
+                                : VectorMath.mean(newChunks.stream().map(NoteChunk::getEmbedding).toList());
+                    });
+
+            if (decision == ChangeSignificanceGate.Decision.SKIP_ALL) {
+                log.info("Insignificant edit of note {}, keeping summary and embedding", event.getNoteId());
+                return;
+            }
+
+            if (decision == ChangeSignificanceGate.Decision.SKIP_SUMMARY) {
+                float[] embedding = storeChunks(event.getNoteId(), noteQuery.getOwner().getId(), newChunks);
+                noteRepository.updateEmbedding(event.getNoteId(), embedding);
+                semanticQueryCache.invalidate(noteQuery.getOwner().getId());
+                log.info("Insignificant edit of note {}, embedding updated, summary kept", event.getNoteId());
+                return;
+            }
+
+            // Step 3: Generate new AI summary from updated content using LLM
             String topicName = noteQuery.getTopic() != null ? noteQuery.getTopic().getName() : null;
             String aiSummary = openAIService.generateSummaryForTextNote(
                     noteQuery.getTitle(),
@@ -114,11 +312,13 @@ public class AIServiceImpl implements AIService {
 
             log.info("Generated new AI summary for note {}: '{}'", event.getNoteId(), aiSummary);
 
-            // Step 3: Generate new embedding from updated content
+            // Step 4: Generate new embedding from updated content (reuse chunks embedded by the gate)
             log.info("Generating new embedding for note {} (content length: {} chars)",
                     event.getNoteId(), event.getNewContent().length());
 
-            float[] embedding = ollamaService.generateEmbedding(event.getNewContent());
+            float[] embedding = newChunks.isEmpty()
+                    ? embedNoteContent(event.getNoteId(), noteQuery.getOwner().getId(), event.getNewContent())
+                    : storeChunks(event.getNoteId(), noteQuery.getOwner().getId(), newChunks);
 
             if (embedding == null) {
                 log.warn("Failed to generate embedding for note: {}, embedding is null", event.getNoteId());
@@ -128,11 +328,16 @@ public class AIServiceImpl implements AIService {
             log.info("Generated new embedding for note {}: [Vector with {} dimensions]",
                     event.getNoteId(), embedding.length);
 
-            // Step 4: Update both embedding and AI summary in database
+            // Step 5: Update both embedding and AI summary in database
             noteRepository.updateEmbeddingAndSummary(event.getNoteId(), embedding, aiSummary);
+            semanticQueryCache.invalidate(noteQuery.getOwner().getId());
             log.info("Embedding and AI summary updated successfully for note ID: {}", event.getNoteId());
 
         } catch (Exception e) {
+            if (LlmAdmissionController.isRetryable(e)) {
+                // AI busy or unavailable, the coalescer puts the update back
+                throw e;
+            }
             log.error("Failed to update embedding and summary for note with ID: {}", event.getNoteId(), e);
             // Don't throw - async method, just log error
         }
@@ -142,39 +347,63 @@ public class AIServiceImpl implements AIService {
      * Helper class to hold classification results
      */
     private static class ClassificationResult {
-        Topic selectedTopic;
+        CatalogTopic selectedTopic;
         String aiSummary;
         String extractedContent; // Only for IMAGE/DOCUMENT types
 
-        ClassificationResult(Topic selectedTopic, String aiSummary, String extractedContent) {
+        ClassificationResult(CatalogTopic selectedTopic, String aiSummary, String extractedContent) {
             this.selectedTopic = selectedTopic;
             this.aiSummary = aiSummary;
             this.extractedContent = extractedContent;
         }
     }
 
-    private ClassificationResult performClassification(Note note) {
+    /**
+     * Classify note into one of the owner's topics
+     * When centroids and an embedding are given (TEXT notes), the local centroid
+     * classifier is tried first and only a summary is requested from the LLM;
+     * otherwise the full LLM classification is used
+     * Runs as a processing stage, catalog and centroids are resolved by the
+     * caller
+     *
+     * @param documentText Locally extracted text of a DOCUMENT note (null
+     *                     otherwise), becomes the note content
+     * @param summaryStage Summary already being generated next to the
+     *                     embedding (null to generate it here when needed)
+     */
+    private ClassificationResult performClassification(Note note, TopicCatalogCache.TopicCatalog catalog,
+            TopicCentroidClassifier.Centroids centroids, float[] embedding, String documentText,
+            CompletableFuture<String> summaryStage) {
         try {
-            // Get all topics of the note owner
-            List<Topic> userTopics = topicRepository.findAll().stream()
-                    .filter(topic -> topic.getOwner().getId().equals(note.getOwner().getId()))
-                    .toList();
+            List<CatalogTopic> userTopics = catalog.topics();
+            log.info("Found {} topics for classification", userTopics.size());
 
-            if (userTopics.isEmpty()) {
-                log.warn("No topics found for user: {}, skipping classification", note.getOwner().getId());
-                return null;
+            Optional<CatalogTopic> localTopic = topicCentroidClassifier.classify(centroids, embedding);
+            if (localTopic.isPresent()) {
+                localClassifications.increment();
+                String text = documentText != null ? documentText : note.getContent();
+                String aiSummary;
+                if (summaryStage != null) {
+                    aiSummary = join(summaryStage);
+                } else if (isLlmLocalSummary()) {
+                    aiSummary = openAIService.generateSummaryForTextNote(note.getTitle(), text,
+                            localTopic.get().name());
+                } else {
+                    aiSummary = extractiveSummarizer.summarize(note.getTitle(), text);
+                }
+                sampleAgreement(note, catalog, documentText, localTopic.get());
+                return new ClassificationResult(localTopic.get(), aiSummary, documentText);
             }
-
-            log.info("Found {} topics for classification", userTopics.size());
+            llmClassifications.increment();
 
             // Call OpenAI to classify note, get summary, and extract content (for
             // IMAGE/DOCUMENT)
             app.notekeeper.external.ai.dto.response.ClassificationTopicResponse classificationResponse = openAIService
-                    .classifyNote(note, userTopics);
+                    .classifyNote(note, userTopics, catalog.topicsInfo(), documentText);
 
             UUID selectedTopicId = classificationResponse.getTopicId();
             String aiSummary = classificationResponse.getAiSummary();
-            String extractedContent = classificationResponse.getContent();
+            String extractedContent = documentText != null ? documentText : classificationResponse.getContent();
 
             if (selectedTopicId == null) {
                 log.warn("OpenAI returned null topic ID, using default topic");
@@ -186,8 +415,8 @@ public class AIServiceImpl implements AIService {
 
             // Validate selected topic exists and belongs to user
             UUID finalTopicId = selectedTopicId;
-            Topic selectedTopic = userTopics.stream()
-                    .filter(t -> t.getId().equals(finalTopicId))
+            CatalogTopic selectedTopic = userTopics.stream()
+                    .filter(t -> t.id().equals(finalTopicId))
                     .findFirst()
                     .orElseGet(() -> {
                         log.warn("Selected topic {} not found in user's topics, using default", finalTopicId);
@@ -202,49 +431,163 @@ public class AIServiceImpl implements AIService {
         }
     }
 
-    private float[] performEmbedding(Note note, String extractedContent) {
-        try {
-            // Determine content to embed
-            String contentToEmbed = null;
-
-            if (note.getType() == NoteType.TEXT) {
-                contentToEmbed = note.getContent();
-            } else if (note.getType() == NoteType.IMAGE || note.getType() == NoteType.DOCUMENT) {
-                // Use extracted content from classification
-                contentToEmbed = extractedContent;
-            }
+    private boolean isLlmLocalSummary() {
+        return "llm".equalsIgnoreCase(localSummary);
+    }
+
+    /**
+     * Ask the LLM for a sample of local classifications in the background and
+     * count whether it picks the same topic (notekeeper.ai.classification.agreement)
+     * The note is not changed, failures are ignored
+     */
+    private void sampleAgreement(Note note, TopicCatalogCache.TopicCatalog catalog, String documentText,
+            CatalogTopic localTopic) {
+        if (catalog.topics().size() < 2 || agreementSampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= agreementSampleRate) {
+            return;
+        }
+
+        runStage(() -> openAIService.classifyNote(note, catalog.topics(), catalog.topicsInfo(), documentText))
+                .whenComplete((response, e) -> {
+                    if (e != null || response == null || response.getTopicId() == null) {
+                        log.debug("Agreement check skipped for note {}: {}", note.getId(),
+                                e != null ? e.getMessage() : "no topic");
+                        return;
+                    }
+                    if (localTopic.id().equals(response.getTopicId())) {
+                        classificationAgreements.increment();
+                    } else {
+                        classificationDisagreements.increment();
+                        log.info("Local classifier picked topic {} for note {}, LLM picked {}",
+                                localTopic.id(), note.getId(), response.getTopicId());
+                    }
+                });
+    }
 
+    /**
+     * Embed a note's content, runs as a processing stage (nothing is stored)
+     *
+     * @return Embedded chunks, empty when there is no content or embedding failed
+     * @throws SystemException when Ollama is unavailable
+     */
+    private List<NoteChunk> embedNote(Note note, String contentToEmbed) {
+        try {
             if (contentToEmbed == null || contentToEmbed.trim().isEmpty()) {
                 log.warn("Note {} has no content to embed, skipping embedding generation", note.getId());
-                return null;
+                return List.of();
             }
 
+            long start = System.nanoTime();
             log.info("Generating embedding for note {} (content length: {} chars)",
                     note.getId(), contentToEmbed.length());
 
-            // Generate embedding from content
-            float[] embedding = ollamaService.generateEmbedding(contentToEmbed);
+            List<NoteChunk> noteChunks = embedChunks(note.getId(), note.getOwner().getId(), contentToEmbed);
 
-            if (embedding == null) {
-                log.warn("Failed to generate embedding for note: {}, embedding is null", note.getId());
-                return null;
+            if (noteChunks.isEmpty()) {
+                log.warn("Failed to generate embedding for note: {}, no chunk embedded", note.getId());
+                return List.of();
             }
 
-            log.info("Generated embedding for note {}: [Vector with {} dimensions]",
-                    note.getId(), embedding.length);
+            log.info("Embedded {} chunks of note {} in {} ms", noteChunks.size(), note.getId(),
+                    (System.nanoTime() - start) / 1_000_000);
 
-            return embedding;
+            return noteChunks;
 
         } catch (Exception e) {
+            if (LlmAdmissionController.isRetryable(e)) {
+                // Ollama unavailable, fail the AI job so it is retried with backoff
+                throw e;
+            }
             log.error("Error during embedding generation", e);
             // Don't throw, allow note to be saved without embedding
+            return List.of();
+        }
+    }
+
+    /**
+     * Note-level embedding of not yet stored chunks, null if there are none
+     */
+    private float[] meanOf(List<NoteChunk> noteChunks) {
+        return noteChunks.isEmpty() ? null
+                : VectorMath.mean(noteChunks.stream().map(NoteChunk::getEmbedding).toList());
+    }
+
+    /**
+     * Split content into overlapping token windows, embed the chunks in parallel
+     * batches and replace the note's stored chunks
+     *
+     * @return Note-level embedding (normalized mean of chunk vectors), null if no
+     *         chunk could be embedded
+     */
+    private float[] embedNoteContent(UUID noteId, UUID ownerId, String content) {
+        return storeChunks(noteId, ownerId, embedChunks(noteId, ownerId, content));
+    }
+
+    /**
+     * Split content into overlapping token windows and embed the chunks in
+     * parallel batches (nothing is stored)
+     */
+    private List<NoteChunk> embedChunks(UUID noteId, UUID ownerId, String content) {
+        List<TextChunker.Chunk> chunks = textChunker.chunk(content);
+        if (chunks.isEmpty()) {
+            return List.of();
+        }
+
+        String model = ollamaService.getActiveModel();
+        List<float[]> chunkEmbeddings = ollamaService.generateEmbeddings(
+                chunks.stream().map(TextChunker.Chunk::text).toList(), model);
+
+        List<NoteChunk> noteChunks = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            float[] chunkEmbedding = chunkEmbeddings.get(i);
+            if (chunkEmbedding == null) {
+                log.warn("Failed to embed chunk {} of note {}, skipping chunk", i, noteId);
+                continue;
+            }
+            TextChunker.Chunk chunk = chunks.get(i);
+            noteChunks.add(NoteChunk.builder()
+                    .noteId(noteId)
+                    .ownerId(ownerId)
+                    .chunkIndex(chunk.index())
+                    .content(chunk.text())
+                    .tokenCount(chunk.tokenCount())
+                    .embedding(chunkEmbedding)
+                    .embeddingModel(model)
+                    .build());
+        }
+
+        return noteChunks;
+    }
+
+    /**
+     * Replace the note's stored chunks and record their embedding model
+     *
+     * @return Note-level embedding (normalized mean of chunk vectors), null if no
+     *         chunk could be embedded
+     */
+    private float[] storeChunks(UUID noteId, UUID ownerId, List<NoteChunk> noteChunks) {
+        if (noteChunks.isEmpty()) {
             return null;
         }
+
+        noteChunkRepository.deleteByNoteId(noteId);
+        noteChunkRepository.deleteStagedByNoteId(noteId);
+        noteChunkRepository.saveAll(noteChunks);
+
+        List<float[]> embeddings = noteChunks.stream().map(NoteChunk::getEmbedding).toList();
+        noteRepository.updateEmbeddingModel(noteId, noteChunks.get(0).getEmbeddingModel(), embeddings.get(0).length);
+        log.info("Stored {} chunks for note {} ({})", noteChunks.size(), noteId, noteChunks.get(0).getEmbeddingModel());
+
+        vectorSearchEngine.onNoteEmbedded(ownerId, noteId, embeddings);
+
+        return VectorMath.mean(embeddings);
     }
 
     private void saveNoteProcessingResult(UUID noteId, NoteType noteType,
             ClassificationResult classification, float[] embedding) {
         try {
+            // The catalog holds topic copies, the update only needs a reference
+            Topic topic = topicRepository.getReferenceById(classification.selectedTopic.id());
+
             // Save based on what we have
             boolean hasContent = classification.extractedContent != null
                     && !classification.extractedContent.trim().isEmpty()
@@ -253,22 +596,22 @@ public class AIServiceImpl implements AIService {
 
             if (hasContent && hasEmbedding) {
                 // Save all: topic, summary, content, embedding
-                noteRepository.updateAll(noteId, classification.selectedTopic,
+                noteRepository.updateAll(noteId, topic,
                         classification.aiSummary, classification.extractedContent, embedding);
                 log.info("Updated note {} with topic, summary, content, and embedding", noteId);
             } else if (hasContent) {
                 // Save: topic, summary, content (no embedding)
-                noteRepository.updateClassificationWithContent(noteId, classification.selectedTopic,
+                noteRepository.updateClassificationWithContent(noteId, topic,
                         classification.aiSummary, classification.extractedContent);
                 log.info("Updated note {} with topic, summary, and content", noteId);
             } else if (hasEmbedding) {
                 // Save: topic, summary, embedding (TEXT type)
-                noteRepository.updateClassificationAndEmbedding(noteId, classification.selectedTopic,
+                noteRepository.updateClassificationAndEmbedding(noteId, topic,
                         classification.aiSummary, embedding);
                 log.info("Updated note {} with topic, summary, and embedding", noteId);
             } else {
                 // Save: topic, summary only
-                noteRepository.updateClassification(noteId, classification.selectedTopic,
+                noteRepository.updateClassification(noteId, topic,
                         classification.aiSummary);
                 log.info("Updated note {} with topic and summary only", noteId);
             }
@@ -279,13 +622,13 @@ public class AIServiceImpl implements AIService {
         }
     }
 
-    private UUID getDefaultTopicId(List<Topic> topics) {
-        return getDefaultTopic(topics).getId();
+    private UUID getDefaultTopicId(List<CatalogTopic> topics) {
+        return getDefaultTopic(topics).id();
     }
 
-    private Topic getDefaultTopic(List<Topic> topics) {
+    private CatalogTopic getDefaultTopic(List<CatalogTopic> topics) {
         return topics.stream()
-                .filter(topic -> topic.isDefault())
+                .filter(CatalogTopic::isDefault)
                 .findFirst()
                 .orElse(topics.get(0)); // Fallback to first topic if no default found
     }
@@ -296,45 +639,53 @@ public class AIServiceImpl implements AIService {
         try {
             log.info("Retrieving notes for user {} with query: '{}'", userId, request.getQuery());
 
-            // Step 1: Generate embedding from query
+            // Step 1: Embed query, a paraphrase of a recent query reuses its answer
             float[] queryEmbedding = ollamaService.generateEmbedding(request.getQuery());
 
-            if (queryEmbedding == null) {
-                log.warn("Failed to generate embedding for query: {}", request.getQuery());
-                throw SystemException.systemError("Failed to process your query. Please try again.");
+            Optional<SemanticQueryCache.CachedAnswer> cached = semanticQueryCache.find(
+                    userId, request.getTopicId(), queryEmbedding);
+            if (cached.isPresent()) {
+                return RetrieveNoteResponse.builder()
+                        .answer(cached.get().answer())
+                        .relevantNotes(cached.get().relevantNotes())
+                        .notesFound(cached.get().relevantNotes().size())
+                        .build();
             }
 
-            // Step 2: Convert embedding to PostgreSQL vector format
-            String embeddingString = convertEmbeddingToString(queryEmbedding);
-
-            // Step 3: Search for similar notes using vector similarity
-            List<Object[]> similarNotesRaw = noteRepository.findSimilarNotes(
-                    userId,
-                    request.getTopicId(),
-                    embeddingString,
-                    5); // Limit to top 5 most similar notes
+            // Step 2: Search similar notes
+            List<NoteSearchResult> relevantNotes = findRelevantNotes(request, userId, queryEmbedding);
 
-            log.info("Found {} similar notes", similarNotesRaw.size());
-
-            if (similarNotesRaw.isEmpty()) {
+            if (relevantNotes.isEmpty()) {
                 return RetrieveNoteResponse.builder()
-                        .answer("I couldn't find any relevant notes to answer your question. Please try a different query or create more notes on this topic.")
+                        .answer(NO_RELEVANT_NOTES_ANSWER)
                         .relevantNotes(new ArrayList<>())
                         .notesFound(0)
                         .build();
             }
 
-            // Step 4: Convert raw results to NoteQueryResponse
-            List<NoteQueryResponse> relevantNotes = convertToNoteQueryResponses(similarNotesRaw);
-
-            // Step 5: Generate answer using LLM
-            String answer = openAIService.generateAnswerFromNotes(request.getQuery(), relevantNotes);
+            // Step 3: Generate answer using LLM, a failed generation gets the
+            // error answer and is never cached for paraphrases
+            String answer;
+            boolean generated;
+            try {
+                answer = openAIService.generateAnswerFromNotes(request.getQuery(), relevantNotes);
+                generated = answer != null && !answer.isBlank();
+            } catch (Exception e) {
+                log.warn("Answer generation failed for query: '{}': {}", request.getQuery(), e.getMessage());
+                answer = ANSWER_FAILED_ANSWER;
+                generated = false;
+            }
 
-            // Step 6: Convert to NoteResponse for API response
+            // Step 4: Convert to NoteResponse for API response
             List<NoteResponse> noteResponses = relevantNotes.stream()
                     .map(this::convertToNoteResponse)
                     .toList();
 
+            if (generated) {
+                semanticQueryCache.put(userId, request.getTopicId(), queryEmbedding, answer, relevantNotes,
+                        noteResponses);
+            }
+
             log.info("Successfully generated answer for query: '{}'", request.getQuery());
 
             return RetrieveNoteResponse.builder()
@@ -351,80 +702,65 @@ public class AIServiceImpl implements AIService {
         }
     }
 
-    private String convertEmbeddingToString(float[] embedding) {
-        StringBuilder sb = new StringBuilder("[");
-        for (int i = 0; i < embedding.length; i++) {
-            if (i > 0) {
-                sb.append(",");
-            }
-            sb.append(embedding[i]);
-        }
-        sb.append("]");
-        return sb.toString();
+    @Override
+    public Flux<RetrieveNoteStreamEvent> streamRetrieveNotes(RetrieveNoteRequest request, UUID userId) {
+        log.info("Streaming retrieve for user {} with query: '{}'", userId, request.getQuery());
+
+        // Embedding and vector search block, keep them off the request thread
+        return Mono.fromCallable(() -> findRelevantNotes(request, userId, null))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(relevantNotes -> {
+                    RetrieveNoteStreamEvent notesEvent = RetrieveNoteStreamEvent.notes(relevantNotes.stream()
+                            .map(this::convertToNoteResponse)
+                            .toList());
+
+                    Flux<RetrieveNoteStreamEvent> answer = relevantNotes.isEmpty()
+                            ? Flux.just(RetrieveNoteStreamEvent.token(NO_RELEVANT_NOTES_ANSWER))
+                            : openAIService.streamAnswerFromNotes(request.getQuery(), relevantNotes)
+                                    .map(RetrieveNoteStreamEvent::token);
+
+                    return Flux.concat(Flux.just(notesEvent), answer, Flux.just(RetrieveNoteStreamEvent.done()));
+                })
+                .doOnComplete(() -> log.info("Finished streaming answer for query: '{}'", request.getQuery()))
+                .onErrorResume(e -> {
+                    log.error("Error streaming retrieve for query: {}", request.getQuery(), e);
+                    String message = e instanceof ServiceException || e instanceof SystemException
+                            ? e.getMessage()
+                            : "Failed to retrieve notes. Please try again.";
+                    return Flux.just(RetrieveNoteStreamEvent.error(message));
+                });
     }
 
-    private List<NoteQueryResponse> convertToNoteQueryResponses(List<Object[]> rawResults) {
-        List<NoteQueryResponse> notes = new ArrayList<>();
-
-        for (Object[] row : rawResults) {
-            try {
-                NoteQueryResponse note = new NoteQueryResponse();
-
-                // Map columns: id, owner_id, topic_id, title, description, content, ai_summary,
-                // type, file_url, created_at, updated_at
-                note.setId((UUID) row[0]);
-
-                // Load owner entity
-                UUID ownerId = (UUID) row[1];
-                User owner = userRepository.findById(ownerId).orElse(null);
-                note.setOwner(owner);
-
-                // Load topic entity if present
-                if (row[2] != null) {
-                    UUID topicId = (UUID) row[2];
-                    Topic topic = topicRepository.findById(topicId).orElse(null);
-                    note.setTopic(topic);
-                }
-
-                note.setTitle((String) row[3]);
-                note.setDescription((String) row[4]);
-                note.setContent((String) row[5]);
-                note.setAiSummary((String) row[6]);
-                note.setType(NoteType.valueOf((String) row[7]));
-                note.setFileUrl((String) row[8]);
-
-                // Convert Instant to ZonedDateTime
-                if (row[9] != null) {
-                    Instant createdAt = (Instant) row[9];
-                    note.setCreatedAt(ZonedDateTime.ofInstant(createdAt, ZoneId.systemDefault()));
-                }
-
-                if (row[10] != null) {
-                    Instant updatedAt = (Instant) row[10];
-                    note.setUpdatedAt(ZonedDateTime.ofInstant(updatedAt, ZoneId.systemDefault()));
-                }
-
-                notes.add(note);
-            } catch (Exception e) {
-                log.error("Error converting raw result to NoteQueryResponse", e);
-                // Skip this note and continue with others
-            }
-        }
-
-        return notes;
+    /**
+     * Load the notes of the user most relevant to the query
+     * (query embedding is generated when null)
+     */
+    private List<NoteSearchResult> findRelevantNotes(RetrieveNoteRequest request, UUID userId,
+            float[] queryEmbedding) {
+        // Keyword and vector search in parallel, fused by reciprocal rank
+        List<NoteSearchResult> relevantNotes = hybridNoteSearch.search(
+                userId,
+                request.getTopicId(),
+                request.getQuery(),
+                queryEmbedding,
+                5); // Limit to top 5 most relevant notes
+
+        log.info("Found {} relevant notes", relevantNotes.size());
+
+        return relevantNotes;
     }
 
-    private NoteResponse convertToNoteResponse(NoteQueryResponse note) {
+    private NoteResponse convertToNoteResponse(NoteSearchResult note) {
         return NoteResponse.builder()
                 .id(note.getId())
                 .title(note.getTitle())
                 .content(note.getContent())
                 .description(note.getDescription())
                 .type(note.getType())
-                .ownerId(note.getOwner() != null ? note.getOwner().getId() : null)
-                .ownerDisplayName(note.getOwner() != null ? note.getOwner().getDisplayName() : null)
-                .topicId(note.getTopic() != null ? note.getTopic().getId() : null)
-                .topicName(note.getTopic() != null ? note.getTopic().getName() : null)
+                .ownerId(note.getOwnerId())
+                .ownerDisplayName(note.getOwnerDisplayName())
+                .topicId(note.getTopicId())
+                .topicName(note.getTopicName())
                 .createdAt(note.getCreatedAt())
                 .updatedAt(note.getUpdatedAt())
                 .build();
@@ -2,10 +2,12 @@ package app.notekeeper.service.impl;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.time.ZonedDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -24,13 +26,17 @@ import app.notekeeper.common.exception.ServiceException;
 import app.notekeeper.common.exception.SystemException;
 import app.notekeeper.common.exception.ValidationException;
 import app.notekeeper.event.NoteCreatedEvent;
+import app.notekeeper.external.ai.ImagePreprocessor;
 import app.notekeeper.model.dto.request.FileUploadRequest;
 import app.notekeeper.model.dto.request.TextUploadRequest;
 import app.notekeeper.model.dto.response.JSendResponse;
+import app.notekeeper.model.entity.AiJob;
 import app.notekeeper.model.entity.Note;
 import app.notekeeper.model.entity.Topic;
 import app.notekeeper.model.entity.User;
+import app.notekeeper.model.enums.AiJobType;
 import app.notekeeper.model.enums.NoteType;
+import app.notekeeper.repository.AiJobRepository;
 import app.notekeeper.repository.NoteRepository;
 import app.notekeeper.repository.TopicRepository;
 import app.notekeeper.repository.UserRepository;
@@ -45,6 +51,7 @@ import lombok.extern.slf4j.Slf4j;
 public class IOServiceImpl implements IOService {
 
     private final NoteRepository noteRepository;
+    private final AiJobRepository aiJobRepository;
     private final TopicRepository topicRepository;
     private final UserRepository userRepository;
     private final ApplicationEventPublisher eventPublisher;
@@ -126,7 +133,8 @@ public class IOServiceImpl implements IOService {
             noteRepository.save(note);
             log.info("Note created successfully with ID: {}", note.getId());
 
-            // Publish note created event
+            // Queue AI processing in the same transaction, then wake the job worker
+            enqueueNoteProcessing(note);
             eventPublisher.publishEvent(new NoteCreatedEvent(note.getId()));
 
             return JSendResponse.success("File uploaded successfully");
@@ -182,7 +190,8 @@ public class IOServiceImpl implements IOService {
             noteRepository.save(note);
             log.info("Text note created successfully with ID: {}", note.getId());
 
-            // Publish note created event
+            // Queue AI processing in the same transaction, then wake the job worker
+            enqueueNoteProcessing(note);
             eventPublisher.publishEvent(new NoteCreatedEvent(note.getId()));
 
             return JSendResponse.success("Text note created successfully");
@@ -195,6 +204,18 @@ public class IOServiceImpl implements IOService {
         }
     }
 
+    /**
+     * Write the durable AI processing job for a new note
+     */
+    private void enqueueNoteProcessing(Note note) {
+        aiJobRepository.save(AiJob.builder()
+                .noteId(note.getId())
+                .ownerId(note.getOwner().getId())
+                .type(AiJobType.PROCESS_NOTE)
+                .nextAttemptAt(ZonedDateTime.now())
+                .build());
+    }
+
     private void validateFile(MultipartFile file, FileUploadRequest.FileType fileType) {
         // Check if file is empty
         if (file.isEmpty()) {
@@ -314,6 +335,14 @@ public class IOServiceImpl implements IOService {
                 log.warn("File not found for deletion: {}", fileUrl);
             }
 
+            // Downscaled copies made for the vision model
+            try (DirectoryStream<Path> derived = Files.newDirectoryStream(filePath.getParent(),
+                    filePath.getFileName() + ImagePreprocessor.DERIVED_MARKER + "*")) {
+                for (Path derivedFile : derived) {
+                    Files.deleteIfExists(derivedFile);
+                }
+            }
+
         } catch (IOException ex) {
             log.error("Failed to delete file: {}", fileUrl, ex);
             throw SystemException.systemError("Could not delete file: " + fileUrl);
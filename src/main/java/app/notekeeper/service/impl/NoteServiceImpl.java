@@ -22,6 +22,8 @@ import app.notekeeper.repository.NoteRepository;
 import app.notekeeper.security.SecurityUtils;
 import app.notekeeper.service.IOService;
 import app.notekeeper.service.NoteService;
+import app.notekeeper.service.search.SemanticQueryCache;
+import app.notekeeper.service.search.VectorSearchEngine;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -34,6 +36,8 @@ public class NoteServiceImpl implements NoteService {
     private final NoteRepository noteRepository;
     private final IOService ioService;
     private final ApplicationEventPublisher eventPublisher;
+    private final VectorSearchEngine vectorSearchEngine;
+    private final SemanticQueryCache semanticQueryCache;
 
     @Value("${app.deployment-url}")
     private String deploymentUrl;
@@ -103,12 +107,13 @@ public class NoteServiceImpl implements NoteService {
                     && !request.getContent().equals(noteQuery.getContent());
 
             noteRepository.updateTitleAndContent(noteId, newTitle, newContent);
+            semanticQueryCache.invalidate(currentUserId);
             log.info("Text note updated successfully: {}", noteId);
 
             // Publish event to regenerate embedding if content changed
             if (contentChanged) {
                 log.info("Content changed for note {}, triggering embedding update", noteId);
-                eventPublisher.publishEvent(new NoteContentUpdatedEvent(noteId, newContent));
+                eventPublisher.publishEvent(new NoteContentUpdatedEvent(noteId, currentUserId, newContent));
             }
 
             // Fetch updated note to return response
@@ -154,6 +159,8 @@ public class NoteServiceImpl implements NoteService {
 
             // Delete note from database using custom query (no entity loading needed)
             noteRepository.deleteNoteById(noteId);
+            vectorSearchEngine.onNoteDeleted(currentUserId, noteId);
+            semanticQueryCache.invalidate(currentUserId);
             log.info("Note deleted successfully: {}", noteId);
 
             return JSendResponse.success(null, "Note deleted successfully");
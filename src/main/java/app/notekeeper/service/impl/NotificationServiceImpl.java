@@ -50,7 +50,7 @@ public class NotificationServiceImpl implements NotificationService {
 
     @Override
     @TransactionalEventListener
-    @Async
+    @Async("notificationTaskExecutor")
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void onTopicShared(TopicSharedEvent event) {
         log.info("Processing topic shared event: topicId={}, sharedWith={}",
@@ -98,7 +98,7 @@ public class NotificationServiceImpl implements NotificationService {
 
     @Override
     @TransactionalEventListener
-    @Async
+    @Async("notificationTaskExecutor")
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void onNoteShared(NoteSharedEvent event) {
         log.info("Processing note shared event: noteId={}, sharedWith={}",
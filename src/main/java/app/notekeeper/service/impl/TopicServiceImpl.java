@@ -11,6 +11,8 @@ import app.notekeeper.repository.TopicRepository;
 import app.notekeeper.repository.UserRepository;
 import app.notekeeper.security.SecurityUtils;
 import app.notekeeper.service.TopicService;
+import app.notekeeper.service.ai.TopicCatalogCache;
+import app.notekeeper.service.search.SemanticQueryCache;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
@@ -25,6 +27,8 @@ public class TopicServiceImpl implements TopicService {
 
     private final TopicRepository topicRepository;
     private final UserRepository userRepository;
+    private final TopicCatalogCache topicCatalogCache;
+    private final SemanticQueryCache semanticQueryCache;
 
     @Override
     public JSendResponse<TopicResponse> createTopic(TopicCreateRequest request) {
@@ -44,6 +48,7 @@ public class TopicServiceImpl implements TopicService {
                 .build();
 
         topicRepository.save(topic);
+        topicCatalogCache.evict(owner.getId());
 
         TopicResponse response = TopicResponse.builder()
                 .id(topic.getId())
@@ -105,6 +110,8 @@ public class TopicServiceImpl implements TopicService {
             topic.setAiSummary(request.getAiSummary());
 
         topicRepository.save(topic);
+        topicCatalogCache.evict(currentUserId);
+        semanticQueryCache.invalidate(currentUserId);
 
         TopicResponse response = TopicResponse.builder()
                 .id(topic.getId())
@@ -133,6 +140,8 @@ public class TopicServiceImpl implements TopicService {
         }
 
         topicRepository.delete(topic);
+        topicCatalogCache.evict(currentUserId);
+        semanticQueryCache.invalidate(currentUserId);
 
         return JSendResponse.success(null, "Delete topic successfully");
     }
@@ -150,6 +159,7 @@ public class TopicServiceImpl implements TopicService {
                 .build();
 
         topicRepository.save(defaultTopic);
+        topicCatalogCache.evict(userId);
     }
 
     @Override
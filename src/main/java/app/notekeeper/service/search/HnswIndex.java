@@ -0,0 +1,442 @@
+package app.notekeeper.service.search;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import app.notekeeper.common.util.VectorMath;
+
+/**
+ * Minimal HNSW graph for cosine distance over normalized vectors
+ * Vectors live off-heap in a direct buffer, graph links are primitive int
+ * arrays. Removal only tombstones a node (it still routes searches), callers
+ * rebuild when tombstones pile up.
+ * Not thread-safe (searches share scratch state), callers serialize access.
+ */
+public final class HnswIndex {
+
+    private static final int SNAPSHOT_MAGIC = 0x484E5357; // "HNSW"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+
+    private FloatBuffer vectors;
+    private UUID[] labels;
+    private int[][][] links;
+    private boolean[] deleted;
+    private int size;
+    private int deletedCount;
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    /**
+     * Search scratch: visit marks compared against a per-search stamp
+     */
+    private int[] visited;
+    private int visitStamp;
+
+    /**
+     * Single search hit: label (note ID) and cosine distance
+     */
+    public record Hit(UUID label, float distance) {
+    }
+
+    public HnswIndex(int dimension, int m, int efConstruction, int initialCapacity) {
+        this.dimension = dimension;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        allocate(Math.max(16, initialCapacity));
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public int size() {
+        return size - deletedCount;
+    }
+
+    public int deletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * Add a vector with its label, returns the internal node ID
+     */
+    public int add(UUID label, float[] vector) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected vector dimension " + dimension + " but got " + vector.length);
+        }
+
+        if (size == labels.length) {
+            allocate(labels.length * 2);
+        }
+
+        int node = size++;
+        float[] normalized = VectorMath.normalize(vector);
+        vectors.put(node * dimension, normalized);
+        labels[node] = label;
+
+        int level = (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+        links[node] = new int[level + 1][0];
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return node;
+        }
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > level; l--) {
+            current = greedyClosest(normalized, current, l);
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            long[] candidates = searchLayer(normalized, current, efConstruction, l);
+            int maxLinks = l == 0 ? maxM0 : m;
+
+            int[] selected = selectNeighbors(candidates, m);
+            links[node][l] = selected;
+
+            for (int neighbor : selected) {
+                connect(neighbor, node, l, maxLinks);
+            }
+
+            current = nodeOf(candidates[0]);
+        }
+
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+
+        return node;
+    }
+
+    /**
+     * Tombstone a node, it stays in the graph for routing but is never returned
+     */
+    public void remove(int node) {
+        if (node >= 0 && node < size && !deleted[node]) {
+            deleted[node] = true;
+            deletedCount++;
+        }
+    }
+
+    /**
+     * Find up to k nearest live nodes
+     *
+     * @param query Query vector (normalized here)
+     * @param k     Number of hits
+     * @param ef    Search beam width (raised to k if lower)
+     * @return Hits ordered by distance, nearest first
+     */
+    public List<Hit> search(float[] query, int k, int ef) {
+        if (entryPoint < 0 || size() == 0) {
+            return List.of();
+        }
+
+        float[] normalized = VectorMath.normalize(query);
+
+        int current = entryPoint;
+        for (int l = maxLevel; l > 0; l--) {
+            current = greedyClosest(normalized, current, l);
+        }
+
+        // Widen the beam by the tombstones so deleted nodes don't starve the result
+        long[] candidates = searchLayer(normalized, current, Math.max(ef, k) + Math.min(deletedCount, ef), 0);
+
+        List<Hit> hits = new ArrayList<>(Math.min(k, candidates.length));
+        for (long candidate : candidates) {
+            int node = nodeOf(candidate);
+            if (deleted[node]) {
+                continue;
+            }
+            hits.add(new Hit(labels[node], distanceOf(candidate)));
+            if (hits.size() == k) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Write the index (vectors, labels, links, tombstones) to a snapshot stream
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(dimension);
+        out.writeInt(m);
+        out.writeInt(efConstruction);
+        out.writeInt(size);
+        out.writeInt(entryPoint);
+        out.writeInt(maxLevel);
+
+        for (int node = 0; node < size; node++) {
+            out.writeLong(labels[node].getMostSignificantBits());
+            out.writeLong(labels[node].getLeastSignificantBits());
+            out.writeBoolean(deleted[node]);
+            for (int d = 0; d < dimension; d++) {
+                out.writeFloat(vectors.get(node * dimension + d));
+            }
+            out.writeInt(links[node].length);
+            for (int[] levelLinks : links[node]) {
+                out.writeInt(levelLinks.length);
+                for (int neighbor : levelLinks) {
+                    out.writeInt(neighbor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read an index written by writeTo
+     */
+    public static HnswIndex readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported HNSW snapshot format");
+        }
+
+        int dimension = in.readInt();
+        int m = in.readInt();
+        int efConstruction = in.readInt();
+        int size = in.readInt();
+
+        HnswIndex index = new HnswIndex(dimension, m, efConstruction, size);
+        index.entryPoint = in.readInt();
+        index.maxLevel = in.readInt();
+        index.size = size;
+
+        for (int node = 0; node < size; node++) {
+            index.labels[node] = new UUID(in.readLong(), in.readLong());
+            index.deleted[node] = in.readBoolean();
+            if (index.deleted[node]) {
+                index.deletedCount++;
+            }
+            for (int d = 0; d < dimension; d++) {
+                index.vectors.put(node * dimension + d, in.readFloat());
+            }
+            int levels = in.readInt();
+            index.links[node] = new int[levels][];
+            for (int l = 0; l < levels; l++) {
+                int[] levelLinks = new int[in.readInt()];
+                for (int i = 0; i < levelLinks.length; i++) {
+                    levelLinks[i] = in.readInt();
+                }
+                index.links[node][l] = levelLinks;
+            }
+        }
+
+        return index;
+    }
+
+    public UUID label(int node) {
+        return labels[node];
+    }
+
+    public boolean isDeleted(int node) {
+        return deleted[node];
+    }
+
+    /**
+     * Add a back link, a full link list is pruned again with the neighbor
+     * selection heuristic
+     */
+    private void connect(int node, int neighbor, int level, int maxLinks) {
+        int[] current = links[node][level];
+
+        if (current.length < maxLinks) {
+            int[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = neighbor;
+            links[node][level] = extended;
+            return;
+        }
+
+        int base = node * dimension;
+        long[] candidates = new long[current.length + 1];
+        for (int i = 0; i < current.length; i++) {
+            candidates[i] = encode(distance(base, current[i] * dimension), current[i]);
+        }
+        candidates[current.length] = encode(distance(base, neighbor * dimension), neighbor);
+        Arrays.sort(candidates);
+
+        links[node][level] = selectNeighbors(candidates, maxLinks);
+    }
+
+    /**
+     * Neighbor selection heuristic (HNSW paper, algorithm 4): a candidate is
+     * linked only if it is closer to the base node than to every neighbor
+     * already selected, which keeps links to other clusters instead of spending
+     * them all on the nearest one
+     *
+     * @param candidates Encoded (distance to base, node) entries, nearest first
+     */
+    private int[] selectNeighbors(long[] candidates, int max) {
+        int[] selected = new int[Math.min(max, candidates.length)];
+        int count = 0;
+
+        for (int i = 0; i < candidates.length && count < selected.length; i++) {
+            int candidate = nodeOf(candidates[i]);
+            float distanceToBase = distanceOf(candidates[i]);
+
+            boolean diverse = true;
+            for (int j = 0; j < count; j++) {
+                if (distance(candidate * dimension, selected[j] * dimension) < distanceToBase) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected[count++] = candidate;
+            }
+        }
+
+        return count == selected.length ? selected : Arrays.copyOf(selected, count);
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float currentDistance = distance(query, current);
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : links[current][level]) {
+                float d = distance(query, neighbor);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer
+     *
+     * @return Encoded (distance, node) entries, nearest first
+     */
+    private long[] searchLayer(float[] query, int start, int ef, int level) {
+        int stamp = nextVisitStamp();
+
+        // Candidates: nearest first, results: farthest first (bounded by ef)
+        PriorityQueue<Long> candidates = new PriorityQueue<>();
+        PriorityQueue<Long> results = new PriorityQueue<>((a, b) -> Long.compare(b, a));
+
+        long startEntry = encode(distance(query, start), start);
+        candidates.add(startEntry);
+        results.add(startEntry);
+        visited[start] = stamp;
+
+        while (!candidates.isEmpty()) {
+            long closest = candidates.poll();
+            if (results.size() >= ef && distanceOf(closest) > distanceOf(results.peek())) {
+                break;
+            }
+
+            int node = nodeOf(closest);
+            if (level >= links[node].length) {
+                continue;
+            }
+
+            for (int neighbor : links[node][level]) {
+                if (visited[neighbor] == stamp) {
+                    continue;
+                }
+                visited[neighbor] = stamp;
+
+                float d = distance(query, neighbor);
+                if (results.size() < ef || d < distanceOf(results.peek())) {
+                    long entry = encode(d, neighbor);
+                    candidates.add(entry);
+                    results.add(entry);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        long[] ordered = new long[results.size()];
+        for (int i = ordered.length - 1; i >= 0; i--) {
+            ordered[i] = results.poll();
+        }
+        return ordered;
+    }
+
+    private int nextVisitStamp() {
+        if (++visitStamp == Integer.MAX_VALUE) {
+            Arrays.fill(visited, 0);
+            visitStamp = 1;
+        }
+        return visitStamp;
+    }
+
+    private float distance(float[] query, int node) {
+        int base = node * dimension;
+        float dot = 0;
+        for (int d = 0; d < dimension; d++) {
+            dot += query[d] * vectors.get(base + d);
+        }
+        return Math.max(0, 1 - dot);
+    }
+
+    private float distance(int baseA, int baseB) {
+        float dot = 0;
+        for (int d = 0; d < dimension; d++) {
+            dot += vectors.get(baseA + d) * vectors.get(baseB + d);
+        }
+        return Math.max(0, 1 - dot);
+    }
+
+    /**
+     * Distances are non-negative, so their float bits sort like the values and
+     * (distance, node) packs into one comparable long
+     */
+    private static long encode(float distance, int node) {
+        return ((long) Float.floatToIntBits(distance) << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    private static int nodeOf(long entry) {
+        return (int) entry;
+    }
+
+    private static float distanceOf(long entry) {
+        return Float.intBitsToFloat((int) (entry >>> 32));
+    }
+
+    private void allocate(int capacity) {
+        FloatBuffer grown = ByteBuffer.allocateDirect(capacity * dimension * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        if (vectors != null) {
+            grown.put(0, vectors, 0, size * dimension);
+        }
+        vectors = grown;
+
+        labels = labels == null ? new UUID[capacity] : Arrays.copyOf(labels, capacity);
+        links = links == null ? new int[capacity][][] : Arrays.copyOf(links, capacity);
+        deleted = deleted == null ? new boolean[capacity] : Arrays.copyOf(deleted, capacity);
+        visited = visited == null ? new int[capacity] : Arrays.copyOf(visited, capacity);
+    }
+
+}
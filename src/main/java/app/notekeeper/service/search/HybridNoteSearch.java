@@ -0,0 +1,136 @@
+package app.notekeeper.service.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import app.notekeeper.external.ai.OllamaService;
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import app.notekeeper.repository.NoteRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Hybrid retrieval: full-text keyword search and vector search run in parallel
+ * and are fused with reciprocal rank fusion (score = sum of 1 / (k + rank))
+ * The keyword leg starts before the query embedding is generated, so it adds
+ * no latency to the vector leg
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class HybridNoteSearch implements DisposableBean {
+
+    private final OllamaService ollamaService;
+    private final VectorSearchEngine vectorSearchEngine;
+    private final NoteRepository noteRepository;
+
+    private final ExecutorService keywordExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("keyword-search-", 0).factory());
+
+    @Value("${app.ai.search.hybrid.enabled:true}")
+    private boolean hybridEnabled;
+
+    @Value("${app.ai.search.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${app.ai.search.hybrid.leg-limit:10}")
+    private int legLimit;
+
+    /**
+     * Search the notes of an owner relevant to a query
+     *
+     * @param ownerId Note owner
+     * @param topicId Optional topic filter
+     * @param query   User query
+     * @param limit   Max number of notes
+     * @return Fused results, best first (empty when neither leg matched)
+     */
+    public List<NoteSearchResult> search(UUID ownerId, UUID topicId, String query, int limit) {
+        return search(ownerId, topicId, query, null, limit);
+    }
+
+    /**
+     * Search with an already generated query embedding (generated here when null)
+     */
+    public List<NoteSearchResult> search(UUID ownerId, UUID topicId, String query, float[] queryEmbedding,
+            int limit) {
+        CompletableFuture<List<NoteSearchResult>> keywordLeg = hybridEnabled
+                ? CompletableFuture.supplyAsync(() -> keywordSearch(ownerId, topicId, query), keywordExecutor)
+                : CompletableFuture.completedFuture(List.of());
+
+        List<NoteSearchResult> vectorResults = vectorSearch(ownerId, topicId, query, queryEmbedding,
+                hybridEnabled ? Math.max(legLimit, limit) : limit);
+        List<NoteSearchResult> keywordResults = keywordLeg.join();
+
+        log.info("Hybrid search legs - vector: {}, keyword: {}", vectorResults.size(), keywordResults.size());
+
+        if (!hybridEnabled) {
+            return vectorResults;
+        }
+        return fuse(vectorResults, keywordResults, limit);
+    }
+
+    @Override
+    public void destroy() {
+        keywordExecutor.shutdown();
+    }
+
+    private List<NoteSearchResult> vectorSearch(UUID ownerId, UUID topicId, String query, float[] queryEmbedding,
+            int limit) {
+        if (queryEmbedding == null) {
+            queryEmbedding = ollamaService.generateEmbedding(query);
+        }
+        if (queryEmbedding == null) {
+            log.warn("Failed to generate embedding for query, using keyword results only: {}", query);
+            return List.of();
+        }
+        return vectorSearchEngine.findSimilarNotes(ownerId, topicId, queryEmbedding, limit);
+    }
+
+    private List<NoteSearchResult> keywordSearch(UUID ownerId, UUID topicId, String query) {
+        try {
+            return noteRepository.findKeywordMatches(ownerId, topicId, query, Math.max(1, legLimit));
+        } catch (Exception e) {
+            log.warn("Keyword search failed, using vector results only: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Reciprocal rank fusion of both legs, a note found by both keeps the vector
+     * row (it carries the distance)
+     */
+    private List<NoteSearchResult> fuse(List<NoteSearchResult> vectorResults, List<NoteSearchResult> keywordResults,
+            int limit) {
+        Map<UUID, NoteSearchResult> fused = new LinkedHashMap<>();
+
+        for (List<NoteSearchResult> leg : List.of(vectorResults, keywordResults)) {
+            for (int rank = 0; rank < leg.size(); rank++) {
+                NoteSearchResult result = leg.get(rank);
+                double contribution = 1.0 / (rrfK + rank + 1);
+                NoteSearchResult existing = fused.putIfAbsent(result.getId(), result);
+                if (existing == null) {
+                    result.setScore(contribution);
+                } else {
+                    existing.setScore(existing.getScore() + contribution);
+                }
+            }
+        }
+
+        List<NoteSearchResult> ranked = new ArrayList<>(fused.values());
+        ranked.sort(Comparator.comparingDouble(NoteSearchResult::getScore).reversed());
+        return ranked.size() > limit ? ranked.subList(0, limit) : ranked;
+    }
+
+}
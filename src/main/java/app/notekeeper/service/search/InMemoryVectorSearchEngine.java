@@ -0,0 +1,525 @@
+package app.notekeeper.service.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import app.notekeeper.event.EmbeddingModelChangedEvent;
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import app.notekeeper.repository.NoteRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-process approximate search on per-owner HNSW shards
+ * A shard is built lazily from the owner's stored embeddings on first search,
+ * kept current from embedding writes of this node, rebuilt in the background
+ * after max-age (picks up writes from other nodes) or when too many tombstones
+ * pile up. Every build is snapshotted to disk for fast restart, stamped with
+ * the embedding watermark it was built from (local writes applied later make
+ * it stale, the next start rebuilds). Shards idle for idle-timeout are
+ * dropped, as are the least recently used ones while the loaded shards hold
+ * more than max-vectors vectors (the snapshot makes the next load cheap). Hits
+ * are hydrated with one primary key query.
+ */
+@Component
+@ConditionalOnProperty(name = "app.ai.search.engine", havingValue = "memory")
+@Slf4j
+public class InMemoryVectorSearchEngine implements VectorSearchEngine {
+
+    /**
+     * Same cut-off as the PostgreSQL search (similarity >= 0.7)
+     */
+    private static final double MAX_DISTANCE = 0.6;
+    private static final String SNAPSHOT_SUFFIX = ".hnsw";
+    private static final long EVICTION_INTERVAL_MS = 60_000;
+
+    private final NoteRepository noteRepository;
+    private final Map<UUID, Shard> shards = new ConcurrentHashMap<>();
+    private final Map<UUID, Loading> loads = new ConcurrentHashMap<>();
+    // Bumped on embedding model change, loads started before it are not published
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong lastEvictionAt = new AtomicLong();
+    private final Timer searchTimer;
+
+    @Value("${app.ai.search.candidate-limit:40}")
+    private int candidateLimit;
+
+    @Value("${app.ai.search.memory.m:16}")
+    private int m;
+
+    @Value("${app.ai.search.memory.ef-construction:64}")
+    private int efConstruction;
+
+    @Value("${app.ai.search.memory.ef-search:80}")
+    private int efSearch;
+
+    @Value("${app.ai.search.memory.max-age:15m}")
+    private Duration maxAge;
+
+    @Value("${app.ai.search.memory.max-deleted-ratio:0.3}")
+    private double maxDeletedRatio;
+
+    @Value("${app.ai.search.memory.snapshot-dir:./data/hnsw}")
+    private String snapshotDir;
+
+    @Value("${app.ai.search.memory.refresh-retry:1m}")
+    private Duration refreshRetry;
+
+    @Value("${app.ai.search.memory.idle-timeout:1h}")
+    private Duration idleTimeout;
+
+    @Value("${app.ai.search.memory.max-vectors:500000}")
+    private long maxVectors;
+
+    public InMemoryVectorSearchEngine(NoteRepository noteRepository, MeterRegistry meterRegistry) {
+        this.noteRepository = noteRepository;
+        this.searchTimer = Timer.builder("notekeeper.search.memory")
+                .description("In-process HNSW search time (without hydration)")
+                .register(meterRegistry);
+        Gauge.builder("notekeeper.search.memory.shards", shards, Map::size)
+                .description("Owners with a loaded HNSW shard")
+                .register(meterRegistry);
+    }
+
+    /**
+     * HNSW graph of one owner with the node IDs of each note
+     * Guarded by its own monitor. A shard is retired only after it was replaced
+     * in (or removed from) the shard map.
+     */
+    private static class Shard {
+        final long builtAt = System.currentTimeMillis();
+        volatile long lastUsedAt = builtAt;
+        final Map<UUID, List<Integer>> nodesByNote = new HashMap<>();
+        final List<Consumer<Shard>> missedUpdates = new ArrayList<>();
+        HnswIndex index;
+        boolean refreshing;
+        boolean retired;
+        int failedRefreshes;
+        long nextRefreshAt;
+    }
+
+    /**
+     * Shard being loaded for an owner, searches wait on the future and updates
+     * committed meanwhile are replayed on the loaded shard
+     * Guarded by its own monitor
+     */
+    private static class Loading {
+        final CompletableFuture<Shard> future = new CompletableFuture<>();
+        final List<Consumer<Shard>> missedUpdates = new ArrayList<>();
+        boolean done;
+    }
+
+    @Override
+    public List<NoteSearchResult> findSimilarNotes(UUID ownerId, UUID topicId, float[] queryEmbedding, int limit) {
+        Shard shard = shardFor(ownerId);
+
+        // Over-fetch when filtering by topic, the filter is applied after hydration
+        int candidates = Math.max(candidateLimit, limit) * (topicId != null ? 4 : 1);
+
+        long start = System.nanoTime();
+        List<HnswIndex.Hit> hits;
+        synchronized (shard) {
+            hits = shard.index != null
+                    ? shard.index.search(queryEmbedding, candidates, Math.max(efSearch, candidates))
+                    : List.of();
+        }
+        searchTimer.record(Duration.ofNanos(System.nanoTime() - start));
+
+        // Best (first) hit per note, hits are ordered nearest first
+        Map<UUID, Double> distances = new LinkedHashMap<>();
+        for (HnswIndex.Hit hit : hits) {
+            if (hit.distance() <= MAX_DISTANCE) {
+                distances.putIfAbsent(hit.label(), (double) hit.distance());
+            }
+        }
+
+        if (distances.isEmpty()) {
+            return List.of();
+        }
+
+        List<NoteSearchResult> results = new ArrayList<>();
+        for (NoteSearchResult result : noteRepository.findSearchResultsByIds(new ArrayList<>(distances.keySet()))) {
+            result.setDistance(distances.remove(result.getId()));
+            if (topicId == null || topicId.equals(result.getTopicId())) {
+                results.add(result);
+            }
+        }
+
+        // Notes left over were deleted (possibly on another node)
+        distances.keySet().forEach(noteId -> applyToShard(ownerId, s -> removeNote(s, noteId)));
+
+        results.sort(Comparator.comparingDouble(NoteSearchResult::getDistance));
+        return results.size() > limit ? results.subList(0, limit) : results;
+    }
+
+    @Override
+    public void onNoteEmbedded(UUID ownerId, UUID noteId, List<float[]> embeddings) {
+        afterCommit(() -> applyToShard(ownerId, shard -> {
+            removeNote(shard, noteId);
+            for (float[] embedding : embeddings) {
+                addVector(shard, noteId, embedding);
+            }
+        }));
+    }
+
+    @Override
+    public void onNoteDeleted(UUID ownerId, UUID noteId) {
+        afterCommit(() -> applyToShard(ownerId, shard -> removeNote(shard, noteId)));
+    }
+
+    /**
+     * Drop all loaded shards after an embedding model cutover, they are reloaded
+     * from the new vectors (snapshots are outdated by the watermark)
+     */
+    @EventListener
+    public void onEmbeddingModelChanged(EmbeddingModelChangedEvent event) {
+        generation.incrementAndGet();
+        shards.forEach(this::drop);
+        log.info("Dropped HNSW shards after embedding model change to {}", event.getModel());
+    }
+
+    private Shard shardFor(UUID ownerId) {
+        Shard shard = shards.get(ownerId);
+        boolean loaded = shard == null;
+        if (loaded) {
+            shard = loadOnce(ownerId);
+        }
+        shard.lastUsedAt = System.currentTimeMillis();
+
+        long lastEviction = lastEvictionAt.get();
+        if ((loaded || shard.lastUsedAt - lastEviction > EVICTION_INTERVAL_MS)
+                && lastEvictionAt.compareAndSet(lastEviction, shard.lastUsedAt)) {
+            evictShards(ownerId);
+        }
+
+        boolean refresh;
+        synchronized (shard) {
+            long now = System.currentTimeMillis();
+            boolean expired = now - shard.builtAt > maxAge.toMillis();
+            boolean fragmented = shard.index != null
+                    && shard.index.deletedCount() > maxDeletedRatio * (shard.index.size() + shard.index.deletedCount());
+            refresh = (expired || fragmented) && !shard.refreshing && !shard.retired && now >= shard.nextRefreshAt;
+            if (refresh) {
+                shard.refreshing = true;
+            }
+        }
+
+        if (refresh) {
+            Shard current = shard;
+            Thread.ofVirtual().name("hnsw-refresh-" + ownerId).start(() -> refreshShard(ownerId, current));
+        }
+        return shard;
+    }
+
+    /**
+     * Load the owner's shard outside the shard map, concurrent searches of the
+     * same owner wait for the one load
+     */
+    private Shard loadOnce(UUID ownerId) {
+        Loading created = new Loading();
+        Loading loading = loads.putIfAbsent(ownerId, created);
+        if (loading != null) {
+            try {
+                return loading.future.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException cause ? cause : e;
+            }
+        }
+
+        try {
+            Shard existing = shards.get(ownerId);
+            if (existing != null) {
+                // Published by a load that finished just before ours started
+                created.future.complete(existing);
+                return existing;
+            }
+
+            long loadGeneration = generation.get();
+            Shard shard = loadShard(ownerId);
+
+            synchronized (created) {
+                created.missedUpdates.forEach(update -> update.accept(shard));
+                created.missedUpdates.clear();
+                created.done = true;
+                publish(ownerId, shard, loadGeneration);
+            }
+            created.future.complete(shard);
+            return shard;
+
+        } catch (RuntimeException e) {
+            created.future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(ownerId, created);
+        }
+    }
+
+    /**
+     * Rebuild a shard in the background, updates that hit the old shard while
+     * building are replayed on the new one
+     */
+    private void refreshShard(UUID ownerId, Shard current) {
+        long refreshGeneration = generation.get();
+        try {
+            Shard rebuilt = buildShard(ownerId);
+            synchronized (current) {
+                if (current.retired) {
+                    // Dropped meanwhile (embedding model change), next search reloads
+                    return;
+                }
+                current.missedUpdates.forEach(update -> update.accept(rebuilt));
+                current.missedUpdates.clear();
+                if (!publish(ownerId, rebuilt, refreshGeneration)) {
+                    return;
+                }
+                current.retired = true;
+            }
+        } catch (Exception e) {
+            synchronized (current) {
+                // Back off, otherwise every search of the owner starts another rebuild
+                current.failedRefreshes++;
+                long delay = Math.min(refreshRetry.toMillis() << Math.min(current.failedRefreshes - 1, 20),
+                        maxAge.toMillis());
+                current.nextRefreshAt = System.currentTimeMillis() + delay;
+                current.refreshing = false;
+                current.missedUpdates.clear();
+                log.error("Failed to refresh HNSW shard for owner {} ({} failures), retrying in {} ms",
+                        ownerId, current.failedRefreshes, delay, e);
+            }
+        }
+    }
+
+    /**
+     * Put a loaded or rebuilt shard in the map unless the embedding model
+     * changed since it was started
+     *
+     * @return Whether the shard was published
+     */
+    private boolean publish(UUID ownerId, Shard shard, long startGeneration) {
+        if (generation.get() != startGeneration) {
+            return false;
+        }
+        shards.put(ownerId, shard);
+        if (generation.get() != startGeneration) {
+            // Model changed while publishing, the change may have missed this shard
+            shards.remove(ownerId, shard);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Drop idle shards, then the least recently used ones while over the vector
+     * budget (the shard of the current search is kept)
+     */
+    private void evictShards(UUID currentOwnerId) {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<UUID, Shard>> byLastUse = new ArrayList<>(shards.entrySet());
+        byLastUse.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsedAt));
+
+        long vectors = 0;
+        for (Map.Entry<UUID, Shard> entry : byLastUse) {
+            vectors += vectorCount(entry.getValue());
+        }
+
+        for (Map.Entry<UUID, Shard> entry : byLastUse) {
+            Shard shard = entry.getValue();
+            boolean idle = now - shard.lastUsedAt > idleTimeout.toMillis();
+            if (!idle && vectors <= maxVectors) {
+                // The rest was used more recently
+                break;
+            }
+            if (entry.getKey().equals(currentOwnerId)) {
+                continue;
+            }
+            vectors -= vectorCount(shard);
+            drop(entry.getKey(), shard);
+            log.info("Evicted {} HNSW shard of owner {}", idle ? "idle" : "least recently used", entry.getKey());
+        }
+    }
+
+    private static int vectorCount(Shard shard) {
+        synchronized (shard) {
+            return shard.index != null ? shard.index.size() + shard.index.deletedCount() : 0;
+        }
+    }
+
+    /**
+     * Remove a shard from the map and retire it, the next search reloads it
+     */
+    private void drop(UUID ownerId, Shard shard) {
+        // Out of the map first, so updates that find it retired don't see it again
+        shards.remove(ownerId, shard);
+        synchronized (shard) {
+            shard.retired = true;
+            shard.missedUpdates.clear();
+        }
+    }
+
+    private Shard loadShard(UUID ownerId) {
+        String watermark = noteRepository.findEmbeddingWatermark(ownerId);
+
+        Path snapshot = snapshotPath(ownerId);
+        if (Files.exists(snapshot)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+                if (watermark.equals(in.readUTF())) {
+                    Shard shard = new Shard();
+                    if (in.readBoolean()) {
+                        shard.index = HnswIndex.readFrom(in);
+                        for (int node = 0; node < shard.index.size() + shard.index.deletedCount(); node++) {
+                            if (!shard.index.isDeleted(node)) {
+                                shard.nodesByNote.computeIfAbsent(shard.index.label(node), k -> new ArrayList<>())
+                                        .add(node);
+                            }
+                        }
+                    }
+                    log.info("Loaded HNSW shard for owner {} from snapshot ({} vectors)", ownerId,
+                            shard.index != null ? shard.index.size() : 0);
+                    return shard;
+                }
+                log.info("HNSW snapshot of owner {} is outdated, rebuilding", ownerId);
+            } catch (IOException | RuntimeException e) {
+                // Truncated or corrupt file (e.g. a negative array size read from it)
+                log.warn("Failed to read HNSW snapshot of owner {}, rebuilding: {}", ownerId, e.toString());
+            }
+        }
+
+        return buildShard(ownerId);
+    }
+
+    private Shard buildShard(UUID ownerId) {
+        long start = System.currentTimeMillis();
+
+        // Watermark taken before reading, so writes during the build mark the snapshot stale
+        String watermark = noteRepository.findEmbeddingWatermark(ownerId);
+        Shard shard = new Shard();
+        noteRepository.forEachOwnerEmbedding(ownerId, (noteId, embedding) -> addVector(shard, noteId, embedding));
+
+        log.info("Built HNSW shard for owner {} ({} vectors) in {} ms", ownerId,
+                shard.index != null ? shard.index.size() : 0, System.currentTimeMillis() - start);
+
+        writeSnapshot(ownerId, shard, watermark);
+        return shard;
+    }
+
+    /**
+     * Apply an update to the owner's shard if it is loaded or loading (otherwise
+     * the next load reads it from the database)
+     * A retired shard is already replaced in the map, so the retry reads its
+     * successor (or nothing) instead of spinning on it.
+     */
+    private void applyToShard(UUID ownerId, Consumer<Shard> update) {
+        while (true) {
+            Shard shard = shards.get(ownerId);
+            if (shard == null) {
+                Loading loading = loads.get(ownerId);
+                if (loading == null) {
+                    return;
+                }
+                synchronized (loading) {
+                    if (!loading.done) {
+                        loading.missedUpdates.add(update);
+                        return;
+                    }
+                }
+                // Load finished meanwhile, apply to the published shard
+                if (shards.get(ownerId) == null) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (shard) {
+                if (shard.retired) {
+                    continue;
+                }
+                update.accept(shard);
+                if (shard.refreshing) {
+                    shard.missedUpdates.add(update);
+                }
+                return;
+            }
+        }
+    }
+
+    private void addVector(Shard shard, UUID noteId, float[] embedding) {
+        if (shard.index == null) {
+            shard.index = new HnswIndex(embedding.length, m, efConstruction, 64);
+        }
+        int node = shard.index.add(noteId, embedding);
+        shard.nodesByNote.computeIfAbsent(noteId, k -> new ArrayList<>()).add(node);
+    }
+
+    private void removeNote(Shard shard, UUID noteId) {
+        List<Integer> nodes = shard.nodesByNote.remove(noteId);
+        if (nodes != null) {
+            nodes.forEach(shard.index::remove);
+        }
+    }
+
+    private void writeSnapshot(UUID ownerId, Shard shard, String watermark) {
+        try {
+            Path snapshot = snapshotPath(ownerId);
+            Files.createDirectories(snapshot.getParent());
+
+            Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeUTF(watermark);
+                out.writeBoolean(shard.index != null);
+                if (shard.index != null) {
+                    shard.index.writeTo(out);
+                }
+            }
+            Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (IOException e) {
+            log.warn("Failed to write HNSW snapshot of owner {}: {}", ownerId, e.getMessage());
+        }
+    }
+
+    private Path snapshotPath(UUID ownerId) {
+        return Paths.get(snapshotDir).resolve(ownerId + SNAPSHOT_SUFFIX);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package app.notekeeper.service.search;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import app.notekeeper.repository.NoteRepository;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Search straight in PostgreSQL through the pgvector HNSW indexes
+ */
+@Component
+@ConditionalOnProperty(name = "app.ai.search.engine", havingValue = "postgres", matchIfMissing = true)
+@RequiredArgsConstructor
+public class PgVectorSearchEngine implements VectorSearchEngine {
+
+    private final NoteRepository noteRepository;
+
+    @Override
+    public List<NoteSearchResult> findSimilarNotes(UUID ownerId, UUID topicId, float[] queryEmbedding, int limit) {
+        return noteRepository.findSimilarNotes(ownerId, topicId, queryEmbedding, limit);
+    }
+
+}
@@ -0,0 +1,225 @@
+package app.notekeeper.service.search;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import app.notekeeper.common.util.VectorMath;
+import app.notekeeper.event.EmbeddingModelChangedEvent;
+import app.notekeeper.model.dto.response.NoteResponse;
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import app.notekeeper.repository.NoteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-user cache of recent answers keyed by query embedding
+ * A query whose embedding is within min-similarity (cosine) of a cached query
+ * with the same topic filter reuses its answer and source notes, skipping
+ * search and LLM. Entries are bounded per user (oldest dropped) and by TTL.
+ * Any note or topic write of the user clears the user's entries on this node;
+ * a hit is also checked against the current versions of its source notes
+ * (one primary key query), which catches writes made on other nodes.
+ */
+@Component
+@Slf4j
+public class SemanticQueryCache {
+
+    private final NoteRepository noteRepository;
+    private final Map<UUID, Deque<Entry>> entriesByUser;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${app.ai.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.ai.semantic-cache.min-similarity:0.95}")
+    private double minSimilarity;
+
+    @Value("${app.ai.semantic-cache.max-entries-per-user:50}")
+    private int maxEntriesPerUser;
+
+    @Value("${app.ai.semantic-cache.ttl:30m}")
+    private Duration ttl;
+
+    public SemanticQueryCache(NoteRepository noteRepository,
+            MeterRegistry meterRegistry,
+            @Value("${app.ai.semantic-cache.max-users:10000}") int maxUsers) {
+        this.noteRepository = noteRepository;
+        this.entriesByUser = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Deque<Entry>> eldest) {
+                return size() > maxUsers;
+            }
+        };
+        this.hits = Counter.builder("notekeeper.ai.semantic.cache")
+                .tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("notekeeper.ai.semantic.cache")
+                .tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Cached answer with the notes it was generated from
+     */
+    public record CachedAnswer(String answer, List<NoteResponse> relevantNotes) {
+    }
+
+    private record Entry(UUID topicId, float[] embedding, CachedAnswer answer, Map<UUID, Integer> noteVersions,
+            long createdAt) {
+    }
+
+    /**
+     * Find the answer of the most similar cached query
+     *
+     * @param userId         Query owner
+     * @param topicId        Topic filter of the query (must match)
+     * @param queryEmbedding Query embedding
+     * @return Cached answer when a close enough query is cached
+     */
+    public Optional<CachedAnswer> find(UUID userId, UUID topicId, float[] queryEmbedding) {
+        if (!enabled || queryEmbedding == null) {
+            return Optional.empty();
+        }
+
+        float[] query = VectorMath.normalize(queryEmbedding);
+        long oldest = System.currentTimeMillis() - ttl.toMillis();
+
+        Entry best = null;
+        double bestSimilarity = minSimilarity;
+
+        synchronized (entriesByUser) {
+            Deque<Entry> entries = entriesByUser.get(userId);
+            if (entries != null) {
+                Iterator<Entry> iterator = entries.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (entry.createdAt() < oldest) {
+                        iterator.remove();
+                        continue;
+                    }
+                    if (!Objects.equals(entry.topicId(), topicId)) {
+                        continue;
+                    }
+                    double similarity = VectorMath.dot(query, entry.embedding());
+                    if (similarity >= bestSimilarity) {
+                        bestSimilarity = similarity;
+                        best = entry;
+                    }
+                }
+            }
+        }
+
+        if (best == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        if (!best.noteVersions().equals(versions(noteRepository.findSearchResultsByIds(
+                List.copyOf(best.noteVersions().keySet()))))) {
+            log.info("Semantic cache entry of user {} is stale, source notes changed", userId);
+            remove(userId, best);
+            misses.increment();
+            return Optional.empty();
+        }
+
+        hits.increment();
+        log.info("Semantic cache hit for user {} (similarity: {})", userId, String.format("%.3f", bestSimilarity));
+        return Optional.of(best.answer());
+    }
+
+    /**
+     * Cache an answer for a query
+     *
+     * @param sourceNotes   Notes the answer was generated from (versions are kept)
+     * @param relevantNotes Notes as returned to the client
+     */
+    public void put(UUID userId, UUID topicId, float[] queryEmbedding, String answer,
+            List<NoteSearchResult> sourceNotes, List<NoteResponse> relevantNotes) {
+        if (!enabled || queryEmbedding == null || answer == null || sourceNotes.isEmpty()) {
+            return;
+        }
+
+        Entry entry = new Entry(topicId, VectorMath.normalize(queryEmbedding),
+                new CachedAnswer(answer, List.copyOf(relevantNotes)), versions(sourceNotes),
+                System.currentTimeMillis());
+
+        synchronized (entriesByUser) {
+            Deque<Entry> entries = entriesByUser.computeIfAbsent(userId, key -> new ArrayDeque<>());
+            entries.addFirst(entry);
+            while (entries.size() > maxEntriesPerUser) {
+                entries.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Drop all entries of a user now and again after the current transaction
+     * commits (called on any write to the user's notes or topics)
+     */
+    public void invalidate(UUID userId) {
+        remove(userId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove(userId);
+                }
+            });
+        }
+    }
+
+    /**
+     * Query embeddings of the old model can't be compared with new ones
+     */
+    @EventListener
+    public void onEmbeddingModelChanged(EmbeddingModelChangedEvent event) {
+        synchronized (entriesByUser) {
+            entriesByUser.clear();
+        }
+    }
+
+    private void remove(UUID userId) {
+        synchronized (entriesByUser) {
+            entriesByUser.remove(userId);
+        }
+    }
+
+    private void remove(UUID userId, Entry entry) {
+        synchronized (entriesByUser) {
+            Deque<Entry> entries = entriesByUser.get(userId);
+            if (entries != null) {
+                entries.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Version of each note: hash of the fields that go into the answer prompt
+     * (bulk updates don't bump updated_at)
+     */
+    private static Map<UUID, Integer> versions(List<NoteSearchResult> notes) {
+        Map<UUID, Integer> versions = new HashMap<>();
+        for (NoteSearchResult note : notes) {
+            versions.put(note.getId(), Objects.hash(note.getUpdatedAt(), note.getTitle(), note.getTopicName(),
+                    note.getAiSummary(), note.getContent()));
+        }
+        return versions;
+    }
+
+}
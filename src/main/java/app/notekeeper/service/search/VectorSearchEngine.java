@@ -0,0 +1,39 @@
+package app.notekeeper.service.search;
+
+import java.util.List;
+import java.util.UUID;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+
+/**
+ * Similarity search over note embeddings
+ * Selected with app.ai.search.engine: postgres (default) or memory
+ */
+public interface VectorSearchEngine {
+
+    /**
+     * Find the notes of an owner most similar to a query embedding
+     *
+     * @param ownerId        Note owner
+     * @param topicId        Optional topic filter
+     * @param queryEmbedding Query embedding
+     * @param limit          Max number of notes
+     * @return Notes ordered by distance, nearest first
+     */
+    List<NoteSearchResult> findSimilarNotes(UUID ownerId, UUID topicId, float[] queryEmbedding, int limit);
+
+    /**
+     * Notify that the searchable embeddings of a note were replaced
+     * Applied after the current transaction commits
+     */
+    default void onNoteEmbedded(UUID ownerId, UUID noteId, List<float[]> embeddings) {
+    }
+
+    /**
+     * Notify that a note was deleted
+     * Applied after the current transaction commits
+     */
+    default void onNoteDeleted(UUID ownerId, UUID noteId) {
+    }
+
+}
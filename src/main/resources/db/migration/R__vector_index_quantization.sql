@@ -0,0 +1,46 @@
+-- =========================================
+-- VECTOR INDEX QUANTIZATION
+-- Keeps exactly one set of HNSW indexes on the embeddings, chosen by
+-- app.ai.search.quantization (placeholder vector_quantization):
+--   none    - full-precision indexes from V5
+--   halfvec - expression indexes on embedding::halfvec, 2 bytes per dimension
+--             (about half the memory), candidates are re-ranked with the
+--             full-precision column
+-- Placeholders are part of the checksum, so changing the quantization,
+-- app.ai.embedding.dimensions or the HNSW build parameters re-runs this
+-- migration on the next start and rebuilds the indexes of either mode. Switching is a deliberate migration: plan for the
+-- index build time on large tables.
+-- halfvec requires pgvector >= 0.7
+-- =========================================
+DO $$
+BEGIN
+    IF '${vector_quantization}' = 'halfvec' THEN
+        DROP INDEX IF EXISTS idx_notes_embedding_halfvec;
+        DROP INDEX IF EXISTS idx_note_chunks_embedding_halfvec;
+
+        CREATE INDEX idx_notes_embedding_halfvec ON notes
+        USING hnsw ((CAST(embedding AS halfvec(${embedding_dimensions}))) halfvec_cosine_ops)
+        WITH (m = ${hnsw_m}, ef_construction = ${hnsw_ef_construction});
+
+        CREATE INDEX idx_note_chunks_embedding_halfvec ON note_chunks
+        USING hnsw ((CAST(embedding AS halfvec(${embedding_dimensions}))) halfvec_cosine_ops)
+        WITH (m = ${hnsw_m}, ef_construction = ${hnsw_ef_construction});
+
+        DROP INDEX IF EXISTS idx_notes_embedding_hnsw;
+        DROP INDEX IF EXISTS idx_note_chunks_embedding_hnsw;
+    ELSE
+        DROP INDEX IF EXISTS idx_notes_embedding_hnsw;
+        DROP INDEX IF EXISTS idx_note_chunks_embedding_hnsw;
+
+        CREATE INDEX idx_notes_embedding_hnsw ON notes
+        USING hnsw (embedding vector_cosine_ops)
+        WITH (m = ${hnsw_m}, ef_construction = ${hnsw_ef_construction});
+
+        CREATE INDEX idx_note_chunks_embedding_hnsw ON note_chunks
+        USING hnsw (embedding vector_cosine_ops)
+        WITH (m = ${hnsw_m}, ef_construction = ${hnsw_ef_construction});
+
+        DROP INDEX IF EXISTS idx_notes_embedding_halfvec;
+        DROP INDEX IF EXISTS idx_note_chunks_embedding_halfvec;
+    END IF;
+END $$;
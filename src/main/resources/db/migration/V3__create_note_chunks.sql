@@ -0,0 +1,19 @@
+-- =========================================
+-- NOTE CHUNKS
+-- Long note content is split into overlapping token windows,
+-- each window gets its own embedding
+-- =========================================
+CREATE TABLE note_chunks (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    note_id UUID NOT NULL REFERENCES notes(id) ON DELETE CASCADE,
+    owner_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    chunk_index INTEGER NOT NULL,
+    content TEXT NOT NULL,
+    token_count INTEGER NOT NULL,
+    embedding VECTOR(768),
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    updated_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    UNIQUE (note_id, chunk_index)
+);
+
+CREATE INDEX idx_note_chunks_owner_id ON note_chunks (owner_id);
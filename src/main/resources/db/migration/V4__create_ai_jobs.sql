@@ -0,0 +1,23 @@
+-- =========================================
+-- AI JOBS (durable outbox for note processing)
+-- Written in the same transaction as the note,
+-- claimed by workers with FOR UPDATE SKIP LOCKED
+-- =========================================
+CREATE TABLE ai_jobs (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    note_id UUID NOT NULL REFERENCES notes(id) ON DELETE CASCADE,
+    owner_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    type VARCHAR(50) NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT NOW(),
+    locked_by VARCHAR(100),
+    locked_at TIMESTAMP WITH TIME ZONE,
+    last_error TEXT,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    updated_at TIMESTAMP WITH TIME ZONE DEFAULT NOW()
+);
+
+CREATE INDEX idx_ai_jobs_pending ON ai_jobs (next_attempt_at) WHERE status = 'PENDING';
+CREATE INDEX idx_ai_jobs_running ON ai_jobs (locked_at) WHERE status = 'RUNNING';
+CREATE INDEX idx_ai_jobs_note_id ON ai_jobs (note_id);
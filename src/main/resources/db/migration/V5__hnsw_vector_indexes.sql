@@ -0,0 +1,22 @@
+-- =========================================
+-- HNSW VECTOR INDEXES
+-- The ivfflat index was built on an empty table (meaningless centroids) and
+-- never rebuilt after the dimension change. HNSW needs no training data and
+-- keeps recall as rows are added.
+-- m / ef_construction come from Flyway placeholders (spring.flyway.placeholders.*)
+-- =========================================
+DROP INDEX IF EXISTS idx_notes_embedding;
+
+CREATE INDEX idx_notes_embedding_hnsw ON notes
+USING hnsw (embedding vector_cosine_ops)
+WITH (m = ${hnsw_m}, ef_construction = ${hnsw_ef_construction});
+
+CREATE INDEX idx_note_chunks_embedding_hnsw ON note_chunks
+USING hnsw (embedding vector_cosine_ops)
+WITH (m = ${hnsw_m}, ef_construction = ${hnsw_ef_construction});
+
+-- Owner filter support: small owners are cheaper to scan exactly through the
+-- owner index than through the global HNSW graph, the planner picks per query
+CREATE INDEX idx_notes_owner_embedding ON notes (owner_id) WHERE embedding IS NOT NULL;
+
+CREATE INDEX idx_note_chunks_owner_embedding ON note_chunks (owner_id) WHERE embedding IS NOT NULL;
@@ -0,0 +1,15 @@
+-- =========================================
+-- FULL-TEXT SEARCH
+-- Generated tsvector over the searchable note fields for the keyword leg of
+-- hybrid retrieval. 'simple' configuration keeps IDs, names and code tokens
+-- as written (no stemming or stop words, language independent).
+-- =========================================
+ALTER TABLE notes
+ADD COLUMN search_vector TSVECTOR GENERATED ALWAYS AS (
+    setweight(to_tsvector('simple', coalesce(title, '')), 'A') ||
+    setweight(to_tsvector('simple', coalesce(description, '')), 'B') ||
+    setweight(to_tsvector('simple', coalesce(ai_summary, '')), 'B') ||
+    setweight(to_tsvector('simple', coalesce(content, '')), 'C')
+) STORED;
+
+CREATE INDEX idx_notes_search_vector ON notes USING gin (search_vector);
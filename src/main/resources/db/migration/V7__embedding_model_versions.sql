@@ -0,0 +1,54 @@
+-- =========================================
+-- MODEL-VERSIONED EMBEDDINGS
+-- Every stored embedding records the model that produced it. Existing rows
+-- keep NULL (written before this migration, model unknown) and are picked up
+-- by the re-embedding job.
+-- =========================================
+ALTER TABLE notes
+ADD COLUMN embedding_model VARCHAR(255),
+ADD COLUMN embedding_dimensions INTEGER,
+ADD COLUMN staged_embedding VECTOR,
+ADD COLUMN staged_embedding_model VARCHAR(255);
+
+ALTER TABLE note_chunks
+ADD COLUMN embedding_model VARCHAR(255);
+
+-- =========================================
+-- RE-EMBEDDING STAGING
+-- Vectors of the target model are written here while search keeps using the
+-- live columns, and swapped in at cutover. Untyped VECTOR so any dimension
+-- can be staged.
+-- =========================================
+CREATE TABLE note_chunks_staging (
+    note_id UUID NOT NULL REFERENCES notes(id) ON DELETE CASCADE,
+    owner_id UUID NOT NULL REFERENCES users(id) ON DELETE CASCADE,
+    chunk_index INTEGER NOT NULL,
+    content TEXT NOT NULL,
+    token_count INTEGER NOT NULL,
+    embedding VECTOR NOT NULL,
+    embedding_model VARCHAR(255) NOT NULL,
+    PRIMARY KEY (note_id, chunk_index)
+);
+
+-- =========================================
+-- RE-EMBEDDING RUNS
+-- One row per embedding model change, last_note_id is the keyset cursor so a
+-- run resumes where it stopped. The latest COMPLETED run names the active model.
+-- =========================================
+CREATE TABLE embedding_migrations (
+    id UUID PRIMARY KEY DEFAULT gen_random_uuid(),
+    source_model VARCHAR(255),
+    target_model VARCHAR(255) NOT NULL,
+    dimensions INTEGER,
+    status VARCHAR(20) NOT NULL,
+    last_note_id UUID,
+    processed_notes BIGINT NOT NULL DEFAULT 0,
+    locked_by VARCHAR(100),
+    locked_at TIMESTAMP WITH TIME ZONE,
+    last_error TEXT,
+    completed_at TIMESTAMP WITH TIME ZONE,
+    created_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    updated_at TIMESTAMP WITH TIME ZONE DEFAULT NOW()
+);
+
+CREATE INDEX idx_embedding_migrations_status ON embedding_migrations (status, created_at);
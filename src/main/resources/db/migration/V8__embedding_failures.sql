@@ -0,0 +1,15 @@
+-- =========================================
+-- RE-EMBEDDING FAILURES
+-- Notes an embedding model failed on, counted per content version (md5) so
+-- an edit starts the count again. Notes at the attempt limit are skipped by
+-- the re-embedding job and the run completes without them.
+-- =========================================
+CREATE TABLE note_embedding_failures (
+    note_id UUID NOT NULL REFERENCES notes(id) ON DELETE CASCADE,
+    embedding_model VARCHAR(255) NOT NULL,
+    content_hash VARCHAR(32) NOT NULL,
+    attempts INTEGER NOT NULL DEFAULT 1,
+    last_error TEXT,
+    failed_at TIMESTAMP WITH TIME ZONE DEFAULT NOW(),
+    PRIMARY KEY (note_id, embedding_model)
+);
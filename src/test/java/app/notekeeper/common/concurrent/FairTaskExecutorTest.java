@@ -0,0 +1,109 @@
+package app.notekeeper.common.concurrent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class FairTaskExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    private FairTaskExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        executor.destroy();
+    }
+
+    @Test
+    void ownersAreServedInTurn() throws InterruptedException {
+        executor = new FairTaskExecutor("test", 1, 100, meterRegistry);
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(5);
+
+        holdOnlyPermit();
+        for (int i = 1; i <= 3; i++) {
+            String task = "alice-" + i;
+            executor.execute(alice, () -> record(order, task, done));
+        }
+        for (int i = 1; i <= 2; i++) {
+            String task = "bob-" + i;
+            executor.execute(bob, () -> record(order, task, done));
+        }
+        assertThat(executor.getOwnerCount()).isEqualTo(2);
+        released.countDown();
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(order).containsExactly("alice-1", "bob-1", "alice-2", "bob-2", "alice-3");
+    }
+
+    @Test
+    void fullQueueRejectsTasks() throws InterruptedException {
+        executor = new FairTaskExecutor("test", 1, 2, meterRegistry);
+
+        holdOnlyPermit();
+        executor.execute(alice, () -> { });
+        executor.execute(bob, () -> { });
+
+        assertThat(executor.remainingCapacity()).isZero();
+        assertThatThrownBy(() -> executor.execute(alice, () -> { })).isInstanceOf(TaskRejectedException.class);
+        assertThat(tasks("rejected")).isEqualTo(1.0);
+        assertThat(executor.getQueuedCount()).isEqualTo(2);
+    }
+
+    @Test
+    void failingTaskReleasesItsPermit() throws InterruptedException {
+        executor = new FairTaskExecutor("test", 1, 10, meterRegistry);
+        CountDownLatch ran = new CountDownLatch(1);
+
+        executor.execute(alice, () -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.execute(alice, ran::countDown);
+
+        assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(tasks("failed")).isEqualTo(1.0);
+    }
+
+    /**
+     * Occupy the executor's only permit until the test releases it
+     */
+    private void holdOnlyPermit() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(UUID.randomUUID(), () -> {
+            started.countDown();
+            try {
+                released.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private double tasks(String result) {
+        return meterRegistry.get("notekeeper.executor.tasks").tag("result", result).counter().count();
+    }
+
+    private static void record(List<String> order, String task, CountDownLatch done) {
+        order.add(task);
+        done.countDown();
+    }
+
+}
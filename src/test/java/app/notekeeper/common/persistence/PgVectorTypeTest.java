@@ -0,0 +1,146 @@
+package app.notekeeper.common.persistence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.postgresql.core.BaseConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import com.pgvector.PGvector;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Checks that vectors are bound in binary format and reach the server
+ * unchanged
+ * The binding path comparison only runs with -Dbenchmark=true
+ * Needs Docker (pgvector image), skipped without it
+ */
+@Slf4j
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class PgVectorTypeTest {
+
+    private static final int DIMENSIONS = 768;
+    private static final int ITERATIONS = 2_000;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Random random = new Random(7);
+
+    @Test
+    void boundVectorRoundTrips() {
+        float[] value = randomVector();
+
+        String stored = jdbcTemplate.query("SELECT CAST(? AS vector)::text",
+                ps -> PgVectorType.bind(ps, 1, value), rs -> rs.next() ? rs.getString(1) : null);
+
+        assertThat(new PGvector(stored).toArray()).containsExactly(value);
+    }
+
+    @Test
+    void vectorIsSentInBinaryFormat() {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("SELECT CAST(? AS vector)::text")) {
+                PgVectorType.bind(ps, 1, randomVector());
+            }
+            BaseConnection pgConnection = connection.unwrap(BaseConnection.class);
+            int oid = pgConnection.getTypeInfo().getPGType("vector");
+            assertThat(pgConnection.getQueryExecutor().useBinaryForSend(oid)).isTrue();
+            return null;
+        });
+    }
+
+    @Test
+    void vectorColumnIsReadBack() {
+        float[] value = randomVector();
+
+        float[] read = jdbcTemplate.query("SELECT CAST(? AS vector), CAST(NULL AS vector)",
+                ps -> PgVectorType.bind(ps, 1, value), rs -> {
+                    rs.next();
+                    assertThat(PgVectorType.read(rs, 2)).isNull();
+                    return PgVectorType.read(rs, 1);
+                });
+
+        assertThat(read).containsExactly(value);
+    }
+
+    @Test
+    void binaryAndTextBindingAgree() {
+        float[] a = randomVector();
+        float[] b = randomVector();
+
+        assertThat(binaryDistance(a, b)).isEqualTo(textDistance(a, b));
+    }
+
+    /**
+     * Logs the time of the binary and the text ('[x,y,...]' cast) binding paths
+     * for the same distance query
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void compareBindingPaths() {
+        float[] a = randomVector();
+        float[] b = randomVector();
+        for (int i = 0; i < ITERATIONS / 10; i++) {
+            binaryDistance(a, b);
+            textDistance(a, b);
+        }
+
+        long binary = time(() -> binaryDistance(a, b));
+        long text = time(() -> textDistance(a, b));
+
+        log.info("{} distance queries over {}-dimension vectors: binary bind {} ms, text cast {} ms",
+                ITERATIONS, DIMENSIONS, binary / 1_000_000, text / 1_000_000);
+    }
+
+    private double binaryDistance(float[] a, float[] b) {
+        return jdbcTemplate.query("SELECT ? <=> ?", ps -> {
+            PgVectorType.bind(ps, 1, a);
+            PgVectorType.bind(ps, 2, b);
+        }, rs -> rs.next() ? rs.getDouble(1) : Double.NaN);
+    }
+
+    private double textDistance(float[] a, float[] b) {
+        return jdbcTemplate.queryForObject("SELECT CAST(? AS vector) <=> CAST(? AS vector)", Double.class,
+                Arrays.toString(a), Arrays.toString(b));
+    }
+
+    private static long time(Runnable query) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            query.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private float[] randomVector() {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+}
@@ -0,0 +1,41 @@
+package app.notekeeper.common.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class VectorMathTest {
+
+    @Test
+    void meanIsNormalized() {
+        float[] mean = VectorMath.mean(List.of(new float[] { 2f, 0f }, new float[] { 0f, 2f }));
+
+        assertThat(mean[0]).isCloseTo((float) Math.sqrt(0.5), within(1e-6f));
+        assertThat(mean[1]).isCloseTo((float) Math.sqrt(0.5), within(1e-6f));
+    }
+
+    @Test
+    void normalizeReturnsAUnitCopy() {
+        float[] vector = { 3f, 4f };
+
+        assertThat(VectorMath.normalize(vector)).containsExactly(0.6f, 0.8f);
+        assertThat(vector).containsExactly(3f, 4f);
+    }
+
+    @Test
+    void zeroVectorHasNoDirection() {
+        assertThat(VectorMath.normalize(new float[] { 0f, 0f })).containsExactly(0f, 0f);
+        assertThat(VectorMath.cosine(new float[] { 0f, 0f }, new float[] { 1f, 0f })).isZero();
+    }
+
+    @Test
+    void cosineIgnoresLength() {
+        assertThat(VectorMath.cosine(new float[] { 1f, 1f }, new float[] { 5f, 5f })).isCloseTo(1.0, within(1e-9));
+        assertThat(VectorMath.cosine(new float[] { 1f, 0f }, new float[] { 0f, 3f })).isZero();
+        assertThat(VectorMath.dot(new float[] { 1f, 2f }, new float[] { 3f, 4f })).isEqualTo(11.0);
+    }
+
+}
@@ -0,0 +1,95 @@
+package app.notekeeper.external.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import app.notekeeper.common.exception.SystemException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import reactor.core.publisher.Flux;
+
+class AiResilienceTest {
+
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+    private AiResilience aiResilience;
+
+    @BeforeEach
+    void setUp() {
+        circuitBreakerRegistry = CircuitBreakerRegistry.of(CircuitBreakerConfig.custom()
+                .slowCallDurationThreshold(Duration.ofMillis(100))
+                .build());
+        aiResilience = new AiResilience(circuitBreakerRegistry, BulkheadRegistry.ofDefaults(),
+                TimeLimiterRegistry.of(TimeLimiterConfig.custom().timeoutDuration(Duration.ofSeconds(1)).build()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        aiResilience.shutdown();
+    }
+
+    @Test
+    void longStreamWithFastFirstTokenIsNotSlow() {
+        Flux<Integer> tokens = Flux.range(0, 4).delayElements(Duration.ofMillis(60));
+
+        List<Integer> received = aiResilience.stream(AiResilience.OPENAI, Flux.just(-1).concatWith(tokens))
+                .collectList().block();
+
+        assertThat(received).hasSize(5);
+        CircuitBreaker.Metrics metrics = breaker().getMetrics();
+        assertThat(metrics.getNumberOfSuccessfulCalls()).isEqualTo(1);
+        assertThat(metrics.getNumberOfSlowCalls()).isZero();
+    }
+
+    @Test
+    void lateFirstTokenIsSlow() {
+        aiResilience.stream(AiResilience.OPENAI, Flux.just(1, 2).delaySubscription(Duration.ofMillis(150)))
+                .blockLast();
+
+        assertThat(breaker().getMetrics().getNumberOfSlowCalls()).isEqualTo(1);
+    }
+
+    @Test
+    void failedStreamIsReportedOnce() {
+        Flux<Integer> failing = Flux.just(1).concatWith(Flux.error(new IllegalStateException("connection reset")));
+
+        assertThatThrownBy(() -> aiResilience.stream(AiResilience.OPENAI, failing).blockLast())
+                .isInstanceOf(IllegalStateException.class);
+
+        CircuitBreaker.Metrics metrics = breaker().getMetrics();
+        assertThat(metrics.getNumberOfFailedCalls()).isEqualTo(1);
+        assertThat(metrics.getNumberOfBufferedCalls()).isEqualTo(1);
+    }
+
+    @Test
+    void openBreakerFailsFast() {
+        breaker().transitionToOpenState();
+
+        assertThatThrownBy(() -> aiResilience.stream(AiResilience.OPENAI, Flux.just(1)).blockLast())
+                .isInstanceOf(SystemException.class);
+    }
+
+    @Test
+    void cancelledBeforeFirstTokenIsNotCounted() {
+        aiResilience.stream(AiResilience.OPENAI, Flux.just(1).delaySubscription(Duration.ofMillis(500)))
+                .take(Duration.ofMillis(20))
+                .blockLast();
+
+        assertThat(breaker().getMetrics().getNumberOfBufferedCalls()).isZero();
+    }
+
+    private CircuitBreaker breaker() {
+        return circuitBreakerRegistry.circuitBreaker(AiResilience.OPENAI);
+    }
+
+}
@@ -0,0 +1,119 @@
+package app.notekeeper.external.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DocumentTextExtractorTest {
+
+    private static final String LINE = "Quarterly roadmap review with the platform team and budget follow-ups";
+
+    @TempDir
+    Path uploadDir;
+
+    private DocumentTextExtractor extractor;
+
+    @BeforeEach
+    void setUp() {
+        extractor = new DocumentTextExtractor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(extractor, "uploadDir", uploadDir.toString());
+        ReflectionTestUtils.setField(extractor, "enabled", true);
+        ReflectionTestUtils.setField(extractor, "minCharsPerPage", 100);
+        ReflectionTestUtils.setField(extractor, "maxScannedPageRatio", 0.1);
+        ReflectionTestUtils.setField(extractor, "maxPages", 300);
+        ReflectionTestUtils.setField(extractor, "maxChars", 200_000);
+    }
+
+    @Test
+    void textPdfIsExtractedLocally() throws IOException {
+        writePdf("text.pdf", true, true, true);
+
+        assertThat(extractor.extract("text.pdf")).hasValueSatisfying(text -> assertThat(text).contains("roadmap"));
+    }
+
+    @Test
+    void pdfWithFewBlankPagesIsExtractedLocally() throws IOException {
+        boolean[] pages = new boolean[20];
+        Arrays.fill(pages, true);
+        pages[0] = false;
+        pages[10] = false;
+        writePdf("cover.pdf", pages);
+
+        assertThat(extractor.extract("cover.pdf")).isPresent();
+    }
+
+    @Test
+    void pdfMixingTextAndScannedPagesGoesToVision() throws IOException {
+        // Enough text on average, but most pages have none
+        writePdf("mixed.pdf", true, false, false, false);
+
+        assertThat(extractor.extract("mixed.pdf")).isEmpty();
+    }
+
+    @Test
+    void scannedPdfGoesToVision() throws IOException {
+        writePdf("scanned.pdf", false, false);
+
+        assertThat(extractor.extract("scanned.pdf")).isEmpty();
+    }
+
+    @Test
+    void plainTextFallsBackToWindows1252() throws IOException {
+        Files.write(uploadDir.resolve("notes.txt"), "Café menu\r\n\r\n\r\n\r\nsecond".getBytes(
+                Charset.forName("windows-1252")));
+
+        assertThat(extractor.extract("notes.txt")).hasValue("Café menu\n\nsecond");
+    }
+
+    @Test
+    void unsupportedExtensionGoesToVision() throws IOException {
+        Files.writeString(uploadDir.resolve("slides.pptx"), "binary");
+
+        assertThat(extractor.extract("slides.pptx")).isEmpty();
+    }
+
+    /**
+     * Pages marked false have no text, like a scanned page
+     */
+    private void writePdf(String name, boolean... textPages) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (boolean hasText : textPages) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                if (!hasText) {
+                    continue;
+                }
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(40, 740);
+                    for (int line = 0; line < 8; line++) {
+                        content.showText(LINE);
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            document.save(uploadDir.resolve(name).toFile());
+        }
+    }
+
+}
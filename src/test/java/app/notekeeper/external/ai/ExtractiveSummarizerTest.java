@@ -0,0 +1,52 @@
+package app.notekeeper.external.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ExtractiveSummarizerTest {
+
+    private ExtractiveSummarizer summarizer;
+
+    @BeforeEach
+    void setUp() {
+        summarizer = new ExtractiveSummarizer();
+        ReflectionTestUtils.setField(summarizer, "maxChars", 60);
+    }
+
+    @Test
+    void shortNoteIsItsOwnSummary() {
+        assertThat(summarizer.summarize("Groceries", "  Milk,\n eggs   and bread. "))
+                .isEqualTo("Milk, eggs and bread.");
+    }
+
+    @Test
+    void longNoteKeepsTheLeadingSentencesWithinTheBudget() {
+        String content = "Sprint goals are set. The team ships search next. "
+                + "Retro is on Friday and everyone should bring two topics.";
+
+        assertThat(summarizer.summarize("Sprint", content))
+                .isEqualTo("Sprint goals are set. The team ships search next.");
+    }
+
+    @Test
+    void overlongFirstSentenceIsCutAtAWord() {
+        String content = "This first sentence goes on and on about the quarterly roadmap without any stop "
+                + "until well past the budget. Second.";
+
+        String summary = summarizer.summarize("Roadmap", content);
+
+        assertThat(summary).startsWith("This first sentence goes on");
+        assertThat(summary).endsWith("...");
+        assertThat(summary).hasSizeLessThanOrEqualTo(63);
+    }
+
+    @Test
+    void emptyNoteFallsBackToTheTitle() {
+        assertThat(summarizer.summarize("Ideas", "   ")).isEqualTo("Ideas");
+        assertThat(summarizer.summarize("Ideas", null)).isEqualTo("Ideas");
+    }
+
+}
@@ -0,0 +1,150 @@
+package app.notekeeper.external.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ImagePreprocessorTest {
+
+    @TempDir
+    Path uploadDir;
+
+    private ImagePreprocessor preprocessor;
+
+    @BeforeEach
+    void setUp() {
+        preprocessor = new ImagePreprocessor(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(preprocessor, "enabled", true);
+        ReflectionTestUtils.setField(preprocessor, "maxEdge", 100);
+        ReflectionTestUtils.setField(preprocessor, "quality", 0.85f);
+    }
+
+    @Test
+    void readsBigEndianOrientation() throws IOException {
+        assertThat(ImagePreprocessor.exifOrientation(withExif(jpeg(40, 20), 6, ByteOrder.BIG_ENDIAN))).isEqualTo(6);
+    }
+
+    @Test
+    void readsLittleEndianOrientation() throws IOException {
+        assertThat(ImagePreprocessor.exifOrientation(withExif(jpeg(40, 20), 8, ByteOrder.LITTLE_ENDIAN)))
+                .isEqualTo(8);
+    }
+
+    @Test
+    void jpegWithoutExifIsUpright() throws IOException {
+        assertThat(ImagePreprocessor.exifOrientation(jpeg(40, 20))).isEqualTo(1);
+    }
+
+    @Test
+    void otherFormatsAreUpright() throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB), "png", png);
+
+        assertThat(ImagePreprocessor.exifOrientation(png.toByteArray())).isEqualTo(1);
+        assertThat(ImagePreprocessor.exifOrientation(new byte[0])).isEqualTo(1);
+    }
+
+    @Test
+    void truncatedExifIsUpright() throws IOException {
+        byte[] data = withExif(jpeg(40, 20), 6, ByteOrder.BIG_ENDIAN);
+
+        for (int length = 0; length < 60; length++) {
+            assertThat(ImagePreprocessor.exifOrientation(Arrays.copyOf(data, length))).isIn(1, 6);
+        }
+        assertThat(ImagePreprocessor.exifOrientation(Arrays.copyOf(data, 30))).isEqualTo(1);
+    }
+
+    @Test
+    void preparedImageIsDownscaledAndTurnedUpright() throws IOException {
+        Path original = uploadDir.resolve("photo.jpg");
+        Files.write(original, withExif(jpeg(400, 200), 6, ByteOrder.BIG_ENDIAN));
+
+        ImagePreprocessor.PreparedImage prepared = preprocessor.prepare(original, "image/jpeg");
+
+        assertThat(prepared.mimeType()).isEqualTo("image/jpeg");
+        assertThat(prepared.resource().getFilename()).isEqualTo("photo.jpg" + ImagePreprocessor.DERIVED_MARKER
+                + "100q85.jpg");
+        BufferedImage image = ImageIO.read(prepared.resource().getFile());
+        assertThat(image.getWidth()).isEqualTo(50);
+        assertThat(image.getHeight()).isEqualTo(100);
+        assertThat(ImagePreprocessor.exifOrientation(Files.readAllBytes(prepared.resource().getFile().toPath())))
+                .isEqualTo(1);
+    }
+
+    @Test
+    void derivedImageIsReused() throws IOException {
+        Path original = uploadDir.resolve("photo.jpg");
+        Files.write(original, jpeg(400, 200));
+
+        Path first = preprocessor.prepare(original, "image/jpeg").resource().getFile().toPath();
+        long modified = Files.getLastModifiedTime(first).toMillis();
+        Path second = preprocessor.prepare(original, "image/jpeg").resource().getFile().toPath();
+
+        assertThat(second).isEqualTo(first);
+        assertThat(Files.getLastModifiedTime(second).toMillis()).isEqualTo(modified);
+    }
+
+    @Test
+    void undecodableImageIsSentAsUploaded() throws IOException {
+        Path original = uploadDir.resolve("photo.webp");
+        Files.write(original, new byte[] { 'R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P' });
+
+        ImagePreprocessor.PreparedImage prepared = preprocessor.prepare(original, "image/webp");
+
+        assertThat(prepared.mimeType()).isEqualTo("image/webp");
+        assertThat(prepared.resource().getFile().toPath()).isEqualTo(original);
+    }
+
+    private static byte[] jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, width / 2, height);
+        graphics.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Insert an EXIF APP1 segment with only the orientation tag after the JFIF
+     * APP0 segment
+     */
+    private static byte[] withExif(byte[] jpeg, int orientation, ByteOrder order) {
+        ByteBuffer tiff = ByteBuffer.allocate(26).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? new byte[] { 'M', 'M' } : new byte[] { 'I', 'I' });
+        tiff.putShort((short) 42).putInt(8);
+        tiff.putShort((short) 1);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        tiff.putInt(0);
+
+        ByteBuffer app1 = ByteBuffer.allocate(4 + 6 + 26);
+        app1.put((byte) 0xFF).put((byte) 0xE1).putShort((short) (2 + 6 + 26));
+        app1.put(new byte[] { 'E', 'x', 'i', 'f', 0, 0 }).put(tiff.array());
+
+        int app0End = 4 + ((jpeg[4] & 0xFF) << 8 | jpeg[5] & 0xFF);
+        ByteBuffer result = ByteBuffer.allocate(jpeg.length + app1.capacity());
+        result.put(jpeg, 0, app0End).put(app1.array()).put(jpeg, app0End, jpeg.length - app0End);
+        return result.array();
+    }
+
+}
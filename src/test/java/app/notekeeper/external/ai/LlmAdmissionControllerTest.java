@@ -0,0 +1,263 @@
+package app.notekeeper.external.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+
+import app.notekeeper.common.exception.SystemException;
+import app.notekeeper.external.ai.LlmAdmissionController.Priority;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+class LlmAdmissionControllerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    private LlmAdmissionController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new LlmAdmissionController(meterRegistry);
+        ReflectionTestUtils.setField(controller, "enabled", true);
+        ReflectionTestUtils.setField(controller, "requestsPerMinute", 1000.0);
+        ReflectionTestUtils.setField(controller, "tokensPerMinute", 1_000_000.0);
+        ReflectionTestUtils.setField(controller, "initialConcurrency", 4.0);
+        ReflectionTestUtils.setField(controller, "minConcurrency", 1.0);
+        ReflectionTestUtils.setField(controller, "maxConcurrency", 32.0);
+        ReflectionTestUtils.setField(controller, "backgroundShare", 0.5);
+        ReflectionTestUtils.setField(controller, "latencyThreshold", Duration.ofSeconds(20));
+        ReflectionTestUtils.setField(controller, "decreaseCooldown", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(controller, "interactiveMaxWait", Duration.ofMillis(200));
+        ReflectionTestUtils.setField(controller, "backgroundMaxWait", Duration.ofMillis(200));
+        controller.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        released.countDown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void fastSuccessRaisesTheLimitAdditively() {
+        controller.call(Priority.INTERACTIVE, 10, () -> "answer");
+
+        assertThat(limit()).isEqualTo(4.25);
+    }
+
+    @Test
+    void rateLimitHalvesTheLimitOncePerCooldown() {
+        assertThatThrownBy(() -> controller.call(Priority.BACKGROUND, 10, () -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests",
+                    HttpHeaders.EMPTY, new byte[0], null);
+        })).isInstanceOf(HttpClientErrorException.TooManyRequests.class);
+        assertThatThrownBy(() -> controller.call(Priority.BACKGROUND, 10, () -> {
+            throw new IllegalStateException("429 - rate limit reached");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(limit()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("notekeeper.ai.llm.rate_limited").counter().count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void slowCallHalvesTheLimitDownToTheMinimum() {
+        ReflectionTestUtils.setField(controller, "latencyThreshold", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(controller, "decreaseCooldown", Duration.ZERO);
+
+        for (int i = 0; i < 4; i++) {
+            controller.call(Priority.INTERACTIVE, 10, () -> sleep(5));
+        }
+
+        assertThat(limit()).isEqualTo(1.0);
+    }
+
+    @Test
+    void otherFailuresKeepTheLimit() {
+        assertThatThrownBy(() -> controller.call(Priority.INTERACTIVE, 10, () -> {
+            throw new IllegalStateException("bad response");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(limit()).isEqualTo(4.0);
+        assertThat(inFlight()).isZero();
+    }
+
+    @Test
+    void retryableFailures() {
+        assertThat(LlmAdmissionController.isRetryable(SystemException.externalServiceError("busy"))).isTrue();
+        assertThat(LlmAdmissionController.isRetryable(new RuntimeException("wrapped",
+                new RuntimeException("429 - slow down")))).isTrue();
+        assertThat(LlmAdmissionController.isRetryable(new IllegalStateException("bad response"))).isFalse();
+    }
+
+    @Test
+    void interactiveCallersAreAdmittedBeforeBackgroundCallers() throws Exception {
+        ReflectionTestUtils.setField(controller, "initialConcurrency", 1.0);
+        ReflectionTestUtils.setField(controller, "maxConcurrency", 1.0);
+        ReflectionTestUtils.setField(controller, "backgroundMaxWait", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(controller, "interactiveMaxWait", Duration.ofSeconds(10));
+        controller.init();
+        List<String> admitted = new CopyOnWriteArrayList<>();
+
+        holdSlot(Priority.INTERACTIVE);
+        Future<?> background = callers.submit(() -> controller.call(Priority.BACKGROUND, 1,
+                () -> admitted.add("background")));
+        awaitWaiting("background");
+        Future<?> interactive = callers.submit(() -> controller.call(Priority.INTERACTIVE, 1,
+                () -> admitted.add("interactive")));
+        awaitWaiting("interactive");
+        released.countDown();
+
+        interactive.get(5, TimeUnit.SECONDS);
+        background.get(5, TimeUnit.SECONDS);
+        assertThat(admitted).containsExactly("interactive", "background");
+    }
+
+    @Test
+    void backgroundCallersOnlyGetTheirShareOfTheLimit() throws Exception {
+        holdSlot(Priority.BACKGROUND);
+        holdSlot(Priority.BACKGROUND);
+
+        assertThatThrownBy(() -> controller.call(Priority.BACKGROUND, 1, () -> "summary"))
+                .isInstanceOf(SystemException.class);
+        assertThat(controller.call(Priority.INTERACTIVE, 1, () -> "answer")).isEqualTo("answer");
+    }
+
+    @Test
+    void tokenBudgetIsEnforced() {
+        ReflectionTestUtils.setField(controller, "tokensPerMinute", 1000.0);
+        controller.init();
+
+        controller.call(Priority.INTERACTIVE, 800, () -> "first");
+
+        assertThatThrownBy(() -> controller.call(Priority.INTERACTIVE, 800, () -> "second"))
+                .isInstanceOf(SystemException.class);
+        assertThat(meterRegistry.get("notekeeper.ai.llm.admission").tag("priority", "interactive")
+                .tag("result", "rejected").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void disabledControllerPassesCallsThrough() {
+        ReflectionTestUtils.setField(controller, "enabled", false);
+        ReflectionTestUtils.setField(controller, "tokensPerMinute", 0.0);
+        controller.init();
+
+        assertThat(controller.call(Priority.BACKGROUND, 1_000_000, () -> "summary")).isEqualTo("summary");
+    }
+
+    @Test
+    void completedStreamReleasesItsSlot() {
+        assertThat(controller.stream(Priority.INTERACTIVE, 10, () -> Flux.just("a", "b")).collectList().block())
+                .containsExactly("a", "b");
+
+        assertThat(inFlight()).isZero();
+        assertThat(limit()).isEqualTo(4.25);
+    }
+
+    @Test
+    void streamWhoseCallThrowsReleasesItsSlot() {
+        Flux<String> stream = controller.stream(Priority.INTERACTIVE, 10, () -> {
+            throw new IllegalStateException("bad request");
+        });
+
+        assertThatThrownBy(stream::blockLast).isInstanceOf(IllegalStateException.class);
+        assertThat(inFlight()).isZero();
+    }
+
+    @Test
+    void streamCancelledWhileWaitingForAdmissionReleasesItsSlot() throws Exception {
+        ReflectionTestUtils.setField(controller, "initialConcurrency", 1.0);
+        ReflectionTestUtils.setField(controller, "maxConcurrency", 1.0);
+        ReflectionTestUtils.setField(controller, "interactiveMaxWait", Duration.ofSeconds(10));
+        controller.init();
+        AtomicBoolean called = new AtomicBoolean();
+
+        holdSlot(Priority.INTERACTIVE);
+        Disposable subscription = controller.stream(Priority.INTERACTIVE, 1, () -> {
+            called.set(true);
+            return Flux.just("token");
+        }).subscribe();
+        awaitWaiting("interactive");
+        subscription.dispose();
+        released.countDown();
+
+        // Fails with a busy error after the max wait if the slot leaked
+        assertThat(controller.call(Priority.INTERACTIVE, 1, () -> "answer")).isEqualTo("answer");
+        awaitInFlight(0);
+        assertThat(called).isFalse();
+    }
+
+    /**
+     * Occupy a slot until the test ends
+     */
+    private void holdSlot(Priority priority) throws InterruptedException {
+        CountDownLatch admitted = new CountDownLatch(1);
+        callers.submit(() -> controller.call(priority, 1, () -> {
+            admitted.countDown();
+            return awaitRelease();
+        }));
+        assertThat(admitted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private void awaitWaiting(String priority) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (meterRegistry.get("notekeeper.ai.llm.waiting").tag("priority", priority).gauge().value() < 1) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private void awaitInFlight(double expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (inFlight() != expected) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+    }
+
+    private double limit() {
+        return meterRegistry.get("notekeeper.ai.llm.concurrency.limit").gauge().value();
+    }
+
+    private double inFlight() {
+        return meterRegistry.get("notekeeper.ai.llm.inflight").gauge().value();
+    }
+
+    private boolean awaitRelease() {
+        try {
+            return released.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Object sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+}
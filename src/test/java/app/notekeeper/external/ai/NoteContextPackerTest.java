@@ -0,0 +1,125 @@
+package app.notekeeper.external.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class NoteContextPackerTest {
+
+    private static final String WIFI = "The wifi password for the office router is stored in the blue binder.";
+
+    private NoteContextPacker packer;
+
+    @BeforeEach
+    void setUp() {
+        packer = new NoteContextPacker(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(packer, "maxTokens", 1500);
+        ReflectionTestUtils.setField(packer, "passageTokens", 80);
+    }
+
+    @Test
+    void shortNotesAreIncludedInFull() {
+        String context = packer.pack("team lunch", List.of(
+                note("Lunch", "Work", "Team lunch plans", "Team lunch is on Friday at noon."),
+                note("Groceries", null, null, "Eggs, milk and bread.")));
+
+        assertThat(context).startsWith("RELEVANT NOTES:\n");
+        assertThat(context).contains("Note 1:\nTitle: Lunch\nTopic: Work\nSummary: Team lunch plans\n"
+                + "Content: Team lunch is on Friday at noon.\n");
+        assertThat(context).contains("Note 2:\nTitle: Groceries\nContent: Eggs, milk and bread.\n");
+    }
+
+    @Test
+    void longNoteKeepsPassagesMatchingTheQueryInReadingOrder() {
+        ReflectionTestUtils.setField(packer, "maxTokens", 100);
+        List<String> paragraphs = IntStream.range(0, 10)
+                .mapToObj(i -> i == 7 ? WIFI : filler(i))
+                .toList();
+
+        String context = packer.pack("what is the wifi password?",
+                List.of(note("Office", null, null, String.join("\n\n", paragraphs))));
+
+        assertThat(context).contains(WIFI);
+        assertThat(context).contains(" ... ");
+        assertThat(context).doesNotContain(filler(9));
+        assertThat(context.indexOf(filler(0))).isBetween(0, context.indexOf(WIFI));
+    }
+
+    @Test
+    void contextStaysWithinTheBudget() {
+        ReflectionTestUtils.setField(packer, "maxTokens", 300);
+        String content = IntStream.range(0, 40).mapToObj(NoteContextPackerTest::filler)
+                .collect(Collectors.joining("\n\n"));
+        List<NoteSearchResult> notes = IntStream.range(0, 8)
+                .mapToObj(i -> note("Note " + i, "Work", "Summary " + i, content.replace("Paragraph", "Part " + i)))
+                .toList();
+
+        String context = packer.pack("parking passes", notes);
+
+        // Budget covers headers and content, not the fixed labels around them
+        assertThat(TextChunker.estimateTokens(context)).isLessThanOrEqualTo(300 + 10 * notes.size());
+        assertThat(context).contains("Title: Note 7");
+    }
+
+    @Test
+    void notesThatDoNotFitAreDropped() {
+        ReflectionTestUtils.setField(packer, "maxTokens", 12);
+
+        String context = packer.pack("lunch", List.of(
+                note("Lunch", null, null, "Friday"),
+                note("Another note with a long title", "Work", "A summary that does not fit", "Content")));
+
+        assertThat(context).contains("Title: Lunch");
+        assertThat(context).doesNotContain("Note 2:");
+    }
+
+    @Test
+    void passagesAlreadyIncludedAreNotRepeated() {
+        String shared = WIFI + "\n\n" + filler(1);
+
+        String context = packer.pack("wifi password", List.of(
+                note("Office", null, null, shared),
+                note("Office copy", null, null, shared + "\n\n" + filler(2))));
+
+        assertThat(context.split(WIFI.replace(".", "\\."), -1)).hasSize(2);
+        assertThat(context).contains("Title: Office copy\nContent: " + filler(2));
+    }
+
+    @Test
+    void contentThatDoesNotFitFallsBackToTheSummary() {
+        ReflectionTestUtils.setField(packer, "maxTokens", 40);
+        // One sentence, so one passage larger than the budget
+        String content = IntStream.range(0, 10).mapToObj(i -> filler(i).replace('.', ';'))
+                .collect(Collectors.joining(" "));
+
+        String context = packer.pack("parking", List.of(note("Office", null, "Office logistics", content)));
+
+        assertThat(context).contains("Summary: Office logistics");
+        assertThat(context).doesNotContain("Content:");
+    }
+
+    private static String filler(int index) {
+        return "Paragraph " + index + " covers lunch orders, parking passes and desk bookings for visiting staff.";
+    }
+
+    private static NoteSearchResult note(String title, String topic, String summary, String content) {
+        return NoteSearchResult.builder()
+                .id(UUID.randomUUID())
+                .title(title)
+                .topicName(topic)
+                .aiSummary(summary)
+                .content(content)
+                .build();
+    }
+
+}
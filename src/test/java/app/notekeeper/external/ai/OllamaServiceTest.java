@@ -0,0 +1,151 @@
+package app.notekeeper.external.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+
+import app.notekeeper.common.exception.SystemException;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+
+class OllamaServiceTest {
+
+    private final CountDownLatch ollamaStuck = new CountDownLatch(1);
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private EmbeddingModel embeddingModel;
+    private EmbeddingCache embeddingCache;
+    private AiResilience aiResilience;
+    private OllamaService ollamaService;
+
+    @BeforeEach
+    void setUp() {
+        embeddingModel = mock(EmbeddingModel.class);
+        embeddingCache = mock(EmbeddingCache.class);
+        when(embeddingModel.call(any(EmbeddingRequest.class))).thenAnswer(invocation -> {
+            EmbeddingRequest request = invocation.getArgument(0);
+            if (request.getInstructions().stream().anyMatch(text -> text.startsWith("slow"))) {
+                ollamaStuck.await();
+            }
+            if (request.getInstructions().stream().anyMatch(text -> text.startsWith("down"))) {
+                throw new ResourceAccessException("Connection refused");
+            }
+            return new EmbeddingResponse(IntStream.range(0, request.getInstructions().size())
+                    .mapToObj(i -> new Embedding(new float[] { i, 1f }, i))
+                    .toList());
+        });
+
+        aiResilience = new AiResilience(CircuitBreakerRegistry.ofDefaults(), BulkheadRegistry.ofDefaults(),
+                TimeLimiterRegistry.of(TimeLimiterConfig.custom().timeoutDuration(Duration.ofSeconds(30)).build()));
+        ollamaService = new OllamaService(embeddingModel, embeddingCache, aiResilience, "test-model", 4);
+        ReflectionTestUtils.setField(ollamaService, "batchSize", 16);
+        ReflectionTestUtils.setField(ollamaService, "batchMaxWaitMs", 10L);
+        ReflectionTestUtils.setField(ollamaService, "batchTimeoutMs", 20_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ollamaStuck.countDown();
+        callers.shutdownNow();
+        ollamaService.shutdown();
+        aiResilience.shutdown();
+    }
+
+    @Test
+    void slowTimerFlushesDoNotStallLaterBatches() throws Exception {
+        List<CompletableFuture<float[]>> stuck = List.of(embedAsync("slow one"), embedAsync("slow two"));
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        float[] embedding = embedAsync("fast").get(5, TimeUnit.SECONDS);
+
+        assertThat(embedding).isNotNull();
+        assertThat(stuck).noneMatch(CompletableFuture::isDone);
+    }
+
+    @Test
+    void bulkEmbeddingDoesNotHoldUpTimerFlushes() throws Exception {
+        // More slow partitions than parallel batch workers
+        List<String> bulk = IntStream.range(0, 80).mapToObj(i -> "slow " + i).toList();
+        CompletableFuture<List<float[]>> reembedding = CompletableFuture.supplyAsync(
+                () -> ollamaService.generateEmbeddings(bulk, "test-model"), callers);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        float[] embedding = embedAsync("fast").get(5, TimeUnit.SECONDS);
+
+        assertThat(embedding).isNotNull();
+        assertThat(reembedding).isNotDone();
+    }
+
+    @Test
+    void textIsSentAsWrittenAndCachedUnderItsNormalizedForm() {
+        List<float[]> embeddings = ollamaService.generateEmbeddings(
+                List.of("Team  lunch\n\nFriday", "Team lunch Friday"), "test-model");
+
+        ArgumentCaptor<EmbeddingRequest> request = ArgumentCaptor.forClass(EmbeddingRequest.class);
+        verify(embeddingModel).call(request.capture());
+        assertThat(request.getValue().getInstructions()).containsExactly("Team  lunch\n\nFriday");
+        assertThat(embeddings).hasSize(2).allMatch(embedding -> embedding != null);
+        verify(embeddingCache).put(eq("test-model"), eq("Team lunch Friday"), any(float[].class));
+    }
+
+    @Test
+    void waitForABatchResultIsBounded() throws Exception {
+        ReflectionTestUtils.setField(ollamaService, "batchTimeoutMs", 200L);
+
+        float[] embedding = embedAsync("slow").get(5, TimeUnit.SECONDS);
+
+        assertThat(embedding).isNull();
+    }
+
+    @Test
+    void unavailableOllamaFailsBulkEmbedding() {
+        List<String> texts = IntStream.range(0, 40).mapToObj(i -> "down " + i).toList();
+
+        assertThatThrownBy(() -> ollamaService.generateEmbeddings(List.of("down"), "test-model"))
+                .isInstanceOf(SystemException.class);
+        // Split into parallel partitions
+        assertThatThrownBy(() -> ollamaService.generateEmbeddings(texts, "test-model"))
+                .isInstanceOf(SystemException.class);
+    }
+
+    @Test
+    void queryEmbeddingIsNullWhileOllamaIsUnavailable() {
+        assertThat(ollamaService.generateEmbedding("down")).isNull();
+    }
+
+    private CompletableFuture<float[]> embedAsync(String content) throws InterruptedException {
+        CompletableFuture<float[]> result = CompletableFuture.supplyAsync(() -> ollamaService.generateEmbedding(content),
+                callers);
+        // Separate timer flushes, one micro-batch per call
+        TimeUnit.MILLISECONDS.sleep(50);
+        return result;
+    }
+
+}
@@ -0,0 +1,178 @@
+package app.notekeeper.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import app.notekeeper.model.entity.AiJob;
+import app.notekeeper.model.enums.AiJobStatus;
+
+/**
+ * Checks job claiming on the real ai_jobs table: due and lease-expired jobs
+ * are claimed, rows locked by another worker are skipped, and only the lease
+ * holder can renew, complete or release a job
+ * Runs without the test transaction so concurrent claims see committed rows
+ * Needs Docker (pgvector image), skipped without it
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AiJobRepositoryTest {
+
+    private static final Duration LEASE = Duration.ofMinutes(15);
+    private static final String WORKER = "node-a:1234";
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+    @Autowired
+    private AiJobRepository aiJobRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+    private UUID ownerId;
+    private UUID topicId;
+
+    @BeforeEach
+    void setUp() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        ownerId = UUID.randomUUID();
+        topicId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (id, email, display_name) VALUES (?, ?, ?)",
+                ownerId, ownerId + "@example.com", "Owner");
+        jdbcTemplate.update("INSERT INTO topics (id, owner_id, name) VALUES (?, ?, ?)",
+                topicId, ownerId, "Inbox");
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Cascades to topics, notes and jobs
+        jdbcTemplate.update("DELETE FROM users WHERE id = ?", ownerId);
+    }
+
+    @Test
+    void dueJobsAreClaimedOldestFirst() {
+        UUID older = insertJob("PENDING", Instant.now().minusSeconds(60), null, null);
+        UUID due = insertJob("PENDING", Instant.now().minusSeconds(1), null, null);
+        insertJob("PENDING", Instant.now().plusSeconds(60), null, null);
+        insertJob("DEAD", Instant.now().minusSeconds(60), null, null);
+
+        assertThat(claim(10)).containsExactly(older, due);
+    }
+
+    @Test
+    void jobWithAnExpiredLeaseIsClaimedAgain() {
+        UUID abandoned = insertJob("RUNNING", Instant.now().minusSeconds(3600), "crashed:1",
+                Instant.now().minus(LEASE).minusSeconds(60));
+        insertJob("RUNNING", Instant.now().minusSeconds(3600), "busy:1", Instant.now().minusSeconds(60));
+
+        assertThat(claim(10)).containsExactly(abandoned);
+    }
+
+    @Test
+    void jobsLockedByAnotherWorkerAreSkipped() {
+        UUID first = insertJob("PENDING", Instant.now().minusSeconds(60), null, null);
+        UUID second = insertJob("PENDING", Instant.now().minusSeconds(30), null, null);
+
+        List<UUID> otherClaim = transactionTemplate.execute(tx -> {
+            assertThat(lockNextBatch(1)).containsExactly(first);
+            // Row lock held until this transaction ends
+            return CompletableFuture.supplyAsync(() -> claim(10)).join();
+        });
+
+        assertThat(otherClaim).containsExactly(second);
+    }
+
+    @Test
+    void onlyTheLeaseHolderCanUpdateTheJob() {
+        UUID jobId = insertJob("RUNNING", Instant.now(), WORKER, Instant.now());
+        ZonedDateTime now = ZonedDateTime.now();
+
+        assertThat(inTransaction(() -> aiJobRepository.renewLease(jobId, "node-b:1", now))).isZero();
+        assertThat(inTransaction(() -> aiJobRepository.release(jobId, "node-b:1", AiJobStatus.DEAD, 5, now,
+                "error"))).isZero();
+        assertThat(inTransaction(() -> aiJobRepository.deleteCompleted(jobId, "node-b:1"))).isZero();
+
+        assertThat(inTransaction(() -> aiJobRepository.renewLease(jobId, WORKER, now))).isEqualTo(1);
+        assertThat(inTransaction(() -> aiJobRepository.deleteCompleted(jobId, WORKER))).isEqualTo(1);
+        assertThat(aiJobRepository.findById(jobId)).isEmpty();
+    }
+
+    @Test
+    void releasedJobIsPendingAgainAfterItsBackoff() {
+        UUID jobId = insertJob("RUNNING", Instant.now(), WORKER, Instant.now());
+        ZonedDateTime retryAt = ZonedDateTime.now().plusMinutes(5);
+
+        assertThat(inTransaction(() -> aiJobRepository.release(jobId, WORKER, AiJobStatus.PENDING, 1, retryAt,
+                "IllegalStateException: boom"))).isEqualTo(1);
+
+        AiJob job = aiJobRepository.findById(jobId).orElseThrow();
+        assertThat(job.getStatus()).isEqualTo(AiJobStatus.PENDING);
+        assertThat(job.getAttempts()).isEqualTo(1);
+        assertThat(job.getLockedBy()).isNull();
+        assertThat(job.getLastError()).isEqualTo("IllegalStateException: boom");
+        assertThat(claim(10)).isEmpty();
+    }
+
+    private List<UUID> claim(int limit) {
+        return transactionTemplate.execute(tx -> lockNextBatch(limit));
+    }
+
+    private List<UUID> lockNextBatch(int limit) {
+        ZonedDateTime now = ZonedDateTime.now();
+        return aiJobRepository.lockNextBatch(now, now.minus(LEASE), limit).stream()
+                .filter(job -> job.getOwnerId().equals(ownerId))
+                .map(AiJob::getId)
+                .toList();
+    }
+
+    private int inTransaction(IntSupplier update) {
+        return transactionTemplate.execute(tx -> update.getAsInt());
+    }
+
+    private UUID insertJob(String status, Instant nextAttemptAt, String lockedBy, Instant lockedAt) {
+        UUID noteId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO notes (id, owner_id, topic_id, title, content, type) "
+                + "VALUES (?, ?, ?, 'Note', 'Content', 'TEXT')", noteId, ownerId, topicId);
+
+        UUID jobId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO ai_jobs (id, note_id, owner_id, type, status, next_attempt_at, "
+                + "locked_by, locked_at) VALUES (?, ?, ?, 'PROCESS_NOTE', ?, ?, ?, ?)",
+                jobId, noteId, ownerId, status, Timestamp.from(nextAttemptAt), lockedBy,
+                lockedAt != null ? Timestamp.from(lockedAt) : null);
+        return jobId;
+    }
+
+}
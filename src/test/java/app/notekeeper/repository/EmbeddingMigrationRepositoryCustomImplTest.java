@@ -0,0 +1,185 @@
+package app.notekeeper.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.FailedNote;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.StagedChunk;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.StagedNote;
+
+class EmbeddingMigrationRepositoryCustomImplTest {
+
+    private static final String MODEL = "nomic-embed-text-v2";
+    private static final int MAX_ATTEMPTS = 3;
+
+    private JdbcTemplate jdbcTemplate;
+    private EmbeddingMigrationRepositoryCustomImpl repository;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        repository = new EmbeddingMigrationRepositoryCustomImpl(jdbcTemplate);
+    }
+
+    @Test
+    void cutoverIsPostponedWhileNotesStillNeedEmbedding() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*)"), eq(Integer.class), eq(MODEL), eq(MODEL),
+                eq(MODEL), eq(MAX_ATTEMPTS)))
+                .thenReturn(3);
+
+        boolean done = repository.cutover(MODEL, MAX_ATTEMPTS);
+
+        assertThat(done).isFalse();
+        verify(jdbcTemplate).execute("LOCK TABLE notes IN SHARE ROW EXCLUSIVE MODE");
+        verify(jdbcTemplate).queryForObject(startsWith("SELECT COUNT(*)"), eq(Integer.class), eq(MODEL), eq(MODEL),
+                eq(MODEL), eq(MAX_ATTEMPTS));
+        verifyNoMoreInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void cutoverSwapsStagedVectorsUnderTheTableLock() {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*)"), eq(Integer.class), eq(MODEL), eq(MODEL),
+                eq(MODEL), eq(MAX_ATTEMPTS)))
+                .thenReturn(0);
+
+        boolean done = repository.cutover(MODEL, MAX_ATTEMPTS);
+
+        assertThat(done).isTrue();
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("LOCK TABLE notes IN SHARE ROW EXCLUSIVE MODE");
+        order.verify(jdbcTemplate).queryForObject(startsWith("SELECT COUNT(*)"), eq(Integer.class), eq(MODEL),
+                eq(MODEL), eq(MODEL), eq(MAX_ATTEMPTS));
+        order.verify(jdbcTemplate).update(startsWith("DELETE FROM note_chunks c USING notes n"), eq(MODEL));
+        order.verify(jdbcTemplate).update(startsWith("INSERT INTO note_chunks "), eq(MODEL), eq(MODEL));
+        order.verify(jdbcTemplate).update(startsWith("UPDATE notes SET embedding = staged_embedding"), eq(MODEL));
+        order.verify(jdbcTemplate).update(startsWith("UPDATE notes SET embedding = NULL"), eq(MODEL));
+        order.verify(jdbcTemplate).update(startsWith("DELETE FROM note_chunks WHERE embedding_model"), eq(MODEL));
+        order.verify(jdbcTemplate).update("DELETE FROM note_chunks_staging");
+        order.verify(jdbcTemplate).update(startsWith("DELETE FROM note_embedding_failures"), eq(MODEL));
+    }
+
+    @Test
+    void pendingNotesIncludeMissingAndUnlabelledEmbeddings() {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+
+        repository.findNotesToEmbed(MODEL, MAX_ATTEMPTS, null, 10);
+
+        verify(jdbcTemplate).query(sql.capture(), any(PreparedStatementSetter.class), any(RowMapper.class));
+        assertThat(sql.getValue())
+                .doesNotContain("embedding IS NOT NULL")
+                .contains("n.embedding_model IS DISTINCT FROM ?")
+                .contains("ai_jobs");
+    }
+
+    @Test
+    void notesWhoseContentFailedTooOftenAreNotPending() throws SQLException {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<PreparedStatementSetter> setter = ArgumentCaptor.forClass(PreparedStatementSetter.class);
+        UUID cursor = UUID.randomUUID();
+
+        repository.findNotesToEmbed(MODEL, MAX_ATTEMPTS, cursor, 10);
+
+        verify(jdbcTemplate).query(sql.capture(), setter.capture(), any(RowMapper.class));
+        assertThat(sql.getValue()).contains("NOT EXISTS (SELECT 1 FROM note_embedding_failures f")
+                .contains("f.content_hash = md5(n.content) AND f.attempts >= ?");
+        PreparedStatement ps = mock(PreparedStatement.class);
+        setter.getValue().setValues(ps);
+        InOrder order = inOrder(ps);
+        order.verify(ps).setString(1, MODEL);
+        order.verify(ps).setString(2, MODEL);
+        order.verify(ps).setString(3, MODEL);
+        order.verify(ps).setInt(4, MAX_ATTEMPTS);
+        order.verify(ps).setObject(5, cursor);
+        order.verify(ps).setInt(6, 10);
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void failuresAreCountedPerContentVersion() {
+        FailedNote failed = new FailedNote(UUID.randomUUID(), "content", "No embedding returned");
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Collection> rows = ArgumentCaptor.forClass(Collection.class);
+
+        repository.recordFailures(MODEL, List.of(failed));
+
+        verify(jdbcTemplate).batchUpdate(sql.capture(), rows.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertThat(sql.getValue()).startsWith("INSERT INTO note_embedding_failures")
+                .contains("ON CONFLICT (note_id, embedding_model) DO UPDATE")
+                .contains("THEN note_embedding_failures.attempts + 1 ELSE 1 END");
+        assertThat((Collection<FailedNote>) rows.getValue()).containsExactly(failed);
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void stageLeavesOutNotesEditedSinceTheyWereRead() {
+        StagedNote unchanged = stagedNote();
+        StagedNote edited = stagedNote();
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE notes SET staged_embedding"),
+                any(BatchPreparedStatementSetter.class)))
+                .thenReturn(new int[] { 1, 0 });
+
+        int staged = repository.stage(MODEL, List.of(unchanged, edited));
+
+        assertThat(staged).isEqualTo(1);
+        ArgumentCaptor<Collection> deleted = ArgumentCaptor.forClass(Collection.class);
+        ArgumentCaptor<Collection> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("DELETE FROM note_chunks_staging"), deleted.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO note_chunks_staging"), inserted.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertThat((Collection<StagedNote>) deleted.getValue()).containsExactly(unchanged);
+        assertThat((Collection<Object[]>) inserted.getValue())
+                .hasSize(2)
+                .allMatch(row -> row[0] == unchanged);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void stageWritesNothingWhenEveryNoteWasEdited() {
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE notes SET staged_embedding"),
+                any(BatchPreparedStatementSetter.class)))
+                .thenReturn(new int[] { 0 });
+
+        int staged = repository.stage(MODEL, List.of(stagedNote()));
+
+        assertThat(staged).isZero();
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    private static StagedNote stagedNote() {
+        float[] embedding = { 0.6f, 0.8f };
+        return new StagedNote(UUID.randomUUID(), UUID.randomUUID(), "content", embedding, List.of(
+                new StagedChunk(0, "first", 10, embedding),
+                new StagedChunk(1, "second", 12, embedding)));
+    }
+
+}
@@ -0,0 +1,207 @@
+package app.notekeeper.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+
+/**
+ * Counts JDBC statements issued by the search queries, each search must be a
+ * single query with owner and topic joined in (the vector search adds its SET
+ * LOCAL of the HNSW settings), and checks the keyword query built from a
+ * question
+ * Needs Docker (pgvector image), skipped without it
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+@Import(NoteRepositorySearchQueryCountTest.StatementCountingConfig.class)
+class NoteRepositorySearchQueryCountTest {
+
+    private static final int DIMENSIONS = 768;
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private UUID ownerId;
+    private UUID topicId;
+
+    @TestConfiguration
+    static class StatementCountingConfig {
+
+        @Bean
+        static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    return bean instanceof DataSource dataSource ? countStatements(dataSource) : bean;
+                }
+            };
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        ownerId = UUID.randomUUID();
+        topicId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (id, email, display_name) VALUES (?, ?, ?)",
+                ownerId, ownerId + "@example.com", "Owner");
+        jdbcTemplate.update("INSERT INTO topics (id, owner_id, name) VALUES (?, ?, ?)",
+                topicId, ownerId, "Planning");
+
+        for (int i = 0; i < 5; i++) {
+            UUID noteId = UUID.randomUUID();
+            jdbcTemplate.update("INSERT INTO notes (id, owner_id, topic_id, title, content, type, embedding) "
+                    + "VALUES (?, ?, ?, ?, ?, 'TEXT', CAST(? AS vector))",
+                    noteId, ownerId, topicId, "Roadmap " + i, "quarterly roadmap review " + i, vector(i));
+            jdbcTemplate.update("INSERT INTO note_chunks (note_id, owner_id, chunk_index, content, token_count, "
+                    + "embedding, embedding_model) VALUES (?, ?, 0, ?, 4, CAST(? AS vector), 'test')",
+                    noteId, ownerId, "quarterly roadmap review " + i, vector(i));
+        }
+
+        STATEMENTS.clear();
+    }
+
+    @Test
+    void similaritySearchIsOneQuery() {
+        List<NoteSearchResult> results = noteRepository.findSimilarNotes(ownerId, null, floats(0), 5);
+
+        assertThat(queries()).hasSize(1);
+        assertThat(settings()).containsExactly(
+                "SET LOCAL hnsw.ef_search = 80; SET LOCAL hnsw.iterative_scan = relaxed_order");
+        assertThat(results).isNotEmpty();
+        assertThat(results).allSatisfy(result -> {
+            assertThat(result.getOwnerDisplayName()).isEqualTo("Owner");
+            assertThat(result.getTopicName()).isEqualTo("Planning");
+        });
+    }
+
+    @Test
+    void similaritySearchWithinTopicIsOneQuery() {
+        List<NoteSearchResult> results = noteRepository.findSimilarNotes(ownerId, topicId, floats(1), 5);
+
+        assertThat(queries()).hasSize(1);
+        assertThat(results).isNotEmpty();
+    }
+
+    @Test
+    void keywordSearchIsOneQuery() {
+        List<NoteSearchResult> results = noteRepository.findKeywordMatches(ownerId, null, "roadmap", 5);
+
+        assertThat(STATEMENTS).hasSize(1);
+        assertThat(results).hasSize(5);
+        assertThat(results.get(0).getTopicName()).isEqualTo("Planning");
+    }
+
+    @Test
+    void keywordSearchMatchesAnyTermOfAQuestion() {
+        List<NoteSearchResult> results = noteRepository.findKeywordMatches(ownerId, null,
+                "what is the budget in the roadmap?", 5);
+
+        assertThat(STATEMENTS).hasSize(1);
+        assertThat(results).hasSize(5);
+    }
+
+    private static List<String> queries() {
+        return STATEMENTS.stream().filter(sql -> !sql.startsWith("SET LOCAL")).toList();
+    }
+
+    private static List<String> settings() {
+        return STATEMENTS.stream().filter(sql -> sql.startsWith("SET LOCAL")).toList();
+    }
+
+    private static float[] floats(int seed) {
+        float[] vector = new float[DIMENSIONS];
+        vector[seed] = 1f;
+        vector[DIMENSIONS - 1] = 0.5f;
+        return vector;
+    }
+
+    private static String vector(int seed) {
+        return Arrays.toString(floats(seed)).replace(" ", "");
+    }
+
+    private static DataSource countStatements(DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                new Class<?>[] { DataSource.class }, forwarding(dataSource, (target, method, args) -> {
+                    Object result = method.invoke(target, args);
+                    return result instanceof Connection connection ? countStatements(connection) : result;
+                }));
+    }
+
+    private static Connection countStatements(Connection connection) {
+        Set<String> preparingMethods = Set.of("prepareStatement", "prepareCall");
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, forwarding(connection, (target, method, args) -> {
+                    if (preparingMethods.contains(method.getName())) {
+                        STATEMENTS.add((String) args[0]);
+                    }
+                    Object result = method.invoke(target, args);
+                    return "createStatement".equals(method.getName()) ? countStatements((Statement) result) : result;
+                }));
+    }
+
+    private static Statement countStatements(Statement statement) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class<?>[] { Statement.class }, forwarding(statement, (target, method, args) -> {
+                    if (method.getName().startsWith("execute") && args != null && args[0] instanceof String sql) {
+                        STATEMENTS.add(sql);
+                    }
+                    return method.invoke(target, args);
+                }));
+    }
+
+    private static InvocationHandler forwarding(Object target, Forward forward) {
+        return (proxy, method, args) -> {
+            try {
+                return forward.invoke(target, method, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface Forward {
+        Object invoke(Object target, Method method, Object[] args) throws Exception;
+    }
+
+}
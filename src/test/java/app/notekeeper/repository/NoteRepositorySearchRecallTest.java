@@ -0,0 +1,187 @@
+package app.notekeeper.repository;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Measures recall@k of the HNSW similarity search against an exact scan of
+ * the same chunks, logs the search latency, and checks that a note with many
+ * close chunks does not crowd the other notes out
+ * Needs Docker (pgvector image), skipped without it
+ */
+@Slf4j
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class NoteRepositorySearchRecallTest {
+
+    private static final int DIMENSIONS = 768;
+    private static final int CLUSTERS = 20;
+    private static final int NOTES_PER_CLUSTER = 100;
+    private static final int QUERIES = 50;
+    private static final int K = 10;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+    @Autowired
+    private NoteRepository noteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final Random random = new Random(42);
+
+    private UUID ownerId;
+    private float[][] centers;
+
+    @BeforeEach
+    void setUp() {
+        ownerId = insertOwner();
+        centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(1f);
+        }
+    }
+
+    @Test
+    void similaritySearchRecallMatchesExactScan() {
+        Map<UUID, float[]> chunks = new HashMap<>();
+        for (int c = 0; c < CLUSTERS; c++) {
+            for (int i = 0; i < NOTES_PER_CLUSTER; i++) {
+                float[] embedding = near(centers[c], 0.3f);
+                chunks.put(insertNote(ownerId, List.of(embedding)), embedding);
+            }
+        }
+        // Another owner's notes sit next to the queries and must be filtered out
+        UUID otherOwner = insertOwner();
+        for (int i = 0; i < 200; i++) {
+            insertNote(otherOwner, List.of(near(centers[i % CLUSTERS], 0.1f)));
+        }
+        jdbcTemplate.execute("ANALYZE note_chunks");
+
+        double recall = 0;
+        long[] latencies = new long[QUERIES];
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = near(centers[q % CLUSTERS], 0.3f);
+
+            long start = System.nanoTime();
+            List<NoteSearchResult> results = noteRepository.findSimilarNotes(ownerId, null, query, K);
+            latencies[q] = System.nanoTime() - start;
+
+            List<UUID> exact = chunks.entrySet().stream()
+                    .sorted(Comparator.comparingDouble(e -> cosineDistance(query, e.getValue())))
+                    .limit(K).map(Map.Entry::getKey).toList();
+            long hits = results.stream().map(NoteSearchResult::getId).filter(exact::contains).count();
+            recall += (double) hits / K;
+        }
+        recall /= QUERIES;
+        Arrays.sort(latencies);
+
+        log.info("HNSW recall@{} = {} over {} queries, latency p50 = {} us, p95 = {} us", K, recall, QUERIES,
+                latencies[QUERIES / 2] / 1_000, latencies[QUERIES * 95 / 100] / 1_000);
+        assertThat(recall).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void noteWithManyCloseChunksDoesNotCrowdOutOthers() {
+        float[] query = centers[0];
+        List<float[]> crowd = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            crowd.add(near(query, 0.01f));
+        }
+        UUID crowdNote = insertNote(ownerId, crowd);
+        for (int i = 0; i < 10; i++) {
+            insertNote(ownerId, List.of(near(query, 0.3f)));
+        }
+
+        List<NoteSearchResult> results = noteRepository.findSimilarNotes(ownerId, null, query, 5);
+
+        assertThat(results).hasSize(5);
+        assertThat(results.get(0).getId()).isEqualTo(crowdNote);
+        assertThat(results.stream().map(NoteSearchResult::getId).distinct()).hasSize(5);
+    }
+
+    private UUID insertOwner() {
+        UUID id = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO users (id, email, display_name) VALUES (?, ?, ?)",
+                id, id + "@example.com", "Owner");
+        jdbcTemplate.update("INSERT INTO topics (owner_id, name) VALUES (?, ?)", id, "General");
+        return id;
+    }
+
+    private UUID insertNote(UUID owner, List<float[]> chunkEmbeddings) {
+        UUID noteId = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO notes (id, owner_id, topic_id, title, content, type) "
+                + "SELECT ?, ?, t.id, 'Note', 'content', 'TEXT' FROM topics t WHERE t.owner_id = ?",
+                noteId, owner, owner);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < chunkEmbeddings.size(); i++) {
+            rows.add(new Object[] { noteId, owner, i, vector(chunkEmbeddings.get(i)) });
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO note_chunks (note_id, owner_id, chunk_index, content, token_count, "
+                + "embedding, embedding_model) VALUES (?, ?, ?, 'chunk', 1, CAST(? AS vector), 'test')", rows);
+        return noteId;
+    }
+
+    private float[] gaussian(float scale) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian() * scale;
+        }
+        return vector;
+    }
+
+    /**
+     * Noise is scaled per dimension so its norm is about {@code spread} times
+     * the center's norm
+     */
+    private float[] near(float[] center, float spread) {
+        float[] noise = gaussian(spread);
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = center[i] + noise[i];
+        }
+        return vector;
+    }
+
+    private static double cosineDistance(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return 1 - dot / Math.sqrt(normA * normB);
+    }
+
+    private static String vector(float[] values) {
+        return Arrays.toString(values).replace(" ", "");
+    }
+
+}
@@ -0,0 +1,187 @@
+package app.notekeeper.service.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import app.notekeeper.common.concurrent.FairTaskExecutor;
+import app.notekeeper.model.entity.AiJob;
+import app.notekeeper.model.enums.AiJobStatus;
+import app.notekeeper.model.enums.AiJobType;
+import app.notekeeper.repository.AiJobRepository;
+import app.notekeeper.service.AIService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AiJobWorkerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AiJobRepository aiJobRepository;
+    private AIService aiService;
+    private FairTaskExecutor aiTaskExecutor;
+    private AiJobWorker worker;
+    private String workerId;
+
+    @BeforeEach
+    void setUp() {
+        aiJobRepository = mock(AiJobRepository.class);
+        aiService = mock(AIService.class);
+        aiTaskExecutor = mock(FairTaskExecutor.class);
+        when(aiTaskExecutor.remainingCapacity()).thenReturn(100);
+        // Run jobs on the polling thread
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return null;
+        }).when(aiTaskExecutor).execute(any(UUID.class), any(Runnable.class));
+        when(aiJobRepository.renewLease(any(), anyString(), any())).thenReturn(1);
+
+        worker = new AiJobWorker(aiJobRepository, aiService, aiTaskExecutor,
+                mock(PlatformTransactionManager.class), meterRegistry);
+        ReflectionTestUtils.setField(worker, "batchSize", 20);
+        ReflectionTestUtils.setField(worker, "maxAttempts", 5);
+        ReflectionTestUtils.setField(worker, "backoffBase", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(worker, "backoffMax", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(worker, "lease", Duration.ofMinutes(15));
+        ReflectionTestUtils.setField(worker, "maxWaiting", 16);
+        workerId = (String) ReflectionTestUtils.getField(worker, "workerId");
+    }
+
+    @Test
+    void claimedJobIsLeasedRunAndDeleted() {
+        AiJob job = claimable(0);
+        ArgumentCaptor<ZonedDateTime> now = ArgumentCaptor.forClass(ZonedDateTime.class);
+        ArgumentCaptor<ZonedDateTime> staleBefore = ArgumentCaptor.forClass(ZonedDateTime.class);
+
+        assertThat(claimAndDispatch()).isEqualTo(1);
+
+        verify(aiJobRepository).lockNextBatch(now.capture(), staleBefore.capture(), eq(16));
+        assertThat(ChronoUnit.MINUTES.between(staleBefore.getValue(), now.getValue())).isEqualTo(15);
+        assertThat(job.getStatus()).isEqualTo(AiJobStatus.RUNNING);
+        assertThat(job.getLockedBy()).isEqualTo(workerId);
+        assertThat(job.getAttempts()).isEqualTo(1);
+        verify(aiService).processNote(job.getNoteId());
+        verify(aiJobRepository).deleteCompleted(job.getId(), workerId);
+        assertThat(jobs("completed")).isEqualTo(1.0);
+    }
+
+    @Test
+    void failedJobIsRetriedWithBackoff() {
+        AiJob job = claimable(1);
+        doThrow(new IllegalStateException("boom")).when(aiService).processNote(job.getNoteId());
+
+        claimAndDispatch();
+
+        ArgumentCaptor<ZonedDateTime> nextAttemptAt = ArgumentCaptor.forClass(ZonedDateTime.class);
+        verify(aiJobRepository).release(eq(job.getId()), eq(workerId), eq(AiJobStatus.PENDING), eq(2),
+                nextAttemptAt.capture(), eq("IllegalStateException: boom"));
+        // Second attempt: base * 2 with +-20% jitter
+        assertThat(Duration.between(ZonedDateTime.now(), nextAttemptAt.getValue()).toMillis())
+                .isCloseTo(20_000L, within(4_500L));
+        verify(aiJobRepository, never()).deleteCompleted(any(), anyString());
+        assertThat(jobs("retried")).isEqualTo(1.0);
+    }
+
+    @Test
+    void jobFailingOnItsLastAttemptIsDead() {
+        AiJob job = claimable(4);
+        doThrow(new IllegalStateException("boom")).when(aiService).processNote(job.getNoteId());
+
+        claimAndDispatch();
+
+        verify(aiJobRepository).release(eq(job.getId()), eq(workerId), eq(AiJobStatus.DEAD), eq(5), any(),
+                startsWith("IllegalStateException"));
+        assertThat(jobs("dead")).isEqualTo(1.0);
+    }
+
+    @Test
+    void rejectedJobIsGivenBackWithoutCountingTheAttempt() {
+        AiJob job = claimable(2);
+        doThrow(new TaskRejectedException("full")).when(aiTaskExecutor).execute(any(UUID.class), any(Runnable.class));
+
+        claimAndDispatch();
+
+        verify(aiJobRepository).release(eq(job.getId()), eq(workerId), eq(AiJobStatus.PENDING), eq(2), any(),
+                any());
+        verify(aiService, never()).processNote(any());
+    }
+
+    @Test
+    void jobWhoseLeaseWasTakenOverIsLeftToTheNewHolder() {
+        AiJob job = claimable(0);
+        when(aiJobRepository.renewLease(eq(job.getId()), eq(workerId), any())).thenReturn(0);
+
+        claimAndDispatch();
+
+        verify(aiService, never()).processNote(any());
+        verify(aiJobRepository, never()).deleteCompleted(any(), anyString());
+        verify(aiJobRepository, never()).release(any(), anyString(), any(), anyInt(), any(), any());
+        assertThat(jobs("lease_lost")).isEqualTo(1.0);
+    }
+
+    @Test
+    void noMoreJobsAreClaimedThanTheExecutorCanQueue() {
+        when(aiTaskExecutor.remainingCapacity()).thenReturn(3);
+
+        claimAndDispatch();
+
+        verify(aiJobRepository).lockNextBatch(any(), any(), eq(3));
+    }
+
+    @Test
+    void nothingIsClaimedWhenTheExecutorIsFull() {
+        when(aiTaskExecutor.remainingCapacity()).thenReturn(0);
+
+        assertThat(claimAndDispatch()).isZero();
+
+        verify(aiJobRepository, never()).lockNextBatch(any(), any(), anyInt());
+    }
+
+    /**
+     * Job returned by the next claim, with the attempts made so far
+     */
+    private AiJob claimable(int attempts) {
+        AiJob job = AiJob.builder()
+                .id(UUID.randomUUID())
+                .noteId(UUID.randomUUID())
+                .ownerId(UUID.randomUUID())
+                .type(AiJobType.PROCESS_NOTE)
+                .attempts(attempts)
+                .nextAttemptAt(ZonedDateTime.now())
+                .build();
+        when(aiJobRepository.lockNextBatch(any(), any(), anyInt())).thenReturn(List.of(job));
+        return job;
+    }
+
+    private int claimAndDispatch() {
+        Integer claimed = ReflectionTestUtils.invokeMethod(worker, "claimAndDispatch");
+        return claimed != null ? claimed : 0;
+    }
+
+    private double jobs(String result) {
+        return meterRegistry.get("notekeeper.ai.jobs").tag("result", result).counter().count();
+    }
+
+}
@@ -0,0 +1,117 @@
+package app.notekeeper.service.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import app.notekeeper.service.ai.ChangeSignificanceGate.Decision;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class ChangeSignificanceGateTest {
+
+    private static final String CONTENT = "The platform team reviews the quarterly roadmap on Monday, "
+            + "budget questions go to finance before the review and open hiring slots are discussed last";
+    private static final float[] EMBEDDING = { 1f, 0f, 0f };
+
+    private ChangeSignificanceGate gate;
+    private final AtomicInteger embeddingCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        gate = new ChangeSignificanceGate(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(gate, "enabled", true);
+        ReflectionTestUtils.setField(gate, "maxTextChange", 0.15);
+        ReflectionTestUtils.setField(gate, "maxEmbeddingShift", 0.02);
+        ReflectionTestUtils.setField(gate, "skipEmbeddingWrite", true);
+    }
+
+    @Test
+    void sameTextHasNoChange() {
+        assertThat(ChangeSignificanceGate.textChange(CONTENT, CONTENT)).isZero();
+    }
+
+    @Test
+    void caseAndPunctuationAreIgnored() {
+        String reformatted = CONTENT.toUpperCase().replace(",", " ;") + "!";
+
+        assertThat(ChangeSignificanceGate.textChange(CONTENT, reformatted)).isZero();
+    }
+
+    @Test
+    void unrelatedTextIsAFullChange() {
+        assertThat(ChangeSignificanceGate.textChange(CONTENT, "Grocery list: eggs, milk and bread for Sunday"))
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void oneWordEditChangesOnlyTheShinglesAroundIt() {
+        // 24 words, 22 shingles: replacing one inner word replaces 3 of them
+        String edited = CONTENT.replace("Monday", "Tuesday");
+
+        assertThat(ChangeSignificanceGate.textChange(CONTENT, edited)).isCloseTo(1 - 19.0 / 25, within(1e-9));
+    }
+
+    @Test
+    void shortTextsAreComparedWhole() {
+        assertThat(ChangeSignificanceGate.textChange("buy milk", "buy milk")).isZero();
+        assertThat(ChangeSignificanceGate.textChange("buy milk", "buy eggs")).isEqualTo(1.0);
+        assertThat(ChangeSignificanceGate.textChange(null, null)).isZero();
+    }
+
+    @Test
+    void smallEditWithStableEmbeddingSkipsAll() {
+        Decision decision = gate.evaluate(CONTENT, EMBEDDING, CONTENT + " thanks", () -> embed(0.99f, 0.01f));
+
+        assertThat(decision).isEqualTo(Decision.SKIP_ALL);
+        assertThat(embeddingCalls).hasValue(1);
+    }
+
+    @Test
+    void smallEditKeepsTheEmbeddingWriteWhenConfigured() {
+        ReflectionTestUtils.setField(gate, "skipEmbeddingWrite", false);
+
+        Decision decision = gate.evaluate(CONTENT, EMBEDDING, CONTENT + " thanks", () -> embed(0.99f, 0.01f));
+
+        assertThat(decision).isEqualTo(Decision.SKIP_SUMMARY);
+    }
+
+    @Test
+    void smallEditThatShiftsTheEmbeddingIsSignificant() {
+        Decision decision = gate.evaluate(CONTENT, EMBEDDING, CONTENT + " not", () -> embed(0.7f, 0.7f));
+
+        assertThat(decision).isEqualTo(Decision.SIGNIFICANT);
+    }
+
+    @Test
+    void largeEditIsSignificantWithoutEmbedding() {
+        Decision decision = gate.evaluate(CONTENT, EMBEDDING, "Completely new content about travel plans",
+                () -> embed(1f, 0f));
+
+        assertThat(decision).isEqualTo(Decision.SIGNIFICANT);
+        assertThat(embeddingCalls).hasValue(0);
+    }
+
+    @Test
+    void missingBaselineIsSignificant() {
+        assertThat(gate.evaluate(null, EMBEDDING, CONTENT, () -> embed(1f, 0f))).isEqualTo(Decision.SIGNIFICANT);
+        assertThat(gate.evaluate(CONTENT, null, CONTENT, () -> embed(1f, 0f))).isEqualTo(Decision.SIGNIFICANT);
+        assertThat(embeddingCalls).hasValue(0);
+    }
+
+    @Test
+    void failedEmbeddingIsSignificant() {
+        assertThat(gate.evaluate(CONTENT, EMBEDDING, CONTENT + " thanks", () -> null))
+                .isEqualTo(Decision.SIGNIFICANT);
+    }
+
+    private float[] embed(float x, float y) {
+        embeddingCalls.incrementAndGet();
+        return new float[] { x, y, 0f };
+    }
+
+}
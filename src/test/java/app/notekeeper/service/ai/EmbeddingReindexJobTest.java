@@ -0,0 +1,166 @@
+package app.notekeeper.service.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import app.notekeeper.external.ai.OllamaService;
+import app.notekeeper.external.ai.TextChunker;
+import app.notekeeper.model.entity.EmbeddingMigration;
+import app.notekeeper.model.enums.EmbeddingMigrationStatus;
+import app.notekeeper.repository.EmbeddingMigrationRepository;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.FailedNote;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.NoteToEmbed;
+import app.notekeeper.repository.EmbeddingMigrationRepositoryCustom.StagedNote;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EmbeddingReindexJobTest {
+
+    private static final String OLD_MODEL = "nomic-embed-text";
+    private static final String NEW_MODEL = "nomic-embed-text-v2";
+    private static final float[] VECTOR = { 0.6f, 0.8f };
+
+    private EmbeddingMigrationRepository migrationRepository;
+    private OllamaService ollamaService;
+    private EmbeddingReindexJob job;
+    private EmbeddingMigration migration;
+
+    private final NoteToEmbed good = new NoteToEmbed(UUID.randomUUID(), UUID.randomUUID(), "good");
+    private final NoteToEmbed poison = new NoteToEmbed(UUID.randomUUID(), UUID.randomUUID(), "poison");
+
+    @BeforeEach
+    void setUp() {
+        migrationRepository = mock(EmbeddingMigrationRepository.class);
+        ollamaService = mock(OllamaService.class);
+        TextChunker textChunker = mock(TextChunker.class);
+        when(textChunker.chunk(anyString())).thenAnswer(invocation -> List.of(
+                new TextChunker.Chunk(0, invocation.getArgument(0), 1)));
+        when(ollamaService.getActiveModel()).thenReturn(OLD_MODEL);
+        // The model fails on the poison note only, and on every request it is part of
+        when(ollamaService.generateEmbeddings(anyList(), eq(NEW_MODEL))).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            float[][] embeddings = new float[texts.size()][];
+            if (!texts.contains("poison")) {
+                Arrays.fill(embeddings, VECTOR);
+            }
+            return Arrays.asList(embeddings);
+        });
+
+        job = new EmbeddingReindexJob(migrationRepository, ollamaService, textChunker,
+                mock(ApplicationEventPublisher.class), mock(PlatformTransactionManager.class),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(job, "configuredModel", NEW_MODEL);
+        ReflectionTestUtils.setField(job, "dimensions", VECTOR.length);
+        ReflectionTestUtils.setField(job, "batchSize", 50);
+        ReflectionTestUtils.setField(job, "maxChunksPerSecond", 1000.0);
+        ReflectionTestUtils.setField(job, "lease", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(job, "maxAttempts", 3);
+
+        migration = EmbeddingMigration.builder()
+                .id(UUID.randomUUID())
+                .sourceModel(OLD_MODEL)
+                .targetModel(NEW_MODEL)
+                .build();
+        when(migrationRepository.findFirstByStatusInOrderByCreatedAtDesc(anyList()))
+                .thenReturn(Optional.of(migration));
+        when(migrationRepository.lockForWorker(eq(migration.getId()), anyString(), any()))
+                .thenReturn(Optional.of(migration));
+        when(migrationRepository.findById(migration.getId())).thenReturn(Optional.of(migration));
+        when(migrationRepository.stage(eq(NEW_MODEL), anyList()))
+                .thenAnswer(invocation -> ((List<?>) invocation.getArgument(1)).size());
+        when(migrationRepository.advance(any(), anyString(), any(), anyLong(), any())).thenReturn(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void noteFailingOnItsOwnIsCountedAndTheRestIsStaged() {
+        when(migrationRepository.findNotesToEmbed(NEW_MODEL, 3, null, 50)).thenReturn(List.of(good, poison));
+
+        boolean more = runMigrationStep();
+
+        assertThat(more).isTrue();
+        ArgumentCaptor<List<StagedNote>> staged = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<FailedNote>> failed = ArgumentCaptor.forClass(List.class);
+        verify(migrationRepository).stage(eq(NEW_MODEL), staged.capture());
+        verify(migrationRepository).recordFailures(eq(NEW_MODEL), failed.capture());
+        assertThat(staged.getValue()).extracting(StagedNote::noteId).containsExactly(good.id());
+        assertThat(failed.getValue()).extracting(FailedNote::noteId).containsExactly(poison.id());
+        // The batch request failed as a whole, both notes were retried on their own
+        verify(ollamaService).generateEmbeddings(List.of("good"), NEW_MODEL);
+        verify(ollamaService).generateEmbeddings(List.of("poison"), NEW_MODEL);
+    }
+
+    @Test
+    void failuresAreNotCountedBeforeTheModelEmbeddedAnything() {
+        when(migrationRepository.findNotesToEmbed(NEW_MODEL, 3, null, 50)).thenReturn(List.of(poison));
+
+        boolean more = runMigrationStep();
+
+        assertThat(more).isFalse();
+        verify(migrationRepository, never()).recordFailures(anyString(), anyList());
+    }
+
+    @Test
+    void failuresAreCountedOnceTheRunStagedNotes() {
+        migration.setProcessedNotes(10);
+        when(migrationRepository.findNotesToEmbed(NEW_MODEL, 3, null, 50)).thenReturn(List.of(poison));
+
+        runMigrationStep();
+
+        verify(migrationRepository).recordFailures(NEW_MODEL,
+                List.of(new FailedNote(poison.id(), "poison", "No embedding returned")));
+    }
+
+    @Test
+    void cutoverCompletesWithoutSkippedNotesAndReportsThem() {
+        List<UUID> skipped = new ArrayList<>(List.of(poison.id()));
+        when(migrationRepository.findNotesToEmbed(NEW_MODEL, 3, null, 50)).thenReturn(List.of());
+        when(migrationRepository.cutover(NEW_MODEL, 3)).thenReturn(true);
+        when(migrationRepository.findSkippedNotes(NEW_MODEL, 3)).thenReturn(skipped);
+        when(migrationRepository.findFirstByStatusOrderByCompletedAtDesc(EmbeddingMigrationStatus.COMPLETED))
+                .thenReturn(Optional.of(migration));
+
+        runMigrationStep();
+
+        assertThat(migration.getStatus()).isEqualTo(EmbeddingMigrationStatus.COMPLETED);
+        assertThat(migration.getLastError()).contains("1 notes failed 3 times").contains(poison.id().toString());
+    }
+
+    @Test
+    void cutoverWaitsForPendingNotes() {
+        when(migrationRepository.findNotesToEmbed(NEW_MODEL, 3, null, 50)).thenReturn(List.of());
+        when(migrationRepository.cutover(NEW_MODEL, 3)).thenReturn(false);
+
+        runMigrationStep();
+
+        assertThat(migration.getStatus()).isEqualTo(EmbeddingMigrationStatus.RUNNING);
+        verify(migrationRepository, never()).findSkippedNotes(anyString(), anyInt());
+    }
+
+    private boolean runMigrationStep() {
+        return Boolean.TRUE.equals(ReflectionTestUtils.invokeMethod(job, "runMigrationStep"));
+    }
+
+}
@@ -0,0 +1,170 @@
+package app.notekeeper.service.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import app.notekeeper.common.concurrent.FairTaskExecutor;
+import app.notekeeper.common.exception.SystemException;
+import app.notekeeper.event.NoteContentUpdatedEvent;
+import app.notekeeper.service.AIService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class NoteUpdateCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final UUID noteId = UUID.randomUUID();
+    private final UUID ownerId = UUID.randomUUID();
+    private final List<String> processed = new CopyOnWriteArrayList<>();
+
+    private AIService aiService;
+    private FairTaskExecutor executor;
+    private NoteUpdateCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        aiService = mock(AIService.class);
+        executor = new FairTaskExecutor("test", 4, 100, meterRegistry);
+        coalescer = new NoteUpdateCoalescer(aiService, executor, meterRegistry);
+        ReflectionTestUtils.setField(coalescer, "quietPeriod", Duration.ofMillis(100));
+        ReflectionTestUtils.setField(coalescer, "maxWait", Duration.ofSeconds(10));
+        ReflectionTestUtils.setField(coalescer, "maxRetries", 2);
+        ReflectionTestUtils.setField(coalescer, "retryBackoffBase", Duration.ofMillis(50));
+        ReflectionTestUtils.setField(coalescer, "retryBackoffMax", Duration.ofSeconds(1));
+        doAnswer(invocation -> processed.add(invocation.<NoteContentUpdatedEvent>getArgument(0).getNewContent()))
+                .when(aiService).updateNoteEmbedding(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.shutdown();
+        executor.destroy();
+    }
+
+    @Test
+    void burstIsProcessedOnceWithTheLatestContent() {
+        for (int i = 1; i <= 5; i++) {
+            edit("version " + i);
+        }
+
+        verify(aiService, timeout(2000)).updateNoteEmbedding(any());
+        verify(aiService, after(300).times(1)).updateNoteEmbedding(any());
+        assertThat(processed).containsExactly("version 5");
+        assertThat(events("collapsed")).isEqualTo(4.0);
+    }
+
+    @Test
+    void continuousEditsAreProcessedAfterTheMaxWait() throws InterruptedException {
+        ReflectionTestUtils.setField(coalescer, "maxWait", Duration.ofMillis(300));
+
+        // Never quiet for the 100 ms quiet period
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1500);
+        int version = 0;
+        while (System.nanoTime() < deadline && processed.isEmpty()) {
+            edit("version " + ++version);
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        assertThat(processed).isNotEmpty();
+    }
+
+    @Test
+    void editDuringARunIsHeldUntilTheRunFinishes() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            processed.add(invocation.<NoteContentUpdatedEvent>getArgument(0).getNewContent());
+            running.decrementAndGet();
+            return null;
+        }).when(aiService).updateNoteEmbedding(any());
+
+        edit("first");
+        assertThat(started.await(2, TimeUnit.SECONDS)).isTrue();
+        edit("second");
+        // Well past the quiet period of the second edit
+        TimeUnit.MILLISECONDS.sleep(300);
+        assertThat(processed).isEmpty();
+        release.countDown();
+
+        verify(aiService, timeout(2000).times(2)).updateNoteEmbedding(any());
+        ArgumentCaptor<NoteContentUpdatedEvent> updates = ArgumentCaptor.forClass(NoteContentUpdatedEvent.class);
+        verify(aiService, times(2)).updateNoteEmbedding(updates.capture());
+        assertThat(updates.getAllValues()).extracting(NoteContentUpdatedEvent::getNewContent)
+                .containsExactly("first", "second");
+        assertThat(maxRunning).hasValue(1);
+    }
+
+    @Test
+    void updateFailingWhileTheAiIsBusyIsRetried() {
+        doThrow(SystemException.externalServiceError("AI is busy")).doNothing()
+                .when(aiService).updateNoteEmbedding(any());
+
+        edit("content");
+
+        verify(aiService, timeout(2000).times(2)).updateNoteEmbedding(any());
+        verify(aiService, after(300).times(2)).updateNoteEmbedding(any());
+        ArgumentCaptor<NoteContentUpdatedEvent> updates = ArgumentCaptor.forClass(NoteContentUpdatedEvent.class);
+        verify(aiService, times(2)).updateNoteEmbedding(updates.capture());
+        assertThat(updates.getAllValues()).extracting(NoteContentUpdatedEvent::getNewContent)
+                .containsExactly("content", "content");
+        assertThat(events("retried")).isEqualTo(1.0);
+    }
+
+    @Test
+    void otherFailuresAreDropped() {
+        doThrow(new IllegalStateException("bad content")).when(aiService).updateNoteEmbedding(any());
+
+        edit("content");
+
+        verify(aiService, timeout(2000)).updateNoteEmbedding(any());
+        verify(aiService, after(300).times(1)).updateNoteEmbedding(any());
+        assertThat(events("dropped")).isEqualTo(1.0);
+        assertThat(coalescer.getPendingCount()).isZero();
+    }
+
+    @Test
+    void retriesStopAfterTheLimit() {
+        doThrow(SystemException.externalServiceError("AI is busy")).when(aiService).updateNoteEmbedding(any());
+
+        edit("content");
+
+        // First attempt and two retries
+        verify(aiService, timeout(3000).times(3)).updateNoteEmbedding(any());
+        verify(aiService, after(500).times(3)).updateNoteEmbedding(any());
+        assertThat(events("dropped")).isEqualTo(1.0);
+    }
+
+    private void edit(String content) {
+        coalescer.onNoteContentUpdated(new NoteContentUpdatedEvent(noteId, ownerId, content));
+    }
+
+    private double events(String result) {
+        return meterRegistry.get("notekeeper.note.update.events").tag("result", result).counter().count();
+    }
+
+}
@@ -0,0 +1,122 @@
+package app.notekeeper.service.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import app.notekeeper.external.ai.OpenAIService;
+import app.notekeeper.model.entity.Topic;
+import app.notekeeper.repository.TopicRepository;
+
+class TopicCatalogCacheTest {
+
+    private final UUID ownerId = UUID.randomUUID();
+
+    private TopicRepository topicRepository;
+    private ValueOperations<String, String> redisValues;
+    private TopicCatalogCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        topicRepository = mock(TopicRepository.class);
+        OpenAIService openAIService = mock(OpenAIService.class);
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        redisValues = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(redisValues);
+        when(openAIService.prepareTopicsInfo(anyList())).thenReturn("topics");
+
+        cache = new TopicCatalogCache(topicRepository, openAIService, redisTemplate, 2);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(5));
+
+        when(topicRepository.findByOwnerId(ownerId)).thenReturn(List.of(
+                Topic.builder().id(UUID.randomUUID()).name("Work").isDefault(true).build()));
+    }
+
+    @Test
+    void catalogHoldsTopicCopies() {
+        TopicCatalogCache.TopicCatalog catalog = cache.get(ownerId);
+
+        assertThat(catalog.topics()).singleElement().satisfies(topic -> {
+            assertThat(topic.name()).isEqualTo("Work");
+            assertThat(topic.isDefault()).isTrue();
+        });
+        assertThat(catalog.version()).isEqualTo("0");
+    }
+
+    @Test
+    void sameVersionServesTheCachedCatalog() {
+        when(redisValues.get(anyString())).thenReturn("3");
+
+        TopicCatalogCache.TopicCatalog first = cache.get(ownerId);
+        TopicCatalogCache.TopicCatalog second = cache.get(ownerId);
+
+        assertThat(second).isSameAs(first);
+        verify(topicRepository, times(1)).findByOwnerId(ownerId);
+    }
+
+    @Test
+    void versionBumpedOnAnotherNodeReloads() {
+        when(redisValues.get(anyString())).thenReturn("3", "4");
+
+        TopicCatalogCache.TopicCatalog first = cache.get(ownerId);
+        TopicCatalogCache.TopicCatalog second = cache.get(ownerId);
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.version()).isEqualTo("4");
+        verify(topicRepository, times(2)).findByOwnerId(ownerId);
+    }
+
+    @Test
+    void evictBumpsTheVersion() {
+        cache.get(ownerId);
+
+        cache.evict(ownerId);
+        cache.get(ownerId);
+
+        verify(redisValues).increment("topic-catalog:version:" + ownerId);
+        verify(topicRepository, times(2)).findByOwnerId(ownerId);
+    }
+
+    @Test
+    void redisOutageFallsBackToTheTtl() {
+        when(redisValues.get(anyString())).thenThrow(new RedisConnectionFailureException("down"));
+
+        TopicCatalogCache.TopicCatalog first = cache.get(ownerId);
+
+        assertThat(cache.get(ownerId)).isSameAs(first);
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ZERO);
+        assertThat(cache.get(ownerId)).isNotSameAs(first);
+    }
+
+    @Test
+    void leastRecentlyUsedOwnerIsDropped() {
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        when(topicRepository.findByOwnerId(second)).thenReturn(List.of());
+        when(topicRepository.findByOwnerId(third)).thenReturn(List.of());
+
+        cache.get(ownerId);
+        cache.get(second);
+        cache.get(third);
+        cache.get(ownerId);
+
+        verify(topicRepository, times(2)).findByOwnerId(ownerId);
+    }
+
+}
@@ -0,0 +1,108 @@
+package app.notekeeper.service.ai;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import app.notekeeper.external.ai.OllamaService;
+import app.notekeeper.model.dto.response.CatalogTopic;
+import app.notekeeper.repository.NoteRepository;
+
+class TopicCentroidClassifierTest {
+
+    private final UUID ownerId = UUID.randomUUID();
+    private final CatalogTopic work = new CatalogTopic(UUID.randomUUID(), "Work", null, null, true);
+    private final CatalogTopic home = new CatalogTopic(UUID.randomUUID(), "Home", null, null, false);
+    private final TopicCatalogCache.TopicCatalog catalog = new TopicCatalogCache.TopicCatalog(
+            List.of(work, home), "topics", "0", System.nanoTime());
+
+    private NoteRepository noteRepository;
+    private TopicCentroidClassifier classifier;
+
+    @BeforeEach
+    void setUp() {
+        OllamaService ollamaService = mock(OllamaService.class);
+        noteRepository = mock(NoteRepository.class);
+        when(ollamaService.generateEmbeddings(anyList())).thenReturn(List.of(
+                new float[] { 1, 0, 0 }, new float[] { 0, 1, 0 }));
+        when(noteRepository.findTopicEmbeddingStats(any())).thenReturn(List.of());
+
+        classifier = new TopicCentroidClassifier(ollamaService, noteRepository, 2);
+        ReflectionTestUtils.setField(classifier, "enabled", true);
+        ReflectionTestUtils.setField(classifier, "minSimilarity", 0.5);
+        ReflectionTestUtils.setField(classifier, "minMargin", 0.1);
+        ReflectionTestUtils.setField(classifier, "profileWeight", 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void confidentNoteIsClassifiedLocally() {
+        TopicCentroidClassifier.Centroids centroids = classifier.prepare(ownerId, catalog);
+
+        assertThat(classifier.classify(centroids, new float[] { 0.6f, 0.8f, 0 })).hasValue(home);
+        assertThat(classifier.classify(centroids, new float[] { 0.7f, 0.7f, 0 })).isEmpty();
+    }
+
+    @Test
+    void assignmentReachesTheCentroidOnlyAfterCommit() {
+        TopicCentroidClassifier.Centroids centroids = classifier.prepare(ownerId, catalog);
+        float[] note = { 0.6f, 0.8f, 0 };
+
+        TransactionSynchronizationManager.initSynchronization();
+        for (int i = 0; i < 3; i++) {
+            classifier.recordAssignment(ownerId, home.id(), new float[] { 0, 0, 1 });
+        }
+        assertThat(classifier.classify(centroids, note)).hasValue(home);
+
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        // Home drifted towards the recorded notes, the same note now fits Work
+        assertThat(classifier.classify(centroids, note)).hasValue(work);
+    }
+
+    @Test
+    void rolledBackAssignmentIsDropped() {
+        TopicCentroidClassifier.Centroids centroids = classifier.prepare(ownerId, catalog);
+
+        TransactionSynchronizationManager.initSynchronization();
+        classifier.recordAssignment(ownerId, home.id(), new float[] { 0, 0, 1 });
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        TransactionSynchronizationManager.clearSynchronization();
+
+        assertThat(classifier.classify(centroids, new float[] { 0.6f, 0.8f, 0 })).hasValue(home);
+    }
+
+    @Test
+    void centroidsAreKeptForABoundedNumberOfOwners() {
+        classifier.prepare(ownerId, catalog);
+        classifier.prepare(UUID.randomUUID(), catalog);
+        classifier.prepare(UUID.randomUUID(), catalog);
+        classifier.prepare(ownerId, catalog);
+
+        verify(noteRepository, times(2)).findTopicEmbeddingStats(ownerId);
+    }
+
+}
@@ -0,0 +1,216 @@
+package app.notekeeper.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import app.notekeeper.common.exception.SystemException;
+import app.notekeeper.external.ai.DocumentTextExtractor;
+import app.notekeeper.external.ai.ExtractiveSummarizer;
+import app.notekeeper.external.ai.OllamaService;
+import app.notekeeper.external.ai.OpenAIService;
+import app.notekeeper.external.ai.TextChunker;
+import app.notekeeper.external.ai.dto.response.ClassificationTopicResponse;
+import app.notekeeper.model.dto.response.CatalogTopic;
+import app.notekeeper.model.entity.Note;
+import app.notekeeper.model.entity.Topic;
+import app.notekeeper.model.entity.User;
+import app.notekeeper.model.enums.NoteType;
+import app.notekeeper.repository.NoteChunkRepository;
+import app.notekeeper.repository.NoteRepository;
+import app.notekeeper.repository.TopicRepository;
+import app.notekeeper.service.ai.ChangeSignificanceGate;
+import app.notekeeper.service.ai.TopicCatalogCache;
+import app.notekeeper.service.ai.TopicCentroidClassifier;
+import app.notekeeper.service.search.HybridNoteSearch;
+import app.notekeeper.service.search.SemanticQueryCache;
+import app.notekeeper.service.search.VectorSearchEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AIServiceImplTest {
+
+    private static final String MODEL = "nomic-embed-text";
+    private static final String CONTENT = "Quarterly planning notes for the platform team";
+
+    private final Set<Thread> databaseThreads = ConcurrentHashMap.newKeySet();
+
+    private OpenAIService openAIService;
+    private OllamaService ollamaService;
+    private TextChunker textChunker;
+    private ExtractiveSummarizer extractiveSummarizer;
+    private NoteRepository noteRepository;
+    private NoteChunkRepository noteChunkRepository;
+    private TopicRepository topicRepository;
+    private TopicCatalogCache topicCatalogCache;
+    private TopicCentroidClassifier topicCentroidClassifier;
+    private AIServiceImpl aiService;
+
+    private Note note;
+    private CatalogTopic work;
+    private CatalogTopic home;
+    private Topic workEntity;
+    private Topic homeEntity;
+    private TopicCatalogCache.TopicCatalog catalog;
+    private TopicCentroidClassifier.Centroids centroids;
+
+    @BeforeEach
+    void setUp() {
+        openAIService = mock(OpenAIService.class);
+        ollamaService = mock(OllamaService.class);
+        textChunker = mock(TextChunker.class);
+        extractiveSummarizer = mock(ExtractiveSummarizer.class);
+        noteRepository = recordingMock(NoteRepository.class);
+        noteChunkRepository = recordingMock(NoteChunkRepository.class);
+        topicRepository = recordingMock(TopicRepository.class);
+        topicCatalogCache = recordingMock(TopicCatalogCache.class);
+        topicCentroidClassifier = mock(TopicCentroidClassifier.class);
+
+        aiService = new AIServiceImpl(openAIService, ollamaService, textChunker, noteRepository,
+                noteChunkRepository, topicRepository, topicCatalogCache, topicCentroidClassifier,
+                mock(VectorSearchEngine.class), mock(HybridNoteSearch.class), mock(SemanticQueryCache.class),
+                mock(ChangeSignificanceGate.class), mock(DocumentTextExtractor.class), extractiveSummarizer,
+                new SimpleMeterRegistry());
+
+        User owner = User.builder().id(UUID.randomUUID()).build();
+        workEntity = Topic.builder().id(UUID.randomUUID()).name("Work").build();
+        homeEntity = Topic.builder().id(UUID.randomUUID()).name("Home").build();
+        work = CatalogTopic.of(workEntity);
+        home = CatalogTopic.of(homeEntity);
+        note = Note.builder().id(UUID.randomUUID()).owner(owner).title("Planning").content(CONTENT)
+                .type(NoteType.TEXT).build();
+        catalog = new TopicCatalogCache.TopicCatalog(List.of(work, home), "topics", "0", System.nanoTime());
+        centroids = mock(TopicCentroidClassifier.Centroids.class);
+
+        when(noteRepository.findById(note.getId())).thenReturn(Optional.of(note));
+        when(topicCatalogCache.get(owner.getId())).thenReturn(catalog);
+        when(topicCentroidClassifier.prepare(owner.getId(), catalog)).thenReturn(centroids);
+        when(topicRepository.getReferenceById(workEntity.getId())).thenReturn(workEntity);
+        when(topicRepository.getReferenceById(homeEntity.getId())).thenReturn(homeEntity);
+        when(textChunker.chunk(CONTENT)).thenReturn(List.of(new TextChunker.Chunk(0, CONTENT, 8)));
+        when(ollamaService.getActiveModel()).thenReturn(MODEL);
+        when(ollamaService.generateEmbeddings(anyList(), eq(MODEL))).thenReturn(List.of(new float[] { 1f, 0f }));
+    }
+
+    @Test
+    void processNoteTouchesTheDatabaseOnlyOnTheCallingThread() {
+        when(topicCentroidClassifier.classify(eq(centroids), any())).thenReturn(Optional.of(work));
+
+        aiService.processNote(note.getId());
+
+        assertThat(databaseThreads).containsExactly(Thread.currentThread());
+    }
+
+    @Test
+    void localHitSummarizesWithoutTheLlm() {
+        when(topicCentroidClassifier.classify(eq(centroids), any())).thenReturn(Optional.of(work));
+        when(extractiveSummarizer.summarize("Planning", CONTENT)).thenReturn("extract");
+
+        aiService.processNote(note.getId());
+
+        verify(openAIService, never()).generateSummaryForTextNote(any(), any(), any());
+        verify(openAIService, never()).classifyNote(any(), anyList(), anyString(), any());
+        verify(noteRepository).updateClassificationAndEmbedding(eq(note.getId()), eq(workEntity), eq("extract"),
+                any());
+    }
+
+    @Test
+    void localHitWithLlmSummaryGeneratesItForTheSelectedTopic() {
+        ReflectionTestUtils.setField(aiService, "localSummary", "llm");
+        when(topicCentroidClassifier.classify(eq(centroids), any())).thenReturn(Optional.of(work));
+        when(openAIService.generateSummaryForTextNote("Planning", CONTENT, "Work")).thenReturn("summary");
+
+        aiService.processNote(note.getId());
+
+        verify(openAIService).generateSummaryForTextNote("Planning", CONTENT, "Work");
+        verify(openAIService, never()).classifyNote(any(), anyList(), anyString(), any());
+        verify(noteRepository).updateClassificationAndEmbedding(eq(note.getId()), eq(workEntity), eq("summary"),
+                any());
+    }
+
+    @Test
+    void localMissSkipsTheSummaryAndAsksTheLlm() {
+        when(topicCentroidClassifier.classify(eq(centroids), any())).thenReturn(Optional.empty());
+        ClassificationTopicResponse response = new ClassificationTopicResponse();
+        response.setTopicId(home.id());
+        response.setAiSummary("llm summary");
+        when(openAIService.classifyNote(eq(note), eq(catalog.topics()), eq("topics"), isNull()))
+                .thenReturn(response);
+
+        aiService.processNote(note.getId());
+
+        verify(openAIService, never()).generateSummaryForTextNote(any(), any(), any());
+        verify(extractiveSummarizer, never()).summarize(any(), any());
+        verify(noteRepository).updateClassificationAndEmbedding(eq(note.getId()), eq(homeEntity), eq("llm summary"),
+                any());
+    }
+
+    @Test
+    void speculativeSummaryStartsNextToTheEmbedding() {
+        ReflectionTestUtils.setField(aiService, "localSummary", "llm");
+        ReflectionTestUtils.setField(aiService, "speculativeSummary", true);
+        when(topicCentroidClassifier.classify(eq(centroids), any())).thenReturn(Optional.of(work));
+        when(openAIService.generateSummaryForTextNote("Planning", CONTENT, null)).thenReturn("summary");
+
+        aiService.processNote(note.getId());
+
+        verify(openAIService).generateSummaryForTextNote("Planning", CONTENT, null);
+        verify(noteRepository).updateClassificationAndEmbedding(eq(note.getId()), eq(workEntity), eq("summary"),
+                any());
+    }
+
+    @Test
+    void ownerWithoutTopicsIsNotProcessed() {
+        when(topicCatalogCache.get(note.getOwner().getId()))
+                .thenReturn(new TopicCatalogCache.TopicCatalog(List.of(), "", "0", System.nanoTime()));
+
+        aiService.processNote(note.getId());
+
+        verify(ollamaService, never()).generateEmbeddings(anyList(), anyString());
+        verify(noteChunkRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void unavailableOllamaFailsTheJobForARetry() {
+        when(ollamaService.generateEmbeddings(anyList(), eq(MODEL)))
+                .thenThrow(SystemException.externalServiceError("AI service is temporarily unavailable"));
+
+        assertThatThrownBy(() -> aiService.processNote(note.getId())).isInstanceOf(SystemException.class);
+
+        verify(noteRepository, never()).updateClassificationAndEmbedding(any(), any(), any(), any());
+    }
+
+    @Test
+    void otherEmbeddingFailuresSaveTheNoteWithoutEmbedding() {
+        when(ollamaService.generateEmbeddings(anyList(), eq(MODEL))).thenThrow(new IllegalStateException("bad"));
+        when(topicCentroidClassifier.classify(eq(centroids), any())).thenReturn(Optional.of(work));
+        when(extractiveSummarizer.summarize("Planning", CONTENT)).thenReturn("extract");
+
+        aiService.processNote(note.getId());
+
+        verify(noteRepository).updateClassification(note.getId(), workEntity, "extract");
+    }
+
+    private <T> T recordingMock(Class<T> type) {
+        return mock(type, withSettings().invocationListeners(report -> databaseThreads.add(Thread.currentThread())));
+    }
+
+}
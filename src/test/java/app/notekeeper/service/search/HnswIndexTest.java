@@ -0,0 +1,222 @@
+package app.notekeeper.service.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+class HnswIndexTest {
+
+    private static final int DIMENSION = 128;
+    private static final int CLUSTERS = 40;
+
+    private final Random random = new Random(42);
+    private final float[][] centers = randomCenters();
+
+    @Test
+    void recallAgainstBruteForce() {
+        float[][] vectors = clusteredVectors(3000);
+        HnswIndex index = build(vectors);
+
+        double recall = recall(index, vectors, Set.of(), 10, 80, 50);
+
+        assertThat(recall).isGreaterThanOrEqualTo(0.95);
+    }
+
+    @Test
+    void removedNodesAreNeverReturnedAndDoNotStarveResults() {
+        float[][] vectors = clusteredVectors(2000);
+        HnswIndex index = build(vectors);
+
+        Set<Integer> removed = new HashSet<>();
+        for (int node = 0; node < vectors.length; node += 3) {
+            index.remove(node);
+            removed.add(node);
+        }
+
+        assertThat(index.size()).isEqualTo(vectors.length - removed.size());
+        assertThat(index.deletedCount()).isEqualTo(removed.size());
+
+        for (int query = 0; query < 20; query++) {
+            List<HnswIndex.Hit> hits = index.search(clusteredVector(), 10, 80);
+            assertThat(hits).hasSize(10);
+            assertThat(hits).noneMatch(hit -> removed.contains(nodeOf(hit.label())));
+        }
+        assertThat(recall(index, vectors, removed, 10, 80, 30)).isGreaterThanOrEqualTo(0.9);
+    }
+
+    @Test
+    void hitsAreOrderedNearestFirst() {
+        float[][] vectors = clusteredVectors(500);
+        HnswIndex index = build(vectors);
+
+        List<HnswIndex.Hit> hits = index.search(vectors[7], 10, 40);
+
+        assertThat(hits.get(0).label()).isEqualTo(label(7));
+        assertThat(hits.get(0).distance()).isLessThan(1e-5f);
+        assertThat(hits).isSortedAccordingTo(Comparator.comparingDouble(HnswIndex.Hit::distance));
+    }
+
+    @Test
+    void snapshotRoundTripKeepsGraphAndTombstones() throws IOException {
+        float[][] vectors = clusteredVectors(1000);
+        HnswIndex index = build(vectors);
+        for (int node = 0; node < vectors.length; node += 7) {
+            index.remove(node);
+        }
+
+        HnswIndex restored = roundTrip(index);
+
+        assertThat(restored.dimension()).isEqualTo(index.dimension());
+        assertThat(restored.size()).isEqualTo(index.size());
+        assertThat(restored.deletedCount()).isEqualTo(index.deletedCount());
+        for (int node = 0; node < vectors.length; node++) {
+            assertThat(restored.label(node)).isEqualTo(index.label(node));
+            assertThat(restored.isDeleted(node)).isEqualTo(index.isDeleted(node));
+        }
+        for (int query = 0; query < 20; query++) {
+            float[] vector = clusteredVector();
+            assertThat(restored.search(vector, 10, 80)).isEqualTo(index.search(vector, 10, 80));
+        }
+    }
+
+    @Test
+    void restoredIndexAcceptsNewVectors() throws IOException {
+        float[][] vectors = clusteredVectors(300);
+        HnswIndex restored = roundTrip(build(vectors));
+
+        float[] added = clusteredVector();
+        int node = restored.add(label(vectors.length), added);
+
+        assertThat(node).isEqualTo(vectors.length);
+        assertThat(restored.search(added, 1, 40).get(0).label()).isEqualTo(label(vectors.length));
+    }
+
+    @Test
+    void emptyIndexReturnsNoHits() {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 64, 16);
+
+        assertThat(index.search(clusteredVector(), 10, 80)).isEmpty();
+    }
+
+    @Test
+    void rejectsVectorOfOtherDimension() {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 64, 16);
+
+        assertThatThrownBy(() -> index.add(UUID.randomUUID(), new float[DIMENSION + 1]))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectsUnknownSnapshotFormat() {
+        byte[] garbage = new byte[64];
+        Arrays.fill(garbage, (byte) 7);
+
+        assertThatThrownBy(() -> HnswIndex.readFrom(new DataInputStream(new ByteArrayInputStream(garbage))))
+                .isInstanceOf(IOException.class);
+    }
+
+    private static HnswIndex build(float[][] vectors) {
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 64, 64);
+        for (int node = 0; node < vectors.length; node++) {
+            assertThat(index.add(label(node), vectors[node])).isEqualTo(node);
+        }
+        return index;
+    }
+
+    private static HnswIndex roundTrip(HnswIndex index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.writeTo(out);
+        }
+        return HnswIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    /**
+     * Share of the exact k nearest live vectors found by the index
+     */
+    private double recall(HnswIndex index, float[][] vectors, Set<Integer> removed, int k, int ef, int queries) {
+        int found = 0;
+        for (int query = 0; query < queries; query++) {
+            float[] vector = clusteredVector();
+
+            Set<UUID> exact = new HashSet<>();
+            IntStream.range(0, vectors.length)
+                    .filter(node -> !removed.contains(node))
+                    .boxed()
+                    .sorted(Comparator.comparingDouble(node -> cosineDistance(vectors[node], vector)))
+                    .limit(k)
+                    .forEach(node -> exact.add(label(node)));
+
+            found += (int) index.search(vector, k, ef).stream()
+                    .filter(hit -> exact.contains(hit.label()))
+                    .count();
+        }
+        return (double) found / (queries * k);
+    }
+
+    private static double cosineDistance(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return 1 - dot / Math.sqrt(normA * normB);
+    }
+
+    /**
+     * Embedding-like data: points scattered around topic centers
+     */
+    private float[][] clusteredVectors(int count) {
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = clusteredVector();
+        }
+        return vectors;
+    }
+
+    private float[] clusteredVector() {
+        float[] center = centers[random.nextInt(CLUSTERS)];
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = center[d] + (float) random.nextGaussian() * 0.5f;
+        }
+        return vector;
+    }
+
+    private float[][] randomCenters() {
+        float[][] result = new float[CLUSTERS][DIMENSION];
+        for (float[] center : result) {
+            for (int d = 0; d < DIMENSION; d++) {
+                center[d] = (float) random.nextGaussian();
+            }
+        }
+        return result;
+    }
+
+    private static UUID label(int node) {
+        return new UUID(0, node);
+    }
+
+    private static int nodeOf(UUID label) {
+        return (int) label.getLeastSignificantBits();
+    }
+
+}
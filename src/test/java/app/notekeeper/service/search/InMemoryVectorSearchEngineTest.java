@@ -0,0 +1,148 @@
+package app.notekeeper.service.search;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import app.notekeeper.model.dto.response.NoteSearchResult;
+import app.notekeeper.repository.NoteRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class InMemoryVectorSearchEngineTest {
+
+    private static final String WATERMARK = "2:2025-01-01/0:";
+    private static final float[] QUERY = { 1f, 0f };
+
+    @TempDir
+    Path snapshotDir;
+
+    private final UUID alice = UUID.randomUUID();
+    private final UUID bob = UUID.randomUUID();
+
+    private NoteRepository noteRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private InMemoryVectorSearchEngine engine;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        noteRepository = mock(NoteRepository.class);
+        when(noteRepository.findEmbeddingWatermark(any())).thenReturn(WATERMARK);
+        when(noteRepository.findSearchResultsByIds(anyList())).thenAnswer(invocation -> invocation
+                .<List<UUID>>getArgument(0).stream()
+                .map(id -> NoteSearchResult.builder().id(id).build())
+                .toList());
+        // Two vectors per owner
+        doAnswer(invocation -> {
+            BiConsumer<UUID, float[]> consumer = invocation.getArgument(1);
+            consumer.accept(UUID.randomUUID(), new float[] { 1f, 0f });
+            consumer.accept(UUID.randomUUID(), new float[] { 0f, 1f });
+            return null;
+        }).when(noteRepository).forEachOwnerEmbedding(any(), any(BiConsumer.class));
+
+        engine = newEngine();
+    }
+
+    @Test
+    void shardIsLoadedFromItsSnapshot() {
+        engine.findSimilarNotes(alice, null, QUERY, 10);
+
+        newEngine().findSimilarNotes(alice, null, QUERY, 10);
+
+        verify(noteRepository, times(1)).forEachOwnerEmbedding(any(), any());
+    }
+
+    @Test
+    void corruptSnapshotIsRebuilt() throws IOException {
+        engine.findSimilarNotes(alice, null, QUERY, 10);
+        // Level count of the first node, read as an array size
+        int levelsOffset = 2 + WATERMARK.length() + 1 + 8 * Integer.BYTES + 2 * Long.BYTES + 1
+                + QUERY.length * Float.BYTES;
+        try (RandomAccessFile file = new RandomAccessFile(snapshotDir.resolve(alice + ".hnsw").toFile(), "rw")) {
+            file.seek(levelsOffset);
+            file.writeInt(-1);
+        }
+
+        newEngine().findSimilarNotes(alice, null, QUERY, 10);
+
+        verify(noteRepository, times(2)).forEachOwnerEmbedding(any(), any());
+    }
+
+    @Test
+    void leastRecentlyUsedShardIsEvictedOverTheVectorBudget() throws InterruptedException {
+        ReflectionTestUtils.setField(engine, "maxVectors", 3L);
+
+        engine.findSimilarNotes(alice, null, QUERY, 10);
+        TimeUnit.MILLISECONDS.sleep(5);
+        engine.findSimilarNotes(bob, null, QUERY, 10);
+
+        assertThat(loadedShards()).isEqualTo(1.0);
+        assertThat(loadedOwners()).containsExactly(bob);
+    }
+
+    @Test
+    void idleShardIsEvicted() throws InterruptedException {
+        ReflectionTestUtils.setField(engine, "idleTimeout", Duration.ofMillis(1));
+
+        engine.findSimilarNotes(alice, null, QUERY, 10);
+        TimeUnit.MILLISECONDS.sleep(5);
+        engine.findSimilarNotes(bob, null, QUERY, 10);
+
+        assertThat(loadedOwners()).containsExactly(bob);
+    }
+
+    @Test
+    void shardsWithinTheBudgetStayLoaded() {
+        engine.findSimilarNotes(alice, null, QUERY, 10);
+        engine.findSimilarNotes(bob, null, QUERY, 10);
+
+        assertThat(loadedOwners()).containsExactlyInAnyOrder(alice, bob);
+    }
+
+    private InMemoryVectorSearchEngine newEngine() {
+        meterRegistry = new SimpleMeterRegistry();
+        InMemoryVectorSearchEngine created = new InMemoryVectorSearchEngine(noteRepository, meterRegistry);
+        ReflectionTestUtils.setField(created, "candidateLimit", 40);
+        ReflectionTestUtils.setField(created, "m", 16);
+        ReflectionTestUtils.setField(created, "efConstruction", 64);
+        ReflectionTestUtils.setField(created, "efSearch", 80);
+        ReflectionTestUtils.setField(created, "maxAge", Duration.ofMinutes(15));
+        ReflectionTestUtils.setField(created, "maxDeletedRatio", 0.3);
+        ReflectionTestUtils.setField(created, "snapshotDir", snapshotDir.toString());
+        ReflectionTestUtils.setField(created, "refreshRetry", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(created, "idleTimeout", Duration.ofHours(1));
+        ReflectionTestUtils.setField(created, "maxVectors", 500_000L);
+        return created;
+    }
+
+    private double loadedShards() {
+        return meterRegistry.get("notekeeper.search.memory.shards").gauge().value();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<UUID> loadedOwners() {
+        return ((Map<UUID, ?>) ReflectionTestUtils.getField(engine, "shards")).keySet();
+    }
+
+}